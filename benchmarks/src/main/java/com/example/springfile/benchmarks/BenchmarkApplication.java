@@ -0,0 +1,56 @@
+package com.example.springfile.benchmarks;
+
+import com.example.springfile.SpringfileApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The real application context, minus the web server, on a throwaway H2 file database and upload
+ * directory, so benchmarks exercise the same beans, transactions and storage code as production.
+ */
+final class BenchmarkApplication implements AutoCloseable {
+
+    private final Path workDir;
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkApplication(Path workDir, ConfigurableApplicationContext context) {
+        this.workDir = workDir;
+        this.context = context;
+    }
+
+    static BenchmarkApplication start(String... extraArgs) throws IOException {
+        Path workDir = Files.createTempDirectory("springfile-bench");
+        List<String> args = new ArrayList<>(List.of(
+                // Command-line arguments, so they win over the application.properties inside the app jar
+                "--spring.datasource.url=jdbc:h2:file:" + workDir.resolve("db").toAbsolutePath(),
+                "--file.upload-dir=" + workDir.resolve("uploads").toAbsolutePath(),
+                "--file.search.index-dir=" + workDir.resolve("search-index").toAbsolutePath(),
+                "--logging.level.root=WARN",
+                "--logging.level.com.example.springfile=WARN",
+                "--spring.main.banner-mode=off"));
+        args.addAll(List.of(extraArgs));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringfileApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(args.toArray(String[]::new));
+        return new BenchmarkApplication(workDir, context);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+}
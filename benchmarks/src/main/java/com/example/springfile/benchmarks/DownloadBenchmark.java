@@ -0,0 +1,77 @@
+package com.example.springfile.benchmarks;
+
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.StoredFile;
+import com.example.springfile.storage.TransferSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The download read path (what loadFileAsResource used to be): look up the file's row, open its content
+ * with {@link FileStorageService#openForTransfer}, and copy every byte to a discarding channel, which is
+ * what the response writer does minus the socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    int size;
+
+    private BenchmarkApplication app;
+    private FileStorageService fileStorageService;
+    private FileInfoRepository fileInfoRepository;
+    private Long fileId;
+    private final WritableByteChannel sink = Channels.newChannel(OutputStream.nullOutputStream());
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        app = BenchmarkApplication.start();
+        fileStorageService = app.bean(FileStorageService.class);
+        fileInfoRepository = app.bean(FileInfoRepository.class);
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        StoredFile storedFile = fileStorageService.storeFile(
+                new MockMultipartFile("file", "bench.bin", "application/octet-stream", content));
+        fileId = fileStorageService.saveFileMetadata("bench.bin", storedFile, "application/octet-stream",
+                List.of(), "new", "Benchmarks", "", null).getId();
+    }
+
+    @Benchmark
+    public long download() throws Exception {
+        FileInfo fileInfo = fileInfoRepository.findById(fileId).orElseThrow();
+        TransferSource source = fileStorageService.openForTransfer(fileInfo);
+        source.transferTo(sink, 0, source.length());
+        return source.length();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        app.close();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.springfile.benchmarks;
+
+import com.example.springfile.controller.FileUploadController;
+import com.example.springfile.dto.FileListFilter;
+import com.example.springfile.dto.FilePage;
+import com.example.springfile.model.Category;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.SubCategory;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.service.FileQueryService;
+import com.example.springfile.service.TaxonomyCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.ui.ExtendedModelMap;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling the data for the listing page ({@link FileUploadController#listUploadedFiles} up to, not
+ * including, template rendering) against tables of different sizes, unfiltered and with each kind of
+ * filter, plus the by-storage-path lookup every download starts with. With keyset pagination and an
+ * index per filter the cost should not grow with the row count; a regression to OFFSET, unbounded
+ * queries or a missing index shows up as the 1M case pulling away from the 1k case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ListingBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 5_000;
+    private static final String[] LABELS = {"finance", "legal", "hr", "engineering", "sales"};
+    private static final long FIRST_LABEL_ID = 1_000_000L;
+
+    @Param({"1000", "100000", "1000000"})
+    int rows;
+
+    private BenchmarkApplication app;
+    private FileUploadController controller;
+    private FileQueryService fileQueryService;
+    private FileInfoRepository fileInfoRepository;
+    private String middleCursor;
+    private Long categoryId;
+    private Long subCategoryId;
+    private String middleStoragePath;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        app = BenchmarkApplication.start(
+                // The seeded rows have no stored content: nothing to sniff, index or migrate
+                "--file.processing.poll-interval=1h", "--file.blob-migration.enabled=false");
+        controller = app.bean(FileUploadController.class);
+        fileQueryService = app.bean(FileQueryService.class);
+        fileInfoRepository = app.bean(FileInfoRepository.class);
+        seed(app.bean(JdbcTemplate.class), app.bean(TaxonomyCache.class));
+
+        // A cursor halfway down the listing, for the deep-page case
+        FileListFilter all = new FileListFilter(null, null, null, null);
+        FilePage page = fileQueryService.listFiles(all, null, FileQueryService.MAX_PAGE_SIZE);
+        for (int skipped = page.getItems().size(); skipped < rows / 2; skipped += page.getItems().size()) {
+            page = fileQueryService.listFiles(all, page.getNextCursor(), FileQueryService.MAX_PAGE_SIZE);
+        }
+        middleCursor = page.getNextCursor();
+        middleStoragePath = "seed-" + rows / 2 + ".pdf";
+    }
+
+    // Plain JDBC batches straight into the tables: a million rows through JPA would take far too long
+    private void seed(JdbcTemplate jdbc, TaxonomyCache taxonomyCache) {
+        List<Category> categories = new ArrayList<>();
+        List<SubCategory> subCategories = new ArrayList<>();
+        for (int c = 0; c < 10; c++) {
+            Category category = taxonomyCache.findOrCreateCategory("Category " + c);
+            categories.add(category);
+            for (int s = 0; s < 5; s++) {
+                subCategories.add(taxonomyCache.findOrCreateSubCategory(category, "Sub " + c + "." + s));
+            }
+        }
+        categoryId = categories.get(3).getId();
+        subCategoryId = subCategories.get(17).getId();
+        List<Object[]> labels = new ArrayList<>();
+        for (int l = 0; l < LABELS.length; l++) {
+            labels.add(new Object[]{FIRST_LABEL_ID + l, LABELS[l]});
+        }
+        jdbc.batchUpdate("INSERT INTO label (id, name) VALUES (?, ?)", labels);
+
+        LocalDateTime start = LocalDateTime.now().minusDays(365);
+        long firstId = 1_000_000_000L; // Clear of the ids the application's sequence hands out
+        for (int from = 0; from < rows; from += SEED_BATCH_SIZE) {
+            List<Object[]> fileRows = new ArrayList<>(SEED_BATCH_SIZE);
+            List<Object[]> labelRows = new ArrayList<>(SEED_BATCH_SIZE * 2);
+            for (int i = from; i < Math.min(rows, from + SEED_BATCH_SIZE); i++) {
+                long id = firstId + i;
+                SubCategory subCategory = subCategories.get(i % subCategories.size());
+                Category category = categories.get((i % subCategories.size()) / 5);
+                fileRows.add(new Object[]{id, "document-" + i + ".pdf", "pdf", "seed-" + i + ".pdf", "application/pdf",
+                        Timestamp.valueOf(start.plusSeconds(i * 30L)), 1024L + i, category.getId(), subCategory.getId()});
+                int first = i % LABELS.length;
+                int second = (i / LABELS.length) % LABELS.length;
+                labelRows.add(new Object[]{id, 0, FIRST_LABEL_ID + first});
+                if (second != first) {
+                    labelRows.add(new Object[]{id, 1, FIRST_LABEL_ID + second});
+                }
+            }
+            jdbc.batchUpdate("INSERT INTO file_info (id, filename, extension, storage_path, content_type, upload_time, " +
+                    "size, category_id, sub_category_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", fileRows);
+            jdbc.batchUpdate("INSERT INTO file_info_label (file_info_id, label_order, label_id) VALUES (?, ?, ?)", labelRows);
+        }
+        jdbc.execute("ANALYZE");
+    }
+
+    @Benchmark
+    public String firstPage() {
+        return controller.listUploadedFiles(null, FileQueryService.DEFAULT_PAGE_SIZE, null, null, null, null,
+                new ExtendedModelMap());
+    }
+
+    @Benchmark
+    public String middlePage() {
+        return controller.listUploadedFiles(middleCursor, FileQueryService.DEFAULT_PAGE_SIZE, null, null, null, null,
+                new ExtendedModelMap());
+    }
+
+    @Benchmark
+    public String filteredByLabel() {
+        return controller.listUploadedFiles(null, FileQueryService.DEFAULT_PAGE_SIZE, null, null, "legal", null,
+                new ExtendedModelMap());
+    }
+
+    @Benchmark
+    public String filteredByCategory() {
+        return controller.listUploadedFiles(null, FileQueryService.DEFAULT_PAGE_SIZE, categoryId, null, null, null,
+                new ExtendedModelMap());
+    }
+
+    @Benchmark
+    public String filteredBySubCategory() {
+        return controller.listUploadedFiles(null, FileQueryService.DEFAULT_PAGE_SIZE, null, subCategoryId, null, null,
+                new ExtendedModelMap());
+    }
+
+    @Benchmark
+    public Optional<FileInfo> lookupByStoragePath() {
+        return fileInfoRepository.findByStoragePath(middleStoragePath);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        app.close();
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.springfile.benchmarks;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a running server with a mix of uploads ({@code POST /upload}) and downloads
+ * ({@code GET /files/{storedFilename}}) from concurrent threads, then prints latency percentiles per
+ * operation.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.springfile.benchmarks.LoadGenerator \
+ *     --url=http://localhost:8080 --threads=16 --duration=60s --warmup=10s --upload-percent=20 --file-size=65536
+ * </pre>
+ * Runs are reproducible: operation mix and payloads come from {@code --seed}. By default each thread
+ * sends its next request as soon as the previous one returns (closed loop). With {@code --rate} requests
+ * are sent on a fixed schedule instead and latency is measured from when a request was due, so a server
+ * stall shows up in the percentiles rather than just slowing the generator down. {@code --max-p99-ms}
+ * makes the run fail (exit status 1) when either operation's p99 is above it, for use in CI.
+ */
+public final class LoadGenerator {
+
+    private static final Pattern STORAGE_PATH = Pattern.compile("\"storagePath\":\"([^\"]+)\"");
+
+    private final URI baseUrl;
+    private final int threads;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int uploadPercent;
+    private final int fileSize;
+    private final int seedFiles;
+    private final long seed;
+    private final double rate;
+    private final double maxP99Millis;
+
+    private final HttpClient client;
+    private final List<String> downloadable = new ArrayList<>();
+    private final Map<String, Operation> operations = Map.of("upload", new Operation(), "download", new Operation());
+
+    // Latencies (nanoseconds) and errors of one kind of request
+    private static final class Operation {
+        final Histogram latencies = new ConcurrentHistogram(3);
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    private LoadGenerator(Map<String, String> options) {
+        this.baseUrl = URI.create(options.getOrDefault("url", "http://localhost:8080"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        this.duration = parseDuration(options.getOrDefault("duration", "60s"));
+        this.warmup = parseDuration(options.getOrDefault("warmup", "10s"));
+        this.uploadPercent = Integer.parseInt(options.getOrDefault("upload-percent", "20"));
+        this.fileSize = Integer.parseInt(options.getOrDefault("file-size", "65536"));
+        this.seedFiles = Integer.parseInt(options.getOrDefault("seed-files", "50"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        this.maxP99Millis = Double.parseDouble(options.getOrDefault("max-p99-ms", "0"));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Options are --name=value; see the LoadGenerator class comment");
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        boolean passed = new LoadGenerator(options).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        seedDownloads();
+        System.out.printf(Locale.ROOT, "%d threads, %s warmup + %s measured, %d%% uploads of %d bytes, %s%n",
+                threads, warmup, duration, uploadPercent, fileSize,
+                rate > 0 ? String.format(Locale.ROOT, "%.1f requests/s", rate) : "closed loop");
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> drive(index, start, measureFrom, end), "load-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return report();
+    }
+
+    // Uploads the files downloads are drawn from, so the run does not depend on what the server already holds
+    private void seedDownloads() throws IOException, InterruptedException {
+        Random random = new Random(seed);
+        for (int i = 0; i < seedFiles; i++) {
+            String query = "filename=" + encode("load-seed-" + i + ".bin") + "&category=new&newCategory=" + encode("Load test");
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(baseUrl.resolve("/api/files/stream?" + query))
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(payload(random)))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = STORAGE_PATH.matcher(response.body());
+            if (response.statusCode() != 201 || !matcher.find()) {
+                throw new IllegalStateException("Seeding failed with HTTP " + response.statusCode() + ": " + response.body());
+            }
+            downloadable.add(matcher.group(1));
+        }
+    }
+
+    private void drive(int threadIndex, long start, long measureFrom, long end) {
+        Random random = new Random(seed * 31 + threadIndex);
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+        // Stagger the threads' schedules so a fixed rate is not sent in bursts
+        long due = start + (interval * threadIndex) / Math.max(1, threads);
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0) {
+                if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                }
+            } else {
+                due = now;
+            }
+            if (due >= end) {
+                return;
+            }
+            boolean upload = random.nextInt(100) < uploadPercent;
+            byte[] content = upload ? payload(random) : null;
+            String download = upload ? null : downloadable.get(random.nextInt(downloadable.size()));
+
+            boolean ok;
+            try {
+                ok = upload ? upload(content, random.nextInt(Integer.MAX_VALUE)) : download(download);
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long finished = System.nanoTime();
+            if (due >= measureFrom) {
+                Operation operation = operations.get(upload ? "upload" : "download");
+                operation.latencies.recordValue(finished - due);
+                if (!ok) {
+                    operation.errors.incrementAndGet();
+                }
+            }
+            due += interval;
+        }
+    }
+
+    private byte[] payload(Random random) {
+        byte[] content = new byte[fileSize];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private boolean upload(byte[] content, int n) throws IOException, InterruptedException {
+        String boundary = "----springfile-load-" + n;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 1024);
+        writeField(body, boundary, "labels", "load");
+        writeField(body, boundary, "category", "new");
+        writeField(body, boundary, "newCategory", "Load test");
+        writeField(body, boundary, "subCategory", "");
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"load-" + n + ".bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(baseUrl.resolve("/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() == 302; // The form redirects back to the listing page
+    }
+
+    private static void writeField(ByteArrayOutputStream body, String boundary, String name, String value) {
+        body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean download(String storedFilename) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(baseUrl.resolve("/files/" + storedFilename)).GET().build(),
+                HttpResponse.BodyHandlers.discarding()); // Still reads the whole body
+        return response.statusCode() == 200;
+    }
+
+    private boolean report() {
+        boolean passed = true;
+        double seconds = duration.toNanos() / 1e9;
+        System.out.printf(Locale.ROOT, "%-9s %9s %8s %9s %9s %9s %9s %9s %9s%n",
+                "", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (String name : List.of("upload", "download")) {
+            Operation operation = operations.get(name);
+            Histogram h = operation.latencies;
+            double p99 = millis(h.getValueAtPercentile(99));
+            System.out.printf(Locale.ROOT, "%-9s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    name, h.getTotalCount(), operation.errors.get(), h.getTotalCount() / seconds,
+                    millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)), p99,
+                    millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()));
+            if (maxP99Millis > 0 && p99 > maxP99Millis) {
+                System.out.printf(Locale.ROOT, "FAIL: %s p99 %.2f ms is above --max-p99-ms=%.2f%n", name, p99, maxP99Millis);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // 90s, 2m, 500ms or plain seconds
+    private static Duration parseDuration(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (v.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        }
+        if (v.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        if (v.endsWith("s")) {
+            v = v.substring(0, v.length() - 1);
+        }
+        return Duration.ofSeconds(Long.parseLong(v));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.springfile.benchmarks;
+
+import com.example.springfile.model.Category;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.SubCategory;
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.StoredFile;
+import com.example.springfile.service.TaxonomyCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileStorageService#saveFileMetadata}: taxonomy resolution plus the FileInfo insert (and the
+ * processing jobs queued with it), either into an existing category/subcategory or creating a new pair
+ * every time. All rows share one stored file; only the metadata path is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveMetadataBenchmark {
+
+    @Param({"existing", "new"})
+    String taxonomy;
+
+    private BenchmarkApplication app;
+    private FileStorageService fileStorageService;
+    private StoredFile storedFile;
+    private String categoryId;
+    private String subCategoryId;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        app = BenchmarkApplication.start();
+        fileStorageService = app.bean(FileStorageService.class);
+        storedFile = fileStorageService.storeFile(new MockMultipartFile("file", "bench.txt", "text/plain",
+                "benchmark".getBytes(StandardCharsets.UTF_8)));
+        TaxonomyCache taxonomyCache = app.bean(TaxonomyCache.class);
+        Category category = taxonomyCache.findOrCreateCategory("Benchmarks");
+        SubCategory subCategory = taxonomyCache.findOrCreateSubCategory(category, "Existing");
+        categoryId = category.getId().toString();
+        subCategoryId = subCategory.getId().toString();
+    }
+
+    @Benchmark
+    public FileInfo saveFileMetadata() {
+        long n = counter++;
+        if ("new".equals(taxonomy)) {
+            return fileStorageService.saveFileMetadata("bench-" + n + ".txt", storedFile, "text/plain",
+                    List.of("bench"), "new", "Category " + n, "new", "Sub " + n);
+        }
+        return fileStorageService.saveFileMetadata("bench-" + n + ".txt", storedFile, "text/plain",
+                List.of("bench"), categoryId, null, subCategoryId, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        app.close();
+    }
+}
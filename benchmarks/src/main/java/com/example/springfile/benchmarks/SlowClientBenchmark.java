@@ -0,0 +1,197 @@
+package com.example.springfile.benchmarks;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opens many concurrent downloads of one file from clients that read slowly, and reports how many of
+ * them the server streams at the same time. A server handling requests on a bounded pool of platform
+ * threads serves at most {@code server.tomcat.threads.max} of them at once, and the rest only get their
+ * first byte when an earlier download finishes; with virtual threads all of them stream together.
+ * <pre>
+ * java -cp target/benchmarks.jar com.example.springfile.benchmarks.SlowClientBenchmark \
+ *     --url=http://localhost:8080 --clients=400 --file-size=8388608 --read-rate=524288
+ * </pre>
+ * Each client uses a small socket receive buffer and reads at {@code --read-rate} bytes/s, so the
+ * server cannot finish early by filling TCP buffers. Downloads the server sends with sendfile do not
+ * hold a request thread at all; run the server with {@code file.download.sendfile=false} to measure
+ * the streamed path (which S3 downloads always take).
+ */
+public final class SlowClientBenchmark {
+
+    private static final Pattern STORAGE_PATH = Pattern.compile("\"storagePath\":\"([^\"]+)\"");
+
+    private final URI baseUrl;
+    private final int clients;
+    private final int fileSize;
+    private final int readRate;
+    private final int receiveBuffer;
+
+    private final Histogram firstByte = new ConcurrentHistogram(3);
+    private final Histogram completed = new ConcurrentHistogram(3);
+    private final AtomicInteger streaming = new AtomicInteger();
+    private final AtomicInteger peakStreaming = new AtomicInteger();
+    private final AtomicLong errors = new AtomicLong();
+
+    private SlowClientBenchmark(Map<String, String> options) {
+        this.baseUrl = URI.create(options.getOrDefault("url", "http://localhost:8080"));
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "400"));
+        this.fileSize = Integer.parseInt(options.getOrDefault("file-size", "8388608"));
+        this.readRate = Integer.parseInt(options.getOrDefault("read-rate", "524288"));
+        this.receiveBuffer = Integer.parseInt(options.getOrDefault("receive-buffer", "16384"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Options are --name=value; see the SlowClientBenchmark class comment");
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new SlowClientBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        String storedFilename = upload();
+        System.out.printf(Locale.ROOT, "%d clients downloading %d bytes at %d bytes/s each (about %.1f s per download)%n",
+                clients, fileSize, readRate, (double) fileSize / readRate);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    download(storedFilename);
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "slow-client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(System.nanoTime() - started);
+    }
+
+    private String upload() throws IOException, InterruptedException {
+        byte[] content = new byte[fileSize];
+        new Random(1).nextBytes(content);
+        String query = "filename=" + URLEncoder.encode("slow-client.bin", StandardCharsets.UTF_8)
+                + "&category=new&newCategory=" + URLEncoder.encode("Load test", StandardCharsets.UTF_8);
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(baseUrl.resolve("/api/files/stream?" + query))
+                        .header("Content-Type", "application/octet-stream")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(content))
+                        .build(), HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = STORAGE_PATH.matcher(response.body());
+        if (response.statusCode() != 201 || !matcher.find()) {
+            throw new IllegalStateException("Upload failed with HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return matcher.group(1);
+    }
+
+    // A raw socket, so the receive buffer (and with it how much the server can write ahead) stays small
+    private void download(String storedFilename) throws IOException, InterruptedException {
+        long requested = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(receiveBuffer);
+            int port = baseUrl.getPort() > 0 ? baseUrl.getPort() : 80;
+            socket.connect(new InetSocketAddress(baseUrl.getHost(), port), 10_000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /files/" + storedFilename + " HTTP/1.1\r\nHost: " + baseUrl.getHost()
+                    + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            String status = readHeaders(in);
+            if (!status.startsWith("HTTP/1.1 200")) {
+                throw new IOException("Unexpected response: " + status);
+            }
+            byte[] buffer = new byte[4096];
+            long received = 0;
+            long bodyStarted = 0;
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (received == 0) {
+                    bodyStarted = System.nanoTime();
+                    firstByte.recordValue(bodyStarted - requested);
+                    peakStreaming.accumulateAndGet(streaming.incrementAndGet(), Math::max);
+                }
+                received += read;
+                // Stay at or below the read rate
+                long due = bodyStarted + received * TimeUnit.SECONDS.toNanos(1) / readRate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            if (received > 0) {
+                streaming.decrementAndGet();
+            }
+            if (received != fileSize) {
+                throw new IOException("Received " + received + " of " + fileSize + " bytes");
+            }
+            completed.recordValue(System.nanoTime() - requested);
+        }
+    }
+
+    // Reads up to the blank line ending the headers; returns the status line
+    private static String readHeaders(InputStream in) throws IOException {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        int matched = 0;
+        int b;
+        while (matched < 4 && (b = in.read()) >= 0) {
+            headers.write(b);
+            matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+        }
+        String text = headers.toString(StandardCharsets.US_ASCII);
+        return text.substring(0, Math.max(0, text.indexOf('\r')));
+    }
+
+    private void report(long elapsedNanos) {
+        System.out.printf(Locale.ROOT, "completed %d, errors %d, wall time %.1f s%n",
+                completed.getTotalCount(), errors.get(), elapsedNanos / 1e9);
+        System.out.printf(Locale.ROOT, "peak concurrent streams: %d of %d clients%n", peakStreaming.get(), clients);
+        System.out.printf(Locale.ROOT, "%-12s %9s %9s %9s %9s%n", "", "p50 s", "p90 s", "p99 s", "max s");
+        for (Map.Entry<String, Histogram> entry : List.of(Map.entry("first byte", firstByte), Map.entry("complete", completed))) {
+            Histogram h = entry.getValue();
+            System.out.printf(Locale.ROOT, "%-12s %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                    h.getValueAtPercentile(50) / 1e9, h.getValueAtPercentile(90) / 1e9,
+                    h.getValueAtPercentile(99) / 1e9, h.getMaxValue() / 1e9);
+        }
+    }
+}
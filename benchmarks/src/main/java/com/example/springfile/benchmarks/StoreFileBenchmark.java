@@ -0,0 +1,76 @@
+package com.example.springfile.benchmarks;
+
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.StoredFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileStorageService#storeFile}: stage to disk while hashing, then move into the blob store.
+ * Every invocation stores distinct content (a counter is written over the first bytes), so this
+ * measures the full write path rather than the deduplication shortcut; stored files are discarded
+ * between iterations to keep the disk footprint flat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreFileBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    int size;
+
+    private BenchmarkApplication app;
+    private FileStorageService fileStorageService;
+    private byte[] content;
+    private long counter;
+    private final List<StoredFile> stored = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        app = BenchmarkApplication.start();
+        fileStorageService = app.bean(FileStorageService.class);
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+    }
+
+    @Benchmark
+    public StoredFile storeFile() {
+        ByteBuffer.wrap(content).putLong(0, counter++);
+        StoredFile storedFile = fileStorageService.storeFile(
+                new MockMultipartFile("file", "bench.bin", "application/octet-stream", content));
+        stored.add(storedFile);
+        return storedFile;
+    }
+
+    @TearDown(Level.Iteration)
+    public void discardStored() {
+        stored.forEach(fileStorageService::discardStoredFile);
+        stored.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        app.close();
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.springfile.cluster;
+
+/**
+ * An application event the {@link ClusterEventBus} can deliver to the other nodes, where it is published as
+ * an ordinary application event. Sent as JSON, so implementations should be records of plain values.
+ */
+public interface ClusterEvent {
+}
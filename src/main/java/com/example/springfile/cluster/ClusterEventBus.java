@@ -0,0 +1,208 @@
+package com.example.springfile.cluster;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.model.ClusterMessage;
+import com.example.springfile.repository.ClusterMessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers {@link ClusterEvent}s to the other nodes sharing the database, so their node-local caches and
+ * search indexes follow changes made elsewhere. Only active with {@code file.cluster.enabled=true}.
+ * <p>
+ * Events are rows of {@code cluster_message}, inserted in the publisher's transaction when there is one, so
+ * they are seen if and only if the change they describe commits. Every node polls the table every
+ * {@code file.cluster.poll-interval} for ids above the last it has seen and publishes what other nodes wrote
+ * as local application events. Ids are handed out at insert but become visible at commit, possibly out of
+ * order, so ids skipped over are looked for again on later polls until {@code file.cluster.gap-timeout}
+ * (an id of a rolled-back insert never shows up). A node starts from the newest message, as its caches
+ * start empty anyway; messages are pruned after {@code file.cluster.event-retention}.
+ */
+@Service
+public class ClusterEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterEventBus.class);
+
+    private static final int MAX_EVENTS_PER_MESSAGE = 1000;
+    private static final int POLL_BATCH_SIZE = 500;
+    // Past this many missing ids (e.g. after an identity cache jump) further gaps are not waited for
+    private static final int MAX_GAPS = 10_000;
+    private static final Duration PRUNE_INTERVAL = Duration.ofMinutes(1);
+
+    private final ClusterMessageRepository clusterMessageRepository;
+    private final ClusterNode clusterNode;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration gapTimeout;
+    private final Duration retention;
+    private final ScheduledExecutorService poller;
+
+    // Only touched by the poller thread
+    private long lastId;
+    private final Map<Long, LocalDateTime> gaps = new LinkedHashMap<>(); // Missing id -> when first missed
+    private LocalDateTime lastPrune = LocalDateTime.MIN;
+
+    @Autowired
+    public ClusterEventBus(ClusterMessageRepository clusterMessageRepository, ClusterNode clusterNode,
+                           ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+                           PlatformTransactionManager transactionManager, BackgroundThreads backgroundThreads,
+                           @Value("${file.cluster.enabled:false}") boolean enabled,
+                           @Value("${file.cluster.poll-interval:500ms}") Duration pollInterval,
+                           @Value("${file.cluster.gap-timeout:1m}") Duration gapTimeout,
+                           @Value("${file.cluster.event-retention:1h}") Duration retention) {
+        this.clusterMessageRepository = clusterMessageRepository;
+        this.clusterNode = clusterNode;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.gapTimeout = gapTimeout;
+        this.retention = retention;
+        this.poller = Executors.newSingleThreadScheduledExecutor(backgroundThreads.factory("cluster-events"));
+        if (enabled) {
+            this.lastId = clusterMessageRepository.findMaxId();
+            poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Cluster events enabled: node {} polling every {}", clusterNode.getId(), pollInterval);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends an event to the other nodes; does nothing unless clustering is enabled. Joins the caller's
+     * transaction if there is one.
+     */
+    public void publish(ClusterEvent event) {
+        publishAll(List.of(event));
+    }
+
+    /**
+     * Sends events to the other nodes, up to {@value #MAX_EVENTS_PER_MESSAGE} of a type per message.
+     */
+    public void publishAll(List<? extends ClusterEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        Map<Class<?>, List<ClusterEvent>> byType = new LinkedHashMap<>();
+        for (ClusterEvent event : events) {
+            byType.computeIfAbsent(event.getClass(), type -> new ArrayList<>()).add(event);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<ClusterMessage> messages = new ArrayList<>();
+        byType.forEach((type, ofType) -> {
+            for (int from = 0; from < ofType.size(); from += MAX_EVENTS_PER_MESSAGE) {
+                List<ClusterEvent> chunk = ofType.subList(from, Math.min(ofType.size(), from + MAX_EVENTS_PER_MESSAGE));
+                messages.add(new ClusterMessage(clusterNode.getId(), type.getName(), toJson(chunk), now));
+            }
+        });
+        clusterMessageRepository.saveAll(messages);
+    }
+
+    private String toJson(List<ClusterEvent> events) {
+        try {
+            return objectMapper.writeValueAsString(events);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize cluster events", e);
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel it
+            log.warn("Could not poll for cluster events", e);
+        }
+    }
+
+    // Only called on the poller thread (and by tests)
+    void poll() {
+        LocalDateTime now = LocalDateTime.now();
+        List<ClusterMessage> received = new ArrayList<>();
+        if (!gaps.isEmpty()) {
+            for (ClusterMessage message : clusterMessageRepository.findByIdIn(List.copyOf(gaps.keySet()))) {
+                gaps.remove(message.getId());
+                received.add(message);
+            }
+        }
+        List<ClusterMessage> batch;
+        do {
+            batch = clusterMessageRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(POLL_BATCH_SIZE));
+            for (ClusterMessage message : batch) {
+                for (long missing = lastId + 1; missing < message.getId() && gaps.size() < MAX_GAPS; missing++) {
+                    gaps.put(missing, now);
+                }
+                lastId = message.getId();
+                received.add(message);
+            }
+        } while (batch.size() == POLL_BATCH_SIZE);
+
+        for (ClusterMessage message : received) {
+            if (!message.getOrigin().equals(clusterNode.getId())) {
+                deliver(message);
+            }
+        }
+        LocalDateTime gapCutoff = now.minus(gapTimeout);
+        gaps.values().removeIf(firstMissed -> firstMissed.isBefore(gapCutoff));
+
+        if (lastPrune.isBefore(now.minus(PRUNE_INTERVAL))) {
+            lastPrune = now;
+            Integer pruned = transactionTemplate.execute(status -> clusterMessageRepository.deleteOlderThan(now.minus(retention)));
+            log.debug("Pruned {} cluster messages", pruned);
+        }
+    }
+
+    private void deliver(ClusterMessage message) {
+        List<?> events;
+        try {
+            Class<?> type = Class.forName(message.getType());
+            if (!ClusterEvent.class.isAssignableFrom(type)) {
+                log.warn("Ignoring cluster message {}: {} is not a cluster event", message.getId(), message.getType());
+                return;
+            }
+            JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, type);
+            events = objectMapper.readValue(message.getPayload(), listType);
+        } catch (ClassNotFoundException | JsonProcessingException e) {
+            // E.g. from a node running another version during a rolling upgrade
+            log.warn("Ignoring cluster message {} of type {} from {}", message.getId(), message.getType(), message.getOrigin(), e);
+            return;
+        }
+        for (Object event : events) {
+            try {
+                eventPublisher.publishEvent(event);
+            } catch (RuntimeException e) {
+                log.warn("Handling {} from {} failed", event, message.getOrigin(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.springfile.cluster;
+
+/**
+ * Thrown when renewing a lease that has expired and been taken by another node: the work it guarded
+ * must stop, since the other node is now doing it.
+ */
+public class ClusterLockLostException extends RuntimeException {
+
+    public ClusterLockLostException(String message) {
+        super(message);
+    }
+}
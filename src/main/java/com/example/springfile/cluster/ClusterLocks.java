@@ -0,0 +1,125 @@
+package com.example.springfile.cluster;
+
+import com.example.springfile.model.ClusterLock;
+import com.example.springfile.repository.ClusterLockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Leases on background work that only one of the nodes sharing the database may do at a time, such as
+ * reaping deleted files (two reapers would release the same blob references twice). A lease is a row in
+ * {@code cluster_lock} taken with a conditional UPDATE, like a processing job's claim: free, expired or
+ * already held by this node. The holder renews it while working ({@link Lock#renew}); if the node dies the
+ * lease runs out after {@code file.cluster.lock-lease} and another node takes over.
+ * <p>
+ * Leases are compared against each node's clock, so the nodes' clocks must agree to well within the lease.
+ * Leases commit in transactions of their own, whatever the caller is in. On a single node every lock is
+ * always this node's to take.
+ */
+@Service
+public class ClusterLocks {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterLocks.class);
+
+    private final ClusterLockRepository clusterLockRepository;
+    private final ClusterNode clusterNode;
+    private final TransactionTemplate newTransactionTemplate;
+    private final Duration lease;
+
+    @Autowired
+    public ClusterLocks(ClusterLockRepository clusterLockRepository, ClusterNode clusterNode,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${file.cluster.lock-lease:5m}") Duration lease) {
+        this.clusterLockRepository = clusterLockRepository;
+        this.clusterNode = clusterNode;
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.lease = lease;
+    }
+
+    /**
+     * Takes the named lock for {@code file.cluster.lock-lease}, to be renewed while the work goes on and
+     * released by closing it.
+     * @return Empty if another node holds it.
+     */
+    public Optional<Lock> tryLock(String name) {
+        if (!acquire(name, lease)) {
+            log.debug("Lock {} is held by {}", name, clusterLockRepository.findById(name).map(ClusterLock::getOwner).orElse(null));
+            return Optional.empty();
+        }
+        return Optional.of(new Lock(name));
+    }
+
+    /**
+     * Claims one run of a periodic task that should run once per interval across the cluster rather than
+     * once per node: true if no node has claimed it within the last interval (the lease is left to expire).
+     */
+    public boolean claimRun(String name, Duration interval) {
+        return acquire(name, interval);
+    }
+
+    private boolean acquire(String name, Duration duration) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer acquired = newTransactionTemplate.execute(status ->
+                clusterLockRepository.acquire(name, clusterNode.getId(), now, now.plus(duration)));
+        if (acquired != null && acquired > 0) {
+            return true;
+        }
+        if (clusterLockRepository.existsById(name)) {
+            return false;
+        }
+        try {
+            newTransactionTemplate.executeWithoutResult(status -> clusterLockRepository.insertFree(name));
+        } catch (DataIntegrityViolationException e) {
+            // Inserted concurrently
+        }
+        acquired = newTransactionTemplate.execute(status ->
+                clusterLockRepository.acquire(name, clusterNode.getId(), now, now.plus(duration)));
+        return acquired != null && acquired > 0;
+    }
+
+    /**
+     * A lease held by this node. Not thread-safe: used by the one thread doing the work it guards.
+     */
+    public final class Lock implements AutoCloseable {
+
+        private final String name;
+        private long renewedAt = System.nanoTime();
+
+        private Lock(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Extends the lease; cheap enough to call per item, as it only goes to the database once a third
+         * of the lease has passed.
+         * @throws ClusterLockLostException if the lease ran out and another node took it.
+         */
+        public void renew() {
+            long now = System.nanoTime();
+            if (now - renewedAt < lease.toNanos() / 3) {
+                return;
+            }
+            if (!acquire(name, lease)) {
+                throw new ClusterLockLostException("Lock " + name + " was taken over by another node");
+            }
+            renewedAt = now;
+        }
+
+        @Override
+        public void close() {
+            newTransactionTemplate.executeWithoutResult(status -> clusterLockRepository.release(name, clusterNode.getId()));
+        }
+    }
+}
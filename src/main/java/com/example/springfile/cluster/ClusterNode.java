@@ -0,0 +1,46 @@
+package com.example.springfile.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+/**
+ * This instance's identity among the nodes sharing the database: it owns the {@link ClusterLocks} leases
+ * the node holds, the messages it publishes on the {@link ClusterEventBus} and the files it marks deleted.
+ */
+@Component
+public class ClusterNode {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterNode.class);
+
+    private final String id;
+
+    @Autowired
+    public ClusterNode(@Value("${file.cluster.node-id:}") String nodeId) {
+        this.id = StringUtils.hasText(nodeId) ? nodeId : defaultId();
+        log.info("Cluster node id: {}", id);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    // Host name plus a random suffix: unique for two instances on one host too, and new on every start, so a
+    // restarted node never takes a lease its previous run still held for its own
+    private static String defaultId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
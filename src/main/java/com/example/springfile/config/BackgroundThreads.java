@@ -0,0 +1,64 @@
+package com.example.springfile.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the application's own background threads (processing workers, batch storage, search
+ * indexing, S3 part uploads, storage migration). With {@code spring.threads.virtual.enabled=true} on
+ * Java 21 they are virtual threads, like Tomcat's request threads in that mode; otherwise daemon
+ * platform threads. Pools keep their configured sizes either way, since those bound disk and
+ * database concurrency rather than thread cost.
+ */
+@Component
+public class BackgroundThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(BackgroundThreads.class);
+
+    private final boolean virtual;
+
+    @Autowired
+    public BackgroundThreads(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+        if (virtual) {
+            log.info("Request handling and background work run on virtual threads");
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @param prefix Thread names are the prefix followed by a sequence number.
+     */
+    public ThreadFactory factory(String prefix) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(prefix + "-").getVirtualThreadFactory();
+        }
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts a one-off background thread.
+     */
+    public Thread start(String name, Runnable task) {
+        Thread thread = factory(name).newThread(task);
+        thread.setName(name);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.springfile.config;
+
+import com.example.springfile.storage.FlatStorageLayout;
+import com.example.springfile.storage.HashPrefixStorageLayout;
+import com.example.springfile.storage.InMemoryStorageBackend;
+import com.example.springfile.storage.LocalStorageBackend;
+import com.example.springfile.storage.S3StorageBackend;
+import com.example.springfile.storage.StorageBackend;
+import com.example.springfile.storage.StorageLayout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Configuration
+public class StorageConfig {
+
+    private static final Pattern HASH_PREFIX = Pattern.compile("hash-prefix\\((\\d+)x(\\d+)\\)");
+
+    /**
+     * Directory layout of the blob store: {@code hash-prefix} (default) or {@code flat}.
+     */
+    @Bean
+    public StorageLayout storageLayout(@Value("${file.storage.layout:hash-prefix}") String layout,
+                                       @Value("${file.storage.layout.depth:2}") int depth,
+                                       @Value("${file.storage.layout.width:2}") int width) {
+        switch (layout) {
+            case "flat":
+                return new FlatStorageLayout();
+            case "hash-prefix":
+                return new HashPrefixStorageLayout(depth, width);
+            default:
+                throw new IllegalArgumentException("Unknown file.storage.layout: " + layout);
+        }
+    }
+
+    /**
+     * Where blob content lives: {@code local} (default, {@code <upload-dir>/blobs}), {@code memory} or {@code s3}.
+     * A local store also looks for objects where {@code file.storage.layout.previous} would put them, e.g.
+     * {@code hash-prefix(1x3),flat}, until the layout migration has moved them.
+     */
+    @Bean
+    public StorageBackend storageBackend(@Value("${file.storage.backend:local}") String backend,
+                                         @Value("${file.upload-dir}") String uploadDir,
+                                         @Value("${file.storage.layout.previous:hash-prefix(2x2),flat}") List<String> previousLayouts,
+                                         StorageLayout storageLayout, Environment environment,
+                                         BackgroundThreads backgroundThreads) throws IOException {
+        switch (backend) {
+            case "local":
+                return new LocalStorageBackend(Paths.get(uploadDir).resolve("blobs"), storageLayout,
+                        previousLayouts.stream().map(StorageConfig::parseLayout).toList());
+            case "memory":
+                return new InMemoryStorageBackend();
+            case "s3":
+                return s3StorageBackend(environment, backgroundThreads);
+            default:
+                throw new IllegalArgumentException("Unknown file.storage.backend: " + backend);
+        }
+    }
+
+    // A layout as StorageLayout#describe prints it: flat or hash-prefix(<depth>x<width>)
+    private static StorageLayout parseLayout(String spec) {
+        String trimmed = spec.trim();
+        if (trimmed.equals("flat")) {
+            return new FlatStorageLayout();
+        }
+        Matcher hashPrefix = HASH_PREFIX.matcher(trimmed);
+        if (hashPrefix.matches()) {
+            return new HashPrefixStorageLayout(Integer.parseInt(hashPrefix.group(1)), Integer.parseInt(hashPrefix.group(2)));
+        }
+        throw new IllegalArgumentException("Unknown file.storage.layout.previous entry: " + spec);
+    }
+
+    private static S3StorageBackend s3StorageBackend(Environment env, BackgroundThreads backgroundThreads) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(env.getProperty("file.storage.s3.region", "us-east-1")))
+                // MinIO and most other S3 stand-ins only support path-style bucket addressing
+                .forcePathStyle(env.getProperty("file.storage.s3.path-style", Boolean.class, false));
+        String endpoint = env.getProperty("file.storage.s3.endpoint");
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        String accessKey = env.getProperty("file.storage.s3.access-key");
+        if (StringUtils.hasText(accessKey)) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(accessKey, env.getProperty("file.storage.s3.secret-key", ""))));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+
+        int uploadThreads = env.getProperty("file.storage.s3.upload-threads", Integer.class, 8);
+        ExecutorService partExecutor = Executors.newFixedThreadPool(uploadThreads, backgroundThreads.factory("s3-part-upload"));
+        return new S3StorageBackend(builder.build(),
+                env.getRequiredProperty("file.storage.s3.bucket"),
+                env.getProperty("file.storage.s3.prefix", ""),
+                env.getProperty("file.storage.s3.part-size", DataSize.class, DataSize.ofMegabytes(16)).toBytes(),
+                env.getProperty("file.storage.s3.part-concurrency", Integer.class, 4),
+                partExecutor);
+    }
+}
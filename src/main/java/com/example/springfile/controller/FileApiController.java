@@ -0,0 +1,227 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.dto.BatchUploadResultDto;
+import com.example.springfile.dto.FileSelection;
+import com.example.springfile.dto.FileListFilter;
+import com.example.springfile.dto.FilePage;
+import com.example.springfile.dto.UploadResultDto;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.service.ArchiveService;
+import com.example.springfile.service.BatchUploadService;
+import com.example.springfile.service.FileQueryService;
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.QuotaExceededException;
+import com.example.springfile.service.StorageUsageService;
+import com.example.springfile.service.StoredFile;
+import com.example.springfile.service.UploadTooLargeException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON API for programmatic clients. Shares the read/write services with the Thymeleaf page.
+ */
+@RestController
+@RequestMapping("/api/files")
+public class FileApiController {
+
+    private static final Logger log = LoggerFactory.getLogger(FileApiController.class);
+
+    // Collects the zip writer's many small writes into fewer, larger ones to the connection
+    private static final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+
+    private final FileQueryService fileQueryService;
+    private final FileStorageService fileStorageService;
+    private final BatchUploadService batchUploadService;
+    private final ArchiveService archiveService;
+    private final StorageUsageService storageUsageService;
+    private final DataSize maxStreamUploadSize;
+
+    @Autowired
+    public FileApiController(FileQueryService fileQueryService,
+                             FileStorageService fileStorageService,
+                             BatchUploadService batchUploadService,
+                             ArchiveService archiveService,
+                             StorageUsageService storageUsageService,
+                             @Value("${file.stream-upload.max-size}") DataSize maxStreamUploadSize) {
+        this.fileQueryService = fileQueryService;
+        this.fileStorageService = fileStorageService;
+        this.batchUploadService = batchUploadService;
+        this.archiveService = archiveService;
+        this.storageUsageService = storageUsageService;
+        this.maxStreamUploadSize = maxStreamUploadSize;
+    }
+
+    // Keyset-paginated listing; pass the returned nextCursor back as cursor to get the next page
+    @GetMapping
+    public FilePage listFiles(@RequestParam(name = "cursor", required = false) String cursor,
+                              @RequestParam(name = "size", defaultValue = "" + FileQueryService.DEFAULT_PAGE_SIZE) int size,
+                              @RequestParam(name = "categoryId", required = false) Long categoryId,
+                              @RequestParam(name = "subCategoryId", required = false) Long subCategoryId,
+                              @RequestParam(name = "label", required = false) String label,
+                              @RequestParam(name = "contentType", required = false) String contentType) {
+        return fileQueryService.listFiles(new FileListFilter(categoryId, subCategoryId, label, contentType), cursor, size);
+    }
+
+    /**
+     * Bulk delete of the files matching every criterion given (at least one is required):
+     * {@code ids}, {@code categoryId}, {@code subCategoryId}, {@code label}, {@code contentType} and
+     * {@code uploadedBefore} (ISO date-time). The files disappear at once; their content is removed in the background.
+     */
+    @DeleteMapping
+    public Map<String, Integer> deleteFiles(@RequestParam(name = "ids", required = false) List<Long> ids,
+                                            @RequestParam(name = "categoryId", required = false) Long categoryId,
+                                            @RequestParam(name = "subCategoryId", required = false) Long subCategoryId,
+                                            @RequestParam(name = "label", required = false) String label,
+                                            @RequestParam(name = "contentType", required = false) String contentType,
+                                            @RequestParam(name = "uploadedBefore", required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime uploadedBefore) {
+        int deleted = fileStorageService.deleteFiles(new FileSelection(ids, categoryId, subCategoryId, label, contentType, uploadedBefore));
+        log.info("Bulk-deleted {} files", deleted);
+        return Map.of("deleted", deleted);
+    }
+
+    /**
+     * Download of the files matching every criterion given (the same as for the bulk delete) as one zip
+     * archive, built while it is sent (see ArchiveService). Answers 404 when nothing matches.
+     */
+    @GetMapping(path = "/archive", produces = "application/zip")
+    public void downloadArchive(@RequestParam(name = "ids", required = false) List<Long> ids,
+                                @RequestParam(name = "categoryId", required = false) Long categoryId,
+                                @RequestParam(name = "subCategoryId", required = false) Long subCategoryId,
+                                @RequestParam(name = "label", required = false) String label,
+                                @RequestParam(name = "contentType", required = false) String contentType,
+                                @RequestParam(name = "uploadedBefore", required = false)
+                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime uploadedBefore,
+                                HttpServletResponse response) throws IOException {
+        FileSelection selection = new FileSelection(ids, categoryId, subCategoryId, label, contentType, uploadedBefore);
+        long count = archiveService.checkSelection(selection);
+        // Streamed with no length known in advance, so the response is chunked
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("files.zip").build().toString());
+        try (OutputStream out = new BufferedOutputStream(response.getOutputStream(), ARCHIVE_BUFFER_SIZE)) {
+            int added = archiveService.writeZip(selection, out);
+            log.info("Sent an archive of {} of {} files selected", added, count);
+        }
+    }
+
+    /**
+     * Streaming upload: the request body is the raw file content, piped straight into storage.
+     * Unlike /upload this never goes through the multipart resolver, so the bytes are written to disk
+     * once and the heap footprint does not grow with the file size. The body's Content-Type is
+     * recorded as the file's content type; metadata travels as query parameters.
+     */
+    @PostMapping(path = "/stream", consumes = {"!" + MediaType.MULTIPART_FORM_DATA_VALUE, "!" + MediaType.APPLICATION_FORM_URLENCODED_VALUE})
+    public ResponseEntity<UploadResultDto> streamUpload(@RequestParam("filename") String filename,
+                                                        @RequestParam(name = "labels", required = false) String labelsString,
+                                                        @RequestParam("category") String categoryValue,
+                                                        @RequestParam(name = "newCategory", required = false) String newCategoryName,
+                                                        @RequestParam(name = "subCategory", required = false) String subCategoryValue,
+                                                        @RequestParam(name = "newSubCategory", required = false) String newSubCategoryName,
+                                                        HttpServletRequest request) throws IOException {
+        long maxBytes = maxStreamUploadSize.toBytes();
+        if (request.getContentLengthLong() > maxBytes) {
+            // Declared length is already too big: refuse before reading a single byte
+            throw new UploadTooLargeException("Upload exceeds the limit of " + maxBytes + " bytes");
+        }
+        // Likewise for the quota; without a declared length it is checked once the size is known
+        storageUsageService.checkQuota(categoryValue, request.getContentLengthLong());
+        String contentType = StringUtils.hasText(request.getContentType()) ? request.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        String originalFilename = StringUtils.cleanPath(filename);
+
+        StoredFile storedFile = fileStorageService.storeStream(request.getInputStream(), originalFilename, maxBytes);
+        FileInfo fileInfo;
+        try {
+            fileInfo = fileStorageService.saveFileMetadata(originalFilename, storedFile, contentType,
+                    FileStorageService.parseLabels(labelsString),
+                    categoryValue, newCategoryName, subCategoryValue, newSubCategoryName);
+        } catch (RuntimeException e) {
+            // Don't leave an unreferenced file behind when the metadata is rejected
+            fileStorageService.discardStoredFile(storedFile);
+            throw e;
+        }
+        log.info("Stream-uploaded {} ({} bytes) as {}", originalFilename, storedFile.getSize(), storedFile.getStoragePath());
+        return ResponseEntity.status(HttpStatus.CREATED).body(UploadResultDto.of(fileInfo));
+    }
+
+    /**
+     * Batch upload of many files as parts of one multipart request (all parts named {@code files}).
+     * Every file gets the same category, sub-category and labels.
+     * Answers 201 when everything was stored, 207 with the failures listed otherwise.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BatchUploadResultDto> batchUpload(@RequestParam("files") List<MultipartFile> files,
+                                                            @RequestParam(name = "labels", required = false) String labelsString,
+                                                            @RequestParam("category") String categoryValue,
+                                                            @RequestParam(name = "newCategory", required = false) String newCategoryName,
+                                                            @RequestParam(name = "subCategory", required = false) String subCategoryValue,
+                                                            @RequestParam(name = "newSubCategory", required = false) String newSubCategoryName) {
+        return batchResponse(batchUploadService.uploadFiles(files, labelsString,
+                categoryValue, newCategoryName, subCategoryValue, newSubCategoryName));
+    }
+
+    /**
+     * Batch upload of a zip archive sent as the raw request body. The archive is read as a stream, never
+     * buffered whole; each entry becomes one file (directories inside the archive are ignored) and may be
+     * at most {@code file.stream-upload.max-size}. Metadata travels as query parameters.
+     */
+    @PostMapping(path = "/batch", consumes = {"application/zip", "application/x-zip-compressed"})
+    public ResponseEntity<BatchUploadResultDto> batchUploadZip(@RequestParam(name = "labels", required = false) String labelsString,
+                                                               @RequestParam("category") String categoryValue,
+                                                               @RequestParam(name = "newCategory", required = false) String newCategoryName,
+                                                               @RequestParam(name = "subCategory", required = false) String subCategoryValue,
+                                                               @RequestParam(name = "newSubCategory", required = false) String newSubCategoryName,
+                                                               HttpServletRequest request) throws IOException {
+        return batchResponse(batchUploadService.uploadZip(request.getInputStream(), maxStreamUploadSize.toBytes(), labelsString,
+                categoryValue, newCategoryName, subCategoryValue, newSubCategoryName));
+    }
+
+    private static ResponseEntity<BatchUploadResultDto> batchResponse(BatchUploadResultDto result) {
+        HttpStatus status = result.getFailed().isEmpty() ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    @ExceptionHandler(UploadTooLargeException.class)
+    public ResponseEntity<Map<String, String>> handleTooLarge(UploadTooLargeException e) {
+        log.warn("Rejected oversized upload: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Map<String, String>> handleQuotaExceeded(QuotaExceededException e) {
+        log.warn("Rejected upload over quota: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        log.warn("Rejected API request: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+}
@@ -1,17 +1,20 @@
 package com.example.springfile.controller; // Updated package declaration
 
-import com.example.springfile.model.Category; // Added import
+import com.example.springfile.metrics.FileMetrics;
 import com.example.springfile.model.FileInfo;
-import com.example.springfile.model.SubCategory; // Added import
-import com.example.springfile.repository.CategoryRepository; // Added import
 import com.example.springfile.repository.FileInfoRepository;
-import com.example.springfile.repository.SubCategoryRepository; // Added import
+import com.example.springfile.service.FileQueryService;
 import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.HotFileCache;
+import com.example.springfile.service.PreviewService;
+import com.example.springfile.service.StorageUsageService;
+import com.example.springfile.service.StoredFile;
+import com.example.springfile.service.StoredFileNotFoundException;
+import com.example.springfile.service.TaxonomyCache;
+import com.example.springfile.web.DownloadResponseWriter;
+import com.example.springfile.storage.TransferSource;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-// Using Jackson for robust JSON conversion
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ContentDisposition; // Added import
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -23,24 +26,26 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.net.URLEncoder; // Added import
 import java.nio.charset.StandardCharsets; // Added import
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap; // Added import for HashMap
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.List;
-import java.util.Map; // Added import for Map
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger; // Added import for Logger
 import org.slf4j.LoggerFactory; // Added import for LoggerFactory
-import com.example.springfile.dto.CategoryDto; // Added import for external DTO
-import com.example.springfile.dto.SubCategoryDto; // Added import for external DTO
+import com.example.springfile.dto.FileListFilter;
+import com.example.springfile.dto.FilePage;
+import com.example.springfile.dto.FileSummaryDto;
 
 @Controller
 public class FileUploadController {
@@ -49,108 +54,77 @@ public class FileUploadController {
 
     private static final Logger log = LoggerFactory.getLogger(FileUploadController.class); // Added logger
 
+    private static final int LISTING_LOG_SAMPLE_RATE = 100; // Log one listing request in this many
+
     private final FileStorageService fileStorageService;
+    private final FileQueryService fileQueryService;
     private final FileInfoRepository fileInfoRepository;
-    private final CategoryRepository categoryRepository; // Added repository
-    private final SubCategoryRepository subCategoryRepository; // Added repository
-    private final ObjectMapper objectMapper; // Jackson ObjectMapper for JSON
+    private final TaxonomyCache taxonomyCache;
+    private final HotFileCache hotFileCache;
+    private final PreviewService previewService;
+    private final StorageUsageService storageUsageService;
+    private final DownloadResponseWriter downloadResponseWriter;
+    private final FileMetrics fileMetrics;
+    private final AtomicLong listingRequests = new AtomicLong();
 
     @Autowired
     public FileUploadController(FileStorageService fileStorageService,
+                                FileQueryService fileQueryService,
                                 FileInfoRepository fileInfoRepository,
-                                CategoryRepository categoryRepository, // Added repository
-                                SubCategoryRepository subCategoryRepository, // Added repository
-                                ObjectMapper objectMapper) { // Inject ObjectMapper
+                                TaxonomyCache taxonomyCache,
+                                HotFileCache hotFileCache,
+                                PreviewService previewService,
+                                StorageUsageService storageUsageService,
+                                DownloadResponseWriter downloadResponseWriter,
+                                FileMetrics fileMetrics) {
         this.fileStorageService = fileStorageService;
+        this.fileQueryService = fileQueryService;
         this.fileInfoRepository = fileInfoRepository;
-        this.categoryRepository = categoryRepository; // Added repository
-        this.subCategoryRepository = subCategoryRepository; // Added repository
-        this.objectMapper = objectMapper; // Assign ObjectMapper
+        this.taxonomyCache = taxonomyCache;
+        this.hotFileCache = hotFileCache;
+        this.previewService = previewService;
+        this.storageUsageService = storageUsageService;
+        this.downloadResponseWriter = downloadResponseWriter;
+        this.fileMetrics = fileMetrics;
     }
 
     @GetMapping("/")
-    public String listUploadedFiles(Model model) {
-        List<FileInfo> fileInfos = fileInfoRepository.findAll();
-        log.info("Fetched {} FileInfo records.", fileInfos.size()); // Log file info count
-
-        List<Category> categories = categoryRepository.findAll(); // Fetch all categories
-        log.info("Fetched {} Category records.", categories.size()); // Log category count
-        if (!categories.isEmpty()) {
-            log.info("Categories fetched: {}", categories.stream().map(Category::getName).collect(Collectors.toList())); // Log category names
-        }
-
-        // Fetch all subcategories - consider performance for large datasets
-        List<SubCategory> subCategories = subCategoryRepository.findAll();
-        log.info("Fetched {} SubCategory records.", subCategories.size()); // Log subcategory count
-
-        // --- Added Logging for Orphaned Subcategories ---
-        for (SubCategory sc : subCategories) {
-            if (sc.getCategory() == null || sc.getCategory().getId() == null) {
-                log.warn("SubCategory found with missing Category association: ID={}, Name='{}'", sc.getId(), sc.getName());
-            }
+    public String listUploadedFiles(@RequestParam(name = "cursor", required = false) String cursor,
+                                    @RequestParam(name = "size", defaultValue = "" + FileQueryService.DEFAULT_PAGE_SIZE) int size,
+                                    @RequestParam(name = "categoryId", required = false) Long categoryId,
+                                    @RequestParam(name = "subCategoryId", required = false) Long subCategoryId,
+                                    @RequestParam(name = "label", required = false) String label,
+                                    @RequestParam(name = "contentType", required = false) String contentType,
+                                    Model model) {
+        FileListFilter filter = new FileListFilter(categoryId, subCategoryId, label, contentType);
+        FilePage page;
+        try {
+            page = fileQueryService.listFiles(filter, cursor, size);
+        } catch (IllegalArgumentException e) {
+            // A stale or hand-edited cursor just restarts the listing from the first page
+            log.warn("Ignoring invalid listing cursor: {}", cursor);
+            page = fileQueryService.listFiles(filter, null, size);
         }
-        // ------------------------------------------------
-
-        // Subcategory grouping will be handled in JavaScript
-
-        Map<Long, String> fileExtensions = new HashMap<>();
-
-        for (FileInfo fileInfo : fileInfos) {
-            String filename = fileInfo.getFilename();
-            String extension = "N/A";
-            if (filename != null && !filename.isEmpty() && filename.contains(".")) {
-                extension = filename.substring(filename.lastIndexOf(".") + 1);
-            }
-            // Use fileInfo.getId() which should be non-null for persisted entities
-            if (fileInfo.getId() != null) {
-                 fileExtensions.put(fileInfo.getId(), extension);
-            } else {
-                // Log a warning if ID is null, though this shouldn't happen for findAll() results
-                log.warn("FileInfo found with null ID: {}", fileInfo);
-            }
+        List<FileSummaryDto> fileInfos = page.getItems();
+        // Sampled: the listing is the busiest page and one line per view drowns everything else
+        if (log.isDebugEnabled() && listingRequests.getAndIncrement() % LISTING_LOG_SAMPLE_RATE == 0) {
+            log.debug("Listing page: {} files (cursor: {}, category {}, subcategory {}, label {}, content type {})",
+                    fileInfos.size(), cursor != null, categoryId, subCategoryId, label, contentType);
         }
 
         model.addAttribute("files", fileInfos);
-        model.addAttribute("fileExtensions", fileExtensions);
-        // model.addAttribute("categories", categories); // Remove this line - use JSON DTOs instead
-
-        // Map entities to DTOs before serialization
-        List<CategoryDto> categoryDtos = categories.stream()
-                .map(cat -> new CategoryDto(cat.getId(), cat.getName()))
-                .collect(Collectors.toList());
-
-        List<SubCategoryDto> subCategoryDtos = subCategories.stream()
-                // Ensure category and its ID are not null before creating DTO
-                .filter(sc -> sc.getCategory() != null && sc.getCategory().getId() != null)
-                .map(sc -> new SubCategoryDto(sc.getId(), sc.getName(), sc.getCategory().getId()))
-                .collect(Collectors.toList());
-
-        // Pass DTO lists as JSON strings for client-side handling
-        String categoriesJson = convertListToJson(categoryDtos, "categories");
-        String subCategoriesJson = convertListToJson(subCategoryDtos, "subCategories");
-        model.addAttribute("categoriesJson", categoriesJson);
-        model.addAttribute("subCategoriesJson", subCategoriesJson);
-        log.info("Passing categoriesJson (DTOs) to template: {}", categoriesJson);
-        log.info("Passing subCategoriesJson (DTOs) to template: {}", subCategoriesJson);
-
+        model.addAttribute("nextCursor", page.getNextCursor());
+        model.addAttribute("filter", filter);
+        model.addAttribute("pageSize", size);
+        model.addAttribute("previewTypes", PreviewService.SUPPORTED_TYPES);
+        // Category/subcategory lists for client-side handling, pre-rendered as JSON by the taxonomy cache
+        TaxonomyCache.Snapshot taxonomy = taxonomyCache.snapshot();
+        model.addAttribute("categoriesJson", taxonomy.categoriesJson());
+        model.addAttribute("subCategoriesJson", taxonomy.subCategoriesJson());
 
         return "index";
     }
 
-    // Generic helper method to convert List to JSON String using Jackson
-    private String convertListToJson(List<?> list, String listName) {
-        try {
-            // Important: Need to handle potential circular references (e.g., SubCategory -> Category -> SubCategories)
-            // This might require @JsonIgnore or custom serializers on the model classes.
-            // Let's assume for now Jackson handles it or we'll address it if an error occurs.
-            return objectMapper.writeValueAsString(list);
-        } catch (JsonProcessingException e) {
-            log.error("Error converting {} list to JSON", listName, e);
-            return "[]"; // Return empty JSON array on error
-        }
-    }
-
-
     @PostMapping("/upload")
     public String handleFileUpload(@RequestParam("file") MultipartFile file,
                                    @RequestParam("labels") String labelsString,
@@ -175,52 +149,34 @@ public class FileUploadController {
                 contentType = "application/octet-stream"; // Or try to guess based on extension if needed
             }
 
-            // 1. Store the physical file
-            String storedFilename = fileStorageService.storeFile(file);
+            // 1. Store the physical file, unless it can't fit in the category's quota anyway
+            storageUsageService.checkQuota(categoryValue, file.getSize());
+            StoredFile storedFile = fileStorageService.storeFile(file);
 
             // 2. Prepare labels
-            List<String> labels = Collections.emptyList();
-            if (StringUtils.hasText(labelsString)) {
-                labels = Arrays.stream(labelsString.split(","))
-                               .map(String::trim)
-                               .filter(StringUtils::hasText)
-                               .collect(Collectors.toList());
-            }
+            List<String> labels = FileStorageService.parseLabels(labelsString);
 
             // 3. Save metadata (including category/subcategory handling)
-            fileStorageService.saveFileMetadata(
-                    originalFilename,
-                    storedFilename,
-                    contentType,
-                    labels,
-                    categoryValue,      // Pass the value (ID or "new")
-                    newCategoryName,    // Pass the potential new name
-                    subCategoryValue,   // Pass the value (ID or "new")
-                    newSubCategoryName  // Pass the potential new name
-            );
-
-            // Fetch the saved FileInfo to get actual category/subcategory names (This part remains correct)
-            Optional<FileInfo> savedFileInfoOpt = fileInfoRepository.findByStoragePath(storedFilename);
-            String finalCategoryName = "N/A";
-            String finalSubCategoryName = "N/A";
-
-            if (savedFileInfoOpt.isPresent()) {
-                FileInfo savedFileInfo = savedFileInfoOpt.get();
-                if (savedFileInfo.getCategory() != null) {
-                    finalCategoryName = savedFileInfo.getCategory().getName();
-                }
-                if (savedFileInfo.getSubCategory() != null) {
-                    finalSubCategoryName = savedFileInfo.getSubCategory().getName();
-                }
-            } else {
-                log.warn("Could not find saved FileInfo immediately after saving for storedFilename: {}", storedFilename);
-                // Fallback logic (less likely needed now, but keep for safety)
-                // If fetch fails, we don't have the final names easily available here anymore.
-                // The message might be less informative in this rare failure case.
-                log.warn("Could not retrieve saved FileInfo, success message might be incomplete.");
-                finalCategoryName = "[Category Info Unavailable]";
-                finalSubCategoryName = "[SubCategory Info Unavailable]";
+            FileInfo savedFileInfo;
+            try {
+                savedFileInfo = fileStorageService.saveFileMetadata(
+                        originalFilename,
+                        storedFile,
+                        contentType,
+                        labels,
+                        categoryValue,      // Pass the value (ID or "new")
+                        newCategoryName,    // Pass the potential new name
+                        subCategoryValue,   // Pass the value (ID or "new")
+                        newSubCategoryName  // Pass the potential new name
+                );
+            } catch (RuntimeException e) {
+                fileStorageService.discardStoredFile(storedFile); // Give back the stored content reference
+                throw e;
             }
+
+            // The saved entity already carries the resolved category/subcategory, no need to read it back
+            String finalCategoryName = savedFileInfo.getCategory() != null ? savedFileInfo.getCategory().getName() : "N/A";
+            String finalSubCategoryName = savedFileInfo.getSubCategory() != null ? savedFileInfo.getSubCategory().getName() : "N/A";
             // Construct the success message using the retrieved names
             String successMessage = String.format(
                 "You successfully uploaded '%s' with Category: %s, SubCategory: %s, Labels: %s",
@@ -241,20 +197,51 @@ public class FileUploadController {
         return "redirect:/";
     }
 
-    // Endpoint for downloading files
+    // Endpoint for downloading files (supports Range, conditional GET and sendfile, see DownloadResponseWriter)
     @GetMapping("/files/{storedFilename:.+}") // Use .+ to capture filenames with dots
-    @ResponseBody
-    public ResponseEntity<Resource> serveFile(@PathVariable String storedFilename, HttpServletRequest request) { // HttpServletRequest might not be needed anymore
-        Resource resource = fileStorageService.loadFileAsResource(storedFilename);
-
-        // Find the FileInfo from the database efficiently
-        Optional<FileInfo> fileInfoOpt = fileInfoRepository.findByStoragePath(storedFilename);
+    public void serveFile(@PathVariable String storedFilename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long started = System.nanoTime();
+        // The FileInfo, and for small files the content too, usually comes from memory (see HotFileCache)
+        Optional<HotFileCache.Entry> cached = hotFileCache.get(storedFilename);
+        Optional<FileInfo> fileInfoOpt = cached.map(HotFileCache.Entry::fileInfo);
+        // Content stored compressed is sent as it is to clients that accept its coding, decompressed for the rest
+        String storedEncoding = fileInfoOpt.map(FileInfo::getContentEncoding).orElse(null);
+        String contentEncoding = storedEncoding != null
+                && DownloadResponseWriter.acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), storedEncoding)
+                ? storedEncoding : null;
+        // Cached bytes are the stored ones, so they only serve clients that get the stored encoding
+        Optional<TransferSource> inMemory = cached.flatMap(HotFileCache.Entry::storedContent)
+                .filter(content -> storedEncoding == null || contentEncoding != null);
+        TransferSource source;
+        if (fileInfoOpt.isEmpty()) {
+            source = fileStorageService.openForTransfer(storedFilename);
+        } else if (inMemory.isPresent()) {
+            source = inMemory.get();
+        } else if (contentEncoding != null) {
+            source = fileStorageService.openEncoded(fileInfoOpt.get());
+        } else {
+            source = fileStorageService.openForTransfer(fileInfoOpt.get());
+        }
+        long length = source.length();
+        if (storedEncoding != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            fileMetrics.recordEncodedDownload(contentEncoding == null);
+        }
 
         // Determine filename and content type from stored FileInfo
         String downloadFilename = fileInfoOpt.map(FileInfo::getFilename).orElse(storedFilename); // Fallback to stored name if not found
         String contentType = fileInfoOpt.map(FileInfo::getContentType).orElse("application/octet-stream"); // Use stored type, fallback if missing
 
-
+        // Stored content never changes, so the content hash is a strong validator. Files stored before
+        // hashes were recorded fall back to a weak tag built from size and modification time.
+        Instant lastModified = fileInfoOpt.map(FileInfo::getUploadTime)
+                .map(uploadTime -> uploadTime.atZone(ZoneId.systemDefault()).toInstant())
+                .or(source::lastModified)
+                .orElse(null);
+        // Each representation needs its own strong tag
+        String etag = fileInfoOpt.map(FileInfo::getSha256)
+                .map(sha256 -> "\"" + sha256 + (contentEncoding != null ? "-" + contentEncoding : "") + "\"")
+                .orElse("W/\"" + length + "-" + (lastModified != null ? lastModified.toEpochMilli() : 0) + "\"");
 
         // Manually encode filename using UTF-8 for broader compatibility
         String encodedFilename = URLEncoder.encode(downloadFilename, StandardCharsets.UTF_8).replace("+", "%20");
@@ -271,11 +258,34 @@ public class FileUploadController {
         //         .filename(downloadFilename, StandardCharsets.UTF_8)
         //         .build();
 
+        long bytesSent = downloadResponseWriter.write(new DownloadResponseWriter.Download(
+                source,
+                MediaType.parseMediaType(contentType).toString(),
+                contentDisposition.toString(),
+                etag,
+                lastModified,
+                contentEncoding), request, response);
+        fileMetrics.recordDownload(System.nanoTime() - started, bytesSent);
+    }
 
+    // Preview of an image or the first page of a PDF (see PreviewService). It depends only on the content,
+    // so browsers may keep it for a year; revalidations are answered from the tag without touching storage
+    @GetMapping("/files/{storedFilename:.+}/preview")
+    public ResponseEntity<byte[]> servePreview(@PathVariable String storedFilename, WebRequest request) throws IOException {
+        FileInfo fileInfo = hotFileCache.get(storedFilename).map(HotFileCache.Entry::fileInfo)
+                .filter(previewService::supports)
+                .orElseThrow(() -> new StoredFileNotFoundException("No preview for " + storedFilename));
+        String etag = "\"" + previewService.storageKey(fileInfo) + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        PreviewService.Preview preview = previewService.get(fileInfo)
+                .orElseThrow(() -> new StoredFileNotFoundException("No preview for " + storedFilename));
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString())
-                .body(resource);
+                .contentType(MediaType.parseMediaType(PreviewService.CONTENT_TYPE))
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable())
+                .eTag(etag)
+                .body(preview.content());
     }
 
     // Endpoint for deleting files using storedFilename
@@ -284,12 +294,14 @@ public class FileUploadController {
         Optional<FileInfo> fileInfoOpt = fileInfoRepository.findByStoragePath(storedFilename); // Find by storage path
         if (fileInfoOpt.isPresent()) {
             FileInfo fileInfo = fileInfoOpt.get();
+            long started = System.nanoTime();
             try {
-                fileStorageService.deleteFile(fileInfo.getStoragePath()); // Delete physical file using the path from FileInfo
-                fileInfoRepository.delete(fileInfo); // Delete database record using the entity
+                fileStorageService.deleteFile(fileInfo); // Marks the row deleted; the StorageReaper removes it and its content
+                fileMetrics.recordDelete(System.nanoTime() - started, true);
                 redirectAttributes.addFlashAttribute("message", "Successfully deleted file: " + fileInfo.getFilename());
                 log.info("Deleted file: {} (Stored: {})", fileInfo.getFilename(), storedFilename); // Log deletion
             } catch (Exception e) {
+                fileMetrics.recordDelete(System.nanoTime() - started, false);
                 redirectAttributes.addFlashAttribute("message", "Could not delete file: " + fileInfo.getFilename() + ". Error: " + e.getMessage());
                 log.error("Error deleting file: {} (Stored: {})", fileInfo.getFilename(), storedFilename, e); // Log error
             }
@@ -0,0 +1,43 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.service.IntegrityScrubber;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Results and manual runs of the storage integrity scrubber.
+ */
+@RestController
+@RequestMapping("/api/integrity")
+public class IntegrityApiController {
+
+    private final IntegrityScrubber integrityScrubber;
+
+    @Autowired
+    public IntegrityApiController(IntegrityScrubber integrityScrubber) {
+        this.integrityScrubber = integrityScrubber;
+    }
+
+    // The last finished pass; 204 if none has run since startup
+    @GetMapping("/report")
+    public ResponseEntity<IntegrityScrubber.Report> report() {
+        return integrityScrubber.getLastReport()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @PostMapping("/scrub")
+    public ResponseEntity<Map<String, Boolean>> scrub() {
+        if (!integrityScrubber.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("running", true));
+        }
+        return ResponseEntity.accepted().body(Map.of("running", true));
+    }
+}
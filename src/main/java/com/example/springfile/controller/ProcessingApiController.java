@@ -0,0 +1,36 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.processing.ProcessingPipeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Monitoring and manual control of the post-upload processing pipeline.
+ */
+@RestController
+@RequestMapping("/api/processing")
+public class ProcessingApiController {
+
+    private final ProcessingPipeline processingPipeline;
+
+    @Autowired
+    public ProcessingApiController(ProcessingPipeline processingPipeline) {
+        this.processingPipeline = processingPipeline;
+    }
+
+    // Per-stage throughput and timings since startup, plus the outstanding queue
+    @GetMapping("/stats")
+    public ProcessingPipeline.Stats stats() {
+        return processingPipeline.getStats();
+    }
+
+    @PostMapping("/retry-failed")
+    public Map<String, Integer> retryFailed() {
+        return Map.of("requeued", processingPipeline.retryFailed());
+    }
+}
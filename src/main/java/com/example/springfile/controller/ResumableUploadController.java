@@ -0,0 +1,130 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.dto.UploadResultDto;
+import com.example.springfile.dto.UploadSessionDto;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.UploadSession;
+import com.example.springfile.service.QuotaExceededException;
+import com.example.springfile.service.ResumableUploadService;
+import com.example.springfile.service.UploadTooLargeException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resumable chunked uploads for large files and unreliable connections:
+ * <ol>
+ *   <li>{@code POST /api/uploads?filename=..&size=..} starts a session (metadata as for /api/files/stream,
+ *       plus optional {@code chunkSize} and {@code sha256} of the whole file); the response says how the
+ *       file is cut into chunks,</li>
+ *   <li>{@code PUT /api/uploads/{id}/chunks/{index}} sends one chunk as the raw body, in any order and in
+ *       parallel, optionally with an {@code X-Chunk-Sha256} header,</li>
+ *   <li>{@code GET /api/uploads/{id}} lists the chunks still missing, e.g. after a reconnect,</li>
+ *   <li>{@code POST /api/uploads/{id}/complete} verifies and stores the file.</li>
+ * </ol>
+ * {@code DELETE /api/uploads/{id}} abandons a session.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+public class ResumableUploadController {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadController.class);
+
+    private final ResumableUploadService resumableUploadService;
+
+    @Autowired
+    public ResumableUploadController(ResumableUploadService resumableUploadService) {
+        this.resumableUploadService = resumableUploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSessionDto> start(@RequestParam("filename") String filename,
+                                                  @RequestParam("size") long size,
+                                                  @RequestParam(name = "chunkSize", required = false) Integer chunkSize,
+                                                  @RequestParam(name = "sha256", required = false) String sha256,
+                                                  @RequestParam(name = "contentType", required = false) String contentType,
+                                                  @RequestParam(name = "labels", required = false) String labelsString,
+                                                  @RequestParam("category") String categoryValue,
+                                                  @RequestParam(name = "newCategory", required = false) String newCategoryName,
+                                                  @RequestParam(name = "subCategory", required = false) String subCategoryValue,
+                                                  @RequestParam(name = "newSubCategory", required = false) String newSubCategoryName) {
+        UploadSession session = resumableUploadService.start(filename, size, chunkSize,
+                StringUtils.hasText(contentType) ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE, sha256,
+                labelsString, categoryValue, newCategoryName, subCategoryValue, newSubCategoryName);
+        return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequestUri()
+                        .path("/{id}").buildAndExpand(session.getId()).toUri())
+                .body(UploadSessionDto.of(session, List.of()));
+    }
+
+    // The body is read as raw bytes whatever its Content-Type
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<Void> putChunk(@PathVariable("id") String id,
+                                         @PathVariable("index") int index,
+                                         @RequestHeader(name = "X-Chunk-Sha256", required = false) String chunkSha256,
+                                         HttpServletRequest request) throws IOException {
+        resumableUploadService.writeChunk(id, index, request.getInputStream(), request.getContentLengthLong(), chunkSha256);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{id}")
+    public UploadSessionDto status(@PathVariable("id") String id) {
+        return resumableUploadService.describe(id);
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<UploadResultDto> complete(@PathVariable("id") String id) {
+        FileInfo fileInfo = resumableUploadService.complete(id);
+        return ResponseEntity.status(HttpStatus.CREATED).body(UploadResultDto.of(fileInfo));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable("id") String id) {
+        resumableUploadService.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    // Chunks missing, or the session is already being completed
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, String>> handleConflict(IllegalStateException e) {
+        log.warn("Rejected upload request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(UploadTooLargeException.class)
+    public ResponseEntity<Map<String, String>> handleTooLarge(UploadTooLargeException e) {
+        log.warn("Rejected oversized upload: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Map<String, String>> handleQuotaExceeded(QuotaExceededException e) {
+        log.warn("Rejected upload over quota: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        log.warn("Rejected upload request: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.dto.SearchPage;
+import com.example.springfile.service.FileQueryService;
+import com.example.springfile.service.SearchIndexer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Full-text search over files, backed by the local search index.
+ */
+@RestController
+@RequestMapping("/api/search")
+public class SearchApiController {
+
+    private final FileQueryService fileQueryService;
+    private final SearchIndexer searchIndexer;
+
+    @Autowired
+    public SearchApiController(FileQueryService fileQueryService, SearchIndexer searchIndexer) {
+        this.fileQueryService = fileQueryService;
+        this.searchIndexer = searchIndexer;
+    }
+
+    // Offset-paged by relevance; newly uploaded files show up once indexed, usually within a second or two
+    @GetMapping
+    public SearchPage search(@RequestParam("q") String query,
+                             @RequestParam(name = "page", defaultValue = "0") int page,
+                             @RequestParam(name = "size", defaultValue = "" + FileQueryService.DEFAULT_PAGE_SIZE) int size) throws IOException {
+        return fileQueryService.searchFiles(query, page, size);
+    }
+
+    // Rebuilds the whole index in the background
+    @PostMapping("/reindex")
+    public ResponseEntity<Map<String, Object>> reindex() {
+        boolean started = searchIndexer.startReindex();
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT)
+                .body(Map.of("reindexing", true, "started", started));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.service.TaxonomyCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Read-only JSON view of the category taxonomy, served from {@link TaxonomyCache}.
+ */
+@RestController
+@RequestMapping("/api/taxonomy")
+public class TaxonomyApiController {
+
+    private final TaxonomyCache taxonomyCache;
+
+    @Autowired
+    public TaxonomyApiController(TaxonomyCache taxonomyCache) {
+        this.taxonomyCache = taxonomyCache;
+    }
+
+    // Pre-rendered JSON, written out as-is
+    @GetMapping(path = "/categories", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String categories() {
+        return taxonomyCache.snapshot().categoriesJson();
+    }
+
+    @GetMapping(path = "/sub-categories", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String subCategories() {
+        return taxonomyCache.snapshot().subCategoriesJson();
+    }
+
+    // Cache effectiveness: lookups served from the snapshot vs. ones that had to go to the database
+    @GetMapping("/cache-stats")
+    public TaxonomyCache.Stats cacheStats() {
+        return taxonomyCache.getStats();
+    }
+}
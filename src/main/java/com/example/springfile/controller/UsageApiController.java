@@ -0,0 +1,67 @@
+package com.example.springfile.controller;
+
+import com.example.springfile.dto.UsageReport;
+import com.example.springfile.service.StorageUsageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Storage used per category and sub-category, for dashboards, and the per-category quotas.
+ */
+@RestController
+@RequestMapping("/api/usage")
+public class UsageApiController {
+
+    private static final Logger log = LoggerFactory.getLogger(UsageApiController.class);
+
+    private final StorageUsageService storageUsageService;
+
+    @Autowired
+    public UsageApiController(StorageUsageService storageUsageService) {
+        this.storageUsageService = storageUsageService;
+    }
+
+    // Read from the running totals: as fast with millions of files as with none
+    @GetMapping
+    public UsageReport usage() {
+        return storageUsageService.report();
+    }
+
+    // The quota as a data size: 500MB, 10GB, or a plain number of bytes
+    @PutMapping("/categories/{id}/quota")
+    public ResponseEntity<Void> setQuota(@PathVariable("id") Long id, @RequestParam("limit") String limit) {
+        DataSize quota;
+        try {
+            quota = DataSize.parse(limit);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid quota: " + limit);
+        }
+        storageUsageService.setQuota(id, quota.toBytes());
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/categories/{id}/quota")
+    public ResponseEntity<Void> removeQuota(@PathVariable("id") Long id) {
+        storageUsageService.setQuota(id, null);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        log.warn("Rejected usage request: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+}
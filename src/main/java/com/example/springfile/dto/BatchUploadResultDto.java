@@ -0,0 +1,24 @@
+package com.example.springfile.dto;
+
+import java.util.List;
+
+/**
+ * JSON response of a batch upload: what was stored, in upload order, and what was not.
+ */
+public class BatchUploadResultDto {
+    private final List<UploadResultDto> uploaded;
+    private final List<UploadFailureDto> failed;
+
+    public BatchUploadResultDto(List<UploadResultDto> uploaded, List<UploadFailureDto> failed) {
+        this.uploaded = uploaded;
+        this.failed = failed;
+    }
+
+    public List<UploadResultDto> getUploaded() {
+        return uploaded;
+    }
+
+    public List<UploadFailureDto> getFailed() {
+        return failed;
+    }
+}
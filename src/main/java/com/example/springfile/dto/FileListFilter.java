@@ -0,0 +1,41 @@
+package com.example.springfile.dto;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Optional filters for the file listing. Any field left null is not applied.
+ */
+public class FileListFilter {
+    private final Long categoryId;
+    private final Long subCategoryId;
+    private final String label;
+    private final String contentType;
+
+    public FileListFilter(Long categoryId, Long subCategoryId, String label, String contentType) {
+        this.categoryId = categoryId;
+        this.subCategoryId = subCategoryId;
+        // Treat blank request parameters the same as absent ones
+        this.label = StringUtils.hasText(label) ? label.trim() : null;
+        this.contentType = StringUtils.hasText(contentType) ? contentType.trim() : null;
+    }
+
+    public static FileListFilter none() {
+        return new FileListFilter(null, null, null, null);
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public Long getSubCategoryId() {
+        return subCategoryId;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.springfile.dto;
+
+import java.util.List;
+
+/**
+ * One keyset page of the file listing. {@code nextCursor} is an opaque token to pass back
+ * as {@code cursor} for the following page, or null when this is the last page.
+ */
+public class FilePage {
+    private final List<FileSummaryDto> items;
+    private final String nextCursor;
+
+    public FilePage(List<FileSummaryDto> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<FileSummaryDto> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return nextCursor != null;
+    }
+}
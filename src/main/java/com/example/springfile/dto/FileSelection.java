@@ -0,0 +1,64 @@
+package com.example.springfile.dto;
+
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Which files a bulk operation (delete, archive download) applies to: those matching every criterion
+ * given. Any field left null is not applied, but at least one must be given.
+ */
+public class FileSelection {
+    private final List<Long> ids;
+    private final Long categoryId;
+    private final Long subCategoryId;
+    private final String label;
+    private final String contentType;
+    private final LocalDateTime uploadedBefore;
+
+    public FileSelection(List<Long> ids, Long categoryId, Long subCategoryId, String label, String contentType,
+                         LocalDateTime uploadedBefore) {
+        this.ids = ids == null || ids.isEmpty() ? null : List.copyOf(ids);
+        this.categoryId = categoryId;
+        this.subCategoryId = subCategoryId;
+        // Treat blank request parameters the same as absent ones
+        this.label = StringUtils.hasText(label) ? label.trim() : null;
+        this.contentType = StringUtils.hasText(contentType) ? contentType.trim() : null;
+        this.uploadedBefore = uploadedBefore;
+    }
+
+    public static FileSelection ofIds(List<Long> ids) {
+        return new FileSelection(ids, null, null, null, null, null);
+    }
+
+    // A selection without criteria would be every file
+    public boolean isEmpty() {
+        return ids == null && categoryId == null && subCategoryId == null && label == null && contentType == null
+                && uploadedBefore == null;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public Long getSubCategoryId() {
+        return subCategoryId;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public LocalDateTime getUploadedBefore() {
+        return uploadedBefore;
+    }
+}
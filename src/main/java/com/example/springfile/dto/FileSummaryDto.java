@@ -0,0 +1,38 @@
+package com.example.springfile.dto;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only row of the file listing. Built directly by a JPQL constructor expression, labels
+ * included, so no FileInfo entity (or its lazy graph) is materialized and nothing is added later.
+ *
+ * @param extension Text after the last '.' of the filename; null if there is none.
+ * @param labels    In the order they were given at upload.
+ */
+public record FileSummaryDto(Long id,
+                             String filename,
+                             String extension,
+                             String storagePath,
+                             String contentType,
+                             LocalDateTime uploadTime,
+                             Long categoryId,
+                             String categoryName,
+                             Long subCategoryId,
+                             String subCategoryName,
+                             List<String> labels) {
+
+    // Label names can't contain commas (FileStorageService.parseLabels splits on them)
+    public static final String LABEL_SEPARATOR = ",";
+
+    // Constructor used by the JPQL constructor expression in FileInfoRepository: the labels arrive
+    // aggregated into one LABEL_SEPARATOR-joined string, null when there are none
+    public FileSummaryDto(Long id, String filename, String extension, String storagePath, String contentType,
+                          LocalDateTime uploadTime, Long categoryId, String categoryName, Long subCategoryId,
+                          String subCategoryName, String labels) {
+        this(id, filename, extension, storagePath, contentType, uploadTime, categoryId, categoryName,
+                subCategoryId, subCategoryName,
+                labels == null || labels.isEmpty() ? List.of() : Arrays.asList(labels.split(LABEL_SEPARATOR)));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.springfile.dto;
+
+import java.util.List;
+
+/**
+ * One page of search results, best match first. {@code total} counts all matching files; when
+ * {@code totalIsLowerBound} is set there are at least that many.
+ */
+public class SearchPage {
+    private final List<FileSummaryDto> items;
+    private final long total;
+    private final boolean totalIsLowerBound;
+    private final int page;
+    private final int size;
+    private final boolean hasMore;
+
+    public SearchPage(List<FileSummaryDto> items, long total, boolean totalIsLowerBound, int page, int size, boolean hasMore) {
+        this.items = items;
+        this.total = total;
+        this.totalIsLowerBound = totalIsLowerBound;
+        this.page = page;
+        this.size = size;
+        this.hasMore = hasMore;
+    }
+
+    public List<FileSummaryDto> getItems() {
+        return items;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public boolean isTotalIsLowerBound() {
+        return totalIsLowerBound;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.springfile.dto;
+
+/**
+ * JSON entry for a file of a batch upload that could not be stored.
+ */
+public class UploadFailureDto {
+    private final String filename;
+    private final String error;
+
+    public UploadFailureDto(String filename, String error) {
+        this.filename = filename;
+        this.error = error;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.springfile.dto;
+
+import com.example.springfile.model.FileInfo;
+
+/**
+ * JSON response describing a file stored through the API.
+ */
+public class UploadResultDto {
+    private final Long id;
+    private final String filename;
+    private final String storagePath;
+    private final String contentType;
+    private final Long size;
+    private final String sha256;
+    private final String categoryName;
+    private final String subCategoryName;
+
+    public UploadResultDto(Long id, String filename, String storagePath, String contentType, Long size, String sha256,
+                           String categoryName, String subCategoryName) {
+        this.id = id;
+        this.filename = filename;
+        this.storagePath = storagePath;
+        this.contentType = contentType;
+        this.size = size;
+        this.sha256 = sha256;
+        this.categoryName = categoryName;
+        this.subCategoryName = subCategoryName;
+    }
+
+    public static UploadResultDto of(FileInfo fileInfo) {
+        return new UploadResultDto(
+                fileInfo.getId(),
+                fileInfo.getFilename(),
+                fileInfo.getStoragePath(),
+                fileInfo.getContentType(),
+                fileInfo.getSize(),
+                fileInfo.getSha256(),
+                fileInfo.getCategory() != null ? fileInfo.getCategory().getName() : null,
+                fileInfo.getSubCategory() != null ? fileInfo.getSubCategory().getName() : null);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public String getSubCategoryName() {
+        return subCategoryName;
+    }
+}
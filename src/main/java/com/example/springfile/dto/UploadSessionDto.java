@@ -0,0 +1,79 @@
+package com.example.springfile.dto;
+
+import com.example.springfile.model.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON view of a resumable upload session: how the file is split into chunks and which chunks the
+ * server still needs. A client resuming after a dropped connection sends exactly {@code missingChunks}.
+ */
+public class UploadSessionDto {
+    private final String id;
+    private final String filename;
+    private final long totalSize;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final List<Integer> missingChunks;
+    private final LocalDateTime expiresAt;
+
+    public UploadSessionDto(String id, String filename, long totalSize, int chunkSize, int chunkCount,
+                            List<Integer> missingChunks, LocalDateTime expiresAt) {
+        this.id = id;
+        this.filename = filename;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.missingChunks = missingChunks;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param receivedChunks Indexes of the chunks received so far, in ascending order.
+     */
+    public static UploadSessionDto of(UploadSession session, List<Integer> receivedChunks) {
+        List<Integer> missing = new ArrayList<>();
+        int next = 0;
+        for (int received : receivedChunks) {
+            while (next < received) {
+                missing.add(next++);
+            }
+            next = received + 1;
+        }
+        while (next < session.chunkCount()) {
+            missing.add(next++);
+        }
+        return new UploadSessionDto(session.getId(), session.getFilename(), session.getTotalSize(),
+                session.getChunkSize(), session.chunkCount(), missing, session.getExpiresAt());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public List<Integer> getMissingChunks() {
+        return missingChunks;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.springfile.dto;
+
+import java.util.List;
+
+/**
+ * Storage used per category and sub-category, read from the running totals rather than counted.
+ * {@code quotaBytes} is null for a category without a quota.
+ */
+public record UsageReport(long fileCount, long totalBytes, List<CategoryUsage> categories) {
+
+    public record CategoryUsage(Long id, String name, long fileCount, long totalBytes, Long quotaBytes,
+                                List<SubCategoryUsage> subCategories) {
+    }
+
+    public record SubCategoryUsage(Long id, String name, long fileCount, long totalBytes) {
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.springfile.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application meters for the file hot paths, exported through Actuator ({@code /actuator/prometheus}):
+ * <ul>
+ *   <li>{@code springfile.upload} timer, tagged {@code phase=storage} (reading, hashing and storing the bytes),
+ *       {@code metadata} (one FileInfo insert) or {@code metadata-batch} (one chunk of a batch upload),
+ *       and {@code outcome}; {@code springfile.upload.size} bytes per stored upload.</li>
+ *   <li>{@code springfile.download} timer and {@code springfile.download.size} bytes per response body
+ *       (the rate of its total is the download throughput). Bodies handed to sendfile are counted when
+ *       the transfer is handed over, not when it completes.</li>
+ *   <li>{@code springfile.delete} timer.</li>
+ *   <li>{@code springfile.quota.rejected} counter of uploads refused because their category was over quota,
+ *       tagged {@code when=before} (refused from the declared size, before any bytes were read) or {@code after}
+ *       (the size was only known once stored).</li>
+ *   <li>{@code springfile.compression} timer and {@code springfile.compression.ratio} (original / stored size)
+ *       per compressed blob, {@code springfile.compression.bytes} tagged {@code side=original|stored} (the ratio
+ *       of their totals is the overall saving), and {@code springfile.compression.skipped} for blobs stored
+ *       as uploaded because they would not shrink enough.</li>
+ *   <li>{@code springfile.download.encoding} counter of downloads of compressed blobs, tagged
+ *       {@code mode=stored} (sent compressed as stored) or {@code mode=decoded} (decompressed while sending).</li>
+ *   <li>{@code cache.gets} (tagged {@code result=hit|miss}), {@code cache.evictions} and {@code cache.size} for
+ *       {@code cache=downloads}, the {@link com.example.springfile.service.HotFileCache}, plus
+ *       {@code springfile.download.cache.hit.ratio} and {@code springfile.download.cache.bytes} (its weighed size:
+ *       cached content, mostly off-heap, plus an estimate for the metadata).</li>
+ *   <li>{@code springfile.preview.requests} counter of preview requests, tagged {@code result=hit|rendered|failed|busy},
+ *       {@code springfile.preview.render} timer tagged {@code kind=image|pdf}, and {@code springfile.preview.evicted}
+ *       counter of previews removed to stay within the preview quota.</li>
+ *   <li>{@code springfile.reaper.files} and {@code springfile.reaper.objects} counters of deleted files and
+ *       unreferenced contents removed by the storage reaper, and {@code springfile.reaper.orphans} of orphaned
+ *       content it removed, tagged {@code kind=blob|object|file}.</li>
+ *   <li>{@code springfile.scrub.bytes} counter of stored bytes re-read by the integrity scrubber, and
+ *       {@code springfile.scrub.findings} counter of the problems it found, tagged {@code problem}.</li>
+ *   <li>{@code springfile.requests.in.flight} gauge per {@code operation} (upload, download), maintained
+ *       by {@link InFlightRequestFilter}.</li>
+ * </ul>
+ * Percentile histograms for these are switched on in application.properties.
+ */
+@Component
+public class FileMetrics {
+
+    private final MeterRegistry registry;
+    private final DistributionSummary uploadSize;
+    private final DistributionSummary downloadSize;
+    private final Timer download;
+    private final Timer compression;
+    private final DistributionSummary compressionRatio;
+    private final Map<String, AtomicInteger> inFlight;
+
+    @Autowired
+    public FileMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.uploadSize = DistributionSummary.builder("springfile.upload.size")
+                .description("Size of stored uploads").baseUnit("bytes").register(registry);
+        this.downloadSize = DistributionSummary.builder("springfile.download.size")
+                .description("Bytes sent per download response").baseUnit("bytes").register(registry);
+        this.download = Timer.builder("springfile.download")
+                .description("Time to serve a download").register(registry);
+        this.compression = Timer.builder("springfile.compression")
+                .description("Time to compress a new blob").register(registry);
+        this.compressionRatio = DistributionSummary.builder("springfile.compression.ratio")
+                .description("Original size divided by stored size of compressed blobs").register(registry);
+        this.inFlight = Map.of(
+                InFlightRequestFilter.UPLOAD, registerInFlight(InFlightRequestFilter.UPLOAD),
+                InFlightRequestFilter.DOWNLOAD, registerInFlight(InFlightRequestFilter.DOWNLOAD));
+    }
+
+    private AtomicInteger registerInFlight(String operation) {
+        return registry.gauge("springfile.requests.in.flight", Tags.of("operation", operation), new AtomicInteger());
+    }
+
+    public void recordUploadStorage(long nanos, long bytes, boolean success) {
+        uploadTimer("storage", success).record(nanos, TimeUnit.NANOSECONDS);
+        if (success) {
+            uploadSize.record(bytes);
+        }
+    }
+
+    public void recordUploadMetadata(long nanos, boolean batch, boolean success) {
+        uploadTimer(batch ? "metadata-batch" : "metadata", success).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer uploadTimer(String phase, boolean success) {
+        return Timer.builder("springfile.upload")
+                .description("Upload time by phase")
+                .tags("phase", phase, "outcome", outcome(success))
+                .register(registry);
+    }
+
+    public void recordDownload(long nanos, long bytes) {
+        download.record(nanos, TimeUnit.NANOSECONDS);
+        downloadSize.record(bytes);
+    }
+
+    public void recordArchive(long nanos, int files, long bytes, boolean success) {
+        Timer.builder("springfile.archive")
+                .description("Time to stream a zip archive of a selection of files")
+                .tags("outcome", outcome(success))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        registry.counter("springfile.archive.files").increment(files);
+        registry.counter("springfile.archive.bytes").increment(bytes);
+    }
+
+    public void recordQuotaRejected(boolean beforeStoring) {
+        registry.counter("springfile.quota.rejected", "when", beforeStoring ? "before" : "after").increment();
+    }
+
+    public void recordDelete(long nanos, boolean success) {
+        Timer.builder("springfile.delete")
+                .description("Time to delete a file")
+                .tags("outcome", outcome(success))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCompression(long nanos, long originalBytes, long storedBytes) {
+        compression.record(nanos, TimeUnit.NANOSECONDS);
+        compressionRatio.record((double) originalBytes / Math.max(1, storedBytes));
+        registry.counter("springfile.compression.bytes", "side", "original").increment(originalBytes);
+        registry.counter("springfile.compression.bytes", "side", "stored").increment(storedBytes);
+    }
+
+    public void recordCompressionSkipped() {
+        registry.counter("springfile.compression.skipped").increment();
+    }
+
+    /**
+     * @param decoded true if a compressed blob was decompressed for a client that does not accept its encoding.
+     */
+    public void recordEncodedDownload(boolean decoded) {
+        registry.counter("springfile.download.encoding", "mode", decoded ? "decoded" : "stored").increment();
+    }
+
+    public void monitorDownloadCache(Cache<String, ?> cache) {
+        CaffeineCacheMetrics.monitor(registry, cache, "downloads");
+        Gauge.builder("springfile.download.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of downloads served from the hot file cache since startup")
+                .register(registry);
+        Gauge.builder("springfile.download.cache.bytes", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Weighed size of the hot file cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * @param result {@code hit} (served a stored preview), {@code rendered}, {@code failed} (content that
+     *               could not be rendered) or {@code busy} (refused because the preview pool was saturated).
+     */
+    public void recordPreview(String result) {
+        registry.counter("springfile.preview.requests", "result", result).increment();
+    }
+
+    public void recordPreviewRender(long nanos, String kind) {
+        Timer.builder("springfile.preview.render")
+                .description("Time to render and store a preview")
+                .tags("kind", kind)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPreviewsEvicted(int count) {
+        registry.counter("springfile.preview.evicted").increment(count);
+    }
+
+    public void recordReaped(int files, int objects) {
+        registry.counter("springfile.reaper.files").increment(files);
+        registry.counter("springfile.reaper.objects").increment(objects);
+    }
+
+    public void recordOrphansRemoved(String kind, int count) {
+        registry.counter("springfile.reaper.orphans", "kind", kind).increment(count);
+    }
+
+    public void recordScrubbed(long bytes) {
+        registry.counter("springfile.scrub.bytes").increment(bytes);
+    }
+
+    public void recordScrubFinding(String problem) {
+        registry.counter("springfile.scrub.findings", "problem", problem).increment();
+    }
+
+    AtomicInteger inFlight(String operation) {
+        return inFlight.get(operation);
+    }
+
+    private static String outcome(boolean success) {
+        return success ? "success" : "failure";
+    }
+}
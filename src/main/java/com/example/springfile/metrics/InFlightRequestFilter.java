@@ -0,0 +1,63 @@
+package com.example.springfile.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts upload and download requests currently being processed, for the
+ * {@code springfile.requests.in.flight} gauges.
+ */
+@Component
+public class InFlightRequestFilter extends OncePerRequestFilter {
+
+    static final String UPLOAD = "upload";
+    static final String DOWNLOAD = "download";
+
+    private final FileMetrics fileMetrics;
+
+    @Autowired
+    public InFlightRequestFilter(FileMetrics fileMetrics) {
+        this.fileMetrics = fileMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String operation = classify(request);
+        if (operation == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        AtomicInteger counter = fileMetrics.inFlight(operation);
+        counter.incrementAndGet();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            counter.decrementAndGet();
+        }
+    }
+
+    private static String classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        if ("POST".equals(method) && (path.equals("/upload") || path.startsWith("/api/files/stream")
+                || path.startsWith("/api/files/batch"))) {
+            return UPLOAD;
+        }
+        if ("PUT".equals(method) && path.startsWith("/api/uploads/")) {
+            return UPLOAD;
+        }
+        if (("GET".equals(method) || "HEAD".equals(method)) && path.startsWith("/files/")) {
+            return DOWNLOAD;
+        }
+        return null;
+    }
+}
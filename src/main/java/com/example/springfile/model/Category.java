@@ -1,16 +1,19 @@
 package com.example.springfile.model;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.AllArgsConstructor;
-
-import java.util.List;
+import lombok.Setter;
+import lombok.ToString;
 
+// No @Data and no inverse fileInfos/subCategories collections: equals/hashCode over a lazy collection would
+// load every file of the category, and nothing reads the taxonomy from this side. Identity equality is
+// enough; detached instances are compared by id.
 @Entity
-@Data
+@Getter
+@Setter
+@ToString
 @NoArgsConstructor
-@AllArgsConstructor
 public class Category {
 
     @Id
@@ -20,12 +23,6 @@ public class Category {
     @Column(unique = true, nullable = false)
     private String name;
 
-    @OneToMany(mappedBy = "category", cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<SubCategory> subCategories;
-
-    @OneToMany(mappedBy = "category")
-    private List<FileInfo> fileInfos;
-
     public Category(String name) {
         this.name = name;
     }
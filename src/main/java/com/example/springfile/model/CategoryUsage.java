@@ -0,0 +1,32 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Running totals of the (not deleted) files in a category, and its storage quota. The counters are only
+ * ever changed by relative UPDATEs (see CategoryUsageRepository), never by saving this entity.
+ */
+@Entity
+@Table(name = "category_usage")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryUsage {
+
+    @Id
+    private Long categoryId;
+
+    @Column(nullable = false)
+    private long fileCount;
+
+    @Column(nullable = false)
+    private long totalBytes;
+
+    private Long quotaBytes; // null: unlimited
+}
@@ -0,0 +1,31 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A lease on work only one node may do at a time; see {@link com.example.springfile.cluster.ClusterLocks}.
+ */
+@Entity
+@Table(name = "cluster_lock")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterLock {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(length = 128)
+    private String owner; // Node id of the holder; null once released
+
+    private LocalDateTime lockedUntil; // The lease expires then unless renewed
+}
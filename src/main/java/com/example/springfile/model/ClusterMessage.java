@@ -0,0 +1,45 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Events published by one node for the others; see {@link com.example.springfile.cluster.ClusterEventBus}.
+ */
+@Entity
+@Table(name = "cluster_message")
+@Data
+@NoArgsConstructor
+public class ClusterMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 128, nullable = false)
+    private String origin; // Node id of the publisher, which skips its own messages
+
+    @Column(nullable = false)
+    private String type; // Class name of the events
+
+    @Column(length = 1_000_000, nullable = false)
+    private String payload; // JSON array of events of that type
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public ClusterMessage(String origin, String type, String payload, LocalDateTime createdAt) {
+        this.origin = origin;
+        this.type = type;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+}
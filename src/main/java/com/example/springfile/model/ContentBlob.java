@@ -0,0 +1,42 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One unique piece of stored content, keyed by its SHA-256. Any number of FileInfo rows may
+ * point at the same blob; refCount tracks how many do so the bytes are removed with the last one.
+ */
+@Entity
+@Table(name = "content_blob") // "blob" is a reserved word in H2 and most other databases
+@Data
+@NoArgsConstructor
+public class ContentBlob {
+
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private long refCount;
+
+    private LocalDateTime createdAt;
+
+    // When a reference was last taken; reconciliation leaves the count of a blob referenced since its
+    // cutoff alone, as the upload may not have inserted its file yet
+    private LocalDateTime lastReferencedAt;
+
+    @Column(length = 16)
+    private String encoding; // Content-Encoding of the stored object ("gzip"); null when stored as uploaded
+
+    // Of the stored object's bytes (after any compression), for the integrity scrubber; null for blobs
+    // stored before these were recorded, until the scrubber has verified them against the hash
+    private Long storedSize;
+    private Long crc32c;
+}
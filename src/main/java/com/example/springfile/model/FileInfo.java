@@ -4,6 +4,7 @@ import jakarta.persistence.*; // Import all persistence annotations
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.time.LocalDateTime; // Import LocalDateTime
 import java.util.List;
@@ -12,19 +13,54 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+// The schema, including the indexes behind the listing and lookups, is defined by the Flyway
+// migrations in src/main/resources/db/migration
+// Deleted files stay in the table until the StorageReaper gets to them; every entity query skips them
+@SQLRestriction("deleted_at IS NULL")
 public class FileInfo {
 
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence rather than IDENTITY: Hibernate hands out ids from memory in blocks of 50,
+    // so inserts can be sent as JDBC batches (IDENTITY needs a round trip per row to learn the id)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_info_seq")
+    @SequenceGenerator(name = "file_info_seq", sequenceName = "file_info_seq", allocationSize = FileInfo.ID_ALLOCATION_SIZE)
     private Long id;
 
     private String filename;
+    private String extension; // Text after the last '.' of filename, null if there is none; stored for the listing
+    @Column(unique = true)
     private String storagePath;
     private String contentType;
     private LocalDateTime uploadTime; // Add uploadTime field
+    private Long size; // Bytes stored; null for files uploaded before sizes were recorded
+
+    @Column(length = 64)
+    private String sha256; // Hex SHA-256 of the content, computed while storing
+
+    @Column(length = 16)
+    private String contentEncoding; // Copied from the blob: "gzip" when the stored bytes are compressed, else null
+
+    private String detectedContentType; // Sniffed from the content after upload; null until processed
+
+    private LocalDateTime deletedAt; // When the file was deleted; its row and content are removed in the background
+
+    @Column(length = 128)
+    private String deletedBy; // Node that marked it deleted (see ClusterNode); with deletedAt, identifies one delete
 
-    @ElementCollection // Stores a collection of basic types (String)
-    private List<String> labels;
+    // Deduplicated content this file points at; null only for files still stored flat under storagePath
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_sha256")
+    private ContentBlob blob;
+
+    // Shared label rows, kept in the order they were given
+    @ManyToMany
+    @JoinTable(name = "file_info_label",
+            joinColumns = @JoinColumn(name = "file_info_id"),
+            inverseJoinColumns = @JoinColumn(name = "label_id"))
+    @OrderColumn(name = "label_order")
+    private List<Label> labels;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id") // Optional: Define the foreign key column name
@@ -35,8 +71,9 @@ public class FileInfo {
     private SubCategory subCategory;
 
     // Constructor updated to include uploadTime, category, and subCategory
-    public FileInfo(String filename, String storagePath, String contentType, List<String> labels, LocalDateTime uploadTime, Category category, SubCategory subCategory) {
+    public FileInfo(String filename, String storagePath, String contentType, List<Label> labels, LocalDateTime uploadTime, Category category, SubCategory subCategory) {
         this.filename = filename;
+        this.extension = extensionOf(filename);
         this.storagePath = storagePath;
         this.contentType = contentType;
         this.labels = labels;
@@ -44,4 +81,15 @@ public class FileInfo {
         this.category = category;
         this.subCategory = subCategory;
     }
+
+    public static String extensionOf(String filename) {
+        if (filename == null || !filename.contains(".")) {
+            return null;
+        }
+        return filename.substring(filename.lastIndexOf('.') + 1);
+    }
+
+    public List<String> getLabelNames() {
+        return labels == null ? List.of() : labels.stream().map(Label::getName).toList();
+    }
 }
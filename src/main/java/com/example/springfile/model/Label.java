@@ -0,0 +1,26 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A label name, stored once and shared by every file that carries it. Rows are created on first
+ * use (see LabelRegistry) and never change.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+public class Label {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(unique = true, nullable = false)
+    private String name;
+
+    public Label(String name) {
+        this.name = name;
+    }
+}
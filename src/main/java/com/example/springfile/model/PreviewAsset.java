@@ -0,0 +1,39 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A rendered preview of a blob's content, stored in the storage backend under {@code storageKey}. The
+ * row is deleted with its blob (ON DELETE CASCADE) and when the preview quota evicts it.
+ */
+@Entity
+@Table(name = "preview_asset")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PreviewAsset {
+
+    @Id
+    @Column(length = 128)
+    private String storageKey;
+
+    @Column(length = 64, nullable = false)
+    private String blobSha256;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime lastAccessed; // Approximate: only updated once per PreviewService.TOUCH_INTERVAL
+}
@@ -0,0 +1,62 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One post-upload processing stage still to run (or that failed) for one file. Jobs are inserted in
+ * the same transaction as the file's metadata and deleted once their stage succeeds, so the table only
+ * holds outstanding work and failures.
+ */
+@Entity
+@Table(name = "processing_job", indexes = {
+        // Backs the worker poll: due pending jobs, oldest first
+        @Index(name = "idx_processing_job_due", columnList = "status, nextAttemptAt")
+})
+@Data
+@NoArgsConstructor
+public class ProcessingJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "processing_job_seq")
+    @SequenceGenerator(name = "processing_job_seq", sequenceName = "processing_job_seq", allocationSize = 50)
+    private Long id;
+
+    // Plain id rather than an association: a job may outlive its file, in which case the stage has nothing to do
+    @Column(nullable = false)
+    private Long fileInfoId;
+
+    @Column(nullable = false, length = 32)
+    private String stage;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private ProcessingJobStatus status;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Random token of the claim currently running the job; a worker whose lease expired can no longer complete it
+    @Column(length = 36)
+    private String lockedBy;
+
+    private LocalDateTime lockedUntil;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime createdAt;
+
+    public ProcessingJob(Long fileInfoId, String stage, LocalDateTime now) {
+        this.fileInfoId = fileInfoId;
+        this.stage = stage;
+        this.status = ProcessingJobStatus.PENDING;
+        this.nextAttemptAt = now;
+        this.createdAt = now;
+    }
+}
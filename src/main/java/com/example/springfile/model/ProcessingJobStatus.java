@@ -0,0 +1,7 @@
+package com.example.springfile.model;
+
+public enum ProcessingJobStatus {
+    PENDING, // Waiting for a worker, possibly until nextAttemptAt after a failure
+    RUNNING, // Claimed by a worker until lockedUntil
+    FAILED   // Gave up after the last attempt; kept for inspection and manual retry
+}
@@ -1,16 +1,18 @@
 package com.example.springfile.model;
 
 import jakarta.persistence.*;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.AllArgsConstructor;
-
-import java.util.List;
+import lombok.Setter;
+import lombok.ToString;
 
+// Plain getters/setters rather than @Data, as in Category
 @Entity
-@Data
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_sub_category_category_name", columnNames = {"category_id", "name"}))
+@Getter
+@Setter
+@ToString(exclude = "category") // Lazy: printing it would hit the database, or fail once detached
 @NoArgsConstructor
-@AllArgsConstructor
 public class SubCategory {
 
     @Id
@@ -24,9 +26,6 @@ public class SubCategory {
     @JoinColumn(name = "category_id", nullable = false)
     private Category category;
 
-    @OneToMany(mappedBy = "subCategory")
-    private List<FileInfo> fileInfos;
-
     public SubCategory(String name, Category category) {
         this.name = name;
         this.category = category;
@@ -0,0 +1,29 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Running totals of the (not deleted) files in a sub-category; see {@link CategoryUsage}.
+ */
+@Entity
+@Table(name = "sub_category_usage")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubCategoryUsage {
+
+    @Id
+    private Long subCategoryId;
+
+    @Column(nullable = false)
+    private long fileCount;
+
+    @Column(nullable = false)
+    private long totalBytes;
+}
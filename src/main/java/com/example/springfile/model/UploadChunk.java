@@ -0,0 +1,40 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * One chunk of a resumable upload that has been written completely. A row per chunk (rather than a
+ * bitmap on the session) lets chunks arriving in parallel be recorded without contending for one row.
+ */
+@Entity
+@Table(name = "upload_chunk")
+@Data
+@NoArgsConstructor
+public class UploadChunk {
+
+    @EmbeddedId
+    private Key key;
+
+    private LocalDateTime receivedAt;
+
+    public UploadChunk(String sessionId, int chunkIndex, LocalDateTime receivedAt) {
+        this.key = new Key(sessionId, chunkIndex);
+        this.receivedAt = receivedAt;
+    }
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Column(length = 36)
+        private String sessionId;
+        private int chunkIndex;
+    }
+}
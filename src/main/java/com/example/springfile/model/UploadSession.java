@@ -0,0 +1,76 @@
+package com.example.springfile.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A resumable upload in progress: the file's final size and metadata as given when the session was
+ * started, and the preallocated staging file its chunks are written into. Received chunks are rows of
+ * {@link UploadChunk}. The session and its staging file are removed once the upload completes, is
+ * aborted, or expires.
+ */
+@Entity
+@Table(name = "upload_session", indexes = {
+        // Backs the reaper's scan for abandoned sessions
+        @Index(name = "idx_upload_session_expires", columnList = "expiresAt")
+})
+@Data
+@NoArgsConstructor
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private String filename;
+
+    private String contentType;
+
+    private long totalSize;
+
+    private int chunkSize;
+
+    // Hex SHA-256 the client expects the assembled file to have, if it sent one
+    @Column(length = 64)
+    private String expectedSha256;
+
+    // The form-style metadata, applied with FileStorageService.saveFileMetadata on completion
+    @Column(length = 1000)
+    private String labels;
+    private String categoryValue;
+    private String newCategoryName;
+    private String subCategoryValue;
+    private String newSubCategoryName;
+
+    // Absolute path of the preallocated file in the upload staging directory
+    @Column(nullable = false, length = 1000)
+    private String stagingFile;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private UploadSessionStatus status;
+
+    private LocalDateTime createdAt;
+
+    // Pushed forward by every chunk, so only idle sessions expire
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    /**
+     * Number of chunks the file is split into; all are {@code chunkSize} bytes except possibly the last.
+     */
+    public int chunkCount() {
+        return totalSize == 0 ? 1 : (int) ((totalSize + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Length in bytes of the chunk with the given index.
+     */
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, totalSize - (long) index * chunkSize);
+    }
+}
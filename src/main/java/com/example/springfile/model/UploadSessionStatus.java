@@ -0,0 +1,6 @@
+package com.example.springfile.model;
+
+public enum UploadSessionStatus {
+    OPEN,       // Accepting chunks
+    COMPLETING  // All chunks received; being verified and stored
+}
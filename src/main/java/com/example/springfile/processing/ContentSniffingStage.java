@@ -0,0 +1,63 @@
+package com.example.springfile.processing;
+
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.service.FileStorageService;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Detects a file's real type from its content (magic bytes, and the structure of zip/OLE containers
+ * such as .docx) rather than trusting the Content-Type the client sent. The result is stored as
+ * {@code detectedContentType}, and replaces {@code contentType} when the client sent none or only
+ * {@code application/octet-stream}.
+ */
+@Component
+public class ContentSniffingStage implements ProcessingStage {
+
+    public static final String NAME = "sniff";
+
+    private final Detector detector = TikaConfig.getDefaultConfig().getDetector();
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public ContentSniffingStage(FileInfoRepository fileInfoRepository, FileStorageService fileStorageService,
+                                PlatformTransactionManager transactionManager) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void process(Long fileInfoId) throws Exception {
+        Optional<FileInfo> fileInfo = fileInfoRepository.findById(fileInfoId);
+        if (fileInfo.isEmpty()) {
+            return; // Deleted since it was queued
+        }
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileInfo.get().getFilename());
+        String detected;
+        try (InputStream content = fileStorageService.openStream(fileInfo.get());
+             TikaInputStream tikaStream = TikaInputStream.get(content)) {
+            detected = detector.detect(tikaStream, metadata).toString();
+        }
+        transactionTemplate.executeWithoutResult(status -> fileInfoRepository.updateDetectedContentType(fileInfoId, detected));
+    }
+}
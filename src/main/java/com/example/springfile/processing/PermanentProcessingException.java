@@ -0,0 +1,15 @@
+package com.example.springfile.processing;
+
+/**
+ * Thrown by a {@link ProcessingStage} when retrying cannot help (e.g. the file's content is missing);
+ * the job is marked failed straight away.
+ */
+public class PermanentProcessingException extends RuntimeException {
+    public PermanentProcessingException(String message) {
+        super(message);
+    }
+
+    public PermanentProcessingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
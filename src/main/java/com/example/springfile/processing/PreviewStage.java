@@ -0,0 +1,43 @@
+package com.example.springfile.processing;
+
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.service.PreviewService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Renders the preview of images and PDFs right after upload (with {@code file.preview.eager}), so the
+ * listing doesn't wait for it. The render itself runs on the preview pool, which bounds it together
+ * with on-demand renders; when that pool is saturated the job is retried later.
+ */
+@Component
+public class PreviewStage implements ProcessingStage {
+
+    public static final String NAME = "preview";
+
+    private final FileInfoRepository fileInfoRepository;
+    private final PreviewService previewService;
+
+    @Autowired
+    public PreviewStage(FileInfoRepository fileInfoRepository, PreviewService previewService) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.previewService = previewService;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void process(Long fileInfoId) throws Exception {
+        Optional<FileInfo> fileInfo = fileInfoRepository.findById(fileInfoId);
+        if (fileInfo.isEmpty()) {
+            return; // Deleted since it was queued
+        }
+        previewService.renderEagerly(fileInfo.get());
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.springfile.processing;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.model.ProcessingJob;
+import com.example.springfile.model.ProcessingJobStatus;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.repository.ProcessingJobRepository;
+import com.example.springfile.service.FileSavedEvent;
+import com.example.springfile.service.StoredFileNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the {@link ProcessingStage}s for each uploaded file in the background, so an upload returns as
+ * soon as its bytes and metadata are stored.
+ * <ul>
+ *   <li>Durable: jobs are rows in {@code processing_job}, inserted in the transaction that saves the
+ *       file, so no work is lost to a crash or restart.</li>
+ *   <li>Bounded: a poller claims only as many jobs as there are idle workers
+ *       ({@code file.processing.workers}); a burst of uploads waits in the table, not in memory.</li>
+ *   <li>Retried: a failed job is retried with exponential backoff, up to {@code file.processing.max-attempts}.</li>
+ *   <li>Safe with several nodes on one database: a job is claimed with a conditional UPDATE under a
+ *       lease ({@code file.processing.lease}), renewed every third of the lease while its stage runs; a job
+ *       whose worker died is picked up again once its lease expires.</li>
+ * </ul>
+ */
+@Service
+public class ProcessingPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessingPipeline.class);
+
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    private final ProcessingJobRepository jobRepository;
+    private final FileInfoRepository fileInfoRepository;
+    private final Map<String, ProcessingStage> stages = new LinkedHashMap<>();
+    private final Map<String, StageMetrics> metrics = new LinkedHashMap<>();
+    private final TransactionTemplate transactionTemplate;
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration lease;
+
+    // Claim tokens of the jobs running on this node, whose leases the poller renews
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    private final Semaphore idleWorkers;
+    private final ExecutorService workerPool;
+    private final ScheduledExecutorService poller;
+
+    /**
+     * Per-stage counters since startup: jobs that succeeded, were retried, or failed for good, and how long successful runs took.
+     */
+    public record StageStats(String stage, long succeeded, long retried, long failed, long averageMillis, long maxMillis) {
+    }
+
+    /**
+     * @param queued Outstanding jobs by stage, then by status.
+     */
+    public record Stats(List<StageStats> stages, Map<String, Map<ProcessingJobStatus, Long>> queued, int busyWorkers) {
+    }
+
+    @Autowired
+    public ProcessingPipeline(ProcessingJobRepository jobRepository, FileInfoRepository fileInfoRepository,
+                              List<ProcessingStage> stageBeans, PlatformTransactionManager transactionManager,
+                              BackgroundThreads backgroundThreads,
+                              @Value("${file.processing.workers:2}") int workers,
+                              @Value("${file.processing.max-attempts:5}") int maxAttempts,
+                              @Value("${file.processing.retry-backoff:2s}") Duration retryBackoff,
+                              @Value("${file.processing.lease:5m}") Duration lease,
+                              @Value("${file.processing.poll-interval:2s}") Duration pollInterval) {
+        this.jobRepository = jobRepository;
+        this.fileInfoRepository = fileInfoRepository;
+        for (ProcessingStage stage : stageBeans) {
+            stages.put(stage.name(), stage);
+            metrics.put(stage.name(), new StageMetrics());
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.workers = workers;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.lease = lease;
+        this.idleWorkers = new Semaphore(workers);
+        this.workerPool = Executors.newFixedThreadPool(workers, backgroundThreads.factory("processing-worker"));
+        this.poller = Executors.newSingleThreadScheduledExecutor(backgroundThreads.factory("processing-poller"));
+        poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        long renewInterval = Math.max(1, lease.toMillis() / 3);
+        poller.scheduleWithFixedDelay(this::renewLeasesQuietly, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        log.info("Processing pipeline: stages {}, {} workers", stages.keySet(), workers);
+    }
+
+    /**
+     * Queues every stage for newly saved files. Runs synchronously inside the publisher's transaction,
+     * so the jobs commit (or roll back) together with the files.
+     */
+    @EventListener
+    public void onFileSaved(FileSavedEvent event) {
+        LocalDateTime now = LocalDateTime.now();
+        List<ProcessingJob> jobs = new ArrayList<>(event.fileIds().size() * stages.size());
+        for (Long fileId : event.fileIds()) {
+            for (String stage : stages.keySet()) {
+                jobs.add(new ProcessingJob(fileId, stage, now));
+            }
+        }
+        jobRepository.saveAll(jobs);
+    }
+
+    // Start on new jobs right away rather than at the next poll
+    @TransactionalEventListener(fallbackExecution = true)
+    public void wakeUpAfterSave(FileSavedEvent event) {
+        wakeUp();
+    }
+
+    /**
+     * Queues content sniffing for files saved before the pipeline existed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!stages.containsKey(ContentSniffingStage.NAME)) {
+            return;
+        }
+        int queued = 0;
+        long lastId = 0;
+        List<Long> ids;
+        while (!(ids = fileInfoRepository.findIdsAwaitingSniffing(lastId, ContentSniffingStage.NAME, Limit.of(BACKFILL_BATCH_SIZE))).isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            List<ProcessingJob> jobs = ids.stream().map(id -> new ProcessingJob(id, ContentSniffingStage.NAME, now)).toList();
+            transactionTemplate.executeWithoutResult(status -> jobRepository.saveAll(jobs));
+            queued += jobs.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+        if (queued > 0) {
+            log.info("Queued content sniffing for {} existing files", queued);
+            wakeUp();
+        }
+    }
+
+    public void wakeUp() {
+        try {
+            poller.execute(this::pollQuietly);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Puts every failed job back in the queue with a fresh set of attempts.
+     * @return How many jobs were requeued.
+     */
+    public int retryFailed() {
+        Integer requeued = transactionTemplate.execute(status -> jobRepository.retryFailed(LocalDateTime.now()));
+        wakeUp();
+        return requeued == null ? 0 : requeued;
+    }
+
+    public Stats getStats() {
+        List<StageStats> stageStats = new ArrayList<>(metrics.size());
+        metrics.forEach((stage, m) -> stageStats.add(m.snapshot(stage)));
+        Map<String, Map<ProcessingJobStatus, Long>> queued = new TreeMap<>();
+        for (Object[] row : jobRepository.countByStageAndStatus()) {
+            queued.computeIfAbsent((String) row[0], stage -> new TreeMap<>()).put((ProcessingJobStatus) row[1], (Long) row[2]);
+        }
+        return new Stats(stageStats, queued, workers - idleWorkers.availablePermits());
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            log.warn("Could not poll for processing jobs", e);
+        }
+    }
+
+    // Only called on the poller thread
+    private void poll() {
+        while (idleWorkers.availablePermits() > 0) {
+            LocalDateTime now = LocalDateTime.now();
+            List<ProcessingJob> candidates = jobRepository.findClaimable(now, Limit.of(idleWorkers.availablePermits()));
+            if (candidates.isEmpty()) {
+                return;
+            }
+            boolean claimedAny = false;
+            for (ProcessingJob job : candidates) {
+                String owner = UUID.randomUUID().toString();
+                Integer claimed = transactionTemplate.execute(status ->
+                        jobRepository.claim(job.getId(), owner, now, now.plus(lease)));
+                if (claimed == null || claimed == 0) {
+                    continue; // Another worker or node got it first
+                }
+                claimedAny = true;
+                idleWorkers.acquireUninterruptibly(); // Never blocks: only this thread acquires
+                running.add(owner);
+                workerPool.execute(() -> {
+                    try {
+                        run(job, job.getAttempts() + 1, owner);
+                    } finally {
+                        running.remove(owner);
+                        idleWorkers.release();
+                    }
+                });
+            }
+            if (!claimedAny) {
+                return;
+            }
+        }
+    }
+
+    private void renewLeasesQuietly() {
+        try {
+            renewLeases();
+        } catch (RuntimeException e) {
+            // Keep the schedule going; the leases have two more chances before they run out
+            log.warn("Could not renew the leases of running processing jobs", e);
+        }
+    }
+
+    // Only called on the poller thread. A stage may run longer than the lease (text extraction from a large
+    // PDF), and another worker would then claim its job and run the stage a second time
+    private void renewLeases() {
+        List<String> owners = List.copyOf(running);
+        if (owners.isEmpty()) {
+            return;
+        }
+        LocalDateTime lockedUntil = LocalDateTime.now().plus(lease);
+        Integer renewed = transactionTemplate.execute(status -> jobRepository.renewLeases(owners, lockedUntil));
+        if (renewed == null || renewed < owners.size()) {
+            // Finished meanwhile, or held up past the lease and claimed by another worker
+            log.debug("Renewed {} of {} processing job leases", renewed, owners.size());
+        }
+    }
+
+    private void run(ProcessingJob job, int attempt, String owner) {
+        ProcessingStage stage = stages.get(job.getStage());
+        if (stage == null) {
+            release(job, owner, ProcessingJobStatus.FAILED, "Unknown stage " + job.getStage());
+            return;
+        }
+        StageMetrics stageMetrics = metrics.get(job.getStage());
+        long started = System.nanoTime();
+        try {
+            stage.process(job.getFileInfoId());
+            transactionTemplate.executeWithoutResult(status -> jobRepository.complete(job.getId(), owner));
+            stageMetrics.succeeded(System.nanoTime() - started);
+        } catch (Exception e) {
+            boolean permanent = e instanceof PermanentProcessingException || e instanceof StoredFileNotFoundException;
+            if (permanent || attempt >= maxAttempts) {
+                stageMetrics.failed.incrementAndGet();
+                log.warn("Stage {} failed for file {} after {} attempt(s), giving up: {}",
+                        job.getStage(), job.getFileInfoId(), attempt, e.toString());
+                release(job, owner, ProcessingJobStatus.FAILED, e.toString());
+            } else {
+                stageMetrics.retried.incrementAndGet();
+                log.info("Stage {} failed for file {} (attempt {}), retrying: {}",
+                        job.getStage(), job.getFileInfoId(), attempt, e.toString());
+                release(job, owner, ProcessingJobStatus.PENDING, e.toString(), backoff(attempt));
+            }
+        }
+    }
+
+    private void release(ProcessingJob job, String owner, ProcessingJobStatus status, String error) {
+        release(job, owner, status, error, Duration.ZERO);
+    }
+
+    private void release(ProcessingJob job, String owner, ProcessingJobStatus status, String error, Duration delay) {
+        String truncated = error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        try {
+            transactionTemplate.executeWithoutResult(tx -> jobRepository.release(
+                    job.getId(), owner, status, LocalDateTime.now().plus(delay), truncated));
+        } catch (RuntimeException e) {
+            // The lease will expire and the job will be claimed again
+            log.warn("Could not record the outcome of processing job {}", job.getId(), e);
+        }
+    }
+
+    // retryBackoff, doubled per attempt, capped at an hour
+    private Duration backoff(int attempt) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempt - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        workerPool.shutdown();
+        try {
+            // Jobs still running after this keep their lease and are retried after a restart
+            workerPool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class StageMetrics {
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong retried = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        void succeeded(long nanos) {
+            succeeded.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        StageStats snapshot(String stage) {
+            long count = succeeded.get();
+            long average = count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count);
+            return new StageStats(stage, count, retried.get(), failed.get(), average,
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.springfile.processing;
+
+/**
+ * One enrichment step run for every uploaded file after its metadata is saved. Each stage is a Spring
+ * bean; {@link ProcessingPipeline} queues one job per stage per file and runs them on its worker pool.
+ * <p>
+ * Stages must be idempotent: a job runs at least once, and again after a failure or if its worker dies
+ * mid-run. Throwing schedules a retry with backoff, except for {@link PermanentProcessingException}.
+ * A file deleted before its job runs should be treated as done.
+ */
+public interface ProcessingStage {
+
+    /**
+     * Stable identifier stored with queued jobs; at most 32 characters.
+     */
+    String name();
+
+    void process(Long fileInfoId) throws Exception;
+}
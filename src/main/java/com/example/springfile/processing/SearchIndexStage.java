@@ -0,0 +1,38 @@
+package com.example.springfile.processing;
+
+import com.example.springfile.cluster.ClusterEventBus;
+import com.example.springfile.service.FileIndexedEvent;
+import com.example.springfile.service.SearchIndexer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Extracts the file's text and adds it to the search index, then has the other nodes of a cluster add it
+ * to theirs.
+ */
+@Component
+public class SearchIndexStage implements ProcessingStage {
+
+    public static final String NAME = "search-index";
+
+    private final SearchIndexer searchIndexer;
+    private final ClusterEventBus clusterEventBus;
+
+    @Autowired
+    public SearchIndexStage(SearchIndexer searchIndexer, ClusterEventBus clusterEventBus) {
+        this.searchIndexer = searchIndexer;
+        this.clusterEventBus = clusterEventBus;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void process(Long fileInfoId) throws Exception {
+        if (searchIndexer.indexFile(fileInfoId)) {
+            clusterEventBus.publish(new FileIndexedEvent(fileInfoId));
+        }
+    }
+}
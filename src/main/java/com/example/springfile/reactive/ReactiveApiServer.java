@@ -0,0 +1,132 @@
+package com.example.springfile.reactive;
+
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.service.FileQueryService;
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.HotFileCache;
+import com.example.springfile.service.StorageUsageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+
+/**
+ * Non-blocking variant of the file API for programmatic clients, served by Reactor Netty on its own
+ * port ({@code file.reactive-api.port}) next to the servlet application, which is unchanged. It mirrors
+ * the servlet API's paths, so a client switches by changing the port:
+ * <ul>
+ *   <li>{@code GET /api/files}: keyset-paginated listing,</li>
+ *   <li>{@code POST /api/files/stream}: streaming upload of the raw body,</li>
+ *   <li>{@code GET /files/{storedFilename}}: download with conditional requests and (for local files) Range.</li>
+ * </ul>
+ * Transfers run on {@code file.reactive-api.event-loop-threads} event-loop threads however many are in
+ * flight; only the metadata and blob-store steps borrow a thread from a bounded pool of
+ * {@code file.reactive-api.blocking-threads}, whose queue ({@code blocking-queue}) caps waiting work.
+ * Enable with {@code file.reactive-api.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "file.reactive-api.enabled", havingValue = "true")
+public class ReactiveApiServer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveApiServer.class);
+
+    private final ReactiveFileHandler handler;
+    private final ObjectMapper objectMapper;
+    private final String address;
+    private final int port;
+    private final int eventLoopThreads;
+    private final Scheduler blocking;
+
+    private LoopResources loops;
+    private volatile DisposableServer server;
+
+    @Autowired
+    public ReactiveApiServer(FileStorageService fileStorageService, FileQueryService fileQueryService,
+                             HotFileCache hotFileCache, StorageUsageService storageUsageService,
+                             FileMetrics fileMetrics, ObjectMapper objectMapper,
+                             @Value("${file.reactive-api.address:0.0.0.0}") String address,
+                             @Value("${file.reactive-api.port:8081}") int port,
+                             @Value("${file.reactive-api.event-loop-threads:0}") int eventLoopThreads,
+                             @Value("${file.reactive-api.blocking-threads:10}") int blockingThreads,
+                             @Value("${file.reactive-api.blocking-queue:1000}") int blockingQueue,
+                             @Value("${file.stream-upload.max-size}") DataSize maxUploadSize) {
+        this.objectMapper = objectMapper;
+        this.address = address;
+        this.port = port;
+        this.eventLoopThreads = eventLoopThreads > 0 ? eventLoopThreads : Runtime.getRuntime().availableProcessors();
+        this.blocking = Schedulers.newBoundedElastic(blockingThreads, blockingQueue, "reactive-api-blocking");
+        this.handler = new ReactiveFileHandler(fileStorageService, fileQueryService, hotFileCache, storageUsageService,
+                fileMetrics, blocking, maxUploadSize.toBytes());
+    }
+
+    RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .GET("/api/files", request -> Mono.defer(() -> handler.listFiles(request)))
+                .POST("/api/files/stream",
+                        contentType(MediaType.MULTIPART_FORM_DATA, MediaType.APPLICATION_FORM_URLENCODED).negate(),
+                        request -> Mono.defer(() -> handler.upload(request)))
+                .GET("/files/{storedFilename}", request -> Mono.defer(() -> handler.download(request)))
+                .onError(Exception.class, handler::error)
+                .build();
+    }
+
+    @Override
+    public void start() {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper)))
+                .build();
+        ReactorHttpHandlerAdapter adapter = new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(routes(), strategies));
+        loops = LoopResources.create("reactive-api", 1, eventLoopThreads, true);
+        server = HttpServer.create()
+                .host(address)
+                .port(port)
+                .runOn(loops)
+                .handle(adapter)
+                .bindNow();
+        log.info("Reactive file API listening on port {} ({} event-loop threads)", server.port(), eventLoopThreads);
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+            server = null;
+        }
+        if (loops != null) {
+            loops.disposeLater().block();
+        }
+        blocking.dispose();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * The port actually bound (differs from the configured one when that is 0).
+     */
+    public int getPort() {
+        return server != null ? server.port() : port;
+    }
+}
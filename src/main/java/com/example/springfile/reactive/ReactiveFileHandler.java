@@ -0,0 +1,351 @@
+package com.example.springfile.reactive;
+
+import com.example.springfile.dto.FileListFilter;
+import com.example.springfile.dto.UploadResultDto;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.service.FileQueryService;
+import com.example.springfile.service.ContentChecksums;
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.HotFileCache;
+import com.example.springfile.service.QuotaExceededException;
+import com.example.springfile.service.StagedUpload;
+import com.example.springfile.service.StorageUsageService;
+import com.example.springfile.service.StoredFile;
+import com.example.springfile.service.StoredFileNotFoundException;
+import com.example.springfile.service.UploadTooLargeException;
+import com.example.springfile.storage.TransferSource;
+import com.example.springfile.web.DownloadResponseWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Handlers of the reactive file API (see {@link ReactiveApiServer}). Request and response bodies are
+ * streamed on the event loop with backpressure: an upload is read from the socket only as fast as
+ * {@link DataBufferUtils#write} gets it onto disk through an AsynchronousFileChannel, and a download
+ * of a local file is one zero-copy region (sendfile) written as fast as the client reads. Everything
+ * that blocks — the JPA repositories, the blob store, reading from a remote storage backend — runs on
+ * the bounded {@code blocking} scheduler, never on an event-loop thread.
+ */
+class ReactiveFileHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveFileHandler.class);
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final FileQueryService fileQueryService;
+    private final HotFileCache hotFileCache;
+    private final StorageUsageService storageUsageService;
+    private final FileMetrics fileMetrics;
+    private final Scheduler blocking;
+    private final long maxUploadBytes;
+
+    ReactiveFileHandler(FileStorageService fileStorageService, FileQueryService fileQueryService,
+                        HotFileCache hotFileCache, StorageUsageService storageUsageService, FileMetrics fileMetrics,
+                        Scheduler blocking, long maxUploadBytes) {
+        this.fileStorageService = fileStorageService;
+        this.fileQueryService = fileQueryService;
+        this.hotFileCache = hotFileCache;
+        this.storageUsageService = storageUsageService;
+        this.fileMetrics = fileMetrics;
+        this.blocking = blocking;
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    // Same parameters and response as the servlet API's GET /api/files
+    Mono<ServerResponse> listFiles(ServerRequest request) {
+        FileListFilter filter = new FileListFilter(
+                request.queryParam("categoryId").map(Long::valueOf).orElse(null),
+                request.queryParam("subCategoryId").map(Long::valueOf).orElse(null),
+                request.queryParam("label").orElse(null),
+                request.queryParam("contentType").orElse(null));
+        String cursor = request.queryParam("cursor").orElse(null);
+        int size = request.queryParam("size").map(Integer::valueOf).orElse(FileQueryService.DEFAULT_PAGE_SIZE);
+        return Mono.fromCallable(() -> fileQueryService.listFiles(filter, cursor, size))
+                .subscribeOn(blocking)
+                .flatMap(page -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(page));
+    }
+
+    /**
+     * Same contract as the servlet API's {@code POST /api/files/stream}: the body is the raw file content,
+     * metadata travels as query parameters, and the body's Content-Type becomes the file's content type.
+     */
+    Mono<ServerResponse> upload(ServerRequest request) {
+        String filename = requiredParam(request, "filename");
+        String categoryValue = requiredParam(request, "category");
+        if (request.headers().contentLength().orElse(-1) > maxUploadBytes) {
+            // Declared length is already too big: refuse before reading a single byte
+            return Mono.error(new UploadTooLargeException("Upload exceeds the limit of " + maxUploadBytes + " bytes"));
+        }
+        String contentType = request.headers().contentType().map(MediaType::toString).orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        String originalFilename = StringUtils.cleanPath(filename);
+        Path stagingFile = fileStorageService.newStagingFile(originalFilename);
+        ContentChecksums checksums = new ContentChecksums();
+        long[] size = {0};
+        long started = System.nanoTime();
+
+        Flux<DataBuffer> body = request.body(BodyExtractors.toDataBuffers())
+                .doOnNext(buffer -> {
+                    size[0] += buffer.readableByteCount();
+                    if (size[0] > maxUploadBytes) {
+                        DataBufferUtils.release(buffer);
+                        throw new UploadTooLargeException("Upload exceeds the limit of " + maxUploadBytes + " bytes");
+                    }
+                    // Hashed before the write releases the buffer; does not move its read position
+                    try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                        iterator.forEachRemaining(checksums::update);
+                    }
+                });
+
+        // The quota is looked up in the database, so off the event loop; a body of unknown length is checked
+        // against it once stored
+        Mono<Void> quota = Mono.<Void>fromRunnable(() -> storageUsageService.checkQuota(categoryValue,
+                request.headers().contentLength().orElse(-1))).subscribeOn(blocking);
+        return quota.then(DataBufferUtils.write(body, stagingFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                        .doOnError(e -> fileMetrics.recordUploadStorage(System.nanoTime() - started, 0, false)))
+                .then(Mono.fromCallable(() -> {
+                    force(stagingFile); // The bytes are durable before the file becomes visible
+                    StagedUpload staged = fileStorageService.staged(stagingFile, checksums, System.nanoTime() - started);
+                    return saveUpload(staged, originalFilename, contentType, request, categoryValue);
+                }).subscribeOn(blocking))
+                .doFinally(signal -> {
+                    if (signal != SignalType.ON_COMPLETE) {
+                        // Failed or the client went away: the staging file is ours to remove
+                        blocking.schedule(() -> deleteQuietly(stagingFile));
+                    }
+                })
+                .flatMap(result -> ServerResponse.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).bodyValue(result));
+    }
+
+    private UploadResultDto saveUpload(StagedUpload staged, String originalFilename, String contentType,
+                                       ServerRequest request, String categoryValue) {
+        StoredFile storedFile = fileStorageService.storeStaged(staged);
+        FileInfo fileInfo;
+        try {
+            fileInfo = fileStorageService.saveFileMetadata(originalFilename, storedFile, contentType,
+                    FileStorageService.parseLabels(request.queryParam("labels").orElse(null)),
+                    categoryValue, request.queryParam("newCategory").orElse(null),
+                    request.queryParam("subCategory").orElse(null), request.queryParam("newSubCategory").orElse(null));
+        } catch (RuntimeException e) {
+            // Don't leave an unreferenced file behind when the metadata is rejected
+            fileStorageService.discardStoredFile(storedFile);
+            throw e;
+        }
+        log.info("Reactive-uploaded {} ({} bytes) as {}", originalFilename, storedFile.getSize(), storedFile.getStoragePath());
+        return UploadResultDto.of(fileInfo);
+    }
+
+    /**
+     * {@code GET /files/{storedFilename}} with conditional requests. A small file held by the
+     * {@link HotFileCache} is sent from memory and a file on local disk as a zero-copy region, both
+     * honouring Range; other backends stream the whole content, read on the blocking scheduler as the
+     * client consumes it.
+     */
+    Mono<ServerResponse> download(ServerRequest request) {
+        String storedFilename = request.pathVariable("storedFilename");
+        long started = System.nanoTime();
+        return Mono.fromCallable(() -> {
+                    HotFileCache.Entry cached = hotFileCache.get(storedFilename)
+                            .orElseThrow(() -> new StoredFileNotFoundException("File not found " + storedFilename));
+                    FileInfo fileInfo = cached.fileInfo();
+                    // Compressed content goes out as stored to clients that accept its coding
+                    String encoding = fileInfo.getContentEncoding() != null && DownloadResponseWriter.acceptsEncoding(
+                            request.headers().firstHeader(HttpHeaders.ACCEPT_ENCODING), fileInfo.getContentEncoding())
+                            ? fileInfo.getContentEncoding() : null;
+                    if (fileInfo.getContentEncoding() != null) {
+                        fileMetrics.recordEncodedDownload(encoding == null);
+                    }
+                    // Cached bytes are the stored ones, so they only serve clients that get the stored encoding
+                    if (cached.content() != null && (fileInfo.getContentEncoding() == null || encoding != null)) {
+                        return new Download(fileInfo, TransferSource.ofBuffer(cached.content()), encoding, cached.content());
+                    }
+                    return new Download(fileInfo, encoding != null
+                            ? fileStorageService.openEncoded(fileInfo) : fileStorageService.openForTransfer(fileInfo), encoding, null);
+                })
+                .subscribeOn(blocking)
+                .flatMap(download -> {
+                    FileInfo fileInfo = download.fileInfo();
+                    Instant lastModified = fileInfo.getUploadTime() != null
+                            ? fileInfo.getUploadTime().atZone(ZoneId.systemDefault()).toInstant()
+                            : download.source().lastModified().orElse(Instant.EPOCH);
+                    String etag = fileInfo.getSha256() != null
+                            ? "\"" + fileInfo.getSha256() + (download.encoding() != null ? "-" + download.encoding() : "") + "\""
+                            : "W/\"" + download.source().length() + "-" + lastModified.toEpochMilli() + "\"";
+                    return request.checkNotModified(lastModified, etag)
+                            .doOnNext(notModified -> fileMetrics.recordDownload(System.nanoTime() - started, 0))
+                            .switchIfEmpty(Mono.defer(() -> body(download, etag, lastModified, started)));
+                });
+    }
+
+    // Timed until the response is handed to the server, like sendfile downloads on the servlet side
+    private Mono<ServerResponse> body(Download download, String etag, Instant lastModified, long started) {
+        FileInfo fileInfo = download.fileInfo();
+        ServerResponse.BodyBuilder builder = ServerResponse.ok()
+                .contentType(MediaType.parseMediaType(fileInfo.getContentType() != null
+                        ? fileInfo.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileInfo.getFilename(), StandardCharsets.UTF_8).build().toString())
+                .eTag(etag)
+                .lastModified(lastModified)
+                .cacheControl(CacheControl.noCache().cachePrivate());
+        if (fileInfo.getContentEncoding() != null) {
+            builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (download.encoding() != null) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, download.encoding());
+        }
+        if (download.cached() != null) {
+            // Served like a file, so Range works the same
+            return builder.body(BodyInserters.fromResource(new BufferResource(download.cached(), fileInfo.getStoragePath())))
+                    .doOnNext(response -> fileMetrics.recordDownload(System.nanoTime() - started, download.source().length()));
+        }
+        Optional<Path> file = download.source().file();
+        if (file.isPresent()) {
+            // Written as a zero-copy FileRegion; Range requests get 206 with the requested region(s)
+            return builder.body(BodyInserters.fromResource(new FileSystemResource(file.get())))
+                    .doOnNext(response -> fileMetrics.recordDownload(System.nanoTime() - started, download.source().length()));
+        }
+        Flux<DataBuffer> content = DataBufferUtils.readInputStream(() -> download.encoding() != null
+                        ? fileStorageService.openEncodedStream(fileInfo) : fileStorageService.openStream(fileInfo),
+                DefaultDataBufferFactory.sharedInstance, STREAM_BUFFER_SIZE).subscribeOn(blocking);
+        return builder.contentLength(download.source().length())
+                .header(HttpHeaders.ACCEPT_RANGES, "none")
+                .body(BodyInserters.fromDataBuffers(content))
+                .doOnNext(response -> fileMetrics.recordDownload(System.nanoTime() - started, download.source().length()));
+    }
+
+    Mono<ServerResponse> error(Throwable e, ServerRequest request) {
+        HttpStatus status;
+        if (e instanceof UploadTooLargeException) {
+            status = HttpStatus.PAYLOAD_TOO_LARGE;
+        } else if (e instanceof QuotaExceededException) {
+            status = HttpStatus.INSUFFICIENT_STORAGE;
+        } else if (e instanceof StoredFileNotFoundException) {
+            status = HttpStatus.NOT_FOUND;
+        } else if (e instanceof IllegalArgumentException) {
+            status = HttpStatus.BAD_REQUEST;
+        } else {
+            log.error("Reactive API request {} {} failed", request.method(), request.path(), e);
+            return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("error", "Internal error"));
+        }
+        log.warn("Rejected reactive API request {} {}: {}", request.method(), request.path(), e.getMessage());
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("error", String.valueOf(e.getMessage())));
+    }
+
+    // cached: the stored bytes when they come from the HotFileCache
+    private record Download(FileInfo fileInfo, TransferSource source, String encoding, ByteBuffer cached) {
+    }
+
+    // Read-only view of cached bytes; every reader gets its own position
+    private static final class BufferResource extends AbstractResource {
+        private final ByteBuffer content;
+        private final String description;
+
+        BufferResource(ByteBuffer content, String description) {
+            this.content = content;
+            this.description = description;
+        }
+
+        @Override
+        public ReadableByteChannel readableChannel() {
+            ByteBuffer view = content.duplicate();
+            return new ReadableByteChannel() {
+                private boolean open = true;
+
+                @Override
+                public int read(ByteBuffer target) {
+                    if (!view.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(view.remaining(), target.remaining());
+                    target.put(view.slice(view.position(), count));
+                    view.position(view.position() + count);
+                    return count;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return open;
+                }
+
+                @Override
+                public void close() {
+                    open = false;
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return Channels.newInputStream(readableChannel());
+        }
+
+        @Override
+        public long contentLength() {
+            return content.remaining();
+        }
+
+        @Override
+        public String getDescription() {
+            return "cached content of " + description;
+        }
+    }
+
+    private static String requiredParam(ServerRequest request, String name) {
+        return request.queryParam(name)
+                .filter(StringUtils::hasText)
+                .orElseThrow(() -> new IllegalArgumentException("Missing request parameter: " + name));
+    }
+
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not remove staging file {}", file, e);
+        }
+    }
+}
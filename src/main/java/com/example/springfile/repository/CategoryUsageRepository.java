@@ -0,0 +1,33 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.CategoryUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CategoryUsageRepository extends JpaRepository<CategoryUsage, Long> {
+
+    // Single relative UPDATEs, like blob reference counting: concurrent uploads never lose an increment, and
+    // the quota is checked against the row as locked by this statement, so two uploads can't both squeeze
+    // into the last free bytes
+    @Modifying
+    @Query("UPDATE CategoryUsage u SET u.fileCount = u.fileCount + :files, u.totalBytes = u.totalBytes + :bytes " +
+           "WHERE u.categoryId = :categoryId AND (u.quotaBytes IS NULL OR u.totalBytes + :bytes <= u.quotaBytes)")
+    int addWithinQuota(Long categoryId, long files, long bytes);
+
+    // Deletions and corrections, which the quota never refuses
+    @Modifying
+    @Query("UPDATE CategoryUsage u SET u.fileCount = u.fileCount + :files, u.totalBytes = u.totalBytes + :bytes " +
+           "WHERE u.categoryId = :categoryId")
+    int add(Long categoryId, long files, long bytes);
+
+    @Modifying
+    @Query("INSERT INTO CategoryUsage (categoryId, fileCount, totalBytes) VALUES (:categoryId, 0, 0)")
+    int insertEmpty(Long categoryId);
+
+    @Modifying
+    @Query("UPDATE CategoryUsage u SET u.quotaBytes = :quotaBytes WHERE u.categoryId = :categoryId")
+    int updateQuota(Long categoryId, Long quotaBytes);
+}
@@ -0,0 +1,28 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.ClusterLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ClusterLockRepository extends JpaRepository<ClusterLock, String> {
+
+    // Conditional, like claiming a processing job: of nodes racing for a free or expired lease exactly one
+    // gets 1 back; the holder itself always does, which renews it
+    @Modifying
+    @Query("UPDATE ClusterLock l SET l.owner = :owner, l.lockedUntil = :lockedUntil WHERE l.name = :name " +
+           "AND (l.owner = :owner OR l.owner IS NULL OR l.lockedUntil < :now)")
+    int acquire(String name, String owner, LocalDateTime now, LocalDateTime lockedUntil);
+
+    @Modifying
+    @Query("UPDATE ClusterLock l SET l.owner = NULL, l.lockedUntil = NULL WHERE l.name = :name AND l.owner = :owner")
+    int release(String name, String owner);
+
+    @Modifying
+    @Query("INSERT INTO ClusterLock (name) VALUES (:name)")
+    int insertFree(String name);
+}
@@ -0,0 +1,27 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.ClusterMessage;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ClusterMessageRepository extends JpaRepository<ClusterMessage, Long> {
+
+    List<ClusterMessage> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    List<ClusterMessage> findByIdIn(Collection<Long> ids);
+
+    @Query("SELECT COALESCE(MAX(m.id), 0) FROM ClusterMessage m")
+    long findMaxId();
+
+    @Modifying
+    @Query("DELETE FROM ClusterMessage m WHERE m.createdAt < :cutoff")
+    int deleteOlderThan(LocalDateTime cutoff);
+}
@@ -0,0 +1,92 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.ContentBlob;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    // Reference counting is done with single UPDATE statements so concurrent uploads never lose an increment;
+    // the row lock they take also serializes "last reference released" against "new reference taken".
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = b.refCount + 1, b.lastReferencedAt = :now WHERE b.sha256 = :sha256")
+    int incrementRefCount(String sha256, LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = b.refCount - 1 WHERE b.sha256 = :sha256 AND b.refCount > 0")
+    int decrementRefCount(String sha256);
+
+    @Modifying
+    @Query("INSERT INTO ContentBlob (sha256, size, refCount, createdAt, lastReferencedAt) " +
+           "VALUES (:sha256, :size, 1, :createdAt, :createdAt)")
+    int insertWithOneReference(String sha256, long size, LocalDateTime createdAt);
+
+    // Drops several references at once (the reaper removing a batch of files); never below zero
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = CASE WHEN b.refCount > :count THEN b.refCount - :count ELSE 0 END " +
+           "WHERE b.sha256 = :sha256")
+    int decrementRefCountBy(String sha256, long count);
+
+    @Query("SELECT b.refCount FROM ContentBlob b WHERE b.sha256 = :sha256")
+    Optional<Long> findRefCount(String sha256);
+
+    @Query("SELECT b.encoding FROM ContentBlob b WHERE b.sha256 = :sha256")
+    Optional<String> findEncoding(String sha256);
+
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.encoding = :encoding, b.storedSize = :storedSize, b.crc32c = :crc32c WHERE b.sha256 = :sha256")
+    int updateStoredForm(String sha256, String encoding, long storedSize, long crc32c);
+
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.storedSize = :storedSize, b.crc32c = :crc32c WHERE b.sha256 = :sha256")
+    int updateChecksum(String sha256, long storedSize, long crc32c);
+
+    // One page of blobs in key order, for the integrity scrubber
+    List<ContentBlob> findBySha256GreaterThanOrderBySha256(String sha256, Limit limit);
+
+    // Of the given blobs, those that some file points at, counting deleted files the reaper has not removed yet
+    @Query(value = "SELECT DISTINCT blob_sha256 FROM file_info WHERE blob_sha256 IN :sha256s", nativeQuery = true)
+    List<String> findReferenced(Collection<String> sha256s);
+
+    // How many files point at each of the given blobs, counting deleted files the reaper has not removed yet;
+    // blobs no file points at are left out
+    interface FileCount {
+        String getSha256();
+
+        Long getFiles();
+    }
+
+    @Query(value = "SELECT blob_sha256 AS sha256, COUNT(*) AS files FROM file_info WHERE blob_sha256 IN :sha256s " +
+                   "GROUP BY blob_sha256", nativeQuery = true)
+    List<FileCount> countFiles(Collection<String> sha256s);
+
+    // Sets the reference count to the number of files pointing at the blob, for reconciliation; only once the
+    // blob has gone unreferenced since the cutoff, as an upload takes its reference before inserting its file
+    @Modifying
+    @Query(value = "UPDATE content_blob SET ref_count = (SELECT COUNT(*) FROM file_info f WHERE f.blob_sha256 = content_blob.sha256) " +
+                   "WHERE sha256 = :sha256 AND last_referenced_at < :cutoff " +
+                   "AND ref_count <> (SELECT COUNT(*) FROM file_info f WHERE f.blob_sha256 = content_blob.sha256)",
+           nativeQuery = true)
+    int recountReferences(String sha256, LocalDateTime cutoff);
+
+    // A row without references for content that has none, only there to hold the row lock while reconciliation
+    // deletes the content's orphaned objects; deleted again before that transaction commits
+    @Modifying
+    @Query(value = "INSERT INTO content_blob (sha256, size, ref_count, created_at, last_referenced_at) " +
+                   "SELECT :sha256, 0, 0, :now, :now WHERE NOT EXISTS (SELECT 1 FROM content_blob WHERE sha256 = :sha256)",
+           nativeQuery = true)
+    int insertPlaceholder(String sha256, LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM ContentBlob b WHERE b.sha256 = :sha256 AND b.refCount = 0")
+    int deleteIfUnreferenced(String sha256);
+}
@@ -0,0 +1,42 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.dto.FileSelection;
+import com.example.springfile.dto.FileListFilter;
+import com.example.springfile.dto.FileSummaryDto;
+import com.example.springfile.model.FileInfo;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The file listing query and the queries over a selection of files (bulk delete, archive download), built
+ * per request from the filters actually given so the database can pick the index matching them
+ * (see FileInfoListingRepositoryImpl).
+ */
+public interface FileInfoListingRepository {
+
+    /**
+     * One page of summaries, newest first (ORDER BY uploadTime DESC, id DESC).
+     * @param afterTime With afterId, the position of the last row already returned; null for the first page.
+     * @param limit     Maximum number of rows.
+     */
+    List<FileSummaryDto> findSummaries(FileListFilter filter, LocalDateTime afterTime, Long afterId, int limit);
+
+    /**
+     * Marks the files selected as deleted, in one UPDATE; files already deleted are left alone.
+     * Needs a transaction. An empty selection marks every file.
+     * @param deletedAt Stored in every row marked with deletedBy, so the caller can find them again.
+     * @param deletedBy The node deleting them.
+     * @return The number of files marked.
+     */
+    int markDeleted(FileSelection selection, LocalDateTime deletedAt, String deletedBy);
+
+    /**
+     * One batch of the files selected, in id order, with category and sub-category loaded.
+     * @param afterId The id of the last file already returned; 0 for the first batch.
+     * @param limit   Maximum number of rows.
+     */
+    List<FileInfo> findSelected(FileSelection selection, long afterId, int limit);
+
+    long countSelected(FileSelection selection);
+}
@@ -1,23 +1,29 @@
 package com.example.springfile.repository; // Updated package declaration
 
+import com.example.springfile.dto.FileSummaryDto;
+import com.example.springfile.model.ContentBlob;
 import com.example.springfile.model.FileInfo; // Updated import for FileInfo
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional; // Added import
 
 @Repository
-public interface FileInfoRepository extends JpaRepository<FileInfo, Long> {
+public interface FileInfoRepository extends JpaRepository<FileInfo, Long>, FileInfoListingRepository {
 
-    // Override findAll to eagerly fetch related entities to avoid LazyInitializationException in template
-    @Query("SELECT DISTINCT fi FROM FileInfo fi " +
-           "LEFT JOIN FETCH fi.category " +
-           "LEFT JOIN FETCH fi.subCategory " +
-           "LEFT JOIN FETCH fi.labels") // Added DISTINCT and fetches for category/subCategory
-    @Override
-    List<FileInfo> findAll();
+    // Shared projection of the listing (see FileInfoListingRepository) and the search results. The labels
+    // are aggregated per row by a correlated subquery rather than a join, so the outer query keeps
+    // reading rows in index order and needs no GROUP BY
+    String SUMMARY_SELECT = "SELECT new com.example.springfile.dto.FileSummaryDto(" +
+            "fi.id, fi.filename, fi.extension, fi.storagePath, fi.contentType, fi.uploadTime, c.id, c.name, sc.id, sc.name, " +
+            "(SELECT LISTAGG(l.name, '" + FileSummaryDto.LABEL_SEPARATOR + "') WITHIN GROUP (ORDER BY INDEX(l)) FROM fi.labels l)) " +
+            "FROM FileInfo fi LEFT JOIN fi.category c LEFT JOIN fi.subCategory sc ";
 
     // Method to find FileInfo by its unique storage path, eagerly fetching related entities
     @Query("SELECT fi FROM FileInfo fi " +
@@ -27,6 +33,97 @@ public interface FileInfoRepository extends JpaRepository<FileInfo, Long> {
            "WHERE fi.storagePath = :storagePath")
     Optional<FileInfo> findByStoragePath(String storagePath);
 
+    // Rows for a page of search hits (in no particular order; the caller restores the ranking)
+    @Query(SUMMARY_SELECT + "WHERE fi.id IN :ids")
+    List<FileSummaryDto> findSummariesByIds(Collection<Long> ids);
+
+    // One file with everything the search index needs
+    @Query("SELECT fi FROM FileInfo fi " +
+           "LEFT JOIN FETCH fi.category " +
+           "LEFT JOIN FETCH fi.subCategory " +
+           "LEFT JOIN FETCH fi.labels " +
+           "WHERE fi.id = :id")
+    Optional<FileInfo> findWithDetailsById(Long id);
+
+    // All ids in order, a batch at a time, for full reindexing
+    @Query("SELECT fi.id FROM FileInfo fi WHERE fi.id > :afterId ORDER BY fi.id")
+    List<Long> findIdsAfter(Long afterId, Limit limit);
+
+    // Files still stored flat (pre-deduplication), in id order for batched migration
+    List<FileInfo> findTop100ByBlobIsNullAndIdGreaterThanOrderByIdAsc(Long id);
+
+    // Files whose content is the given blob
+    @Query("SELECT fi.storagePath FROM FileInfo fi WHERE fi.blob.sha256 = :sha256")
+    List<String> findStoragePathsByBlob(String sha256);
+
+    // Of the given storage paths, those some file has, deleted files included (their content is still
+    // there until the reaper removes them)
+    @Query(value = "SELECT storage_path FROM file_info WHERE storage_path IN :storagePaths", nativeQuery = true)
+    List<String> findExistingStoragePaths(Collection<String> storagePaths);
+
+    /**
+     * A deleted file still waiting for the reaper. Deleted rows are invisible to entity queries
+     * (see FileInfo), so these are read with native SQL.
+     */
+    interface DeletedFile {
+        Long getId();
+
+        String getStoragePath();
+
+        String getBlobSha256(); // null for files stored flat
+    }
+
+    @Query(value = "SELECT id, storage_path AS storagePath, blob_sha256 AS blobSha256 FROM file_info " +
+                   "WHERE deleted_at = :deletedAt AND deleted_by = :deletedBy", nativeQuery = true)
+    List<DeletedFile> findDeletedAt(LocalDateTime deletedAt, String deletedBy);
+
+    // Count and size of the files a node marked deleted at the given time, per category and sub-category, for the
+    // usage counters (see StorageUsageService)
+    interface DeletedTotals {
+        Long getCategoryId();
+
+        Long getSubCategoryId();
+
+        Long getFileCount();
+
+        Long getTotalBytes();
+    }
+
+    @Query(value = "SELECT category_id AS categoryId, sub_category_id AS subCategoryId, COUNT(*) AS fileCount, " +
+                   "COALESCE(SUM(size), 0) AS totalBytes FROM file_info " +
+                   "WHERE deleted_at = :deletedAt AND deleted_by = :deletedBy " +
+                   "GROUP BY category_id, sub_category_id", nativeQuery = true)
+    List<DeletedTotals> sumDeletedAt(LocalDateTime deletedAt, String deletedBy);
+
+    // Oldest deletions first
+    @Query(value = "SELECT id, storage_path AS storagePath, blob_sha256 AS blobSha256 FROM file_info " +
+                   "WHERE deleted_at IS NOT NULL ORDER BY deleted_at, id LIMIT :limit", nativeQuery = true)
+    List<DeletedFile> findDeleted(int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM file_info_label WHERE file_info_id IN :ids", nativeQuery = true)
+    int deleteLabelLinks(Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM file_info WHERE id IN :ids AND deleted_at IS NOT NULL", nativeQuery = true)
+    int purgeDeleted(Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE FileInfo fi SET fi.blob = :blob, fi.sha256 = :sha256, fi.size = :size, fi.contentEncoding = :contentEncoding WHERE fi.id = :id")
+    int attachBlob(Long id, ContentBlob blob, String sha256, long size, String contentEncoding);
+
     // Method to find all FileInfo entities associated with a specific SubCategory
     List<FileInfo> findBySubCategory(com.example.springfile.model.SubCategory subCategory);
+
+    // Records the sniffed type, and adopts it as the content type when the client sent none worth keeping
+    @Modifying
+    @Query("UPDATE FileInfo fi SET fi.detectedContentType = :detected, " +
+           "fi.contentType = CASE WHEN fi.contentType IS NULL OR fi.contentType = 'application/octet-stream' " +
+           "THEN :detected ELSE fi.contentType END WHERE fi.id = :id")
+    int updateDetectedContentType(Long id, String detected);
+
+    // Files never content-sniffed and with no sniffing job outstanding (uploaded before the pipeline existed)
+    @Query("SELECT fi.id FROM FileInfo fi WHERE fi.detectedContentType IS NULL AND fi.id > :afterId " +
+           "AND NOT EXISTS (SELECT 1 FROM ProcessingJob j WHERE j.fileInfoId = fi.id AND j.stage = :stage) ORDER BY fi.id")
+    List<Long> findIdsAwaitingSniffing(Long afterId, String stage, Limit limit);
 }
@@ -0,0 +1,16 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.Label;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface LabelRepository extends JpaRepository<Label, Long> {
+    Optional<Label> findByName(String name);
+
+    List<Label> findByNameIn(Collection<String> names);
+}
@@ -0,0 +1,25 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.PreviewAsset;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PreviewAssetRepository extends JpaRepository<PreviewAsset, String> {
+
+    @Modifying
+    @Query("UPDATE PreviewAsset p SET p.lastAccessed = :lastAccessed WHERE p.storageKey = :storageKey")
+    int touch(String storageKey, LocalDateTime lastAccessed);
+
+    @Query("SELECT COALESCE(SUM(p.size), 0) FROM PreviewAsset p")
+    long totalSize();
+
+    // Eviction candidates, least recently accessed first
+    List<PreviewAsset> findByOrderByLastAccessedAsc(Limit limit);
+}
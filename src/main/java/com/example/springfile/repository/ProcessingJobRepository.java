@@ -0,0 +1,59 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.ProcessingJob;
+import com.example.springfile.model.ProcessingJobStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProcessingJobRepository extends JpaRepository<ProcessingJob, Long> {
+
+    // Jobs a worker may take: pending and due, or running under a lease that has expired (its worker died)
+    String CLAIMABLE = "((j.status = com.example.springfile.model.ProcessingJobStatus.PENDING AND j.nextAttemptAt <= :now) " +
+                       "OR (j.status = com.example.springfile.model.ProcessingJobStatus.RUNNING AND j.lockedUntil < :now))";
+
+    @Query("SELECT j FROM ProcessingJob j WHERE " + CLAIMABLE + " ORDER BY j.nextAttemptAt, j.id")
+    List<ProcessingJob> findClaimable(LocalDateTime now, Limit limit);
+
+    // Claiming is a conditional UPDATE, so when several workers (or nodes) race for a job exactly one gets 1 back
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.status = com.example.springfile.model.ProcessingJobStatus.RUNNING, " +
+           "j.lockedBy = :owner, j.lockedUntil = :lockedUntil, j.attempts = j.attempts + 1 " +
+           "WHERE j.id = :id AND " + CLAIMABLE)
+    int claim(Long id, String owner, LocalDateTime now, LocalDateTime lockedUntil);
+
+    // Extends the leases of jobs still held under the given claims
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.lockedUntil = :lockedUntil WHERE j.lockedBy IN :owners")
+    int renewLeases(Collection<String> owners, LocalDateTime lockedUntil);
+
+    @Modifying
+    @Query("DELETE FROM ProcessingJob j WHERE j.id = :id AND j.lockedBy = :owner")
+    int complete(Long id, String owner);
+
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.status = :status, j.nextAttemptAt = :nextAttemptAt, j.lastError = :error, " +
+           "j.lockedBy = NULL, j.lockedUntil = NULL WHERE j.id = :id AND j.lockedBy = :owner")
+    int release(Long id, String owner, ProcessingJobStatus status, LocalDateTime nextAttemptAt, String error);
+
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.status = com.example.springfile.model.ProcessingJobStatus.PENDING, " +
+           "j.attempts = 0, j.nextAttemptAt = :now WHERE j.status = com.example.springfile.model.ProcessingJobStatus.FAILED")
+    int retryFailed(LocalDateTime now);
+
+    // [stage, status, count] rows for the stats endpoint
+    @Query("SELECT j.stage, j.status, COUNT(j) FROM ProcessingJob j GROUP BY j.stage, j.status")
+    List<Object[]> countByStageAndStatus();
+
+    // Jobs of files the reaper is removing
+    @Modifying
+    @Query("DELETE FROM ProcessingJob j WHERE j.fileInfoId IN :fileInfoIds")
+    int deleteByFileInfoIds(Collection<Long> fileInfoIds);
+}
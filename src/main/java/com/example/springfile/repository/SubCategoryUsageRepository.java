@@ -0,0 +1,21 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.SubCategoryUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SubCategoryUsageRepository extends JpaRepository<SubCategoryUsage, Long> {
+
+    // See CategoryUsageRepository; sub-categories have no quota of their own
+    @Modifying
+    @Query("UPDATE SubCategoryUsage u SET u.fileCount = u.fileCount + :files, u.totalBytes = u.totalBytes + :bytes " +
+           "WHERE u.subCategoryId = :subCategoryId")
+    int add(Long subCategoryId, long files, long bytes);
+
+    @Modifying
+    @Query("INSERT INTO SubCategoryUsage (subCategoryId, fileCount, totalBytes) VALUES (:subCategoryId, 0, 0)")
+    int insertEmpty(Long subCategoryId);
+}
@@ -0,0 +1,23 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.UploadChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, UploadChunk.Key> {
+
+    @Query("SELECT c.key.chunkIndex FROM UploadChunk c WHERE c.key.sessionId = :sessionId ORDER BY c.key.chunkIndex")
+    List<Integer> findChunkIndexes(String sessionId);
+
+    @Query("SELECT COUNT(c) FROM UploadChunk c WHERE c.key.sessionId = :sessionId")
+    long countBySessionId(String sessionId);
+
+    @Modifying
+    @Query("DELETE FROM UploadChunk c WHERE c.key.sessionId = :sessionId")
+    int deleteBySessionId(String sessionId);
+}
@@ -0,0 +1,28 @@
+package com.example.springfile.repository;
+
+import com.example.springfile.model.UploadSession;
+import com.example.springfile.model.UploadSessionStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @Query("SELECT s FROM UploadSession s WHERE s.expiresAt < :now ORDER BY s.expiresAt")
+    List<UploadSession> findExpired(LocalDateTime now, Limit limit);
+
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.expiresAt = :expiresAt WHERE s.id = :id")
+    int extend(String id, LocalDateTime expiresAt);
+
+    // Conditional, so of two concurrent completion requests exactly one gets 1 back
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.status = :to, s.expiresAt = :expiresAt WHERE s.id = :id AND s.status = :from")
+    int transition(String id, UploadSessionStatus from, UploadSessionStatus to, LocalDateTime expiresAt);
+}
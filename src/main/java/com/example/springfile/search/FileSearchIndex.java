@@ -0,0 +1,214 @@
+package com.example.springfile.search;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded Lucene index over file metadata and extracted text, kept on local disk under
+ * {@code file.search.index-dir}. Documents are keyed by FileInfo id, so indexing a file again replaces
+ * its document. Changes become searchable within {@code file.search.refresh-ms} (near-real-time reader
+ * refresh) and durable at the next commit, every {@code file.search.commit-interval-ms} and on shutdown;
+ * anything lost in a crash before a commit is restored by a reindex.
+ */
+@Component
+public class FileSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSearchIndex.class);
+
+    static final String ID = "id";
+    static final String FILENAME = "filename";
+    static final String LABELS = "labels";
+    static final String CATEGORY = "category";
+    static final String SUB_CATEGORY = "subCategory";
+    static final String CONTENT_TYPE = "contentType";
+    static final String CONTENT = "content";
+    static final String GENERATION = "generation"; // When the document was (re)indexed, for reindex sweeps
+
+    // Matches in the name count most, body text least
+    private static final Map<String, Float> FIELD_WEIGHTS = Map.of(
+            FILENAME, 4f, LABELS, 3f, CATEGORY, 2f, SUB_CATEGORY, 2f, CONTENT_TYPE, 1f, CONTENT, 1f);
+
+    // Deepest result a query may page to; ranking everything above it is what a page costs
+    public static final int MAX_RESULT_WINDOW = 10_000;
+
+    private final SearchAnalyzer analyzer = new SearchAnalyzer();
+    private final FSDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * A page of ranked hits: FileInfo ids best first, and how many documents matched in total
+     * ({@code totalIsLowerBound} when counting stopped early, which Lucene does past 1000 hits).
+     */
+    public record Hits(List<Long> ids, long total, boolean totalIsLowerBound) {
+    }
+
+    @Autowired
+    public FileSearchIndex(@Value("${file.search.index-dir}") String indexDir,
+                           @Value("${file.search.refresh-ms:1000}") long refreshMillis,
+                           @Value("${file.search.commit-interval-ms:60000}") long commitIntervalMillis) throws IOException {
+        Path path = Files.createDirectories(Paths.get(indexDir).toAbsolutePath().normalize());
+        this.directory = FSDirectory.open(path);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setRAMBufferSizeMB(64);
+        this.writer = new IndexWriter(directory, config);
+        this.searcherManager = new SearcherManager(writer, null);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::refreshQuietly, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::commitQuietly, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Search index at {} holds {} documents", path, writer.getDocStats().numDocs);
+    }
+
+    /**
+     * Adds or replaces the document of one file.
+     * @param generation Marks the document as indexed at this point; see {@link #deleteOlderThan}.
+     */
+    public void index(SearchDocument document, long generation) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField(ID, document.id().toString(), Field.Store.YES));
+        doc.add(new LongPoint(GENERATION, generation));
+        addText(doc, FILENAME, document.filename());
+        if (document.labels() != null) {
+            document.labels().forEach(label -> addText(doc, LABELS, label));
+        }
+        addText(doc, CATEGORY, document.categoryName());
+        addText(doc, SUB_CATEGORY, document.subCategoryName());
+        addText(doc, CONTENT_TYPE, document.contentType());
+        addText(doc, CONTENT, document.content());
+        writer.updateDocument(new Term(ID, document.id().toString()), doc);
+    }
+
+    private static void addText(Document doc, String field, String value) {
+        if (value != null && !value.isBlank()) {
+            doc.add(new TextField(field, value, Field.Store.NO));
+        }
+    }
+
+    public void delete(Long id) throws IOException {
+        writer.deleteDocuments(new Term(ID, id.toString()));
+    }
+
+    /**
+     * Removes every document last indexed before {@code generation}: after a full reindex that started
+     * at that generation, these are files that no longer exist.
+     */
+    public void deleteOlderThan(long generation) throws IOException {
+        writer.deleteDocuments(LongPoint.newRangeQuery(GENERATION, Long.MIN_VALUE, generation - 1));
+    }
+
+    /**
+     * Ranks documents against a user query, in the simple query syntax: words (all must match, in any
+     * field), {@code "phrases"}, {@code -excluded}, {@code a | b}, {@code prefix*}.
+     * @param offset Number of top hits to skip; offset + limit is capped at {@link #MAX_RESULT_WINDOW}.
+     */
+    public Hits search(String queryText, int offset, int limit) throws IOException {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, FIELD_WEIGHTS);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query query = parser.parse(queryText);
+        int window = Math.min(offset + limit, MAX_RESULT_WINDOW);
+        if (query == null || window <= offset) {
+            return new Hits(List.of(), 0, false);
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(query, window);
+            StoredFields storedFields = searcher.storedFields();
+            List<Long> ids = new ArrayList<>(Math.max(0, topDocs.scoreDocs.length - offset));
+            for (int i = offset; i < topDocs.scoreDocs.length; i++) {
+                ScoreDoc hit = topDocs.scoreDocs[i];
+                ids.add(Long.valueOf(storedFields.document(hit.doc).get(ID)));
+            }
+            return new Hits(ids, topDocs.totalHits.value,
+                    topDocs.totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    public int numDocs() {
+        return writer.getDocStats().numDocs;
+    }
+
+    /**
+     * Makes all changes so far searchable now instead of at the next scheduled refresh.
+     */
+    public void refresh() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    public void commit() throws IOException {
+        if (writer.hasUncommittedChanges()) {
+            writer.commit();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not refresh the search index reader", e);
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not commit the search index", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        maintenance.shutdown();
+        try {
+            searcherManager.close();
+            writer.close(); // Commits pending changes
+            directory.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the search index", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.springfile.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cjk.CJKBigramFilter;
+import org.apache.lucene.analysis.cjk.CJKWidthFilter;
+import org.apache.lucene.analysis.pattern.PatternReplaceCharFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+/**
+ * Analyzer for every searchable field, used at index and query time alike.
+ * <ul>
+ *   <li>Dots, underscores, dashes and slashes become word breaks, so {@code q3_report-final.pdf}
+ *       matches {@code report} and {@code pdf} (the standard tokenizer keeps such names whole).</li>
+ *   <li>Chinese/Japanese/Korean text is indexed as overlapping bigrams plus single characters, since it
+ *       has no spaces between words.</li>
+ * </ul>
+ */
+public class SearchAnalyzer extends Analyzer {
+
+    private static final Pattern WORD_SEPARATORS = Pattern.compile("[._\\-/\\\\]");
+
+    @Override
+    protected Reader initReader(String fieldName, Reader reader) {
+        return new PatternReplaceCharFilter(WORD_SEPARATORS, " ", reader);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        StandardTokenizer tokenizer = new StandardTokenizer();
+        TokenStream stream = new CJKWidthFilter(tokenizer);
+        stream = new LowerCaseFilter(stream);
+        stream = new CJKBigramFilter(stream, CJKBigramFilter.HAN | CJKBigramFilter.HIRAGANA
+                | CJKBigramFilter.KATAKANA | CJKBigramFilter.HANGUL, true);
+        return new TokenStreamComponents(tokenizer, stream);
+    }
+
+    @Override
+    protected TokenStream normalize(String fieldName, TokenStream in) {
+        return new LowerCaseFilter(new CJKWidthFilter(in));
+    }
+}
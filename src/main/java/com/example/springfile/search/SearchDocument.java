@@ -0,0 +1,11 @@
+package com.example.springfile.search;
+
+import java.util.List;
+
+/**
+ * What gets indexed for one file. {@code content} is the extracted document text, or null when the
+ * file's format has no text to extract.
+ */
+public record SearchDocument(Long id, String filename, List<String> labels, String categoryName,
+                             String subCategoryName, String contentType, String content) {
+}
@@ -0,0 +1,106 @@
+package com.example.springfile.search;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Pulls plain text out of documents for the search index: PDFs and Word/Excel/PowerPoint files (old and
+ * OOXML formats) through Tika, plain text directly. Other formats (images, archives, media) have no
+ * useful text and are skipped without being read. Output is capped at {@code file.search.max-text-length}
+ * characters per file, so a huge document costs a bounded amount of index space and extraction time.
+ */
+@Component
+public class TextExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(TextExtractor.class);
+
+    private final AutoDetectParser parser = new AutoDetectParser();
+    private final int maxTextLength;
+    private final long maxFileSize;
+
+    @Autowired
+    public TextExtractor(@Value("${file.search.max-text-length:1000000}") int maxTextLength,
+                         @Value("${file.search.max-extract-size:50MB}") DataSize maxFileSize) {
+        this.maxTextLength = maxTextLength;
+        this.maxFileSize = maxFileSize.toBytes();
+    }
+
+    /**
+     * Whether text extraction is worth opening the file for.
+     */
+    public boolean supports(String contentType, String filename, long size) {
+        if (size > maxFileSize) {
+            return false;
+        }
+        String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+        String name = filename == null ? "" : filename.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/")
+                || type.equals("application/pdf")
+                || type.equals("application/msword")
+                || type.startsWith("application/vnd.ms-")
+                || type.startsWith("application/vnd.openxmlformats-officedocument.")
+                || name.endsWith(".pdf") || name.endsWith(".txt")
+                || name.matches(".*\\.(doc|docx|xls|xlsx|ppt|pptx)$");
+    }
+
+    /**
+     * @param content  The file's bytes; not closed.
+     * @param filename Used as a detection hint alongside the content itself.
+     * @return The extracted text (possibly truncated), or null if the document could not be parsed.
+     */
+    public String extract(InputStream content, String contentType, String filename) throws IOException {
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("text/plain")) {
+            return readText(content);
+        }
+        BodyContentHandler handler = new BodyContentHandler(maxTextLength);
+        Metadata metadata = new Metadata();
+        if (filename != null) {
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filename);
+        }
+        try {
+            parser.parse(content, handler, metadata, new ParseContext());
+        } catch (SAXException e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                log.debug("Could not extract text from {}: {}", filename, e.getMessage());
+                return null;
+            }
+            // Limit reached: keep the text up to the cap
+        } catch (TikaException | RuntimeException e) {
+            // Encrypted, corrupt or unsupported documents are indexed by their metadata only
+            log.debug("Could not extract text from {}: {}", filename, e.getMessage());
+            return null;
+        }
+        return handler.toString();
+    }
+
+    private String readText(InputStream content) throws IOException {
+        Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while (text.length() < maxTextLength
+                && (read = reader.read(buffer, 0, Math.min(buffer.length, maxTextLength - text.length()))) >= 0) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.springfile.service;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.dto.FileSelection;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a zip archive of a selection of files, built on the fly while it is sent:
+ * <ul>
+ *   <li>Memory stays constant in the size of the files: content passes through in chunks, and only the
+ *       small per-entry record of the central directory (and the entry name, to keep names unique) is
+ *       kept until the end. Entries and archives past 4 GB or 65535 entries get ZIP64 records, which
+ *       ZipOutputStream writes when it needs them.</li>
+ *   <li>The next {@code file.archive.read-ahead} files are read in parallel on a shared pool while the
+ *       current one is sent, each into a bounded queue of chunks ({@code file.archive.read-ahead-buffer}
+ *       per file), so a slow storage read (an S3 round trip, a cold disk) overlaps with sending instead of
+ *       stalling the stream. The queues block a reader that gets ahead, which bounds the buffered bytes.</li>
+ *   <li>Content in an already-compressed format (recognised from its first bytes, see
+ *       {@link BlobCompressor#isCompressedFormat}) is added without compression; the rest is deflated at
+ *       {@code file.archive.level}.</li>
+ * </ul>
+ * Entries are named {@code category/sub-category/filename}; clashing names get a " (2)", " (3)"... suffix.
+ */
+@Service
+public class ArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveService.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 500;
+    private static final String MISSING_LIST_NAME = "MISSING-FILES.txt";
+
+    // One piece of a file's content; the last one read is followed by END, a failed read by a chunk with its error
+    private record Chunk(byte[] bytes, int length, Exception error) {
+        static final Chunk END = new Chunk(null, 0, null);
+    }
+
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final FileMetrics fileMetrics;
+    private final int readAhead;
+    private final int chunksPerFile;
+    private final int level;
+    private final long maxFiles;
+    // Shared by all archive downloads. A download's readers are queued in file order, so the file it is
+    // sending was always handed a thread before the ones after it, and a reader blocked on a full queue
+    // is always freed by its download making progress
+    private final ExecutorService readExecutor;
+
+    @Autowired
+    public ArchiveService(FileInfoRepository fileInfoRepository, FileStorageService fileStorageService,
+                          FileMetrics fileMetrics, BackgroundThreads backgroundThreads,
+                          @Value("${file.archive.read-threads:8}") int readThreads,
+                          @Value("${file.archive.read-ahead:4}") int readAhead,
+                          @Value("${file.archive.read-ahead-buffer:1MB}") DataSize readAheadBuffer,
+                          @Value("${file.archive.level:" + Deflater.BEST_SPEED + "}") int level,
+                          @Value("${file.archive.max-files:100000}") long maxFiles) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.fileMetrics = fileMetrics;
+        this.readAhead = Math.max(1, readAhead);
+        this.chunksPerFile = (int) Math.max(1, readAheadBuffer.toBytes() / CHUNK_SIZE);
+        this.level = level;
+        this.maxFiles = maxFiles;
+        this.readExecutor = Executors.newFixedThreadPool(readThreads, backgroundThreads.factory("archive-read"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        readExecutor.shutdownNow();
+    }
+
+    /**
+     * Counts the files selected, checking that they can be archived; call it before starting the
+     * response, since nothing can be reported once the archive is being sent.
+     * @throws IllegalArgumentException if the selection has no criteria or more than {@code file.archive.max-files} files.
+     * @throws StoredFileNotFoundException if no file is selected.
+     */
+    public long checkSelection(FileSelection selection) {
+        if (selection.isEmpty()) {
+            throw new IllegalArgumentException("An archive needs at least one criterion");
+        }
+        long count = fileInfoRepository.countSelected(selection);
+        if (count == 0) {
+            throw new StoredFileNotFoundException("No files match the selection");
+        }
+        if (count > maxFiles) {
+            throw new IllegalArgumentException("An archive may contain at most " + maxFiles + " files, the selection has " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a zip archive of the files selected to out, which is flushed but not closed. Files deleted
+     * or whose content has gone missing since {@link #checkSelection} are left out and listed in a
+     * {@value #MISSING_LIST_NAME} entry; a failure to read content that is there aborts the archive,
+     * since a truncated download is better than a silently incomplete one.
+     * @return The number of files added.
+     */
+    public int writeZip(FileSelection selection, OutputStream out) throws IOException {
+        long started = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        Deque<Prefetch> window = new ArrayDeque<>(readAhead);
+        Iterator<FileInfo> files = new SelectionIterator(selection);
+        Set<String> names = new HashSet<>();
+        List<String> missing = new ArrayList<>();
+        int added = 0;
+        boolean success = false;
+        try {
+            // Closed only on success: closing finishes the archive, which after a failure would make a
+            // truncated one look complete (the deflater is then freed when it is collected)
+            ZipOutputStream zip = new ZipOutputStream(counted, StandardCharsets.UTF_8);
+            while (fillWindow(window, files) || !window.isEmpty()) {
+                Prefetch next = window.removeFirst();
+                String name = uniqueName(entryName(next.fileInfo), names);
+                if (writeEntry(zip, name, next)) {
+                    added++;
+                } else {
+                    missing.add(name);
+                }
+            }
+            if (!missing.isEmpty()) {
+                zip.setLevel(level);
+                zip.putNextEntry(new ZipEntry(uniqueName(MISSING_LIST_NAME, names)));
+                zip.write((String.join("\n", missing) + "\n").getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.close();
+            success = true;
+            return added;
+        } finally {
+            // Stops the readers still running when the client went away
+            window.forEach(Prefetch::cancel);
+            fileMetrics.recordArchive(System.nanoTime() - started, added, counted.count, success);
+            if (!missing.isEmpty()) {
+                log.warn("Archive left out {} files whose content is missing", missing.size());
+            }
+        }
+    }
+
+    // Starts readers until read-ahead files are queued; false once the selection is exhausted
+    private boolean fillWindow(Deque<Prefetch> window, Iterator<FileInfo> files) {
+        while (window.size() < readAhead && files.hasNext()) {
+            Prefetch prefetch = new Prefetch(files.next());
+            prefetch.future = readExecutor.submit(prefetch);
+            window.addLast(prefetch);
+        }
+        return files.hasNext();
+    }
+
+    /**
+     * @return false if the file's content is missing, in which case nothing was written.
+     */
+    private boolean writeEntry(ZipOutputStream zip, String name, Prefetch prefetch) throws IOException {
+        Chunk chunk = prefetch.take();
+        if (chunk.error() != null) {
+            if (chunk.error() instanceof StoredFileNotFoundException || chunk.error() instanceof NoSuchFileException) {
+                log.warn("Leaving {} out of an archive: {}", prefetch.fileInfo.getStoragePath(), chunk.error().getMessage());
+                return false;
+            }
+            throw readFailure(prefetch, chunk.error());
+        }
+        boolean compressed = chunk != Chunk.END && BlobCompressor.isCompressedFormat(chunk.bytes(), chunk.length());
+        zip.setLevel(compressed ? Deflater.NO_COMPRESSION : level);
+        ZipEntry entry = new ZipEntry(name);
+        if (prefetch.fileInfo.getUploadTime() != null) {
+            entry.setTimeLocal(prefetch.fileInfo.getUploadTime());
+        }
+        if (prefetch.fileInfo.getSize() != null) {
+            // Lets ZipOutputStream write the ZIP64 sizes up front for large entries, and check the content against it
+            entry.setSize(prefetch.fileInfo.getSize());
+        }
+        zip.putNextEntry(entry);
+        while (chunk != Chunk.END) {
+            if (chunk.error() != null) {
+                throw readFailure(prefetch, chunk.error());
+            }
+            zip.write(chunk.bytes(), 0, chunk.length());
+            chunk = prefetch.take();
+        }
+        zip.closeEntry();
+        return true;
+    }
+
+    private static IOException readFailure(Prefetch prefetch, Exception cause) {
+        return new IOException("Could not read " + prefetch.fileInfo.getStoragePath() + " for an archive", cause);
+    }
+
+    static String entryName(FileInfo fileInfo) {
+        String category = fileInfo.getCategory() != null ? fileInfo.getCategory().getName() : "Uncategorized";
+        StringBuilder name = new StringBuilder(pathSegment(category)).append('/');
+        if (fileInfo.getSubCategory() != null) {
+            name.append(pathSegment(fileInfo.getSubCategory().getName())).append('/');
+        }
+        String filename = fileInfo.getFilename() != null ? fileInfo.getFilename() : fileInfo.getStoragePath();
+        return name.append(pathSegment(filename)).toString();
+    }
+
+    // Names come from users: no separators inside a segment and no "..", so entries extract where expected
+    private static String pathSegment(String value) {
+        String segment = value == null ? "" : value.replace('/', '_').replace('\\', '_').trim();
+        return segment.isEmpty() || segment.equals(".") || segment.equals("..") ? "_" : segment;
+    }
+
+    // Case-insensitive, since the archive is usually extracted on a case-insensitive file system
+    static String uniqueName(String name, Set<String> taken) {
+        if (taken.add(name.toLowerCase(Locale.ROOT))) {
+            return name;
+        }
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        int split = dot > slash + 1 ? dot : name.length();
+        for (int n = 2; ; n++) {
+            String candidate = name.substring(0, split) + " (" + n + ")" + name.substring(split);
+            if (taken.add(candidate.toLowerCase(Locale.ROOT))) {
+                return candidate;
+            }
+        }
+    }
+
+    // Reads one file's content into its queue on the read pool
+    private final class Prefetch implements Runnable {
+        private final FileInfo fileInfo;
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(chunksPerFile);
+        private Future<?> future;
+
+        Prefetch(FileInfo fileInfo) {
+            this.fileInfo = fileInfo;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try (InputStream in = fileStorageService.openStream(fileInfo)) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int read;
+                    while ((read = in.readNBytes(buffer, 0, CHUNK_SIZE)) > 0) {
+                        chunks.put(new Chunk(buffer, read, null));
+                        buffer = new byte[CHUNK_SIZE];
+                    }
+                } catch (IOException | RuntimeException e) {
+                    chunks.put(new Chunk(null, 0, e));
+                    return;
+                }
+                chunks.put(Chunk.END);
+            } catch (InterruptedException e) {
+                // Cancelled: the archive was abandoned
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Chunk take() throws InterruptedIOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + fileInfo.getStoragePath());
+            }
+        }
+
+        void cancel() {
+            future.cancel(true);
+        }
+    }
+
+    // The files selected, fetched a batch at a time in id order
+    private final class SelectionIterator implements Iterator<FileInfo> {
+        private final FileSelection selection;
+        private Iterator<FileInfo> batch = Collections.emptyIterator();
+        private long afterId;
+        private boolean exhausted;
+
+        SelectionIterator(FileSelection selection) {
+            this.selection = selection;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!batch.hasNext() && !exhausted) {
+                List<FileInfo> next = fileInfoRepository.findSelected(selection, afterId, BATCH_SIZE);
+                exhausted = next.size() < BATCH_SIZE;
+                if (!next.isEmpty()) {
+                    afterId = next.get(next.size() - 1).getId();
+                }
+                batch = next.iterator();
+            }
+            return batch.hasNext();
+        }
+
+        @Override
+        public FileInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.next();
+        }
+    }
+
+    // Counts the bytes sent; closing it only flushes, since the underlying stream belongs to the caller
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
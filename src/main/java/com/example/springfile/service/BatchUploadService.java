@@ -0,0 +1,261 @@
+package com.example.springfile.service;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.dto.BatchUploadResultDto;
+import com.example.springfile.dto.UploadFailureDto;
+import com.example.springfile.dto.UploadResultDto;
+import com.example.springfile.model.Category;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.Label;
+import com.example.springfile.model.SubCategory;
+import com.example.springfile.repository.FileInfoRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Ingests many files in one request, either as multipart parts or as entries of a zip stream.
+ * <ul>
+ *   <li>The category and sub-category are resolved once for the whole batch, before anything is stored;
+ *       multipart files whose total size exceeds the category's quota are refused up front, and the quota
+ *       is enforced again per chunk as it is saved.</li>
+ *   <li>Content is stored in parallel on a bounded pool; when its queue is full the request thread
+ *       stores the next file itself, which throttles the intake instead of buffering without limit.</li>
+ *   <li>Metadata is saved in chunks of {@link FileInfo#ID_ALLOCATION_SIZE} rows, one transaction and one
+ *       JDBC batch insert per chunk, while later files are still being stored.</li>
+ * </ul>
+ * A file that cannot be stored is reported in the result and does not fail the rest of the batch.
+ */
+@Service
+public class BatchUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchUploadService.class);
+
+    private final FileStorageService fileStorageService;
+    private final FileInfoRepository fileInfoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FileMetrics fileMetrics;
+    private final StorageUsageService storageUsageService;
+    private final ExecutorService storeExecutor;
+    private final int maxFiles;
+
+    @Autowired
+    public BatchUploadService(FileStorageService fileStorageService, FileInfoRepository fileInfoRepository,
+                              PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher,
+                              FileMetrics fileMetrics, StorageUsageService storageUsageService,
+                              BackgroundThreads backgroundThreads,
+                              @Value("${file.batch-upload.threads:4}") int threads,
+                              @Value("${file.batch-upload.queue-capacity:64}") int queueCapacity,
+                              @Value("${file.batch-upload.max-files:10000}") int maxFiles) {
+        this.fileStorageService = fileStorageService;
+        this.fileInfoRepository = fileInfoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.fileMetrics = fileMetrics;
+        this.storageUsageService = storageUsageService;
+        this.maxFiles = maxFiles;
+        this.storeExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                backgroundThreads.factory("batch-store"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        storeExecutor.shutdown();
+    }
+
+    /**
+     * Stores multipart files; each part's own Content-Type is recorded.
+     */
+    public BatchUploadResultDto uploadFiles(List<MultipartFile> files, String labelsString,
+                                            String categoryValue, String newCategoryName,
+                                            String subCategoryValue, String newSubCategoryName) {
+        if (files.size() > maxFiles) {
+            throw new IllegalArgumentException("A batch may contain at most " + maxFiles + " files");
+        }
+        storageUsageService.checkQuota(categoryValue, files.stream().mapToLong(MultipartFile::getSize).sum());
+        Batch batch = new Batch(labelsString, categoryValue, newCategoryName, subCategoryValue, newSubCategoryName);
+        for (MultipartFile file : files) {
+            String filename = StringUtils.cleanPath(file.getOriginalFilename() == null ? "" : file.getOriginalFilename());
+            if (file.isEmpty()) {
+                batch.failed.add(new UploadFailureDto(filename, "Empty file"));
+                continue;
+            }
+            String contentType = StringUtils.hasText(file.getContentType()) ? file.getContentType() : guessContentType(filename);
+            batch.submit(filename, contentType, () -> fileStorageService.storeFile(file));
+        }
+        return batch.finish();
+    }
+
+    /**
+     * Stores every file entry of a zip stream, read once front to back. Each entry is staged (written
+     * and hashed) on the calling thread, which is the only one that can read the stream, and then stored
+     * in parallel. Directory structure inside the archive is dropped; content types come from the names.
+     * @param maxEntryBytes Upper bound on the size of a single entry, or -1 for no limit.
+     */
+    public BatchUploadResultDto uploadZip(InputStream zipStream, long maxEntryBytes, String labelsString,
+                                          String categoryValue, String newCategoryName,
+                                          String subCategoryValue, String newSubCategoryName) {
+        Batch batch = new Batch(labelsString, categoryValue, newCategoryName, subCategoryValue, newSubCategoryName);
+        ZipInputStream zip = new ZipInputStream(zipStream);
+        int count = 0;
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String filename = StringUtils.getFilename(StringUtils.cleanPath(entry.getName()));
+                if (!StringUtils.hasText(filename)) {
+                    continue;
+                }
+                if (++count > maxFiles) {
+                    batch.failed.add(new UploadFailureDto(filename, "A batch may contain at most " + maxFiles + " files; the rest of the archive was skipped"));
+                    break;
+                }
+                StagedUpload staged;
+                try {
+                    staged = fileStorageService.stageStream(zip, filename, maxEntryBytes);
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException; // The stream itself is broken: nothing after this entry can be read
+                    }
+                    // Rejected entry (too large, bad name): skip the rest of it and carry on with the next one
+                    batch.failed.add(new UploadFailureDto(filename, e.getMessage()));
+                    zip.closeEntry();
+                    continue;
+                }
+                batch.submit(filename, guessContentType(filename), () -> fileStorageService.storeStaged(staged));
+            }
+        } catch (IOException e) {
+            // Keep what was read before the archive broke off
+            log.warn("Batch upload archive unreadable after {} entries: {}", count, e.getMessage());
+            batch.failed.add(new UploadFailureDto(null, "Archive could not be read past entry " + count + ": " + e.getMessage()));
+        }
+        return batch.finish();
+    }
+
+    private static String guessContentType(String filename) {
+        return MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    @FunctionalInterface
+    private interface StoreTask {
+        StoredFile store();
+    }
+
+    private record Pending(String filename, String contentType, CompletableFuture<StoredFile> stored) {
+    }
+
+    /**
+     * State of one batch request. Files are saved in submission order: whenever a full chunk at the head
+     * of the queue has been stored, its metadata is written while later files keep storing.
+     */
+    private class Batch {
+        private final List<Label> labels;
+        private final Category category;
+        private final SubCategory subCategory;
+        private final List<Pending> pending = new ArrayList<>();
+        private final List<UploadResultDto> uploaded = new ArrayList<>();
+        private final List<UploadFailureDto> failed = new ArrayList<>();
+
+        Batch(String labelsString, String categoryValue, String newCategoryName,
+              String subCategoryValue, String newSubCategoryName) {
+            // Resolved up front, once: an invalid category fails the request before anything is stored
+            this.labels = fileStorageService.resolveLabels(FileStorageService.parseLabels(labelsString));
+            this.category = fileStorageService.resolveCategory(categoryValue, newCategoryName);
+            this.subCategory = fileStorageService.resolveSubCategory(category, subCategoryValue, newSubCategoryName);
+        }
+
+        void submit(String filename, String contentType, StoreTask task) {
+            pending.add(new Pending(filename, contentType, CompletableFuture.supplyAsync(task::store, storeExecutor)));
+            // Only a chunk's worth of completed files is waited for, so storage and inserts overlap
+            if (pending.size() >= 2 * FileInfo.ID_ALLOCATION_SIZE) {
+                saveChunk(pending.subList(0, FileInfo.ID_ALLOCATION_SIZE));
+            }
+        }
+
+        BatchUploadResultDto finish() {
+            while (!pending.isEmpty()) {
+                saveChunk(pending.subList(0, Math.min(FileInfo.ID_ALLOCATION_SIZE, pending.size())));
+            }
+            log.info("Batch upload stored {} files ({} failed) in category {}", uploaded.size(), failed.size(), category.getName());
+            return new BatchUploadResultDto(uploaded, failed);
+        }
+
+        // Waits for a chunk of stores and inserts their metadata in a single transaction; removes the chunk
+        private void saveChunk(List<Pending> chunk) {
+            List<Pending> storedItems = new ArrayList<>(chunk.size());
+            List<StoredFile> storedFiles = new ArrayList<>(chunk.size());
+            for (Pending item : chunk) {
+                try {
+                    storedFiles.add(item.stored().join());
+                    storedItems.add(item);
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    log.warn("Batch upload could not store {}: {}", item.filename(), cause.getMessage());
+                    failed.add(new UploadFailureDto(item.filename(), cause.getMessage()));
+                }
+            }
+            chunk.clear();
+            if (storedItems.isEmpty()) {
+                return;
+            }
+            long started = System.nanoTime();
+            try {
+                List<FileInfo> saved = transactionTemplate.execute(status -> {
+                    storageUsageService.recordAdded(category, subCategory, storedFiles.size(),
+                            storedFiles.stream().mapToLong(StoredFile::getSize).sum());
+                    List<FileInfo> fileInfos = new ArrayList<>(storedItems.size());
+                    for (int i = 0; i < storedItems.size(); i++) {
+                        Pending item = storedItems.get(i);
+                        fileInfos.add(fileStorageService.newFileInfo(item.filename(), storedFiles.get(i), item.contentType(),
+                                new ArrayList<>(labels), category, subCategory));
+                    }
+                    List<FileInfo> savedInfos = fileInfoRepository.saveAll(fileInfos);
+                    // Inside the transaction, so listeners can queue follow-up work atomically with the rows
+                    eventPublisher.publishEvent(new FileSavedEvent(savedInfos.stream().map(FileInfo::getId).toList()));
+                    return savedInfos;
+                });
+                fileMetrics.recordUploadMetadata(System.nanoTime() - started, true, true);
+                saved.forEach(fileInfo -> uploaded.add(UploadResultDto.of(fileInfo)));
+            } catch (RuntimeException e) {
+                fileMetrics.recordUploadMetadata(System.nanoTime() - started, true, false);
+                // Don't leave unreferenced content behind when the metadata is rejected
+                if (e instanceof QuotaExceededException) {
+                    log.warn("Refused {} files of a batch upload: {}", storedItems.size(), e.getMessage());
+                } else {
+                    log.error("Could not save metadata for {} files of a batch upload", storedItems.size(), e);
+                }
+                storedFiles.forEach(fileStorageService::discardStoredFile);
+                storedItems.forEach(item -> failed.add(new UploadFailureDto(item.filename(), e.getMessage())));
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.springfile.service;
+
+import com.example.springfile.metrics.FileMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optional compression of new blobs before they go to the storage backend ({@code file.compression.enabled}).
+ * Stored objects are gzip, the coding every HTTP client accepts, so downloads can send them as they are
+ * with {@code Content-Encoding: gzip}; everything else decodes them with {@link #decode}.
+ * <p>
+ * What gets compressed is decided from the content, not the declared type: files outside the size
+ * limits and files starting with the signature of an already-compressed format (archives, images,
+ * audio, video) are stored as uploaded, and the rest must shrink a sample of their first bytes and
+ * then the whole file by at least {@code file.compression.min-savings} percent.
+ */
+@Component
+public class BlobCompressor {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobCompressor.class);
+
+    public static final String GZIP = "gzip";
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Leading bytes of formats that are compressed already; -1 matches any byte
+    private static final List<int[]> COMPRESSED_SIGNATURES = List.of(
+            new int[]{0x1F, 0x8B},                         // gzip
+            new int[]{0x50, 0x4B, 0x03, 0x04},             // zip, and docx/xlsx/jar/odt built on it
+            new int[]{0x28, 0xB5, 0x2F, 0xFD},             // zstd
+            new int[]{0x42, 0x5A, 0x68},                   // bzip2
+            new int[]{0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00}, // xz
+            new int[]{0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C}, // 7z
+            new int[]{0x52, 0x61, 0x72, 0x21},             // rar
+            new int[]{0x89, 0x50, 0x4E, 0x47},             // png
+            new int[]{0xFF, 0xD8, 0xFF},                   // jpeg
+            new int[]{0x47, 0x49, 0x46, 0x38},             // gif
+            new int[]{0x52, 0x49, 0x46, 0x46, -1, -1, -1, -1, 0x57, 0x45, 0x42, 0x50}, // webp
+            new int[]{-1, -1, -1, -1, 0x66, 0x74, 0x79, 0x70}, // mp4, mov, heic
+            new int[]{0x1A, 0x45, 0xDF, 0xA3},             // mkv, webm
+            new int[]{0x4F, 0x67, 0x67, 0x53},             // ogg
+            new int[]{0x49, 0x44, 0x33},                   // mp3 with ID3 tag
+            new int[]{0x66, 0x4C, 0x61, 0x43});            // flac
+
+    /**
+     * A compressed copy of a file.
+     * @param file   The gzip file, owned by the caller.
+     * @param size   Its size in bytes.
+     * @param crc32c CRC32C of its bytes, computed while writing them.
+     */
+    public record Compressed(Path file, long size, long crc32c) {
+    }
+
+    private final FileMetrics fileMetrics;
+    private final boolean enabled;
+    private final long minSize;
+    private final long maxSize;
+    private final int level;
+    private final int minSavingsPercent;
+
+    @Autowired
+    public BlobCompressor(FileMetrics fileMetrics,
+                          @Value("${file.compression.enabled:false}") boolean enabled,
+                          @Value("${file.compression.min-size:1KB}") DataSize minSize,
+                          @Value("${file.compression.max-size:1GB}") DataSize maxSize,
+                          @Value("${file.compression.level:6}") int level,
+                          @Value("${file.compression.min-savings:10}") int minSavingsPercent) {
+        this.fileMetrics = fileMetrics;
+        this.enabled = enabled;
+        this.minSize = minSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.level = level;
+        this.minSavingsPercent = minSavingsPercent;
+    }
+
+    /**
+     * Compresses a file about to be stored, if that is enabled and worth it.
+     * @param source The content, left in place.
+     * @param size   Its size in bytes.
+     * @return A gzip file next to source; empty to store source as it is.
+     */
+    public Optional<Compressed> compress(Path source, long size) throws IOException {
+        if (!enabled || size < minSize || size > maxSize) {
+            return Optional.empty();
+        }
+        byte[] sample;
+        try (InputStream in = Files.newInputStream(source)) {
+            sample = in.readNBytes(SAMPLE_SIZE);
+        }
+        if (hasCompressedSignature(sample) || !worthIt(sample.length, deflatedSize(sample))) {
+            fileMetrics.recordCompressionSkipped();
+            return Optional.empty();
+        }
+
+        Path target = source.resolveSibling(source.getFileName() + ".gz");
+        long started = System.nanoTime();
+        try {
+            CRC32C crc = new CRC32C();
+            try (OutputStream out = new LevelledGzipOutputStream(
+                    new CheckedOutputStream(Files.newOutputStream(target, StandardOpenOption.CREATE_NEW), crc), level)) {
+                Files.copy(source, out);
+            }
+            long compressedSize = Files.size(target);
+            if (!worthIt(size, compressedSize)) {
+                // The sample was not representative of the rest
+                Files.delete(target);
+                fileMetrics.recordCompressionSkipped();
+                return Optional.empty();
+            }
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            fileMetrics.recordCompression(System.nanoTime() - started, size, compressedSize);
+            log.debug("Compressed {} from {} to {} bytes", source.getFileName(), size, compressedSize);
+            return Optional.of(new Compressed(target, compressedSize, crc.getValue()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps a stored object's bytes so they read as the original content.
+     * @param encoding The blob's encoding; null when it was stored as uploaded.
+     */
+    public static InputStream decode(InputStream stored, String encoding) throws IOException {
+        if (encoding == null) {
+            return stored;
+        }
+        if (GZIP.equals(encoding)) {
+            return new GZIPInputStream(stored, BUFFER_SIZE);
+        }
+        stored.close();
+        throw new IllegalStateException("Unknown content encoding: " + encoding);
+    }
+
+    private boolean worthIt(long originalSize, long compressedSize) {
+        return compressedSize * 100 <= originalSize * (100 - minSavingsPercent);
+    }
+
+    private static boolean hasCompressedSignature(byte[] head) {
+        return isCompressedFormat(head, head.length);
+    }
+
+    /**
+     * Whether content starting with these bytes is in a format that is compressed already, so compressing
+     * it again would cost CPU for no gain.
+     * @param length How many bytes of head are valid.
+     */
+    public static boolean isCompressedFormat(byte[] head, int length) {
+        for (int[] signature : COMPRESSED_SIGNATURES) {
+            if (length >= signature.length && matches(head, signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(byte[] head, int[] signature) {
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] >= 0 && (head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Fastest level: only a rough estimate is needed
+    private static long deflatedSize(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            while (!deflater.finished()) {
+                size += deflater.deflate(buffer);
+            }
+            return size;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // GZIPOutputStream has no constructor taking a level; its deflater is a protected field
+    private static final class LevelledGzipOutputStream extends GZIPOutputStream {
+        LevelledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
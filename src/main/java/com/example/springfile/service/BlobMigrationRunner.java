@@ -0,0 +1,129 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterLocks;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * One-time migration of files stored flat in the upload directory (one copy per upload, named by
+ * storagePath) into the deduplicating {@link BlobStore}. Each file is hashed, copied into the storage
+ * backend unless its content is already there, and its FileInfo row pointed at the blob, one row per
+ * transaction. Rows already pointing at a blob are skipped, so the migration is safe to re-run and
+ * costs a single query once everything has been migrated. Of nodes starting together, one migrates.
+ * Disable with {@code file.blob-migration.enabled=false}.
+ */
+@Component
+@ConditionalOnProperty(name = "file.blob-migration.enabled", havingValue = "true", matchIfMissing = true)
+public class BlobMigrationRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobMigrationRunner.class);
+
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final BlobStore blobStore;
+    private final StorageUsageService storageUsageService;
+    private final ClusterLocks clusterLocks;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BlobMigrationRunner(FileInfoRepository fileInfoRepository, FileStorageService fileStorageService,
+                               BlobStore blobStore, StorageUsageService storageUsageService,
+                               ClusterLocks clusterLocks, PlatformTransactionManager transactionManager) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.blobStore = blobStore;
+        this.storageUsageService = storageUsageService;
+        this.clusterLocks = clusterLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Optional<ClusterLocks.Lock> lock = clusterLocks.tryLock("blob-migration");
+        if (lock.isEmpty()) {
+            log.info("Blob migration left to the node already running it");
+            return;
+        }
+        try (ClusterLocks.Lock held = lock.get()) {
+            migrateAll(held);
+        }
+    }
+
+    private void migrateAll(ClusterLocks.Lock lock) {
+        int migrated = 0;
+        int missing = 0;
+        long lastId = 0;
+        List<FileInfo> batch;
+        while (!(batch = fileInfoRepository.findTop100ByBlobIsNullAndIdGreaterThanOrderByIdAsc(lastId)).isEmpty()) {
+            for (FileInfo fileInfo : batch) {
+                lock.renew();
+                lastId = fileInfo.getId();
+                try {
+                    if (migrate(fileInfo)) {
+                        migrated++;
+                    } else {
+                        missing++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.error("Could not migrate {} (id {}) into the blob store", fileInfo.getStoragePath(), fileInfo.getId(), e);
+                }
+            }
+        }
+        if (migrated > 0 || missing > 0) {
+            log.info("Blob migration finished: {} files moved into the deduplicating store, {} with no file on disk", migrated, missing);
+        }
+    }
+
+    private boolean migrate(FileInfo fileInfo) throws IOException {
+        Path flatFile;
+        try {
+            flatFile = fileStorageService.loadFileAsPath(fileInfo.getStoragePath());
+        } catch (StoredFileNotFoundException e) {
+            log.warn("No file on disk for {} (id {}), leaving it unmigrated", fileInfo.getStoragePath(), fileInfo.getId());
+            return false;
+        }
+        // Always re-hash: rows from before hashing have no sha256, and the file is the source of truth
+        ContentChecksums checksums = ContentChecksums.of(flatFile);
+        String sha256 = checksums.sha256();
+        long size = checksums.size();
+        if (fileInfo.getSha256() != null && !fileInfo.getSha256().equals(sha256)) {
+            log.warn("Stored hash of {} (id {}) does not match its content; using the content hash", fileInfo.getStoragePath(), fileInfo.getId());
+        }
+        // Hand the store a hard link rather than the file itself, so that the flat file is only removed
+        // once the row points at the blob; a failure anywhere before that leaves the row fully usable
+        Path staged = fileStorageService.linkIntoStaging(flatFile);
+        String encoding;
+        try {
+            encoding = blobStore.retain(sha256, size, checksums.crc32c(), staged);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                fileInfoRepository.attachBlob(fileInfo.getId(), blobStore.reference(sha256), sha256, size, encoding);
+                // Rows this old may have had no size, so they were counted as empty until now
+                storageUsageService.recordResized(fileInfo, fileInfo.getSize(), size);
+            });
+        } catch (RuntimeException e) {
+            blobStore.release(sha256);
+            throw e;
+        }
+        Files.deleteIfExists(flatFile);
+        return true;
+    }
+}
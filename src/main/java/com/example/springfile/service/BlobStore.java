@@ -0,0 +1,243 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.ContentBlob;
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.storage.BlobStat;
+import com.example.springfile.storage.StorageBackend;
+import com.example.springfile.storage.TransferSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed, reference-counted blob storage. Each distinct content is kept once in the
+ * configured {@link StorageBackend}, keyed by its SHA-256, no matter how many files were uploaded with it.
+ * <p>
+ * {@link #retain} takes the reference in its own short transaction and only then uploads the content,
+ * so a slow backend (e.g. S3) never holds a row lock. {@link #release} deletes the object last, inside
+ * the transaction that drops the final reference; since that transaction holds the blob's row lock, a
+ * concurrent upload of the same content waits for it and then finds the object gone and stores it again.
+ * <p>
+ * New content may be stored compressed (see {@link BlobCompressor}); the blob row records the encoding,
+ * and {@link #open} and {@link #openStream} return the stored bytes as they are.
+ */
+@Service
+public class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+    private static final Pattern HEX_DIGITS = Pattern.compile("[0-9a-f]{64}");
+    private static final char DERIVED_SEPARATOR = '.';
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final StorageBackend backend;
+    private final BlobCompressor compressor;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public BlobStore(ContentBlobRepository contentBlobRepository, StorageBackend backend, BlobCompressor compressor,
+                     PlatformTransactionManager transactionManager) {
+        this.contentBlobRepository = contentBlobRepository;
+        this.backend = backend;
+        this.compressor = compressor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        log.info("Blob storage backend: {}", backend.describe());
+    }
+
+    /**
+     * Takes one reference to the blob with the given hash, storing {@code sourceFile} in the backend if
+     * the content is not there yet, or deleting it if it is. An object found under the hash only counts as
+     * stored if its blob row already had a reference: one without (e.g. an orphan awaiting reconciliation)
+     * belongs to no one and is overwritten, so it gets this upload's encoding, checksum and modification time.
+     * @param sha256     Hex SHA-256 of the content of sourceFile.
+     * @param size       Size of the content in bytes.
+     * @param crc32c     CRC32C of the content.
+     * @param sourceFile A local file holding the content; consumed on success.
+     * @return The encoding the stored object has ({@link BlobCompressor#GZIP}), or null if it holds the content as is.
+     */
+    public String retain(String sha256, long size, long crc32c, Path sourceFile) throws IOException {
+        validate(sha256);
+        LocalDateTime now = LocalDateTime.now();
+        // Whether the blob had no reference before this one
+        Boolean first = transactionTemplate.execute(status -> {
+            if (contentBlobRepository.incrementRefCount(sha256, now) == 0) {
+                contentBlobRepository.insertWithOneReference(sha256, size, now);
+                return true;
+            }
+            // The increment holds the row lock, so the count is still what it made it
+            return contentBlobRepository.findRefCount(sha256).orElse(0L) == 1;
+        });
+        try {
+            if (!Boolean.TRUE.equals(first) && backend.exists(sha256)) {
+                // Already stored: this upload was a duplicate
+                Files.deleteIfExists(sourceFile);
+                log.debug("Deduplicated content {}", sha256);
+                return contentBlobRepository.findEncoding(sha256).orElse(null);
+            }
+            return put(sha256, size, crc32c, sourceFile);
+        } catch (IOException | RuntimeException e) {
+            // Give the reference back; the caller still owns sourceFile
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    dropReference(sha256);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            throw e;
+        }
+    }
+
+    private String put(String sha256, long size, long crc32c, Path sourceFile) throws IOException {
+        Optional<BlobCompressor.Compressed> compressed = compressor.compress(sourceFile, size);
+        String encoding = compressed.isPresent() ? BlobCompressor.GZIP : null;
+        long storedSize = compressed.map(BlobCompressor.Compressed::size).orElse(size);
+        long storedCrc32c = compressed.map(BlobCompressor.Compressed::crc32c).orElse(crc32c);
+        // Recorded before the object appears, so whoever finds the object also finds its encoding
+        transactionTemplate.executeWithoutResult(status ->
+                contentBlobRepository.updateStoredForm(sha256, encoding, storedSize, storedCrc32c));
+        if (compressed.isEmpty()) {
+            backend.putFile(sha256, sourceFile);
+            return null;
+        }
+        try {
+            backend.putFile(sha256, compressed.get().file());
+        } finally {
+            Files.deleteIfExists(compressed.get().file());
+        }
+        Files.deleteIfExists(sourceFile);
+        return encoding;
+    }
+
+    /**
+     * Drops one reference; the blob row and content are removed when it was the last one.
+     * @return true if the content was physically deleted.
+     */
+    @Transactional
+    public boolean release(String sha256) throws IOException {
+        return dropReference(sha256);
+    }
+
+    private boolean dropReference(String sha256) throws IOException {
+        contentBlobRepository.decrementRefCount(sha256);
+        long remaining = contentBlobRepository.findRefCount(sha256).orElse(0L);
+        if (remaining > 0) {
+            return false;
+        }
+        contentBlobRepository.deleteIfUnreferenced(sha256);
+        // Delete last: if it fails, the transaction rolls back and the reference count is restored
+        backend.delete(sha256);
+        log.debug("Deleted unreferenced content {}", sha256);
+        return true;
+    }
+
+    /**
+     * Drops several references at once, for the reaper removing a batch of files. Blobs left without
+     * references are removed, their objects in one {@link StorageBackend#deleteAll} call made last, as in
+     * {@link #release}, so a failure rolls the caller's transaction back with the counts restored.
+     * @param references How many references to drop, by blob hash.
+     * @return The hashes whose content was deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> releaseAll(Map<String, Long> references) throws IOException {
+        List<String> unreferenced = new ArrayList<>();
+        // In hash order, so concurrent batches take the row locks in the same order
+        for (Map.Entry<String, Long> entry : new TreeMap<>(references).entrySet()) {
+            contentBlobRepository.decrementRefCountBy(entry.getKey(), entry.getValue());
+            if (contentBlobRepository.findRefCount(entry.getKey()).orElse(0L) == 0) {
+                contentBlobRepository.deleteIfUnreferenced(entry.getKey());
+                unreferenced.add(entry.getKey());
+            }
+        }
+        if (!unreferenced.isEmpty()) {
+            backend.deleteAll(unreferenced);
+            log.debug("Deleted {} unreferenced contents", unreferenced.size());
+        }
+        return unreferenced;
+    }
+
+    /**
+     * A lazy reference to the blob entity, for associating FileInfo rows without loading it.
+     */
+    public ContentBlob reference(String sha256) {
+        return contentBlobRepository.getReferenceById(sha256);
+    }
+
+    /**
+     * Opens a blob's content for download: a local file where the backend has one (so it can be sent
+     * with sendfile), ranged reads from the backend otherwise.
+     * @return empty if the backend has no such object.
+     */
+    public Optional<TransferSource> open(String sha256) throws IOException {
+        validate(sha256);
+        Optional<BlobStat> stat = backend.stat(sha256);
+        if (stat.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<Path> localPath = backend.localPath(sha256);
+        if (localPath.isPresent()) {
+            return Optional.of(TransferSource.ofFile(localPath.get(), stat.get().size()));
+        }
+        return Optional.of(TransferSource.ofBackend(backend, sha256, stat.get()));
+    }
+
+    /**
+     * Reads a blob's content from the start.
+     * @throws java.nio.file.NoSuchFileException if the backend has no such object.
+     */
+    public InputStream openStream(String sha256) throws IOException {
+        validate(sha256);
+        return backend.get(sha256);
+    }
+
+    public StorageBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Key of an object derived from a blob's content (e.g. a rendered preview). It starts with the blob's
+     * hash, so the storage layouts put it next to the blob and {@link #owningBlob} can tie it back.
+     * @param suffix Names the derived object, e.g. {@code preview-256.jpg}.
+     */
+    public static String derivedKey(String sha256, String suffix) {
+        validate(sha256);
+        return sha256 + DERIVED_SEPARATOR + suffix;
+    }
+
+    /**
+     * The hash of the blob a backend object belongs to: its key for content, the hash its key starts
+     * with for derived objects.
+     */
+    public static String owningBlob(String key) {
+        int separator = key.indexOf(DERIVED_SEPARATOR);
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    public static boolean isValidHash(String sha256) {
+        return sha256 != null && HEX_DIGITS.matcher(sha256).matches();
+    }
+
+    private static void validate(String sha256) {
+        if (!isValidHash(sha256)) {
+            throw new IllegalArgumentException("Invalid content hash: " + sha256);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.springfile.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * Size, SHA-256 and CRC32C of content, computed together as it is copied. The SHA-256 identifies the
+ * content (it is the blob key); the CRC32C is the cheap check the integrity scrubber re-verifies stored
+ * objects with (the JDK's CRC32C uses the CPU's CRC instructions, so checking costs little beyond the read).
+ */
+public final class ContentChecksums {
+
+    private final MessageDigest sha256;
+    private final CRC32C crc32c = new CRC32C();
+    private long size;
+    private String sha256Hex;
+
+    public ContentChecksums() {
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Adds the buffer's remaining bytes; its position is left unchanged.
+     */
+    public void update(ByteBuffer buffer) {
+        size += buffer.remaining();
+        sha256.update(buffer.duplicate());
+        crc32c.update(buffer.duplicate());
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        size += length;
+        sha256.update(bytes, offset, length);
+        crc32c.update(bytes, offset, length);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Lower-case hex SHA-256 of everything added; no more content may be added after the first call.
+     */
+    public String sha256() {
+        if (sha256Hex == null) {
+            sha256Hex = HexFormat.of().formatHex(sha256.digest());
+        }
+        return sha256Hex;
+    }
+
+    public long crc32c() {
+        return crc32c.getValue();
+    }
+
+    /**
+     * Checksums of an existing file, for content that was not checksummed while it was written.
+     */
+    public static ContentChecksums of(Path file) throws IOException {
+        ContentChecksums checksums = new ContentChecksums();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                checksums.update(buffer, 0, read);
+            }
+        }
+        return checksums;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterEvent;
+
+/**
+ * Published when a file is deleted; listeners should act after the surrounding transaction commits.
+ * Also delivered to the other nodes of a cluster, so their caches and search indexes drop the file too.
+ */
+public record FileDeletedEvent(Long fileId, String storagePath) implements ClusterEvent {
+}
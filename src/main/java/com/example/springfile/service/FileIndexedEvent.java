@@ -0,0 +1,10 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterEvent;
+
+/**
+ * Sent to the other nodes of a cluster when a node has added a file to its search index, so they index it
+ * in theirs.
+ */
+public record FileIndexedEvent(Long fileId) implements ClusterEvent {
+}
@@ -0,0 +1,52 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.FileInfo;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the FileInfo id sequence past the highest existing id. Rows created while ids came from an
+ * IDENTITY column are invisible to the sequence, which would otherwise start handing out ids that
+ * are already taken. Runs during startup, before the web server accepts requests, and does nothing
+ * once the sequence is ahead.
+ */
+@Component
+public class FileInfoSequenceAligner {
+
+    private static final Logger log = LoggerFactory.getLogger(FileInfoSequenceAligner.class);
+
+    static final String SEQUENCE_NAME = "file_info_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dialect dialect;
+
+    @Autowired
+    public FileInfoSequenceAligner(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        // Depending on the EntityManagerFactory also guarantees the schema (and sequence) exists by now
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    @PostConstruct
+    public void align() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM file_info", Long.class);
+        if (maxId == null) {
+            return;
+        }
+        Long next = jdbcTemplate.queryForObject(dialect.getSequenceSupport().getSequenceNextValString(SEQUENCE_NAME), Long.class);
+        // The pooled optimizer hands out the block (next - allocationSize, next]
+        if (next != null && next - FileInfo.ID_ALLOCATION_SIZE >= maxId) {
+            return;
+        }
+        long restartWith = maxId + FileInfo.ID_ALLOCATION_SIZE;
+        jdbcTemplate.execute("ALTER SEQUENCE " + SEQUENCE_NAME + " RESTART WITH " + restartWith);
+        log.info("Moved sequence {} to {} (highest existing file id is {})", SEQUENCE_NAME, restartWith, maxId);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.FileListFilter;
+import com.example.springfile.dto.FilePage;
+import com.example.springfile.dto.FileSummaryDto;
+import com.example.springfile.dto.SearchPage;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.search.FileSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read side of the file listing. Pages are keyset-paginated on (uploadTime, id), newest first,
+ * so the cost of a page depends on the page size and not on how many files exist.
+ */
+@Service
+public class FileQueryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final FileInfoRepository fileInfoRepository;
+    private final FileSearchIndex searchIndex;
+
+    @Autowired
+    public FileQueryService(FileInfoRepository fileInfoRepository, FileSearchIndex searchIndex) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Returns one page of file summaries.
+     *
+     * @param filter Optional category/subcategory/label/content type filters.
+     * @param cursor The nextCursor of the previous page, or null/empty for the first page.
+     * @param size   Requested page size; clamped to 1..MAX_PAGE_SIZE.
+     * @return The page, with a cursor for the next page if there is one.
+     */
+    @Transactional(readOnly = true)
+    public FilePage listFiles(FileListFilter filter, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Cursor position = cursor == null || cursor.isEmpty() ? new Cursor(null, null) : decodeCursor(cursor);
+        // Fetch one extra row to know whether another page follows without running a COUNT
+        List<FileSummaryDto> rows = fileInfoRepository.findSummaries(filter, position.uploadTime, position.id, pageSize + 1);
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            FileSummaryDto last = rows.get(pageSize - 1);
+            nextCursor = encodeCursor(last.uploadTime(), last.id());
+        }
+
+        return new FilePage(rows, nextCursor);
+    }
+
+    /**
+     * Full-text search over filenames, labels, category names and document text, ranked by relevance.
+     * Ranking happens in the search index; only the rows of the requested page are read from the database.
+     *
+     * @param query Words to search for, in the syntax described at {@link FileSearchIndex#search}.
+     * @param page  Zero-based page number; pages end at {@link FileSearchIndex#MAX_RESULT_WINDOW} results.
+     * @param size  Requested page size; clamped to 1..MAX_PAGE_SIZE.
+     */
+    @Transactional(readOnly = true)
+    public SearchPage searchFiles(String query, int page, int size) throws IOException {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageNumber = Math.max(0, page);
+        long offset = (long) pageNumber * pageSize;
+        if (query == null || query.isBlank() || offset >= FileSearchIndex.MAX_RESULT_WINDOW) {
+            return new SearchPage(List.of(), 0, false, pageNumber, pageSize, false);
+        }
+
+        FileSearchIndex.Hits hits = searchIndex.search(query, (int) offset, pageSize);
+        Map<Long, FileSummaryDto> rowsById = new HashMap<>();
+        if (!hits.ids().isEmpty()) {
+            for (FileSummaryDto row : fileInfoRepository.findSummariesByIds(hits.ids())) {
+                rowsById.put(row.id(), row);
+            }
+        }
+        // Back into rank order; ids deleted since the index last refreshed are skipped
+        List<FileSummaryDto> rows = new ArrayList<>(hits.ids().size());
+        for (Long id : hits.ids()) {
+            FileSummaryDto row = rowsById.get(id);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        boolean hasMore = offset + pageSize < Math.min(hits.total(), FileSearchIndex.MAX_RESULT_WINDOW);
+        return new SearchPage(rows, hits.total(), hits.totalIsLowerBound(), pageNumber, pageSize, hasMore);
+    }
+
+    private static String encodeCursor(LocalDateTime uploadTime, Long id) {
+        String raw = uploadTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            if (sep < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private record Cursor(LocalDateTime uploadTime, Long id) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.springfile.service;
+
+import java.util.List;
+
+/**
+ * Published after FileInfo rows were created, once their metadata is committed.
+ */
+public record FileSavedEvent(List<Long> fileIds) {
+}
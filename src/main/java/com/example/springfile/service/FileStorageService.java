@@ -1,30 +1,49 @@
 package com.example.springfile.service; // Updated package declaration
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
+import com.example.springfile.cluster.ClusterEventBus;
+import com.example.springfile.cluster.ClusterNode;
+import com.example.springfile.dto.FileSelection;
 import com.example.springfile.model.Category;
 import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.Label;
 import com.example.springfile.model.SubCategory;
-import com.example.springfile.repository.CategoryRepository;
 import com.example.springfile.repository.FileInfoRepository;
-import com.example.springfile.repository.SubCategoryRepository;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.storage.TransferSource;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.UrlResource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
 import java.time.LocalDateTime; // Import LocalDateTime
+import java.time.temporal.ChronoUnit;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List; // Import List
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FileStorageService {
@@ -32,17 +51,43 @@ public class FileStorageService {
     @Value("${file.upload-dir}")
     private String uploadDir;
 
+    private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
+
+    // Fixed per-upload copy buffer; this is all the heap a streaming upload needs
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private Path storageLocation;
+    private Path stagingLocation; // In-progress uploads, on the same filesystem so the final move is a rename
 
     private final FileInfoRepository fileInfoRepository;
-    private final CategoryRepository categoryRepository;
-    private final SubCategoryRepository subCategoryRepository;
+    private final TaxonomyCache taxonomyCache;
+    private final LabelRegistry labelRegistry;
+    private final BlobStore blobStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final FileMetrics fileMetrics;
+    private final StorageUsageService storageUsageService;
+    private final ClusterNode clusterNode;
+    private final ClusterEventBus clusterEventBus;
+    // Last time used to mark files deleted; see nextDeletionTime
+    private final AtomicReference<LocalDateTime> lastDeletion = new AtomicReference<>(LocalDateTime.MIN);
 
     @Autowired // Constructor injection
-    public FileStorageService(FileInfoRepository fileInfoRepository, CategoryRepository categoryRepository, SubCategoryRepository subCategoryRepository) {
+    public FileStorageService(FileInfoRepository fileInfoRepository, TaxonomyCache taxonomyCache,
+                              LabelRegistry labelRegistry, BlobStore blobStore,
+                              ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                              FileMetrics fileMetrics, StorageUsageService storageUsageService,
+                              ClusterNode clusterNode, ClusterEventBus clusterEventBus) {
         this.fileInfoRepository = fileInfoRepository;
-        this.categoryRepository = categoryRepository;
-        this.subCategoryRepository = subCategoryRepository;
+        this.taxonomyCache = taxonomyCache;
+        this.labelRegistry = labelRegistry;
+        this.blobStore = blobStore;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.fileMetrics = fileMetrics;
+        this.storageUsageService = storageUsageService;
+        this.clusterNode = clusterNode;
+        this.clusterEventBus = clusterEventBus;
     }
 
     @PostConstruct
@@ -50,51 +95,220 @@ public class FileStorageService {
         this.storageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
         try {
             Files.createDirectories(this.storageLocation);
+            this.stagingLocation = Files.createDirectories(this.storageLocation.resolve(".staging"));
         } catch (Exception ex) {
             throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
         }
     }
 
      /**
-     * Stores the physical uploaded file and returns the unique filename (storage path) used for storage.
+     * Stores the physical uploaded file and returns where it was stored.
      * @param file The uploaded file.
-     * @return The unique filename generated for storage.
+     * @return The unique filename generated for storage, plus size and checksum.
      */
-    public String storeFile(MultipartFile file) {
-        // Normalize file name
+    public StoredFile storeFile(MultipartFile file) {
         String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-        String fileExtension = "";
+        try (InputStream inputStream = file.getInputStream()) {
+            return storeStream(inputStream, originalFilename, -1);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + originalFilename + ". Please try again!", ex);
+        }
+    }
+
+    /**
+     * Streams bytes straight into the storage directory through a FileChannel, computing size and
+     * SHA-256 on the way. Heap use is one fixed buffer regardless of the upload size.
+     * The data is written to a staging file and, once complete and flushed, handed to the
+     * content-addressed {@link BlobStore} (or dropped if identical content is already stored), so a
+     * failed or aborted upload never leaves a partial file behind.
+     * The returned storagePath is a fresh unique name per upload, even when the content is shared.
+     *
+     * @param inputStream      The upload body; not closed by this method.
+     * @param originalFilename The client-supplied filename (only its extension is kept).
+     * @param maxBytes         Upper bound on the number of bytes accepted, or -1 for no limit.
+     * @return The unique filename generated for storage, plus size and checksum.
+     */
+    public StoredFile storeStream(InputStream inputStream, String originalFilename, long maxBytes) {
+        return storeStaged(stageStream(inputStream, originalFilename, maxBytes));
+    }
+
+    /**
+     * First half of {@link #storeStream}: writes the bytes to a staging file, computing size, SHA-256 and CRC32C,
+     * without touching the blob store yet. Batch uploads use this to read a sequential source (e.g. a
+     * zip stream) on one thread while the staged files are stored in parallel.
+     *
+     * @param inputStream      The upload body; not closed by this method.
+     * @param originalFilename The client-supplied filename (only its extension is kept).
+     * @param maxBytes         Upper bound on the number of bytes accepted, or -1 for no limit.
+     * @return The staged upload; pass it to {@link #storeStaged} or {@link #discardStaged}.
+     */
+    public StagedUpload stageStream(InputStream inputStream, String originalFilename, long maxBytes) {
+        String cleanFilename = StringUtils.cleanPath(originalFilename == null ? "" : originalFilename);
+        Path stagingFile = newStagingFile(cleanFilename);
+
+        long started = System.nanoTime();
         try {
-            // Check if the file's name contains invalid characters
-            if (originalFilename.contains("..")) {
-                throw new RuntimeException("Sorry! Filename contains invalid path sequence " + originalFilename);
+            ContentChecksums checksums = new ContentChecksums();
+            long size = 0;
+            // Not closed: closing the channel would close the caller's stream
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    if (maxBytes >= 0 && size > maxBytes) {
+                        throw new UploadTooLargeException("Upload exceeds the limit of " + maxBytes + " bytes");
+                    }
+                    checksums.update(buffer);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                channel.force(true); // The bytes are durable before the file becomes visible
             }
-
-            int dotIndex = originalFilename.lastIndexOf('.');
-            if (dotIndex >= 0) { // Use >= 0 to handle files starting with '.'
-                fileExtension = originalFilename.substring(dotIndex);
+            return staged(stagingFile, checksums, System.nanoTime() - started);
+        } catch (IOException | RuntimeException ex) {
+            deleteQuietly(stagingFile);
+            fileMetrics.recordUploadStorage(System.nanoTime() - started, 0, false);
+            if (ex instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
-            // Generate a unique filename to avoid collisions
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
+            throw new RuntimeException("Could not store file " + cleanFilename + ". Please try again!", ex);
+        }
+    }
 
-            // Copy file to the target location (Replacing existing file with the same name)
-            Path targetLocation = this.storageLocation.resolve(uniqueFilename);
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            }
+    /**
+     * Picks a fresh staging file (not yet created) for an upload whose bytes the caller writes itself,
+     * as the reactive API does with asynchronous file I/O. Once written and flushed, wrap it with {@link #staged}.
+     * @param originalFilename The client-supplied filename (only its extension is kept).
+     */
+    public Path newStagingFile(String originalFilename) {
+        String cleanFilename = StringUtils.cleanPath(originalFilename == null ? "" : originalFilename);
+        // Check if the file's name contains invalid characters
+        if (cleanFilename.contains("..")) {
+            throw new RuntimeException("Sorry! Filename contains invalid path sequence " + cleanFilename);
+        }
+
+        String fileExtension = "";
+        int dotIndex = cleanFilename.lastIndexOf('.');
+        if (dotIndex >= 0) { // Use >= 0 to handle files starting with '.'
+            fileExtension = cleanFilename.substring(dotIndex);
+        }
+        // Generate a unique filename to avoid collisions
+        String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
+        return this.stagingLocation.resolve(uniqueFilename + ".part");
+    }
+
+    /**
+     * Describes a complete staging file from {@link #newStagingFile}, ready for {@link #storeStaged}.
+     * @param checksums    Of the file's whole content.
+     * @param stagingNanos How long writing it took, for the storage phase metric.
+     */
+    public StagedUpload staged(Path stagingFile, ContentChecksums checksums, long stagingNanos) {
+        String name = stagingFile.getFileName().toString();
+        if (!stagingFile.getParent().equals(this.stagingLocation) || !name.endsWith(".part")) {
+            throw new IllegalArgumentException("Not a staging file: " + stagingFile);
+        }
+        return new StagedUpload(name.substring(0, name.length() - ".part".length()), stagingFile, checksums.size(),
+                checksums.sha256(), checksums.crc32c(), stagingNanos);
+    }
+
+    /**
+     * Second half of {@link #storeStream}: hands a staged file to the content-addressed blob store.
+     * The staging file is consumed whether or not this succeeds.
+     * @return The unique filename generated for storage, plus size and checksum.
+     */
+    public StoredFile storeStaged(StagedUpload staged) {
+        long started = System.nanoTime();
+        boolean stored = false;
+        try {
+            String encoding = retainBlob(staged.getSha256(), staged.getSize(), staged.getCrc32c(), staged.getStagingFile());
+            stored = true;
+            return new StoredFile(staged.getStoragePath(), staged.getSize(), staged.getSha256(), encoding);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + staged.getStoragePath() + ". Please try again!", ex);
+        } finally {
+            deleteQuietly(staged.getStagingFile());
+            // Both halves count as the storage phase, even when they ran on different threads (batch uploads)
+            fileMetrics.recordUploadStorage(staged.getStagingNanos() + System.nanoTime() - started, staged.getSize(), stored);
+        }
+    }
+
+    /**
+     * Drops a staged upload that will not be stored.
+     */
+    public void discardStaged(StagedUpload staged) {
+        deleteQuietly(staged.getStagingFile());
+    }
+
+    // Takes a blob reference for freshly written content, retrying once if a concurrent upload of the
+    // same content inserted the blob row first
+    private String retainBlob(String sha256, long size, long crc32c, Path stagingFile) throws IOException {
+        try {
+            return blobStore.retain(sha256, size, crc32c, stagingFile);
+        } catch (DataIntegrityViolationException ex) {
+            return blobStore.retain(sha256, size, crc32c, stagingFile);
+        }
+    }
+
+    /**
+     * Gives back the storage taken by storeFile/storeStream when its metadata could not be saved.
+     * @param storedFile The result of the store call being undone.
+     */
+    public void discardStoredFile(StoredFile storedFile) {
+        try {
+            blobStore.release(storedFile.getSha256());
+        } catch (IOException | RuntimeException ex) {
+            // The blob is left behind; it is only wasted space, never a missing file
+            log.error("Could not release content {} of discarded upload {}", storedFile.getSha256(), storedFile.getStoragePath(), ex);
+        }
+    }
 
-            return uniqueFilename; // Return the unique name used for storage
+    /**
+     * Makes a second name for an existing stored file in the staging area (a hard link, or a copy where
+     * links are not supported), so it can be handed to the blob store without giving up the original.
+     */
+    Path linkIntoStaging(Path file) throws IOException {
+        Path staged = this.stagingLocation.resolve(UUID.randomUUID() + ".link");
+        try {
+            return Files.createLink(staged, file);
+        } catch (UnsupportedOperationException | IOException ex) {
+            return Files.copy(file, staged);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
         } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + originalFilename + ". Please try again!", ex);
+            log.warn("Could not remove staging file {}", path, ex);
         }
     }
 
+    /**
+     * Splits a comma-separated label string as entered in the upload form.
+     * @param labelsString Raw input, may be null or blank.
+     * @return The trimmed, non-empty labels in input order.
+     */
+    public static List<String> parseLabels(String labelsString) {
+        if (!StringUtils.hasText(labelsString)) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(labelsString.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Saves the metadata for a file after it has been physically stored.
-     * Handles finding or creating categories and subcategories.
+     * Handles finding or creating categories and subcategories, and counts the file against its
+     * category's quota in the same transaction as the insert.
      *
      * @param originalFilename The original name of the uploaded file.
-     * @param storagePath      The unique path/filename where the file is stored (returned by storeFile).
+     * @param storedFile       Where and what was stored (returned by storeFile/storeStream).
      * @param contentType        The MIME type of the file.
      * @param labels             The list of labels associated with the file.
      * @param categoryValue      The value from the category dropdown (ID or "new").
@@ -102,20 +316,43 @@ public class FileStorageService {
      * @param subCategoryValue   The value from the subcategory dropdown (ID, "new", or empty).
      * @param newSubCategoryName The name entered if subCategoryValue is "new".
      * @return The saved FileInfo entity.
+     * @throws QuotaExceededException if the file does not fit in the category's quota.
      */
-    public FileInfo saveFileMetadata(String originalFilename, String storagePath, String contentType, List<String> labels,
+    public FileInfo saveFileMetadata(String originalFilename, StoredFile storedFile, String contentType, List<String> labels,
                                      String categoryValue, String newCategoryName,
                                      String subCategoryValue, String newSubCategoryName) {
 
-        Category category = null;
-        SubCategory subCategory = null;
+        Category category = resolveCategory(categoryValue, newCategoryName);
+        SubCategory subCategory = resolveSubCategory(category, subCategoryValue, newSubCategoryName);
+        FileInfo fileInfo = newFileInfo(originalFilename, storedFile, contentType, resolveLabels(labels), category, subCategory);
+        long started = System.nanoTime();
+        boolean saved = false;
+        try {
+            // Published inside the transaction, so listeners can queue follow-up work atomically with the row
+            FileInfo result = transactionTemplate.execute(status -> {
+                storageUsageService.recordAdded(category, subCategory, 1, storedFile.getSize());
+                FileInfo savedInfo = fileInfoRepository.save(fileInfo);
+                eventPublisher.publishEvent(new FileSavedEvent(List.of(savedInfo.getId())));
+                return savedInfo;
+            });
+            saved = true;
+            return result;
+        } finally {
+            fileMetrics.recordUploadMetadata(System.nanoTime() - started, false, saved);
+        }
+    }
 
-        // 1. Determine Category
+    /**
+     * Finds or creates the category chosen in an upload form.
+     * @param categoryValue   The value from the category dropdown (ID or "new").
+     * @param newCategoryName The name entered if categoryValue is "new".
+     * @return The category; never null.
+     */
+    public Category resolveCategory(String categoryValue, String newCategoryName) {
         if ("new".equals(categoryValue)) {
             if (StringUtils.hasText(newCategoryName)) {
                 // Find existing or create new if "new" is selected and name is provided
-                category = categoryRepository.findByName(newCategoryName)
-                        .orElseGet(() -> categoryRepository.save(new Category(newCategoryName.trim())));
+                return taxonomyCache.findOrCreateCategory(newCategoryName.trim());
             } else {
                 // Handle error: "new" selected but no name provided (should ideally be caught by frontend validation)
                 throw new IllegalArgumentException("New category name cannot be empty when 'Add New' is selected.");
@@ -124,99 +361,222 @@ public class FileStorageService {
             // Find existing category by ID if a value other than "new" is provided
             try {
                 Long categoryId = Long.parseLong(categoryValue);
-                category = categoryRepository.findById(categoryId)
+                return taxonomyCache.getCategory(categoryId)
                         .orElseThrow(() -> new IllegalArgumentException("Invalid Category ID: " + categoryId));
             } catch (NumberFormatException e) {
                 throw new IllegalArgumentException("Invalid Category value: " + categoryValue);
             }
         } else {
-             // Handle error: No category selected (should be caught by frontend validation)
-             throw new IllegalArgumentException("Category must be selected.");
-         }
-
-        // Make category effectively final for use in lambdas below
-        final Category finalCategory = category;
-
-        // 2. Determine SubCategory (only if a valid Category was determined)
-        if (finalCategory != null) {
-            if ("new".equals(subCategoryValue)) {
-                if (StringUtils.hasText(newSubCategoryName)) {
-                    // Find existing or create new subcategory within the determined category
-                    subCategory = subCategoryRepository.findByNameAndCategory(newSubCategoryName.trim(), finalCategory)
-                            .orElseGet(() -> subCategoryRepository.save(new SubCategory(newSubCategoryName.trim(), finalCategory)));
-                } else {
-                    // Handle error: "new" selected but no name provided
-                     throw new IllegalArgumentException("New sub-category name cannot be empty when 'Add New' is selected.");
-                }
-            } else if (StringUtils.hasText(subCategoryValue)) {
-                // Find existing subcategory by ID if a value other than "new" or empty is provided
-                 try {
-                    Long subCategoryId = Long.parseLong(subCategoryValue);
-                    // Important: Ensure the found subcategory belongs to the selected category (optional check)
-                    subCategory = subCategoryRepository.findById(subCategoryId)
-                            .filter(sc -> sc.getCategory().getId().equals(finalCategory.getId())) // Use finalCategory here
-                            .orElseThrow(() -> new IllegalArgumentException("Invalid SubCategory ID: " + subCategoryId + " for Category: " + finalCategory.getName())); // Use finalCategory here
-                 } catch (NumberFormatException e) {
-                    throw new IllegalArgumentException("Invalid SubCategory value: " + subCategoryValue);
-                 }
+            // Handle error: No category selected (should be caught by frontend validation)
+            throw new IllegalArgumentException("Category must be selected.");
+        }
+    }
+
+    /**
+     * Finds or creates the sub-category chosen in an upload form, within the given category.
+     * @param category           The category resolved by {@link #resolveCategory}.
+     * @param subCategoryValue   The value from the subcategory dropdown (ID, "new", or empty).
+     * @param newSubCategoryName The name entered if subCategoryValue is "new".
+     * @return The sub-category, or null if none was chosen (it is optional).
+     */
+    public SubCategory resolveSubCategory(Category category, String subCategoryValue, String newSubCategoryName) {
+        if ("new".equals(subCategoryValue)) {
+            if (StringUtils.hasText(newSubCategoryName)) {
+                // Find existing or create new subcategory within the determined category
+                return taxonomyCache.findOrCreateSubCategory(category, newSubCategoryName.trim());
+            } else {
+                // Handle error: "new" selected but no name provided
+                throw new IllegalArgumentException("New sub-category name cannot be empty when 'Add New' is selected.");
+            }
+        } else if (StringUtils.hasText(subCategoryValue)) {
+            // Find existing subcategory by ID if a value other than "new" or empty is provided
+            try {
+                Long subCategoryId = Long.parseLong(subCategoryValue);
+                // Important: Ensure the found subcategory belongs to the selected category
+                return taxonomyCache.getSubCategory(subCategoryId)
+                        .filter(sc -> sc.getCategory().getId().equals(category.getId()))
+                        .orElseThrow(() -> new IllegalArgumentException("Invalid SubCategory ID: " + subCategoryId + " for Category: " + category.getName()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid SubCategory value: " + subCategoryValue);
             }
-            // If subCategoryValue is empty or null, subCategory remains null (optional subcategory)
         }
+        // If subCategoryValue is empty or null, there is no subcategory (it is optional)
+        return null;
+    }
+
+    /**
+     * Finds or creates the label rows for parsed label names.
+     * @return The labels in input order, without duplicates.
+     */
+    public List<Label> resolveLabels(List<String> labelNames) {
+        return labelRegistry.resolve(labelNames);
+    }
 
-        // 3. Create and save FileInfo
+    /**
+     * Builds (without saving) the metadata row for a stored file.
+     */
+    public FileInfo newFileInfo(String originalFilename, StoredFile storedFile, String contentType, List<Label> labels,
+                                Category category, SubCategory subCategory) {
         FileInfo fileInfo = new FileInfo(
                 originalFilename,
-                storagePath, // Use the unique storage path
+                storedFile.getStoragePath(), // Use the unique storage path
                 contentType,
                 labels,
                 LocalDateTime.now(),
-                finalCategory, // Use the effectively final variable
+                category,
                 subCategory // Can be null
         );
-        return fileInfoRepository.save(fileInfo);
+        fileInfo.setSize(storedFile.getSize());
+        fileInfo.setSha256(storedFile.getSha256());
+        fileInfo.setContentEncoding(storedFile.getEncoding());
+        fileInfo.setBlob(blobStore.reference(storedFile.getSha256())); // Reference taken when storing
+        return fileInfo;
     }
 
+    /**
+     * Opens a file's content for download, wherever the storage backend keeps it.
+     * @param fileInfo The file's metadata.
+     * @return The content as uploaded: the shared blob (decompressed on the fly if it is stored
+     *         compressed), or the flat file for pre-dedup uploads.
+     */
+    public TransferSource openForTransfer(FileInfo fileInfo) throws IOException {
+        if (fileInfo.getBlob() == null) {
+            return openForTransfer(fileInfo.getStoragePath());
+        }
+        TransferSource stored = openEncoded(fileInfo);
+        if (fileInfo.getContentEncoding() == null) {
+            return stored;
+        }
+        return TransferSource.ofStream(() -> openStream(fileInfo), fileInfo.getSize());
+    }
 
     /**
-     * Loads a file as a Resource using its stored unique filename.
-     * @param storedFilename The unique filename (storagePath in FileInfo).
-     * @return The file as a Resource.
+     * Opens a file's stored bytes as they are, for clients that accept its
+     * {@link FileInfo#getContentEncoding() content encoding}; the same as {@link #openForTransfer} for
+     * files stored uncompressed.
      */
-    public Resource loadFileAsResource(String storedFilename) {
-        try {
-            Path filePath = this.storageLocation.resolve(storedFilename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            if (resource.exists()) {
-                return resource;
-            } else {
-                throw new RuntimeException("File not found " + storedFilename);
-            }
-        } catch (MalformedURLException ex) {
-            throw new RuntimeException("File not found " + storedFilename, ex);
+    public TransferSource openEncoded(FileInfo fileInfo) throws IOException {
+        if (fileInfo.getBlob() == null) {
+            return openForTransfer(fileInfo.getStoragePath());
         }
+        return blobStore.open(fileInfo.getSha256())
+                .orElseThrow(() -> new StoredFileNotFoundException("Content missing for " + fileInfo.getStoragePath()));
     }
 
     /**
-     * Deletes a file from the storage location.
-     * @param storedFilename The unique filename used when storing the file.
-     * @throws IOException If an I/O error occurs during deletion.
+     * Opens a file's content as a stream, for callers that read it whole (indexing, processing).
+     * @param fileInfo The file's metadata.
+     * @return A stream of the content (decompressed) from its first byte; the caller closes it.
      */
-    public void deleteFile(String storedFilename) throws IOException {
+    public InputStream openStream(FileInfo fileInfo) throws IOException {
+        return BlobCompressor.decode(openEncodedStream(fileInfo), fileInfo.getContentEncoding());
+    }
+
+    /**
+     * Opens a file's stored bytes as a stream, still in its content encoding (see {@link #openEncoded}).
+     */
+    public InputStream openEncodedStream(FileInfo fileInfo) throws IOException {
+        if (fileInfo.getBlob() == null) {
+            return Files.newInputStream(loadFileAsPath(fileInfo.getStoragePath()));
+        }
         try {
-            Path filePath = this.storageLocation.resolve(storedFilename).normalize();
-            // Use deleteIfExists to avoid exception if file is already gone
-            boolean deleted = Files.deleteIfExists(filePath);
-            if (!deleted) {
-                // Optionally log or handle the case where the file didn't exist
-                // For now, we just proceed as the goal is for the file to be gone
-                System.out.println("Attempted to delete file that did not exist: " + storedFilename); // Simple logging
-            }
-        } catch (MalformedURLException ex) {
-            // This shouldn't happen if storedFilename is valid, but handle defensively
-            throw new RuntimeException("Invalid file path format for deletion: " + storedFilename, ex);
-        } catch (IOException ex) {
-            // Rethrow IOExceptions to be handled by the controller
-            throw new IOException("Could not delete file " + storedFilename, ex);
+            return blobStore.openStream(fileInfo.getSha256());
+        } catch (NoSuchFileException e) {
+            throw new StoredFileNotFoundException("Content missing for " + fileInfo.getStoragePath());
+        }
+    }
+
+    /**
+     * Opens a file stored flat in the storage directory that has no FileInfo at all (uploads that predate
+     * file records). A deleted file's content stays on disk until the reaper removes it, so its row,
+     * though hidden from entity queries, keeps it from being served.
+     * @param storedFilename The unique filename (storagePath in FileInfo).
+     */
+    public TransferSource openForTransfer(String storedFilename) throws IOException {
+        if (!fileInfoRepository.findExistingStoragePaths(List.of(storedFilename)).isEmpty()) {
+            throw new StoredFileNotFoundException("File not found " + storedFilename);
+        }
+        Path filePath = loadFileAsPath(storedFilename);
+        return TransferSource.ofFile(filePath, Files.size(filePath));
+    }
+
+    /**
+     * Resolves a file stored flat in the storage directory (uploads that predate deduplication).
+     * @param storedFilename The unique filename (storagePath in FileInfo).
+     * @return The path of an existing regular file inside the storage directory.
+     */
+    public Path loadFileAsPath(String storedFilename) {
+        Path filePath = resolveStoredFile(storedFilename);
+        if (!Files.isRegularFile(filePath)) {
+            throw new StoredFileNotFoundException("File not found " + storedFilename);
+        }
+        return filePath;
+    }
+
+    /**
+     * Files stored flat in the storage directory, for the integrity scrubber. Close the stream.
+     */
+    public Stream<Path> listFlatFiles() throws IOException {
+        return Files.list(this.storageLocation).filter(Files::isRegularFile);
+    }
+
+    // Maps a stored filename into the storage directory, refusing anything that would escape it
+    private Path resolveStoredFile(String storedFilename) {
+        Path filePath = this.storageLocation.resolve(storedFilename).normalize();
+        if (!filePath.startsWith(this.storageLocation)) {
+            throw new StoredFileNotFoundException("File not found " + storedFilename);
+        }
+        return filePath;
+    }
+
+    /**
+     * Deletes a file; see {@link #deleteFiles}.
+     */
+    @Transactional
+    public void deleteFile(FileInfo fileInfo) {
+        deleteFiles(FileSelection.ofIds(List.of(fileInfo.getId())));
+    }
+
+    /**
+     * Deletes the files selected with one UPDATE that marks their rows deleted: from then on
+     * they are gone for every query, and only the usage counters of their categories are updated with
+     * it. The {@link StorageReaper} removes the rows and releases their content later, in batches. A
+     * {@link FileDeletedEvent} per file goes to listeners here and, with the delete's commit, to the other nodes.
+     * @return The number of files deleted.
+     * @throws IllegalArgumentException if the selection has no criteria.
+     */
+    @Transactional
+    public int deleteFiles(FileSelection selection) {
+        if (selection.isEmpty()) {
+            throw new IllegalArgumentException("A bulk delete needs at least one criterion");
+        }
+        LocalDateTime deletedAt = nextDeletionTime();
+        int deleted = fileInfoRepository.markDeleted(selection, deletedAt, clusterNode.getId());
+        if (deleted > 0) {
+            storageUsageService.recordRemoved(fileInfoRepository.sumDeletedAt(deletedAt, clusterNode.getId()));
+            List<FileDeletedEvent> events = fileInfoRepository.findDeletedAt(deletedAt, clusterNode.getId()).stream()
+                    .map(file -> new FileDeletedEvent(file.getId(), file.getStoragePath()))
+                    .toList();
+            events.forEach(eventPublisher::publishEvent);
+            clusterEventBus.publishAll(events);
+        }
+        return deleted;
+    }
+
+    // The rows a delete marked are found again by their deleted_at and deleted_by, so no two deletes on this node
+    // share one: truncated to what the column stores, and moved on a microsecond when the clock hasn't
+    private LocalDateTime nextDeletionTime() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        return lastDeletion.updateAndGet(last -> now.isAfter(last) ? now : last.plus(1, ChronoUnit.MICROS));
+    }
+
+    /**
+     * Removes a file stored flat in the storage directory (uploads that predate deduplication), once its
+     * row is gone; a file already missing is not an error.
+     */
+    public void deleteFlatFile(String storedFilename) throws IOException {
+        if (!Files.deleteIfExists(resolveStoredFile(storedFilename))) {
+            log.warn("Attempted to delete file that did not exist: {}", storedFilename);
         }
     }
 }
@@ -0,0 +1,127 @@
+package com.example.springfile.service;
+
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.storage.TransferSource;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Read-through cache of downloads by storedFilename: the file's metadata, and for small files its stored
+ * bytes in an off-heap buffer, so a hot download touches neither the database nor the disk. Bounded by
+ * total size ({@code file.download.cache.max-size}) with Caffeine's W-TinyLFU eviction, which keeps files
+ * that are requested often rather than the ones requested last, so a scan of cold files cannot flush it.
+ * <p>
+ * Stored content never changes under a storedFilename, so entries only go away on delete (after the
+ * deleting transaction commits) or eviction. The bytes are kept as stored, i.e. still compressed for
+ * compressed blobs; clients that don't accept the encoding are served from storage as before.
+ */
+@Service
+public class HotFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(HotFileCache.class);
+
+    // Rough heap cost of a cached FileInfo with its category and labels, charged to every entry
+    static final int METADATA_WEIGHT = 1024;
+
+    /**
+     * A cached download.
+     * @param fileInfo Detached, with category, sub-category and labels loaded.
+     * @param content  The stored bytes (in the file's content encoding), read-only; null if the file is
+     *                 too large to cache or its content could not be read.
+     */
+    public record Entry(FileInfo fileInfo, ByteBuffer content) {
+
+        /**
+         * The stored bytes, if they are cached.
+         */
+        public Optional<TransferSource> storedContent() {
+            return Optional.ofNullable(content).map(TransferSource::ofBuffer);
+        }
+    }
+
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final int maxFileSize;
+    private final Cache<String, Entry> cache; // null when disabled
+
+    @Autowired
+    public HotFileCache(FileInfoRepository fileInfoRepository, FileStorageService fileStorageService, FileMetrics fileMetrics,
+                        @Value("${file.download.cache.enabled:true}") boolean enabled,
+                        @Value("${file.download.cache.max-size:64MB}") DataSize maxSize,
+                        @Value("${file.download.cache.max-file-size:256KB}") DataSize maxFileSize) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.maxFileSize = (int) Math.min(maxFileSize.toBytes(), Integer.MAX_VALUE - 8);
+        if (enabled) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumWeight(maxSize.toBytes())
+                    .weigher((String key, Entry entry) ->
+                            METADATA_WEIGHT + (entry.content() != null ? entry.content().capacity() : 0))
+                    .recordStats()
+                    .build();
+            fileMetrics.monitorDownloadCache(cache);
+        } else {
+            this.cache = null;
+        }
+    }
+
+    /**
+     * The file stored under storedFilename, loading it on a miss.
+     * @return empty if there is no such file.
+     */
+    public Optional<Entry> get(String storedFilename) {
+        if (cache == null) {
+            return fileInfoRepository.findByStoragePath(storedFilename).map(fileInfo -> new Entry(fileInfo, null));
+        }
+        // Loaded inside the cache's compute, so an invalidation for a delete that commits during the
+        // load waits for it and then removes what it loaded
+        return Optional.ofNullable(cache.get(storedFilename, this::load));
+    }
+
+    private Entry load(String storedFilename) {
+        return fileInfoRepository.findByStoragePath(storedFilename)
+                .map(fileInfo -> new Entry(fileInfo, readSmallContent(fileInfo)))
+                .orElse(null);
+    }
+
+    // Compressed content is usually smaller than fileInfo.size, so only uncompressed files can be ruled out unread
+    private ByteBuffer readSmallContent(FileInfo fileInfo) {
+        if (fileInfo.getContentEncoding() == null && fileInfo.getSize() != null && fileInfo.getSize() > maxFileSize) {
+            return null;
+        }
+        byte[] bytes;
+        try (InputStream in = fileStorageService.openEncodedStream(fileInfo)) {
+            bytes = in.readNBytes(maxFileSize + 1);
+        } catch (IOException | StoredFileNotFoundException e) {
+            // Left to the uncached path, which reports it to the client
+            log.debug("Not caching content of {}: {}", fileInfo.getStoragePath(), e.getMessage());
+            return null;
+        }
+        if (bytes.length > maxFileSize) {
+            return null;
+        }
+        ByteBuffer content = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        return content.asReadOnlyBuffer();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFileDeleted(FileDeletedEvent event) {
+        if (cache != null) {
+            cache.invalidate(event.storagePath());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.springfile.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the server does not have the disk space an upload needs.
+ */
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class InsufficientStorageException extends RuntimeException {
+    public InsufficientStorageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterLocks;
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.ContentBlob;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.storage.BlobStat;
+import com.example.springfile.storage.ByteRateLimiter;
+import com.example.springfile.storage.StorageBackend;
+import com.example.springfile.storage.ThrottledInputStream;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Background check that stored content is still what was uploaded. Each pass
+ * <ul>
+ *   <li>re-reads every blob from the storage backend, at most {@code file.scrub.max-rate} bytes per second so
+ *       downloads keep the disk, and compares its size and CRC32C with those recorded when it was stored.
+ *       Blobs stored before checksums were recorded are verified against their SHA-256 instead, and their
+ *       checksum recorded for the next pass;</li>
+ *   <li>lists the backend and the storage directory for objects and flat files that no row points at;</li>
+ *   <li>checks that every FileInfo row still has its content.</li>
+ * </ul>
+ * Nothing is repaired: the problems are logged, counted in {@link FileMetrics} and kept in the last
+ * {@link Report} ({@code GET /api/integrity/report}). Runs every {@code file.scrub.interval} when
+ * {@code file.scrub.enabled}, or on demand. Of the nodes sharing a database one scrubs at a time, and the
+ * scheduled pass runs on one of them per interval; the report is kept by the node that made it.
+ */
+@Service
+public class IntegrityScrubber {
+
+    private static final Logger log = LoggerFactory.getLogger(IntegrityScrubber.class);
+
+    private static final int BATCH_SIZE = 100;
+    private static final String LOCK = "integrity-scrubber";
+    private static final String SCHEDULED_RUN = "integrity-scrub";
+    // Counts cover everything; only this many findings are kept in the report
+    static final int MAX_FINDINGS = 1000;
+
+    public enum Problem {
+        /** A blob row whose object is gone from the backend. */
+        MISSING_OBJECT,
+        /** A stored object whose size is not the recorded one (e.g. truncated). */
+        SIZE_MISMATCH,
+        /** A stored object whose bytes no longer match the recorded CRC32C (or, for old blobs, the SHA-256). */
+        CHECKSUM_MISMATCH,
+        /** A stored object that could not be read to the end. */
+        READ_ERROR,
+        /** A blob row no file points at any more. */
+        UNREFERENCED_BLOB,
+        /** A backend object with no blob row. */
+        ORPHANED_OBJECT,
+        /** A flat file in the storage directory with no FileInfo row. */
+        ORPHANED_FILE,
+        /** A FileInfo row whose content is missing. */
+        DANGLING_FILE
+    }
+
+    /**
+     * @param key    Blob hash, object key or storagePath, depending on the problem.
+     * @param detail What was expected and found, for people.
+     */
+    public record Finding(Problem problem, String key, String detail) {
+    }
+
+    /**
+     * Outcome of one pass.
+     * @param bytesRead Stored bytes re-read and verified.
+     * @param findings  The first {@link #MAX_FINDINGS} problems; counts has the totals.
+     */
+    public record Report(LocalDateTime startedAt, LocalDateTime finishedAt, long blobsChecked, long bytesRead,
+                         long objectsListed, long filesChecked, Map<Problem, Long> counts, List<Finding> findings) {
+    }
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final OrphanScanner orphanScanner;
+    private final StorageBackend backend;
+    private final FileMetrics fileMetrics;
+    private final ClusterLocks clusterLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxBytesPerSecond;
+    private final Duration unreferencedGrace;
+    private final Duration interval;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Report lastReport;
+
+    @Autowired
+    public IntegrityScrubber(ContentBlobRepository contentBlobRepository, FileInfoRepository fileInfoRepository,
+                             FileStorageService fileStorageService, OrphanScanner orphanScanner, BlobStore blobStore,
+                             FileMetrics fileMetrics, ClusterLocks clusterLocks,
+                             PlatformTransactionManager transactionManager, BackgroundThreads backgroundThreads,
+                             @Value("${file.scrub.enabled:false}") boolean enabled,
+                             @Value("${file.scrub.interval:24h}") Duration interval,
+                             @Value("${file.scrub.initial-delay:1h}") Duration initialDelay,
+                             @Value("${file.scrub.max-rate:20MB}") DataSize maxRate,
+                             @Value("${file.scrub.unreferenced-grace:1h}") Duration unreferencedGrace) {
+        this.contentBlobRepository = contentBlobRepository;
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.orphanScanner = orphanScanner;
+        this.backend = blobStore.getBackend();
+        this.fileMetrics = fileMetrics;
+        this.clusterLocks = clusterLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxBytesPerSecond = maxRate.toBytes();
+        this.unreferencedGrace = unreferencedGrace;
+        this.interval = interval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(backgroundThreads.factory("integrity-scrubber"));
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::scheduledScrub, initialDelay.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a pass in the background.
+     * @return false if one is already running.
+     */
+    public boolean start() {
+        if (running.get()) {
+            return false;
+        }
+        executor.execute(this::scrubQuietly);
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Optional<Report> getLastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    private void scheduledScrub() {
+        try {
+            if (!clusterLocks.claimRun(SCHEDULED_RUN, interval)) {
+                return; // Another node has run this interval's pass
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not schedule an integrity scrub", e);
+            return;
+        }
+        scrubQuietly();
+    }
+
+    private void scrubQuietly() {
+        try {
+            scrub();
+        } catch (InterruptedIOException e) {
+            log.info("Integrity scrub interrupted");
+        } catch (Exception e) {
+            // Keep the schedule going: an exception would cancel it
+            log.error("Integrity scrub failed", e);
+        }
+    }
+
+    /**
+     * Runs a full pass on the calling thread.
+     * @return The report, or empty if another pass was running, here or on another node.
+     */
+    Optional<Report> scrub() throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+        try {
+            Optional<ClusterLocks.Lock> lock = clusterLocks.tryLock(LOCK);
+            if (lock.isEmpty()) {
+                log.info("Integrity scrub skipped: another node is scrubbing");
+                return Optional.empty();
+            }
+            try (ClusterLocks.Lock held = lock.get()) {
+                return Optional.of(scrub(new Pass(held)));
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Report scrub(Pass pass) throws IOException {
+        log.info("Integrity scrub started");
+        scrubBlobs(pass);
+        scrubObjects(pass);
+        scrubFiles(pass);
+        Report report = pass.report();
+        lastReport = report;
+        if (report.findings().isEmpty()) {
+            log.info("Integrity scrub finished: {} blobs ({} bytes) and {} files verified, no problems",
+                    report.blobsChecked(), report.bytesRead(), report.filesChecked());
+        } else {
+            log.warn("Integrity scrub finished: {} blobs ({} bytes) and {} files verified, problems found: {}",
+                    report.blobsChecked(), report.bytesRead(), report.filesChecked(), report.counts());
+        }
+        return report;
+    }
+
+    private void scrubBlobs(Pass pass) throws IOException {
+        LocalDateTime referenceCutoff = LocalDateTime.now().minus(unreferencedGrace);
+        String after = "";
+        List<ContentBlob> batch;
+        while (!(batch = contentBlobRepository.findBySha256GreaterThanOrderBySha256(after, Limit.of(BATCH_SIZE))).isEmpty()) {
+            List<String> keys = batch.stream().map(ContentBlob::getSha256).toList();
+            Set<String> referenced = new HashSet<>(contentBlobRepository.findReferenced(keys));
+            for (ContentBlob blob : batch) {
+                pass.lock.renew();
+                after = blob.getSha256();
+                // Uploads take their reference a moment before their FileInfo row is committed
+                if (!referenced.contains(blob.getSha256())
+                        && (blob.getLastReferencedAt() == null || blob.getLastReferencedAt().isBefore(referenceCutoff))) {
+                    pass.found(Problem.UNREFERENCED_BLOB, blob.getSha256(), "refCount " + blob.getRefCount() + ", no file");
+                }
+                verify(blob, pass);
+            }
+        }
+    }
+
+    private void verify(ContentBlob blob, Pass pass) throws IOException {
+        String key = blob.getSha256();
+        Optional<BlobStat> stat = backend.stat(key);
+        if (stat.isEmpty()) {
+            missing(blob, pass);
+            return;
+        }
+        long size = stat.get().size();
+        Long expectedSize = blob.getStoredSize() != null ? blob.getStoredSize()
+                : blob.getEncoding() == null ? Long.valueOf(blob.getSize()) : null;
+        if (expectedSize != null && size != expectedSize) {
+            pass.found(Problem.SIZE_MISMATCH, key, "expected " + expectedSize + " bytes, found " + size);
+            return;
+        }
+        CRC32C crc = new CRC32C();
+        try (CheckedInputStream stored = new CheckedInputStream(new ThrottledInputStream(backend.get(key), pass.limiter), crc)) {
+            if (blob.getCrc32c() != null) {
+                stored.transferTo(OutputStream.nullOutputStream());
+                if (crc.getValue() != blob.getCrc32c()) {
+                    pass.found(Problem.CHECKSUM_MISMATCH, key,
+                            "expected CRC32C " + blob.getCrc32c() + ", computed " + crc.getValue());
+                }
+            } else {
+                verifyLegacy(blob, stored, size, crc, pass);
+            }
+            pass.bytesRead += size;
+            fileMetrics.recordScrubbed(size);
+        } catch (NoSuchFileException e) {
+            // Deleted since the stat; a release in progress, most likely
+            if (contentBlobRepository.existsById(key)) {
+                missing(blob, pass);
+            }
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            // Includes corrupt gzip streams of old compressed blobs
+            pass.found(Problem.READ_ERROR, key, e.toString());
+        } finally {
+            pass.blobsChecked++;
+        }
+    }
+
+    // No CRC32C was recorded, so the content is decoded and checked against its hash; if it matches,
+    // the stored size and CRC32C are recorded and the next pass only needs the cheap check
+    private void verifyLegacy(ContentBlob blob, CheckedInputStream stored, long size, CRC32C crc, Pass pass) throws IOException {
+        ContentChecksums content = new ContentChecksums();
+        InputStream decoded = BlobCompressor.decode(stored, blob.getEncoding());
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = decoded.read(buffer)) >= 0) {
+            content.update(buffer, 0, read);
+        }
+        // Anything after the end of the gzip stream belongs to the object too
+        stored.transferTo(OutputStream.nullOutputStream());
+        if (!content.sha256().equals(blob.getSha256())) {
+            pass.found(Problem.CHECKSUM_MISMATCH, blob.getSha256(), "content hashes to " + content.sha256());
+        } else if (content.size() != blob.getSize()) {
+            pass.found(Problem.SIZE_MISMATCH, blob.getSha256(),
+                    "expected " + blob.getSize() + " bytes of content, found " + content.size());
+        } else {
+            transactionTemplate.executeWithoutResult(status ->
+                    contentBlobRepository.updateChecksum(blob.getSha256(), size, crc.getValue()));
+        }
+    }
+
+    private void missing(ContentBlob blob, Pass pass) {
+        pass.found(Problem.MISSING_OBJECT, blob.getSha256(), "no object in " + backend.describe());
+        for (String storagePath : fileInfoRepository.findStoragePathsByBlob(blob.getSha256())) {
+            pass.found(Problem.DANGLING_FILE, storagePath, "content " + blob.getSha256() + " is missing");
+        }
+    }
+
+    private void scrubObjects(Pass pass) throws IOException {
+        pass.objectsListed += orphanScanner.forEachOrphanedObject(key -> pass.found(Problem.ORPHANED_OBJECT, key, "no blob row"));
+    }
+
+    private void scrubFiles(Pass pass) throws IOException {
+        // Rows still stored flat (the blob migration moves them into the blob store at startup)
+        long lastId = 0;
+        List<FileInfo> rows;
+        while (!(rows = fileInfoRepository.findTop100ByBlobIsNullAndIdGreaterThanOrderByIdAsc(lastId)).isEmpty()) {
+            for (FileInfo fileInfo : rows) {
+                pass.lock.renew();
+                lastId = fileInfo.getId();
+                try {
+                    fileStorageService.loadFileAsPath(fileInfo.getStoragePath());
+                } catch (StoredFileNotFoundException e) {
+                    pass.found(Problem.DANGLING_FILE, fileInfo.getStoragePath(), "file missing from the storage directory");
+                }
+                pass.filesChecked++;
+            }
+        }
+        orphanScanner.forEachOrphanedFlatFile(name -> pass.found(Problem.ORPHANED_FILE, name, "no file row"));
+    }
+
+    // State of the pass in progress; only the scrubber thread touches it
+    private final class Pass {
+        final ClusterLocks.Lock lock;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final ByteRateLimiter limiter = new ByteRateLimiter(maxBytesPerSecond);
+        final Map<Problem, Long> counts = new EnumMap<>(Problem.class);
+        final List<Finding> findings = new ArrayList<>();
+        long blobsChecked;
+        long bytesRead;
+        long objectsListed;
+        long filesChecked;
+
+        Pass(ClusterLocks.Lock lock) {
+            this.lock = lock;
+        }
+
+        void found(Problem problem, String key, String detail) {
+            log.warn("Integrity problem {} for {}: {}", problem, key, detail);
+            fileMetrics.recordScrubFinding(problem.name());
+            counts.merge(problem, 1L, Long::sum);
+            if (findings.size() < MAX_FINDINGS) {
+                findings.add(new Finding(problem, key, detail));
+            }
+        }
+
+        Report report() {
+            return new Report(startedAt, LocalDateTime.now(), blobsChecked, bytesRead, objectsListed, filesChecked,
+                    Map.copyOf(counts), List.copyOf(findings));
+        }
+    }
+}
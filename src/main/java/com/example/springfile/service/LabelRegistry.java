@@ -0,0 +1,94 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.Label;
+import com.example.springfile.repository.LabelRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps label names to their {@link Label} rows, creating the rows missing. Label rows never change once
+ * created, so resolved labels are cached without invalidation; the cache is simply dropped when it grows
+ * past {@link #MAX_CACHED} names.
+ */
+@Service
+public class LabelRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(LabelRegistry.class);
+
+    static final int MAX_CACHED = 10_000;
+
+    private final LabelRepository labelRepository;
+    // Each new label commits on its own, so a label another upload is creating at the same time
+    // shows up as a unique-key violation that can be retried as a lookup
+    private final TransactionTemplate insertTransaction;
+
+    private final Map<String, Label> cache = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LabelRegistry(LabelRepository labelRepository, PlatformTransactionManager transactionManager) {
+        this.labelRepository = labelRepository;
+        this.insertTransaction = new TransactionTemplate(transactionManager);
+        this.insertTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Returns the labels with the given names, in order and without duplicates.
+     * The entities are detached: only their ids and names may be used.
+     */
+    public List<Label> resolve(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<String> unique = new LinkedHashSet<>(names);
+        Map<String, Label> resolved = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String name : unique) {
+            Label label = cache.get(name);
+            if (label != null) {
+                resolved.put(name, label);
+            } else {
+                uncached.add(name);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            Map<String, Label> found = new HashMap<>();
+            labelRepository.findByNameIn(uncached).forEach(label -> found.put(label.getName(), label));
+            for (String name : uncached) {
+                found.computeIfAbsent(name, this::create);
+            }
+            if (cache.size() + found.size() > MAX_CACHED) {
+                cache.clear();
+            }
+            cache.putAll(found);
+            resolved.putAll(found);
+        }
+        List<Label> labels = new ArrayList<>(unique.size());
+        for (String name : unique) {
+            labels.add(resolved.get(name));
+        }
+        return labels;
+    }
+
+    private Label create(String name) {
+        try {
+            return insertTransaction.execute(status -> labelRepository.save(new Label(name)));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Label '{}' was created concurrently", name);
+            return labelRepository.findByName(name).orElseThrow(() -> e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.springfile.service;
+
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Finds stored content nothing points at: backend objects without a blob row (for objects derived from
+ * a blob, such as previews, without a row for that blob), and flat files in the storage directory without
+ * a FileInfo row (deleted files still count until the reaper removes them).
+ * The listings are checked against the database a batch at a time. The {@link IntegrityScrubber}
+ * reports what this finds; the {@link StorageReaper} removes it.
+ */
+@Component
+public class OrphanScanner {
+
+    private static final int BATCH_SIZE = 500;
+
+    @FunctionalInterface
+    public interface OrphanHandler {
+        void accept(String key) throws IOException;
+    }
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final StorageBackend backend;
+
+    @Autowired
+    public OrphanScanner(ContentBlobRepository contentBlobRepository, FileInfoRepository fileInfoRepository,
+                         FileStorageService fileStorageService, BlobStore blobStore) {
+        this.contentBlobRepository = contentBlobRepository;
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.backend = blobStore.getBackend();
+    }
+
+    /**
+     * Passes the key of every backend object whose blob has no row to the handler.
+     * @return The number of objects listed.
+     */
+    public long forEachOrphanedObject(OrphanHandler handler) throws IOException {
+        try (Stream<String> keys = backend.keys()) {
+            return forEachUnknown(keys.iterator(), batch -> {
+                Set<String> blobs = new HashSet<>();
+                contentBlobRepository.findAllById(batch.stream().map(BlobStore::owningBlob).distinct().toList())
+                        .forEach(blob -> blobs.add(blob.getSha256()));
+                Set<String> known = new HashSet<>();
+                for (String key : batch) {
+                    if (blobs.contains(BlobStore.owningBlob(key))) {
+                        known.add(key);
+                    }
+                }
+                return known;
+            }, handler);
+        }
+    }
+
+    /**
+     * Passes the name of every flat file in the storage directory without a FileInfo row to the handler.
+     * @return The number of files listed.
+     */
+    public long forEachOrphanedFlatFile(OrphanHandler handler) throws IOException {
+        try (Stream<Path> files = fileStorageService.listFlatFiles()) {
+            return forEachUnknown(files.map(file -> file.getFileName().toString()).iterator(),
+                    batch -> new HashSet<>(fileInfoRepository.findExistingStoragePaths(batch)), handler);
+        }
+    }
+
+    private static long forEachUnknown(Iterator<String> keys, Function<List<String>, Set<String>> known,
+                                       OrphanHandler handler) throws IOException {
+        long listed = 0;
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        while (keys.hasNext()) {
+            batch.add(keys.next());
+            if (batch.size() == BATCH_SIZE || !keys.hasNext()) {
+                Set<String> found = known.apply(batch);
+                for (String key : batch) {
+                    if (!found.contains(key)) {
+                        handler.accept(key);
+                    }
+                }
+                listed += batch.size();
+                batch.clear();
+            }
+        }
+        return listed;
+    }
+}
@@ -0,0 +1,463 @@
+package com.example.springfile.service;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.PreviewAsset;
+import com.example.springfile.repository.PreviewAssetRepository;
+import com.example.springfile.storage.StorageBackend;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Small JPEG previews of files: a thumbnail for images, a render of the first page for PDFs.
+ * <ul>
+ *   <li>Rendered on first request, or right after upload by the {@link com.example.springfile.processing.PreviewStage}
+ *       ({@code file.preview.eager}), and stored in the storage backend next to the blob they were rendered
+ *       from (see {@link BlobStore#derivedKey}). A preview depends only on the content, so files sharing
+ *       content share it, and it never changes: it is served with a year-long cache lifetime.</li>
+ *   <li>Rendering runs on its own small pool ({@code file.preview.threads}) with a bounded queue; when that
+ *       is full requests get a 503 rather than more threads, so a page of new thumbnails cannot take the
+ *       CPU and disk from uploads and downloads. Concurrent requests for the same preview share one render.</li>
+ *   <li>Stored previews are limited to {@code file.preview.quota} in total: past it, the least recently
+ *       accessed are removed until 90% of it is used. Accesses are recorded at most once per
+ *       {@link #TOUCH_INTERVAL}, which is precise enough for eviction and keeps hits from writing.</li>
+ * </ul>
+ * Images are decoded subsampled to about twice the preview size, and larger than {@code file.preview.max-pixels}
+ * not at all, so a huge image costs no more memory than the preview needs.
+ */
+@Service
+public class PreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(PreviewService.class);
+
+    public static final String CONTENT_TYPE = "image/jpeg";
+    public static final Set<String> SUPPORTED_TYPES = Set.of("image/jpeg", "image/png", "image/gif", "image/bmp", "application/pdf");
+    static final Duration TOUCH_INTERVAL = Duration.ofHours(1);
+
+    private static final String PDF = "application/pdf";
+    private static final float JPEG_QUALITY = 0.8f;
+    private static final int EVICTION_BATCH_SIZE = 100;
+
+    /**
+     * A stored preview.
+     * @param storageKey Identifies it (and is a strong validator for it); stable for the same content and size.
+     * @param content    JPEG bytes.
+     */
+    public record Preview(String storageKey, byte[] content) {
+    }
+
+    private final PreviewAssetRepository previewAssetRepository;
+    private final FileStorageService fileStorageService;
+    private final StorageBackend backend;
+    private final FileMetrics fileMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean eager;
+    private final int size;
+    private final long maxSourceSize;
+    private final long maxPixels;
+    private final long quota;
+    private final Duration renderTimeout;
+    private final ThreadPoolExecutor renderPool;
+    private final ConcurrentMap<String, CompletableFuture<Preview>> rendering = new ConcurrentHashMap<>();
+    // Content that could not be rendered is not tried again for a while
+    private final Cache<String, Boolean> failed;
+    // Set while one render enforces the quota; the others skip it rather than queue up behind the database
+    // and backend calls (a monitor held across them would also pin a virtual thread to its carrier)
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    @Autowired
+    public PreviewService(PreviewAssetRepository previewAssetRepository, FileStorageService fileStorageService,
+                          BlobStore blobStore, FileMetrics fileMetrics, PlatformTransactionManager transactionManager,
+                          BackgroundThreads backgroundThreads,
+                          @Value("${file.preview.eager:true}") boolean eager,
+                          @Value("${file.preview.size:256}") int size,
+                          @Value("${file.preview.max-source-size:200MB}") DataSize maxSourceSize,
+                          @Value("${file.preview.max-pixels:100000000}") long maxPixels,
+                          @Value("${file.preview.quota:1GB}") DataSize quota,
+                          @Value("${file.preview.threads:2}") int threads,
+                          @Value("${file.preview.queue-capacity:32}") int queueCapacity,
+                          @Value("${file.preview.render-timeout:10s}") Duration renderTimeout,
+                          @Value("${file.preview.failure-ttl:1h}") Duration failureTtl) {
+        this.previewAssetRepository = previewAssetRepository;
+        this.fileStorageService = fileStorageService;
+        this.backend = blobStore.getBackend();
+        this.fileMetrics = fileMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eager = eager;
+        this.size = size;
+        this.maxSourceSize = maxSourceSize.toBytes();
+        this.maxPixels = maxPixels;
+        this.quota = quota.toBytes();
+        this.renderTimeout = renderTimeout;
+        this.renderPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), backgroundThreads.factory("preview-render"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.failed = Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(failureTtl).build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderPool.shutdownNow();
+    }
+
+    /**
+     * Whether a preview can be made of this file: an image or PDF, stored as a blob, not too large.
+     */
+    public boolean supports(FileInfo fileInfo) {
+        return fileInfo.getBlob() != null && BlobStore.isValidHash(fileInfo.getSha256())
+                && (fileInfo.getSize() == null || fileInfo.getSize() <= maxSourceSize)
+                && isSupportedType(previewType(fileInfo));
+    }
+
+    /**
+     * Whether files of this content type can get a preview, for showing one in the listing.
+     */
+    public static boolean isSupportedType(String contentType) {
+        return contentType != null && SUPPORTED_TYPES.contains(contentType);
+    }
+
+    /**
+     * The key the file's preview is (or would be) stored under; also its entity tag.
+     */
+    public String storageKey(FileInfo fileInfo) {
+        return storageKey(fileInfo.getSha256());
+    }
+
+    private String storageKey(String sha256) {
+        return BlobStore.derivedKey(sha256, "preview-" + size + ".jpg");
+    }
+
+    /**
+     * The file's preview, rendering it if it has none yet; waits for the render up to {@code file.preview.render-timeout}.
+     * @return empty if the file is not previewable or its content could not be rendered.
+     * @throws PreviewUnavailableException if the render could not start or finish in time.
+     */
+    public Optional<Preview> get(FileInfo fileInfo) throws IOException {
+        if (!supports(fileInfo)) {
+            return Optional.empty();
+        }
+        String key = storageKey(fileInfo);
+        Optional<Preview> stored = readStored(key);
+        if (stored.isPresent()) {
+            fileMetrics.recordPreview("hit");
+            return stored;
+        }
+        if (failed.getIfPresent(key) != null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(render(fileInfo, key).get(renderTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            // The render goes on and is stored for the next request
+            throw new PreviewUnavailableException("Preview of " + fileInfo.getStoragePath() + " is still being rendered");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PreviewUnavailableException("Interrupted while rendering a preview");
+        } catch (ExecutionException e) {
+            throw renderFailure(e);
+        }
+    }
+
+    /**
+     * Renders the file's preview if eager rendering is on and it has none yet, on the preview pool;
+     * waits for it without a time limit.
+     * @throws PreviewUnavailableException if the pool is saturated (the caller retries later).
+     */
+    public void renderEagerly(FileInfo fileInfo) throws IOException, InterruptedException {
+        if (!eager || !supports(fileInfo)) {
+            return;
+        }
+        String key = storageKey(fileInfo);
+        if (previewAssetRepository.existsById(key)) {
+            return;
+        }
+        try {
+            render(fileInfo, key).get();
+        } catch (ExecutionException e) {
+            throw renderFailure(e);
+        }
+    }
+
+    /**
+     * Removes the stored previews of blobs whose content was deleted (their rows went with the blobs).
+     * Previews left behind anyway are found by the orphan scan, as objects of blobs that are gone.
+     */
+    public void deleteFor(Collection<String> sha256s) throws IOException {
+        if (!sha256s.isEmpty()) {
+            backend.deleteAll(sha256s.stream().map(this::storageKey).toList());
+        }
+    }
+
+    private Optional<Preview> readStored(String key) throws IOException {
+        Optional<PreviewAsset> asset = previewAssetRepository.findById(key);
+        if (asset.isEmpty()) {
+            return Optional.empty();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (asset.get().getLastAccessed().isBefore(now.minus(TOUCH_INTERVAL))) {
+            transactionTemplate.executeWithoutResult(status -> previewAssetRepository.touch(key, now));
+        }
+        try (InputStream in = backend.get(key)) {
+            return Optional.of(new Preview(key, in.readAllBytes()));
+        } catch (NoSuchFileException e) {
+            // Evicted since the row was read, or lost: render it again
+            transactionTemplate.executeWithoutResult(status -> previewAssetRepository.deleteById(key));
+            return Optional.empty();
+        }
+    }
+
+    private CompletableFuture<Preview> render(FileInfo fileInfo, String key) {
+        CompletableFuture<Preview> render = new CompletableFuture<>();
+        CompletableFuture<Preview> running = rendering.putIfAbsent(key, render);
+        if (running != null) {
+            return running;
+        }
+        try {
+            renderPool.execute(() -> {
+                try {
+                    render.complete(renderAndStore(fileInfo, key));
+                } catch (Throwable e) {
+                    render.completeExceptionally(e);
+                } finally {
+                    rendering.remove(key, render);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rendering.remove(key, render);
+            fileMetrics.recordPreview("busy");
+            throw new PreviewUnavailableException("Too many previews are being rendered, try again shortly");
+        }
+        return render;
+    }
+
+    private static IOException renderFailure(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (e.getCause() instanceof IOException io) {
+            return io;
+        }
+        return new IOException("Rendering a preview failed", e.getCause());
+    }
+
+    // Null if the content cannot be rendered
+    private Preview renderAndStore(FileInfo fileInfo, String key) throws IOException {
+        long started = System.nanoTime();
+        boolean pdf = PDF.equals(previewType(fileInfo));
+        BufferedImage image;
+        try {
+            image = pdf ? renderFirstPage(fileInfo) : readImage(fileInfo);
+        } catch (IOException | RuntimeException e) {
+            image = null;
+            log.info("Cannot render a preview of {}: {}", fileInfo.getStoragePath(), e.toString());
+        }
+        if (image == null) {
+            failed.put(key, Boolean.TRUE);
+            fileMetrics.recordPreview("failed");
+            return null;
+        }
+        byte[] jpeg = encodeJpeg(scaleToFit(image));
+
+        backend.put(key, new ByteArrayInputStream(jpeg), jpeg.length);
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> previewAssetRepository.save(
+                    new PreviewAsset(key, fileInfo.getSha256(), jpeg.length, now, now)));
+        } catch (DataIntegrityViolationException e) {
+            // The blob was deleted meanwhile (its object goes with it), or another node stored the same preview
+            log.debug("Preview {} not recorded: {}", key, e.getMessage());
+        }
+        enforceQuota();
+        fileMetrics.recordPreview("rendered");
+        fileMetrics.recordPreviewRender(System.nanoTime() - started, pdf ? "pdf" : "image");
+        return new Preview(key, jpeg);
+    }
+
+    private BufferedImage readImage(FileInfo fileInfo) throws IOException {
+        try (InputStream in = fileStorageService.openStream(fileInfo);
+             ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image of " + width + "x" + height + " pixels is too large to preview");
+                }
+                // Decode only every n-th pixel of every n-th row: still twice the preview size, for a fraction of the work
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (size * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage renderFirstPage(FileInfo fileInfo) throws IOException {
+        // Parsed straight from the stored file when there is one; otherwise the stream is buffered in a
+        // temporary file rather than the heap
+        Optional<Path> localFile = fileInfo.getContentEncoding() == null ? backend.localPath(fileInfo.getSha256()) : Optional.empty();
+        try (PDDocument document = localFile.isPresent()
+                ? PDDocument.load(localFile.get().toFile(), MemoryUsageSetting.setupTempFileOnly())
+                : loadFromStream(fileInfo)) {
+            if (document.getNumberOfPages() == 0) {
+                return null;
+            }
+            PDRectangle page = document.getPage(0).getCropBox();
+            // Rendered straight at the preview size: scale 1 is 72 dpi, one pixel per point
+            float scale = size / Math.max(page.getWidth(), page.getHeight());
+            return new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+        }
+    }
+
+    private PDDocument loadFromStream(FileInfo fileInfo) throws IOException {
+        try (InputStream in = fileStorageService.openStream(fileInfo)) {
+            return PDDocument.load(in, MemoryUsageSetting.setupTempFileOnly());
+        }
+    }
+
+    private BufferedImage scaleToFit(BufferedImage source) {
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no transparency
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private void enforceQuota() throws IOException {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            evictOverQuota();
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    // Rows go first: a request that still finds a row whose object is gone renders the preview again
+    private void evictOverQuota() throws IOException {
+        long total = previewAssetRepository.totalSize();
+        if (total <= quota) {
+            return;
+        }
+        long target = quota / 10 * 9;
+        int evicted = 0;
+        while (total > target) {
+            List<PreviewAsset> oldest = previewAssetRepository.findByOrderByLastAccessedAsc(Limit.of(EVICTION_BATCH_SIZE));
+            if (oldest.isEmpty()) {
+                break;
+            }
+            List<String> keys = new ArrayList<>();
+            for (PreviewAsset asset : oldest) {
+                if (total <= target) {
+                    break;
+                }
+                keys.add(asset.getStorageKey());
+                total -= asset.getSize();
+            }
+            transactionTemplate.executeWithoutResult(status -> previewAssetRepository.deleteAllByIdInBatch(keys));
+            backend.deleteAll(keys);
+            evicted += keys.size();
+        }
+        fileMetrics.recordPreviewsEvicted(evicted);
+        log.debug("Evicted {} previews to stay within the preview quota", evicted);
+    }
+
+    // The sniffed type when there is one: the declared type of an image is often wrong or generic
+    private static String previewType(FileInfo fileInfo) {
+        String type = fileInfo.getDetectedContentType() != null ? fileInfo.getDetectedContentType() : fileInfo.getContentType();
+        if (type == null) {
+            return null;
+        }
+        int parameters = type.indexOf(';');
+        return (parameters < 0 ? type : type.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+    }
+}
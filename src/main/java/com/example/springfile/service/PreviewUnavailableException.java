@@ -0,0 +1,15 @@
+package com.example.springfile.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a preview cannot be rendered right now because the preview pool is saturated or the
+ * render is taking longer than a request may wait; the client should try again later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PreviewUnavailableException extends RuntimeException {
+    public PreviewUnavailableException(String message) {
+        super(message);
+    }
+}
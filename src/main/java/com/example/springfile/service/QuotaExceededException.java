@@ -0,0 +1,14 @@
+package com.example.springfile.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when an upload would take a category past its storage quota.
+ */
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterLocks;
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.dto.UploadSessionDto;
+import com.example.springfile.model.Category;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.UploadChunk;
+import com.example.springfile.model.UploadSession;
+import com.example.springfile.model.UploadSessionStatus;
+import com.example.springfile.repository.UploadChunkRepository;
+import com.example.springfile.repository.UploadSessionRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable uploads of large files in chunks. Starting a session preallocates a staging file of the
+ * final size; each chunk is then written at its own offset with positional FileChannel writes, so
+ * chunks may arrive in any order and over several connections at once, and a chunk lost to a dropped
+ * connection is simply sent again. Received chunks are recorded in {@link UploadChunk} rows. Completing
+ * the session hashes the assembled file (checking it against the SHA-256 the client declared, if any)
+ * and hands it to the blob store and {@link FileStorageService#saveFileMetadata} like any other upload.
+ * <p>
+ * The staging file lives on the local disk of the node that started the session, so every request of
+ * a session must reach that node. Sessions idle for longer than {@code file.resumable-upload.expiry}
+ * are removed together with their staging file, by one node at a time; the staging file is only found if
+ * that node shares the upload directory with the one that started the session.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // Bounds the chunk table per session, whatever chunk size the client asks for
+    private static final int MAX_CHUNKS = 100_000;
+    private static final int REAP_BATCH_SIZE = 100;
+    private static final String REAPER_LOCK = "upload-session-reaper";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadChunkRepository uploadChunkRepository;
+    private final FileStorageService fileStorageService;
+    private final StorageUsageService storageUsageService;
+    private final ClusterLocks clusterLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxSize;
+    private final int defaultChunkSize;
+    private final int maxChunkSize;
+    private final Duration expiry;
+    private final ScheduledExecutorService reaper;
+
+    @Autowired
+    public ResumableUploadService(UploadSessionRepository uploadSessionRepository, UploadChunkRepository uploadChunkRepository,
+                                  FileStorageService fileStorageService, StorageUsageService storageUsageService,
+                                  ClusterLocks clusterLocks, PlatformTransactionManager transactionManager,
+                                  BackgroundThreads backgroundThreads,
+                                  @Value("${file.resumable-upload.max-size:100GB}") DataSize maxSize,
+                                  @Value("${file.resumable-upload.chunk-size:8MB}") DataSize defaultChunkSize,
+                                  @Value("${file.resumable-upload.max-chunk-size:64MB}") DataSize maxChunkSize,
+                                  @Value("${file.resumable-upload.expiry:24h}") Duration expiry,
+                                  @Value("${file.resumable-upload.reap-interval:10m}") Duration reapInterval) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadChunkRepository = uploadChunkRepository;
+        this.fileStorageService = fileStorageService;
+        this.storageUsageService = storageUsageService;
+        this.clusterLocks = clusterLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxSize = maxSize.toBytes();
+        this.defaultChunkSize = (int) defaultChunkSize.toBytes();
+        this.maxChunkSize = (int) maxChunkSize.toBytes();
+        this.expiry = expiry;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(backgroundThreads.factory("upload-session-reaper"));
+        reaper.scheduleWithFixedDelay(this::reapExpiredQuietly, reapInterval.toMillis(), reapInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+
+    /**
+     * Starts a session and preallocates its staging file. The metadata and the category's quota are
+     * checked now, so a bad category or a full one is reported before gigabytes are sent rather than after
+     * (the quota again on completion, as other uploads may have filled it meanwhile).
+     * @param chunkSize      Requested chunk size, or null for the default.
+     * @param expectedSha256 Hex SHA-256 of the whole file, verified on completion; may be null.
+     */
+    public UploadSession start(String filename, long totalSize, Integer chunkSize, String contentType, String expectedSha256,
+                               String labels, String categoryValue, String newCategoryName,
+                               String subCategoryValue, String newSubCategoryName) {
+        if (totalSize < 0) {
+            throw new IllegalArgumentException("Upload size must not be negative");
+        }
+        if (totalSize > maxSize) {
+            throw new UploadTooLargeException("Upload exceeds the limit of " + maxSize + " bytes");
+        }
+        int size = chunkSize != null ? chunkSize : defaultChunkSize;
+        if (size <= 0 || size > maxChunkSize) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + maxChunkSize + " bytes");
+        }
+        if ((totalSize + size - 1) / size > MAX_CHUNKS) {
+            throw new IllegalArgumentException("Chunk size too small: at most " + MAX_CHUNKS + " chunks per upload");
+        }
+        if (expectedSha256 != null && !BlobStore.isValidHash(expectedSha256.toLowerCase())) {
+            throw new IllegalArgumentException("Invalid SHA-256: " + expectedSha256);
+        }
+        validateMetadata(categoryValue, newCategoryName, subCategoryValue, newSubCategoryName);
+        storageUsageService.checkQuota(categoryValue, totalSize);
+
+        Path stagingFile = fileStorageService.newStagingFile(StringUtils.cleanPath(filename));
+        try {
+            if (Files.getFileStore(stagingFile.getParent()).getUsableSpace() < totalSize) {
+                throw new InsufficientStorageException("Not enough free space for an upload of " + totalSize + " bytes");
+            }
+            try (RandomAccessFile file = new RandomAccessFile(stagingFile.toFile(), "rw")) {
+                file.setLength(totalSize);
+            }
+        } catch (IOException e) {
+            deleteQuietly(stagingFile);
+            throw new RuntimeException("Could not create the staging file for " + filename, e);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setFilename(StringUtils.cleanPath(filename));
+        session.setContentType(contentType);
+        session.setTotalSize(totalSize);
+        session.setChunkSize(size);
+        session.setExpectedSha256(expectedSha256 != null ? expectedSha256.toLowerCase() : null);
+        session.setLabels(labels);
+        session.setCategoryValue(categoryValue);
+        session.setNewCategoryName(newCategoryName);
+        session.setSubCategoryValue(subCategoryValue);
+        session.setNewSubCategoryName(newSubCategoryName);
+        session.setStagingFile(stagingFile.toString());
+        session.setStatus(UploadSessionStatus.OPEN);
+        session.setCreatedAt(now);
+        session.setExpiresAt(now.plus(expiry));
+        try {
+            return uploadSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            deleteQuietly(stagingFile);
+            throw e;
+        }
+    }
+
+    // Resolves existing categories (which creates nothing); new ones only need a name until completion
+    private void validateMetadata(String categoryValue, String newCategoryName, String subCategoryValue, String newSubCategoryName) {
+        if ("new".equals(categoryValue)) {
+            if (!StringUtils.hasText(newCategoryName)) {
+                throw new IllegalArgumentException("New category name cannot be empty when 'Add New' is selected.");
+            }
+            if ("new".equals(subCategoryValue) && !StringUtils.hasText(newSubCategoryName)) {
+                throw new IllegalArgumentException("New sub-category name cannot be empty when 'Add New' is selected.");
+            }
+            return;
+        }
+        Category category = fileStorageService.resolveCategory(categoryValue, null);
+        if (!"new".equals(subCategoryValue)) {
+            fileStorageService.resolveSubCategory(category, subCategoryValue, null);
+        } else if (!StringUtils.hasText(newSubCategoryName)) {
+            throw new IllegalArgumentException("New sub-category name cannot be empty when 'Add New' is selected.");
+        }
+    }
+
+    public UploadSessionDto describe(String id) {
+        UploadSession session = find(id);
+        return UploadSessionDto.of(session, uploadChunkRepository.findChunkIndexes(id));
+    }
+
+    /**
+     * Writes one chunk at its offset in the staging file. Sending a chunk again overwrites it, so a
+     * client may retry any chunk it is unsure about.
+     * @param contentLength  Declared body length, or -1 if unknown; must match the chunk's length when given.
+     * @param expectedSha256 Hex SHA-256 of this chunk, checked before it counts as received; may be null.
+     */
+    public void writeChunk(String id, int index, InputStream body, long contentLength, String expectedSha256) {
+        UploadSession session = find(id);
+        if (session.getStatus() != UploadSessionStatus.OPEN) {
+            throw new IllegalStateException("Upload " + id + " is already being completed");
+        }
+        if (index < 0 || index >= session.chunkCount()) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (session.chunkCount() - 1));
+        }
+        long length = session.chunkLength(index);
+        if (contentLength >= 0 && contentLength != length) {
+            throw new IllegalArgumentException("Chunk " + index + " must be " + length + " bytes, not " + contentLength);
+        }
+
+        MessageDigest digest = expectedSha256 != null ? sha256Digest() : null;
+        long position = (long) index * session.getChunkSize();
+        long written = 0;
+        // Not closed: closing the channel would close the caller's stream
+        ReadableByteChannel source = Channels.newChannel(body);
+        try (FileChannel channel = FileChannel.open(Paths.get(session.getStagingFile()), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                if (written + buffer.remaining() > length) {
+                    throw new IllegalArgumentException("Chunk " + index + " is longer than " + length + " bytes");
+                }
+                if (digest != null) {
+                    digest.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, position + written);
+                }
+                buffer.clear();
+            }
+        } catch (NoSuchFileException e) {
+            throw new UploadSessionNotFoundException("Upload session not found: " + id);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write chunk " + index + " of upload " + id, e);
+        }
+        if (written != length) {
+            throw new IllegalArgumentException("Chunk " + index + " must be " + length + " bytes, got " + written);
+        }
+        if (digest != null && !HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(expectedSha256)) {
+            throw new UploadChecksumException("Chunk " + index + " does not match its SHA-256; send it again");
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Also checks the session still exists, so a chunk never outlives an aborted session
+            if (uploadSessionRepository.extend(id, LocalDateTime.now().plus(expiry)) == 0) {
+                throw new UploadSessionNotFoundException("Upload session not found: " + id);
+            }
+        });
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    uploadChunkRepository.save(new UploadChunk(id, index, LocalDateTime.now())));
+        } catch (DataIntegrityViolationException e) {
+            // The same chunk was recorded by a concurrent request; its bytes are identical
+            log.debug("Chunk {} of upload {} was already recorded", index, id);
+        }
+    }
+
+    /**
+     * Verifies and stores the assembled file, then saves its metadata. The session is gone afterwards,
+     * whether this succeeds or fails, except when chunks are missing or the file could not be read.
+     */
+    public FileInfo complete(String id) {
+        UploadSession session = find(id);
+        long received = uploadChunkRepository.countBySessionId(id);
+        if (received < session.chunkCount()) {
+            throw new IllegalStateException("Upload " + id + " is missing " + (session.chunkCount() - received)
+                    + " of " + session.chunkCount() + " chunks");
+        }
+        Integer claimed = transactionTemplate.execute(status -> uploadSessionRepository.transition(id,
+                UploadSessionStatus.OPEN, UploadSessionStatus.COMPLETING, LocalDateTime.now().plus(expiry)));
+        if (claimed == null || claimed == 0) {
+            throw new IllegalStateException("Upload " + id + " is already being completed");
+        }
+
+        Path stagingFile = Paths.get(session.getStagingFile());
+        long started = System.nanoTime();
+        ContentChecksums checksums;
+        try {
+            try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.WRITE)) {
+                channel.force(true); // The bytes are durable before the file becomes visible
+            }
+            checksums = ContentChecksums.of(stagingFile);
+        } catch (IOException e) {
+            // Let the client try again
+            transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.transition(id,
+                    UploadSessionStatus.COMPLETING, UploadSessionStatus.OPEN, LocalDateTime.now().plus(expiry)));
+            throw new RuntimeException("Could not read the assembled upload " + id, e);
+        }
+        if (session.getExpectedSha256() != null && !session.getExpectedSha256().equals(checksums.sha256())) {
+            remove(session);
+            throw new UploadChecksumException("Assembled file does not match the declared SHA-256; upload it again");
+        }
+
+        try {
+            StoredFile storedFile = fileStorageService.storeStaged(
+                    fileStorageService.staged(stagingFile, checksums, System.nanoTime() - started));
+            try {
+                FileInfo fileInfo = fileStorageService.saveFileMetadata(session.getFilename(), storedFile,
+                        session.getContentType(), FileStorageService.parseLabels(session.getLabels()),
+                        session.getCategoryValue(), session.getNewCategoryName(),
+                        session.getSubCategoryValue(), session.getNewSubCategoryName());
+                log.info("Completed resumable upload {} of {} ({} bytes in {} chunks) as {}", id, session.getFilename(),
+                        session.getTotalSize(), session.chunkCount(), storedFile.getStoragePath());
+                return fileInfo;
+            } catch (RuntimeException e) {
+                // Don't leave an unreferenced file behind when the metadata is rejected
+                fileStorageService.discardStoredFile(storedFile);
+                throw e;
+            }
+        } finally {
+            // storeStaged consumed the staging file whatever happened
+            remove(session);
+        }
+    }
+
+    public void abort(String id) {
+        remove(find(id));
+    }
+
+    private UploadSession find(String id) {
+        return uploadSessionRepository.findById(id)
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()))
+                .orElseThrow(() -> new UploadSessionNotFoundException("Upload session not found: " + id));
+    }
+
+    private void remove(UploadSession session) {
+        transactionTemplate.executeWithoutResult(status -> {
+            uploadChunkRepository.deleteBySessionId(session.getId());
+            uploadSessionRepository.deleteById(session.getId());
+        });
+        deleteQuietly(Paths.get(session.getStagingFile()));
+    }
+
+    void reapExpired() {
+        Optional<ClusterLocks.Lock> lock = clusterLocks.tryLock(REAPER_LOCK);
+        if (lock.isEmpty()) {
+            return; // Another node is at it
+        }
+        List<UploadSession> expired;
+        int reaped = 0;
+        try (ClusterLocks.Lock held = lock.get()) {
+            while (!(expired = uploadSessionRepository.findExpired(LocalDateTime.now(), Limit.of(REAP_BATCH_SIZE))).isEmpty()) {
+                for (UploadSession session : expired) {
+                    remove(session);
+                    reaped++;
+                }
+                held.renew();
+            }
+        }
+        if (reaped > 0) {
+            log.info("Removed {} expired upload sessions", reaped);
+        }
+    }
+
+    private void reapExpiredQuietly() {
+        try {
+            reapExpired();
+        } catch (RuntimeException e) {
+            log.warn("Could not remove expired upload sessions", e);
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not remove staging file {}", path, e);
+        }
+    }
+}
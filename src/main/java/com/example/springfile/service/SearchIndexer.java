@@ -0,0 +1,217 @@
+package com.example.springfile.service;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.search.FileSearchIndex;
+import com.example.springfile.search.SearchDocument;
+import com.example.springfile.search.TextExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the {@link FileSearchIndex} in step with the database. New files are indexed by the
+ * {@link com.example.springfile.processing.SearchIndexStage} of the processing pipeline; deleted files
+ * are removed on a background thread once their transaction commits. If that queue overflows, deletes
+ * are dropped with a warning (searches skip files that no longer exist); a reindex
+ * ({@code POST /api/search/reindex}) brings the index back in line. A full reindex also runs at
+ * startup when the index is empty but files exist, or always with {@code file.search.reindex-on-startup=true}.
+ * <p>
+ * The index is local to each node. In a cluster, files indexed or deleted on another node arrive as
+ * {@link FileIndexedEvent}s and {@link FileDeletedEvent}s and are applied here on the same queue; each node
+ * extracts the text itself. A node that was down misses those, so it should be reindexed once it is back.
+ */
+@Service
+public class SearchIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexer.class);
+
+    private static final int REINDEX_BATCH_SIZE = 500;
+
+    private final FileInfoRepository fileInfoRepository;
+    private final FileStorageService fileStorageService;
+    private final FileSearchIndex searchIndex;
+    private final TextExtractor textExtractor;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean reindexOnStartup;
+    private final BackgroundThreads backgroundThreads;
+    private final ThreadPoolExecutor executor;
+    private final AtomicBoolean reindexing = new AtomicBoolean();
+
+    @Autowired
+    public SearchIndexer(FileInfoRepository fileInfoRepository, FileStorageService fileStorageService,
+                         FileSearchIndex searchIndex, TextExtractor textExtractor,
+                         PlatformTransactionManager transactionManager, BackgroundThreads backgroundThreads,
+                         @Value("${file.search.queue-capacity:10000}") int queueCapacity,
+                         @Value("${file.search.reindex-on-startup:false}") boolean reindexOnStartup) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileStorageService = fileStorageService;
+        this.searchIndex = searchIndex;
+        this.textExtractor = textExtractor;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.reindexOnStartup = reindexOnStartup;
+        this.backgroundThreads = backgroundThreads;
+        // One thread, so deletes are applied in the order they were committed
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), backgroundThreads.factory("search-indexer"));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFileDeleted(FileDeletedEvent event) {
+        submit(() -> {
+            try {
+                searchIndex.delete(event.fileId());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not remove file {} from the search index", event.fileId(), e);
+            }
+        });
+    }
+
+    // Indexed on another node
+    @EventListener
+    public void onFileIndexed(FileIndexedEvent event) {
+        submit(() -> indexQuietly(event.fileId(), System.currentTimeMillis()));
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Search indexing queue is full, dropping an update; reindex to catch up");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reindexIfNeeded() {
+        if (reindexOnStartup || (searchIndex.numDocs() == 0 && !fileInfoRepository.findIdsAfter(0L, Limit.of(1)).isEmpty())) {
+            startReindex();
+        }
+    }
+
+    /**
+     * Starts a full reindex on a background thread.
+     * @return false if one is already running.
+     */
+    public boolean startReindex() {
+        if (!reindexing.compareAndSet(false, true)) {
+            return false;
+        }
+        backgroundThreads.start("search-reindex", () -> {
+            try {
+                reindexAll();
+            } finally {
+                reindexing.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isReindexing() {
+        return reindexing.get();
+    }
+
+    // Walks every file in id order, then drops documents the walk did not touch (files deleted meanwhile)
+    private void reindexAll() {
+        long generation = System.currentTimeMillis();
+        long started = System.nanoTime();
+        int indexed = 0;
+        long lastId = 0;
+        List<Long> ids;
+        while (!(ids = fileInfoRepository.findIdsAfter(lastId, Limit.of(REINDEX_BATCH_SIZE))).isEmpty()) {
+            for (Long id : ids) {
+                if (indexQuietly(id, generation)) {
+                    indexed++;
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+        }
+        try {
+            searchIndex.deleteOlderThan(generation);
+            searchIndex.commit();
+            searchIndex.refresh();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not finish the search reindex", e);
+        }
+        log.info("Search reindex finished: {} files in {} ms", indexed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Indexes one file now, replacing its previous document.
+     * @return false if the file no longer exists.
+     */
+    public boolean indexFile(Long id) throws IOException {
+        return index(id, System.currentTimeMillis());
+    }
+
+    private boolean indexQuietly(Long id, long generation) {
+        try {
+            return index(id, generation);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not index file {}", id, e);
+            return false;
+        }
+    }
+
+    // Indexes one file; false if it no longer exists
+    private boolean index(Long id, long generation) throws IOException {
+        Optional<FileInfo> loaded = readOnlyTransaction.execute(status -> fileInfoRepository.findWithDetailsById(id));
+        if (loaded.isEmpty()) {
+            return false;
+        }
+        FileInfo fileInfo = loaded.get();
+        searchIndex.index(new SearchDocument(
+                fileInfo.getId(),
+                fileInfo.getFilename(),
+                fileInfo.getLabelNames(),
+                fileInfo.getCategory() != null ? fileInfo.getCategory().getName() : null,
+                fileInfo.getSubCategory() != null ? fileInfo.getSubCategory().getName() : null,
+                fileInfo.getContentType(),
+                extractText(fileInfo)), generation);
+        return true;
+    }
+
+    private String extractText(FileInfo fileInfo) throws IOException {
+        long size = fileInfo.getSize() != null ? fileInfo.getSize() : 0;
+        if (!textExtractor.supports(fileInfo.getContentType(), fileInfo.getFilename(), size)) {
+            return null;
+        }
+        try (InputStream content = fileStorageService.openStream(fileInfo)) {
+            return textExtractor.extract(content, fileInfo.getContentType(), fileInfo.getFilename());
+        } catch (StoredFileNotFoundException e) {
+            log.debug("No content to index for file {}", fileInfo.getId());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
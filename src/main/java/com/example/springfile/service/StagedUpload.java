@@ -0,0 +1,48 @@
+package com.example.springfile.service;
+
+import java.nio.file.Path;
+
+/**
+ * An upload written to the staging area and hashed, but not yet in the blob store.
+ */
+public class StagedUpload {
+    private final String storagePath; // Unique name the file will be stored under
+    private final Path stagingFile;
+    private final long size;
+    private final String sha256; // Lower-case hex
+    private final long crc32c;
+    private final long stagingNanos; // Time spent receiving and writing the bytes, for the upload metrics
+
+    StagedUpload(String storagePath, Path stagingFile, long size, String sha256, long crc32c, long stagingNanos) {
+        this.storagePath = storagePath;
+        this.stagingFile = stagingFile;
+        this.size = size;
+        this.sha256 = sha256;
+        this.crc32c = crc32c;
+        this.stagingNanos = stagingNanos;
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    Path getStagingFile() {
+        return stagingFile;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getCrc32c() {
+        return crc32c;
+    }
+
+    long getStagingNanos() {
+        return stagingNanos;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterLocks;
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.storage.LocalStorageBackend;
+import com.example.springfile.storage.StorageBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves blobs (and objects derived from them) that are not where the configured {@link com.example.springfile.storage.StorageLayout}
+ * puts them (e.g. after switching from {@code flat} to {@code hash-prefix}) into place, on a background
+ * thread while the application keeps serving. Each move is a single atomic rename, and
+ * {@link LocalStorageBackend} checks old locations too, so readers find every blob before, during and after
+ * the migration. Runs once per startup and finds nothing to do once the store matches the layout.
+ * Only applies to the local storage backend. Disable with {@code file.storage.layout.migrate=false}.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.layout.migrate", havingValue = "true", matchIfMissing = true)
+public class StorageLayoutMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageLayoutMigrator.class);
+
+    private final StorageBackend backend;
+    private final ClusterLocks clusterLocks;
+    private final BackgroundThreads backgroundThreads;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private volatile boolean stopped;
+    private Thread worker;
+
+    @Autowired
+    public StorageLayoutMigrator(StorageBackend backend, ClusterLocks clusterLocks, BackgroundThreads backgroundThreads,
+                                 @Value("${file.storage.layout.migrate.batch-size:500}") int batchSize,
+                                 @Value("${file.storage.layout.migrate.pause-ms:50}") long pauseMillis) {
+        this.backend = backend;
+        this.clusterLocks = clusterLocks;
+        this.backgroundThreads = backgroundThreads;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!(backend instanceof LocalStorageBackend)) {
+            return; // Object stores have no directory layout to migrate
+        }
+        worker = backgroundThreads.start("storage-layout-migrator", this::migrate);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    void migrate() {
+        // Nodes sharing the upload directory would race for the same files
+        Optional<ClusterLocks.Lock> lock = clusterLocks.tryLock("storage-layout-migration");
+        if (lock.isEmpty()) {
+            return;
+        }
+        try (ClusterLocks.Lock held = lock.get()) {
+            migrate(held);
+        }
+    }
+
+    private void migrate(ClusterLocks.Lock lock) {
+        LocalStorageBackend local = (LocalStorageBackend) backend;
+        Path root = local.getRoot();
+        int moved = 0;
+        int sinceLastPause = 0;
+        try (Stream<Path> files = Files.walk(root)) {
+            // Snapshot the misplaced files first; moving while walking could revisit them
+            List<Path> misplaced = files
+                    .filter(Files::isRegularFile)
+                    // Blobs and what is derived from them (previews), which live next to their blob
+                    .filter(file -> BlobStore.isValidHash(BlobStore.owningBlob(file.getFileName().toString())))
+                    .filter(file -> !file.equals(local.resolve(file.getFileName().toString())))
+                    .collect(Collectors.toList());
+            if (misplaced.isEmpty()) {
+                return;
+            }
+            log.info("Moving {} blobs into the {} layout in the background", misplaced.size(), local.getLayout().describe());
+            for (Path file : misplaced) {
+                if (stopped) {
+                    log.info("Storage layout migration interrupted after {} blobs; it resumes on next startup", moved);
+                    return;
+                }
+                lock.renew();
+                if (moveIntoPlace(local, file)) {
+                    moved++;
+                }
+                if (++sinceLastPause >= batchSize) {
+                    // Give live traffic the disk between batches
+                    sinceLastPause = 0;
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            log.info("Storage layout migration finished: {} blobs moved", moved);
+        } catch (IOException e) {
+            log.error("Storage layout migration failed after {} blobs; it resumes on next startup", moved, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean moveIntoPlace(LocalStorageBackend local, Path file) {
+        Path target = local.resolve(file.getFileName().toString());
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            removeEmptyParents(local.getRoot(), file.getParent());
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // Same hash, so same content: the copy in the old location is redundant
+            // (only reached on filesystems where an atomic move does not replace an existing target)
+            deleteRedundant(file);
+            return false;
+        } catch (NoSuchFileException e) {
+            return false; // Deleted (last reference released) while we were working
+        } catch (IOException e) {
+            log.warn("Could not move blob {} to {}", file, target, e);
+            return false;
+        }
+    }
+
+    private void deleteRedundant(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not remove redundant blob copy {}", file, e);
+        }
+    }
+
+    private static void removeEmptyParents(Path root, Path dir) {
+        while (dir != null && !dir.equals(root) && dir.startsWith(root)) {
+            try {
+                Files.delete(dir);
+            } catch (IOException e) {
+                return; // Not empty (or already gone): stop climbing
+            }
+            dir = dir.getParent();
+        }
+    }
+}
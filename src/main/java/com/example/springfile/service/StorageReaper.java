@@ -0,0 +1,414 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterLocks;
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.ContentBlob;
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.repository.ProcessingJobRepository;
+import com.example.springfile.storage.BlobStat;
+import com.example.springfile.storage.StorageBackend;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes deleted files for good, in the background. {@link FileStorageService#deleteFiles} only marks
+ * rows; each reaper batch then deletes up to {@code file.reaper.batch-size} of them in one transaction,
+ * drops their blob references and unlinks the content left unreferenced with one batched backend call,
+ * made last so a failure rolls the batch back to be retried. Batches are spaced by
+ * {@code file.reaper.batch-pause} so clearing out a category doesn't take the disk from downloads.
+ * <p>
+ * Every {@code file.reaper.reconcile-interval} storage is also reconciled with the database: blob reference
+ * counts are corrected to the files pointing at them, and blobs left without any removed, and objects and
+ * flat files nothing points at (see {@link OrphanScanner}), e.g. left by a crash between a write and its
+ * commit, are removed; all once untouched for {@code file.reaper.orphan-grace}.
+ * <p>
+ * Of the nodes sharing a database only one reaps or reconciles at a time (they hold the same
+ * {@link ClusterLocks} lock), and reconciliation runs once per interval across all of them.
+ */
+@Service
+public class StorageReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReaper.class);
+
+    private static final String LOCK = "storage-reaper";
+    private static final String RECONCILE_RUN = "storage-reconcile";
+
+    // What one batch removed; flat files are unlinked after the commit (files can't be rolled back), and so
+    // are the previews of the contents removed
+    private record Reaped(int files, List<String> contents, List<String> flatFiles) {
+    }
+
+    // What one batch of reference recounting changed
+    private record Recounted(int corrected, List<String> reclaimed) {
+    }
+
+    private final FileInfoRepository fileInfoRepository;
+    private final ContentBlobRepository contentBlobRepository;
+    private final ProcessingJobRepository processingJobRepository;
+    private final BlobStore blobStore;
+    private final FileStorageService fileStorageService;
+    private final OrphanScanner orphanScanner;
+    private final PreviewService previewService;
+    private final StorageBackend backend;
+    private final FileMetrics fileMetrics;
+    private final ClusterLocks clusterLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration batchPause;
+    private final Duration orphanGrace;
+    private final Duration reconcileInterval;
+    // One thread: reaping and reconciling never overlap, so a file between its row's purge and its
+    // unlink is never taken for an orphan
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public StorageReaper(FileInfoRepository fileInfoRepository, ContentBlobRepository contentBlobRepository,
+                         ProcessingJobRepository processingJobRepository,
+                         BlobStore blobStore, FileStorageService fileStorageService, OrphanScanner orphanScanner,
+                         PreviewService previewService,
+                         FileMetrics fileMetrics, ClusterLocks clusterLocks, PlatformTransactionManager transactionManager,
+                         BackgroundThreads backgroundThreads,
+                         @Value("${file.reaper.enabled:true}") boolean enabled,
+                         @Value("${file.reaper.interval:1m}") Duration interval,
+                         @Value("${file.reaper.batch-size:100}") int batchSize,
+                         @Value("${file.reaper.batch-pause:100ms}") Duration batchPause,
+                         @Value("${file.reaper.reconcile-interval:6h}") Duration reconcileInterval,
+                         @Value("${file.reaper.orphan-grace:1h}") Duration orphanGrace) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.contentBlobRepository = contentBlobRepository;
+        this.processingJobRepository = processingJobRepository;
+        this.blobStore = blobStore;
+        this.fileStorageService = fileStorageService;
+        this.orphanScanner = orphanScanner;
+        this.previewService = previewService;
+        this.backend = blobStore.getBackend();
+        this.fileMetrics = fileMetrics;
+        this.clusterLocks = clusterLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.batchPause = batchPause;
+        this.orphanGrace = orphanGrace;
+        this.reconcileInterval = reconcileInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(backgroundThreads.factory("storage-reaper"));
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::reapQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+            executor.scheduleWithFixedDelay(this::reconcileQuietly, reconcileInterval.toMillis(), reconcileInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void reapQuietly() {
+        try {
+            reap();
+        } catch (InterruptedIOException e) {
+            log.info("Reaping interrupted");
+        } catch (Exception e) {
+            // Keep the schedule going: an exception would cancel it
+            log.error("Reaping deleted files failed", e);
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            if (clusterLocks.claimRun(RECONCILE_RUN, reconcileInterval)) {
+                reconcile();
+            }
+        } catch (InterruptedIOException e) {
+            log.info("Storage reconciliation interrupted");
+        } catch (Exception e) {
+            log.error("Storage reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Removes all deleted files, a batch at a time, on the calling thread.
+     * @return The number of files removed; 0 if another node is reaping.
+     */
+    int reap() throws IOException {
+        Optional<ClusterLocks.Lock> lock = clusterLocks.tryLock(LOCK);
+        if (lock.isEmpty()) {
+            return 0;
+        }
+        try (ClusterLocks.Lock held = lock.get()) {
+            return reap(held);
+        }
+    }
+
+    private int reap(ClusterLocks.Lock lock) throws IOException {
+        int files = 0;
+        int objects = 0;
+        Reaped reaped;
+        while ((reaped = reapBatch()).files() > 0) {
+            for (String storagePath : reaped.flatFiles()) {
+                try {
+                    fileStorageService.deleteFlatFile(storagePath);
+                } catch (IOException e) {
+                    // Its row is gone, so reconciliation will find it
+                    log.warn("Could not delete flat file {}", storagePath, e);
+                }
+            }
+            try {
+                previewService.deleteFor(reaped.contents());
+            } catch (IOException e) {
+                // Their blobs are gone, so reconciliation will find them
+                log.warn("Could not delete previews of {} removed contents", reaped.contents().size(), e);
+            }
+            fileMetrics.recordReaped(reaped.files(), reaped.contents().size());
+            files += reaped.files();
+            objects += reaped.contents().size();
+            pause();
+            lock.renew();
+        }
+        if (files > 0) {
+            log.info("Removed {} deleted files and {} unreferenced contents", files, objects);
+        }
+        return files;
+    }
+
+    private Reaped reapBatch() throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                List<FileInfoRepository.DeletedFile> deleted = fileInfoRepository.findDeleted(batchSize);
+                if (deleted.isEmpty()) {
+                    return new Reaped(0, List.of(), List.of());
+                }
+                List<Long> ids = new ArrayList<>(deleted.size());
+                Map<String, Long> references = new HashMap<>();
+                List<String> flatFiles = new ArrayList<>();
+                for (FileInfoRepository.DeletedFile file : deleted) {
+                    ids.add(file.getId());
+                    if (file.getBlobSha256() != null) {
+                        references.merge(file.getBlobSha256(), 1L, Long::sum);
+                    } else {
+                        flatFiles.add(file.getStoragePath());
+                    }
+                }
+                processingJobRepository.deleteByFileInfoIds(ids);
+                fileInfoRepository.deleteLabelLinks(ids);
+                fileInfoRepository.purgeDeleted(ids);
+                try {
+                    return new Reaped(deleted.size(), blobStore.releaseAll(references), flatFiles);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Corrects the reference counts of blobs and removes the blobs, objects and flat files that nothing
+     * points at, leaving alone those touched within the grace period (they may belong to an upload still
+     * being committed), on the calling thread.
+     * @return The number of blobs, objects and flat files removed; 0 if another node is reaping or reconciling.
+     */
+    int reconcile() throws IOException {
+        Optional<ClusterLocks.Lock> lock = clusterLocks.tryLock(LOCK);
+        if (lock.isEmpty()) {
+            return 0;
+        }
+        try (ClusterLocks.Lock held = lock.get()) {
+            return reconcile(held);
+        }
+    }
+
+    private int reconcile(ClusterLocks.Lock lock) throws IOException {
+        int reclaimed = recountReferences(lock);
+        Instant cutoff = Instant.now().minus(orphanGrace);
+        List<String> objects = new ArrayList<>();
+        orphanScanner.forEachOrphanedObject(key -> {
+            lock.renew();
+            Optional<BlobStat> stat = backend.stat(key);
+            if (stat.isPresent() && stat.get().lastModified() != null && stat.get().lastModified().isBefore(cutoff)) {
+                objects.add(key);
+            }
+        });
+        List<String> flatFiles = new ArrayList<>();
+        orphanScanner.forEachOrphanedFlatFile(name -> {
+            lock.renew();
+            try {
+                if (Files.getLastModifiedTime(fileStorageService.loadFileAsPath(name)).toInstant().isBefore(cutoff)) {
+                    flatFiles.add(name);
+                }
+            } catch (StoredFileNotFoundException e) {
+                // Gone since the listing
+            }
+        });
+
+        int removedObjects = 0;
+        for (int from = 0; from < objects.size(); from += batchSize) {
+            List<String> batch = objects.subList(from, Math.min(objects.size(), from + batchSize));
+            try {
+                removedObjects += deleteOrphanedObjects(batch, cutoff);
+            } catch (DataIntegrityViolationException e) {
+                // An upload inserted one of their rows meanwhile; whatever is still orphaned is found next time
+                log.debug("Skipped {} orphaned objects taken by uploads", batch.size());
+            }
+            pause();
+            lock.renew();
+        }
+        for (String name : flatFiles) {
+            fileStorageService.deleteFlatFile(name);
+        }
+        fileMetrics.recordOrphansRemoved("object", removedObjects);
+        fileMetrics.recordOrphansRemoved("file", flatFiles.size());
+        if (removedObjects > 0 || !flatFiles.isEmpty()) {
+            log.warn("Removed {} orphaned objects and {} orphaned flat files", removedObjects, flatFiles.size());
+        }
+        return reclaimed + removedObjects + flatFiles.size();
+    }
+
+    // Counts drift when a reference is taken but its file never inserted (a crash in between), and the blob
+    // would never be released
+    private int recountReferences(ClusterLocks.Lock lock) throws IOException {
+        LocalDateTime cutoff = LocalDateTime.now().minus(orphanGrace);
+        int corrected = 0;
+        int reclaimed = 0;
+        String after = "";
+        List<ContentBlob> page;
+        while (!(page = contentBlobRepository.findBySha256GreaterThanOrderBySha256(after, Limit.of(batchSize))).isEmpty()) {
+            after = page.get(page.size() - 1).getSha256();
+            Map<String, Long> files = new HashMap<>();
+            contentBlobRepository.countFiles(page.stream().map(ContentBlob::getSha256).toList())
+                    .forEach(count -> files.put(count.getSha256(), count.getFiles()));
+            List<String> drifted = page.stream()
+                    .filter(blob -> blob.getRefCount() != files.getOrDefault(blob.getSha256(), 0L))
+                    .filter(blob -> blob.getLastReferencedAt() != null && blob.getLastReferencedAt().isBefore(cutoff))
+                    .map(ContentBlob::getSha256)
+                    .toList();
+            if (!drifted.isEmpty()) {
+                Recounted recounted = recountBatch(drifted, cutoff);
+                try {
+                    previewService.deleteFor(recounted.reclaimed());
+                } catch (IOException e) {
+                    // Their blobs are gone, so the orphan scan will find them
+                    log.warn("Could not delete previews of {} reclaimed contents", recounted.reclaimed().size(), e);
+                }
+                corrected += recounted.corrected();
+                reclaimed += recounted.reclaimed().size();
+                pause();
+            }
+            lock.renew();
+        }
+        fileMetrics.recordOrphansRemoved("blob", reclaimed);
+        if (corrected > 0) {
+            log.warn("Corrected the reference counts of {} blobs, removing {} left unreferenced", corrected, reclaimed);
+        }
+        return reclaimed;
+    }
+
+    // Recounts in one transaction, deleting the objects of the blobs left unreferenced last, as the reaper does
+    private Recounted recountBatch(List<String> sha256s, LocalDateTime cutoff) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                int corrected = 0;
+                List<String> unreferenced = new ArrayList<>();
+                for (String sha256 : sha256s) {
+                    // Conditional, so a reference taken since the page was read is not overwritten
+                    if (contentBlobRepository.recountReferences(sha256, cutoff) == 0) {
+                        continue;
+                    }
+                    corrected++;
+                    if (contentBlobRepository.findRefCount(sha256).orElse(0L) == 0
+                            && contentBlobRepository.deleteIfUnreferenced(sha256) > 0) {
+                        unreferenced.add(sha256);
+                    }
+                }
+                try {
+                    backend.deleteAll(unreferenced);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return new Recounted(corrected, unreferenced);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Since the listing an upload of the same content may have inserted its blob row and stored the object
+    // again, so the orphans are deleted under their blob rows' locks, as BlobStore#release deletes content: a
+    // placeholder row, inserted only where there is none and deleted again in the same transaction, makes an
+    // upload of the content wait for the deletion to commit and then store its object anew. Package-private
+    // for tests, which join the transaction to hold it open.
+    int deleteOrphanedObjects(List<String> keys, Instant cutoff) throws IOException {
+        Map<String, List<String>> byBlob = new TreeMap<>(); // In hash order, so row locks are taken in one order
+        for (String key : keys) {
+            byBlob.computeIfAbsent(BlobStore.owningBlob(key), blob -> new ArrayList<>()).add(key);
+        }
+        try {
+            Integer deleted = transactionTemplate.execute(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                List<String> orphaned = new ArrayList<>(keys.size());
+                try {
+                    for (Map.Entry<String, List<String>> entry : byBlob.entrySet()) {
+                        if (contentBlobRepository.insertPlaceholder(entry.getKey(), now) == 0) {
+                            continue; // Has a row again
+                        }
+                        contentBlobRepository.deleteIfUnreferenced(entry.getKey());
+                        for (String key : entry.getValue()) {
+                            // An upload finished since the listing rewrote it
+                            Optional<BlobStat> stat = backend.stat(key);
+                            if (stat.isPresent() && stat.get().lastModified() != null && stat.get().lastModified().isBefore(cutoff)) {
+                                orphaned.add(key);
+                            }
+                        }
+                    }
+                    // Delete last: if it fails, the transaction rolls back and releases the rows
+                    backend.deleteAll(orphaned);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return orphaned.size();
+            });
+            return deleted == null ? 0 : deleted;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void pause() throws InterruptedIOException {
+        if (batchPause.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPause.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted between batches");
+        }
+    }
+}
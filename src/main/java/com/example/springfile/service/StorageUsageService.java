@@ -0,0 +1,254 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.CategoryDto;
+import com.example.springfile.dto.SubCategoryDto;
+import com.example.springfile.dto.UsageReport;
+import com.example.springfile.metrics.FileMetrics;
+import com.example.springfile.model.Category;
+import com.example.springfile.model.CategoryUsage;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.SubCategory;
+import com.example.springfile.model.SubCategoryUsage;
+import com.example.springfile.repository.CategoryUsageRepository;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.repository.SubCategoryUsageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Running totals of the files and bytes stored per category and sub-category, and the per-category
+ * storage quotas. The totals are rows of their own, moved by relative UPDATEs in the same transactions
+ * that insert files ({@link #recordAdded}) and mark them deleted ({@link #recordRemoved}), so reading usage
+ * or checking a quota is a primary key lookup however many files there are. Files without a category
+ * (none can be uploaded that way) are not counted.
+ * <p>
+ * A quota is enforced twice: {@link #checkQuota} refuses an upload from its declared size before any of it
+ * is read, and {@link #recordAdded} refuses it atomically when its metadata is saved, which also covers
+ * uploads of unknown length and concurrent uploads competing for the last free bytes.
+ */
+@Service
+public class StorageUsageService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageUsageService.class);
+
+    private final CategoryUsageRepository categoryUsageRepository;
+    private final SubCategoryUsageRepository subCategoryUsageRepository;
+    private final TaxonomyCache taxonomyCache;
+    private final FileMetrics fileMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    // Ids whose counter row is known to exist. Rows of categories created since the migration are inserted
+    // on first use, in a transaction of their own so a concurrent insert of the same row can't fail the upload
+    private final Set<Long> categoryRows = ConcurrentHashMap.newKeySet();
+    private final Set<Long> subCategoryRows = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public StorageUsageService(CategoryUsageRepository categoryUsageRepository,
+                               SubCategoryUsageRepository subCategoryUsageRepository,
+                               TaxonomyCache taxonomyCache, FileMetrics fileMetrics,
+                               PlatformTransactionManager transactionManager) {
+        this.categoryUsageRepository = categoryUsageRepository;
+        this.subCategoryUsageRepository = subCategoryUsageRepository;
+        this.taxonomyCache = taxonomyCache;
+        this.fileMetrics = fileMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Refuses an upload of the given size into the category chosen in an upload form, if it would not fit
+     * in the category's quota. Called before the upload is read; only an existing category can have a quota,
+     * so for "new" (or an invalid value, refused later anyway) this does nothing.
+     * @param bytes The declared size, or -1 if unknown (then nothing is checked until the metadata is saved).
+     * @throws QuotaExceededException if the upload would not fit.
+     */
+    public void checkQuota(String categoryValue, long bytes) {
+        Long categoryId = parseId(categoryValue);
+        if (categoryId == null || bytes < 0) {
+            return;
+        }
+        categoryUsageRepository.findById(categoryId).ifPresent(usage -> {
+            if (usage.getQuotaBytes() != null && usage.getTotalBytes() + bytes > usage.getQuotaBytes()) {
+                fileMetrics.recordQuotaRejected(true);
+                throw exceeded(usage, bytes);
+            }
+        });
+    }
+
+    /**
+     * Counts newly saved files; must run in the transaction that inserts them, so the totals move with the
+     * rows (or not at all).
+     * @throws QuotaExceededException if the bytes would take the category past its quota; the caller's
+     *                                transaction should then be rolled back.
+     */
+    public void recordAdded(Category category, SubCategory subCategory, long files, long bytes) {
+        ensureRows(category, subCategory);
+        if (categoryUsageRepository.addWithinQuota(category.getId(), files, bytes) == 0) {
+            fileMetrics.recordQuotaRejected(false);
+            throw exceeded(categoryUsageRepository.findById(category.getId()).orElseThrow(), bytes);
+        }
+        if (subCategory != null) {
+            subCategoryUsageRepository.add(subCategory.getId(), files, bytes);
+        }
+    }
+
+    /**
+     * Uncounts files just marked deleted, in the transaction that marked them.
+     */
+    public void recordRemoved(Collection<FileInfoRepository.DeletedTotals> totals) {
+        // Sorted, categories before sub-categories, so concurrent bulk deletes lock the counter rows in the same
+        // order as each other and as uploads (a category, then one of its sub-categories)
+        Map<Long, long[]> byCategory = new TreeMap<>();
+        Map<Long, long[]> bySubCategory = new TreeMap<>();
+        for (FileInfoRepository.DeletedTotals total : totals) {
+            if (total.getCategoryId() != null) {
+                add(byCategory, total.getCategoryId(), total);
+            }
+            if (total.getSubCategoryId() != null) {
+                add(bySubCategory, total.getSubCategoryId(), total);
+            }
+        }
+        byCategory.forEach((id, sums) -> adjust(id, null, -sums[0], -sums[1]));
+        bySubCategory.forEach((id, sums) -> adjust(null, id, -sums[0], -sums[1]));
+    }
+
+    /**
+     * Corrects the totals for a file whose size was only measured later (a legacy file moved into the blob
+     * store), in the transaction that records the size. Never refused by the quota: the file is already there.
+     */
+    public void recordResized(FileInfo fileInfo, Long oldSize, long newSize) {
+        long delta = newSize - (oldSize != null ? oldSize : 0);
+        if (delta != 0) {
+            adjust(fileInfo.getCategory() != null ? fileInfo.getCategory().getId() : null,
+                    fileInfo.getSubCategory() != null ? fileInfo.getSubCategory().getId() : null, 0, delta);
+        }
+    }
+
+    private void adjust(Long categoryId, Long subCategoryId, long files, long bytes) {
+        if (categoryId != null && categoryUsageRepository.add(categoryId, files, bytes) == 0) {
+            log.warn("No usage counters for category {}", categoryId);
+        }
+        if (subCategoryId != null && subCategoryUsageRepository.add(subCategoryId, files, bytes) == 0) {
+            log.warn("No usage counters for sub-category {}", subCategoryId);
+        }
+    }
+
+    private static void add(Map<Long, long[]> sums, Long id, FileInfoRepository.DeletedTotals total) {
+        long[] sum = sums.computeIfAbsent(id, key -> new long[2]);
+        sum[0] += total.getFileCount();
+        sum[1] += total.getTotalBytes();
+    }
+
+    /**
+     * Sets a category's quota; it may be below what the category already holds, which then refuses all
+     * further uploads into it until enough is deleted.
+     * @param quotaBytes The quota, or null to remove it.
+     * @throws IllegalArgumentException for an unknown category or a negative quota.
+     */
+    public void setQuota(Long categoryId, Long quotaBytes) {
+        if (quotaBytes != null && quotaBytes < 0) {
+            throw new IllegalArgumentException("Quota must not be negative");
+        }
+        Category category = taxonomyCache.getCategory(categoryId)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid Category ID: " + categoryId));
+        ensureRows(category, null);
+        transactionTemplate.executeWithoutResult(status -> categoryUsageRepository.updateQuota(categoryId, quotaBytes));
+        log.info("Quota of category '{}' set to {}", category.getName(), quotaBytes != null ? quotaBytes + " bytes" : "none");
+    }
+
+    /**
+     * Current usage of every category and sub-category, from their counter rows (a handful of rows,
+     * however many files there are).
+     */
+    public UsageReport report() {
+        TaxonomyCache.Snapshot taxonomy = taxonomyCache.snapshot();
+        Map<Long, CategoryUsage> categoryUsages = categoryUsageRepository.findAll().stream()
+                .collect(Collectors.toMap(CategoryUsage::getCategoryId, Function.identity()));
+        Map<Long, SubCategoryUsage> subCategoryUsages = subCategoryUsageRepository.findAll().stream()
+                .collect(Collectors.toMap(SubCategoryUsage::getSubCategoryId, Function.identity()));
+
+        Map<Long, List<UsageReport.SubCategoryUsage>> subCategoriesByCategory = new HashMap<>();
+        for (SubCategoryDto subCategory : taxonomy.subCategories()) {
+            SubCategoryUsage usage = subCategoryUsages.get(subCategory.getId());
+            subCategoriesByCategory.computeIfAbsent(subCategory.getCategoryId(), id -> new ArrayList<>())
+                    .add(new UsageReport.SubCategoryUsage(subCategory.getId(), subCategory.getName(),
+                            usage != null ? usage.getFileCount() : 0, usage != null ? usage.getTotalBytes() : 0));
+        }
+        List<UsageReport.CategoryUsage> categories = new ArrayList<>(taxonomy.categories().size());
+        long fileCount = 0;
+        long totalBytes = 0;
+        for (CategoryDto category : taxonomy.categories()) {
+            CategoryUsage usage = categoryUsages.getOrDefault(category.getId(), new CategoryUsage(category.getId(), 0, 0, null));
+            categories.add(new UsageReport.CategoryUsage(category.getId(), category.getName(), usage.getFileCount(),
+                    usage.getTotalBytes(), usage.getQuotaBytes(),
+                    subCategoriesByCategory.getOrDefault(category.getId(), List.of())));
+            fileCount += usage.getFileCount();
+            totalBytes += usage.getTotalBytes();
+        }
+        return new UsageReport(fileCount, totalBytes, categories);
+    }
+
+    private void ensureRows(Category category, SubCategory subCategory) {
+        if (!categoryRows.contains(category.getId())) {
+            insertIfMissing(() -> categoryUsageRepository.existsById(category.getId()),
+                    () -> categoryUsageRepository.insertEmpty(category.getId()));
+            categoryRows.add(category.getId());
+        }
+        if (subCategory != null && !subCategoryRows.contains(subCategory.getId())) {
+            insertIfMissing(() -> subCategoryUsageRepository.existsById(subCategory.getId()),
+                    () -> subCategoryUsageRepository.insertEmpty(subCategory.getId()));
+            subCategoryRows.add(subCategory.getId());
+        }
+    }
+
+    private void insertIfMissing(BooleanSupplier exists, Runnable insert) {
+        try {
+            newTransactionTemplate.executeWithoutResult(status -> {
+                if (!exists.getAsBoolean()) {
+                    insert.run();
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Inserted concurrently
+        }
+    }
+
+    private QuotaExceededException exceeded(CategoryUsage usage, long bytes) {
+        String name = taxonomyCache.getCategory(usage.getCategoryId()).map(Category::getName)
+                .orElse(String.valueOf(usage.getCategoryId()));
+        return new QuotaExceededException("Category '" + name + "' would exceed its quota of " + usage.getQuotaBytes()
+                + " bytes: " + usage.getTotalBytes() + " bytes used, " + bytes + " more requested");
+    }
+
+    // The id of an existing category as sent by an upload form, or null for "new" and anything unparsable
+    private static Long parseId(String categoryValue) {
+        if (!StringUtils.hasText(categoryValue)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(categoryValue);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
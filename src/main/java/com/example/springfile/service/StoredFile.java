@@ -0,0 +1,39 @@
+package com.example.springfile.service;
+
+/**
+ * Result of writing an upload to storage: where it went and what was written,
+ * measured in the same pass as the copy.
+ */
+public class StoredFile {
+    private final String storagePath;
+    private final long size;
+    private final String sha256; // Lower-case hex
+    private final String encoding; // How the blob holds the bytes ("gzip"), null when as uploaded
+
+    public StoredFile(String storagePath, long size, String sha256) {
+        this(storagePath, size, sha256, null);
+    }
+
+    public StoredFile(String storagePath, long size, String sha256, String encoding) {
+        this.storagePath = storagePath;
+        this.size = size;
+        this.sha256 = sha256;
+        this.encoding = encoding;
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.springfile.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a stored file is requested that is not (or no longer) in storage.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class StoredFileNotFoundException extends RuntimeException {
+    public StoredFileNotFoundException(String message) {
+        super(message);
+    }
+
+    public StoredFileNotFoundException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
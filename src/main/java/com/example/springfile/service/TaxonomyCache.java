@@ -0,0 +1,256 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterEventBus;
+import com.example.springfile.dto.CategoryDto;
+import com.example.springfile.dto.SubCategoryDto;
+import com.example.springfile.model.Category;
+import com.example.springfile.model.SubCategory;
+import com.example.springfile.repository.CategoryRepository;
+import com.example.springfile.repository.SubCategoryRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache of the category/sub-category taxonomy, which changes rarely but is read on every
+ * page render and upload. Readers get an immutable {@link Snapshot} (lookup maps plus the JSON the
+ * upload form needs, rendered once) without locking. Creating a category or sub-category goes through
+ * this class, which saves it and then swaps in a freshly loaded snapshot.
+ * <p>
+ * A lookup that misses the snapshot is checked against the database, so rows added behind the cache's
+ * back are picked up (and trigger a rebuild) instead of being reported as missing. In a cluster, the other
+ * nodes are told about creates ({@link TaxonomyChangedEvent}) and rebuild their snapshots too. Two nodes
+ * creating the same name at once are settled by the database's unique constraints: the loser reads the
+ * winner's row.
+ */
+@Service
+public class TaxonomyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TaxonomyCache.class);
+
+    private final CategoryRepository categoryRepository;
+    private final SubCategoryRepository subCategoryRepository;
+    private final ObjectMapper objectMapper;
+    private final ClusterEventBus clusterEventBus;
+    // Creates commit on their own, so a create that loses to another node doesn't roll back the caller
+    private final TransactionTemplate newTransactionTemplate;
+
+    private volatile Snapshot snapshot;
+    // Serializes creates and rebuilds. A lock rather than synchronized: the holder waits on the database,
+    // which would pin a virtual thread to its carrier for the duration
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * An immutable view of the whole taxonomy. The entities are detached: only their ids and names
+     * (and a sub-category's category id) may be used.
+     */
+    public record Snapshot(Map<Long, Category> categoriesById,
+                           Map<String, Category> categoriesByName,
+                           Map<Long, SubCategory> subCategoriesById,
+                           Map<SubCategoryKey, SubCategory> subCategoriesByName,
+                           List<CategoryDto> categories,
+                           List<SubCategoryDto> subCategories,
+                           String categoriesJson,
+                           String subCategoriesJson) {
+    }
+
+    public record SubCategoryKey(Long categoryId, String name) {
+    }
+
+    public record Stats(long hits, long misses, long rebuilds, int categories, int subCategories) {
+    }
+
+    @Autowired
+    public TaxonomyCache(CategoryRepository categoryRepository, SubCategoryRepository subCategoryRepository,
+                         ObjectMapper objectMapper, ClusterEventBus clusterEventBus,
+                         PlatformTransactionManager transactionManager) {
+        this.categoryRepository = categoryRepository;
+        this.subCategoryRepository = subCategoryRepository;
+        this.objectMapper = objectMapper;
+        this.clusterEventBus = clusterEventBus;
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public Optional<Category> getCategory(Long id) {
+        Category category = snapshot.categoriesById().get(id);
+        if (category != null) {
+            hits.incrementAndGet();
+            return Optional.of(category);
+        }
+        misses.incrementAndGet();
+        if (categoryRepository.existsById(id)) {
+            refresh(); // Created elsewhere since the snapshot was built
+            return Optional.ofNullable(snapshot.categoriesById().get(id));
+        }
+        return Optional.empty();
+    }
+
+    public Optional<SubCategory> getSubCategory(Long id) {
+        SubCategory subCategory = snapshot.subCategoriesById().get(id);
+        if (subCategory != null) {
+            hits.incrementAndGet();
+            return Optional.of(subCategory);
+        }
+        misses.incrementAndGet();
+        if (subCategoryRepository.existsById(id)) {
+            refresh();
+            return Optional.ofNullable(snapshot.subCategoriesById().get(id));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds a category by name, creating it if there is none.
+     */
+    public Category findOrCreateCategory(String name) {
+        Category category = snapshot.categoriesByName().get(name);
+        if (category != null) {
+            hits.incrementAndGet();
+            return category;
+        }
+        misses.incrementAndGet();
+        writeLock.lock();
+        try {
+            if (categoryRepository.findByName(name).isEmpty()) {
+                create(() -> categoryRepository.save(new Category(name)));
+            }
+            refresh();
+            return snapshot.categoriesByName().get(name);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Finds a sub-category by name within a category, creating it if there is none.
+     */
+    public SubCategory findOrCreateSubCategory(Category category, String name) {
+        SubCategoryKey key = new SubCategoryKey(category.getId(), name);
+        SubCategory subCategory = snapshot.subCategoriesByName().get(key);
+        if (subCategory != null) {
+            hits.incrementAndGet();
+            return subCategory;
+        }
+        misses.incrementAndGet();
+        writeLock.lock();
+        try {
+            if (subCategoryRepository.findByNameAndCategory(name, category).isEmpty()) {
+                create(() -> subCategoryRepository.save(new SubCategory(name, category)));
+            }
+            refresh();
+            return snapshot.subCategoriesByName().get(key);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void create(Runnable insert) {
+        try {
+            newTransactionTemplate.executeWithoutResult(status -> insert.run());
+        } catch (DataIntegrityViolationException e) {
+            // Created concurrently by another node, which tells the others itself
+            log.debug("Taxonomy entry created concurrently: {}", e.getMessage());
+            return;
+        }
+        clusterEventBus.publish(new TaxonomyChangedEvent());
+    }
+
+    /**
+     * Reloads the taxonomy from the database and swaps in the new snapshot.
+     */
+    public void refresh() {
+        writeLock.lock();
+        try {
+            rebuild();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Another node created a category or sub-category
+    @EventListener
+    public void onTaxonomyChanged(TaxonomyChangedEvent event) {
+        refresh();
+    }
+
+    private void rebuild() {
+        List<Category> categories = categoryRepository.findAll();
+        List<SubCategory> subCategories = subCategoryRepository.findAll();
+
+        Map<Long, Category> categoriesById = new HashMap<>();
+        Map<String, Category> categoriesByName = new HashMap<>();
+        List<CategoryDto> categoryDtos = new ArrayList<>(categories.size());
+        for (Category category : categories) {
+            categoriesById.put(category.getId(), category);
+            categoriesByName.put(category.getName(), category);
+            categoryDtos.add(new CategoryDto(category.getId(), category.getName()));
+        }
+
+        Map<Long, SubCategory> subCategoriesById = new HashMap<>();
+        Map<SubCategoryKey, SubCategory> subCategoriesByName = new HashMap<>();
+        List<SubCategoryDto> subCategoryDtos = new ArrayList<>(subCategories.size());
+        for (SubCategory subCategory : subCategories) {
+            if (subCategory.getCategory() == null || subCategory.getCategory().getId() == null) {
+                log.warn("SubCategory found with missing Category association: ID={}, Name='{}'", subCategory.getId(), subCategory.getName());
+                continue;
+            }
+            Long categoryId = subCategory.getCategory().getId();
+            subCategoriesById.put(subCategory.getId(), subCategory);
+            subCategoriesByName.put(new SubCategoryKey(categoryId, subCategory.getName()), subCategory);
+            subCategoryDtos.add(new SubCategoryDto(subCategory.getId(), subCategory.getName(), categoryId));
+        }
+
+        snapshot = new Snapshot(Map.copyOf(categoriesById), Map.copyOf(categoriesByName),
+                Map.copyOf(subCategoriesById), Map.copyOf(subCategoriesByName),
+                List.copyOf(categoryDtos), List.copyOf(subCategoryDtos),
+                toJson(categoryDtos, "categories"), toJson(subCategoryDtos, "subCategories"));
+        rebuilds.incrementAndGet();
+        log.debug("Taxonomy snapshot rebuilt: {} categories, {} sub-categories", categories.size(), subCategoryDtos.size());
+    }
+
+    public Stats getStats() {
+        Snapshot current = snapshot;
+        return new Stats(hits.get(), misses.get(), rebuilds.get(),
+                current.categories().size(), current.subCategories().size());
+    }
+
+    private String toJson(List<?> list, String listName) {
+        try {
+            return objectMapper.writeValueAsString(list);
+        } catch (JsonProcessingException e) {
+            log.error("Error converting {} list to JSON", listName, e);
+            return "[]"; // Return empty JSON array on error
+        }
+    }
+}
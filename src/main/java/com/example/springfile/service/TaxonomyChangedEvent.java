@@ -0,0 +1,10 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterEvent;
+
+/**
+ * Sent to the other nodes of a cluster when a node has created a category or sub-category, so they reload
+ * their {@link TaxonomyCache}.
+ */
+public record TaxonomyChangedEvent() implements ClusterEvent {
+}
@@ -0,0 +1,14 @@
+package com.example.springfile.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when uploaded bytes do not match the checksum the client declared for them.
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class UploadChecksumException extends RuntimeException {
+    public UploadChecksumException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.springfile.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a resumable upload session does not exist, has expired, or was completed or aborted.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class UploadSessionNotFoundException extends RuntimeException {
+    public UploadSessionNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.springfile.service;
+
+/**
+ * Thrown when an upload is larger than the configured limit. The partially written data has
+ * already been discarded when this is thrown.
+ */
+public class UploadTooLargeException extends RuntimeException {
+    public UploadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.springfile.storage;
+
+import java.time.Instant;
+
+/**
+ * Size and last modification time of a stored object.
+ */
+public record BlobStat(long size, Instant lastModified) {
+}
@@ -0,0 +1,46 @@
+package com.example.springfile.storage;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces background I/O to a byte rate: each caller reserves the time its bytes take at that rate and
+ * sleeps until the reservation starts. Idle time is not saved up, so there are no bursts after a pause.
+ * Shared by every stream of one background job, so the limit holds for the job as a whole.
+ */
+public class ByteRateLimiter {
+
+    private final double nanosPerByte;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond The rate to stay under; must be positive.
+     */
+    public ByteRateLimiter(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + bytesPerSecond);
+        }
+        this.nanosPerByte = 1_000_000_000d / bytesPerSecond;
+    }
+
+    /**
+     * Waits until {@code bytes} more bytes may be read.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(nextFreeNanos, now);
+            nextFreeNanos = start + (long) (bytes * nanosPerByte);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+}
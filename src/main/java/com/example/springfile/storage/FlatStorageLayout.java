@@ -0,0 +1,20 @@
+package com.example.springfile.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Every object directly in the storage root. Fine for small stores; directory operations
+ * degrade once a single directory holds millions of entries.
+ */
+public class FlatStorageLayout implements StorageLayout {
+
+    @Override
+    public Path relativePath(String key) {
+        return Path.of(key);
+    }
+
+    @Override
+    public String describe() {
+        return "flat";
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.springfile.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Fans objects out over {@code depth} directory levels of {@code width} hex characters each, e.g.
+ * {@code ab/cd/abcd1234...} for depth 2 and width 2. With depth 2 and width 2 a store needs ~65k
+ * directories before any of them holds more than a few hundred entries per million objects.
+ * <p>
+ * The prefix is taken from the key itself when it starts with enough hex digits (content hashes, UUIDs),
+ * which keeps paths predictable by eye; any other key is prefixed by the SHA-256 of its name instead.
+ */
+public class HashPrefixStorageLayout implements StorageLayout {
+
+    private final int depth;
+    private final int width;
+
+    public HashPrefixStorageLayout(int depth, int width) {
+        if (depth < 1 || width < 1 || depth * width > 16) {
+            throw new IllegalArgumentException("Unsupported hash-prefix layout " + depth + "x" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+    }
+
+    @Override
+    public Path relativePath(String key) {
+        String prefixSource = startsWithHex(key, depth * width) ? key.toLowerCase() : sha256Hex(key);
+        Path path = Path.of(prefixSource.substring(0, width));
+        for (int level = 1; level < depth; level++) {
+            path = path.resolve(prefixSource.substring(level * width, (level + 1) * width));
+        }
+        return path.resolve(key);
+    }
+
+    @Override
+    public String describe() {
+        return "hash-prefix(" + depth + "x" + width + ")";
+    }
+
+    private static boolean startsWithHex(String key, int count) {
+        if (key.length() < count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (Character.digit(key.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sha256Hex(String key) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
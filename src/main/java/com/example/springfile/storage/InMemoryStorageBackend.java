@@ -0,0 +1,61 @@
+package com.example.springfile.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Objects held on the heap. For tests and throwaway instances only: nothing survives a restart and
+ * every object costs its full size in memory.
+ */
+public class InMemoryStorageBackend implements StorageBackend {
+
+    private record StoredObject(byte[] data, Instant lastModified) {
+    }
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream content, long size) throws IOException {
+        objects.put(key, new StoredObject(content.readAllBytes(), Instant.now()));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            throw new NoSuchFileException(key);
+        }
+        int start = (int) Math.min(offset, object.data().length);
+        int count = length < 0 ? object.data().length - start : (int) Math.min(length, object.data().length - start);
+        return new ByteArrayInputStream(object.data(), start, count);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return objects.remove(key) != null;
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) {
+        StoredObject object = objects.get(key);
+        return object == null ? Optional.empty() : Optional.of(new BlobStat(object.data().length, object.lastModified()));
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return List.copyOf(objects.keySet()).stream();
+    }
+
+    @Override
+    public String describe() {
+        return "memory (" + objects.size() + " objects)";
+    }
+}
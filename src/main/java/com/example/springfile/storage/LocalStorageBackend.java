@@ -0,0 +1,178 @@
+package com.example.springfile.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Objects as files under a root directory, placed by a {@link StorageLayout}. Writes land in a
+ * temporary file and are renamed into place, so readers never see partial objects.
+ * <p>
+ * Lookups also check where the previous layouts would put a key ({@code file.storage.layout.previous}, by
+ * default the flat and default hash-prefix layouts), so objects stay readable while
+ * {@code StorageLayoutMigrator} moves them after a layout change.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    public static final List<StorageLayout> DEFAULT_PREVIOUS_LAYOUTS =
+            List.of(new HashPrefixStorageLayout(2, 2), new FlatStorageLayout());
+
+    private final Path root;
+    private final Path tempDir;
+    private final StorageLayout layout;
+    // Where objects may still be found: the configured layout first, then those it may be migrating from
+    private final List<StorageLayout> lookupLayouts;
+
+    public LocalStorageBackend(Path root, StorageLayout layout) throws IOException {
+        this(root, layout, DEFAULT_PREVIOUS_LAYOUTS);
+    }
+
+    /**
+     * @param previousLayouts Layouts objects may still be in, looked in after the configured one.
+     */
+    public LocalStorageBackend(Path root, StorageLayout layout, List<StorageLayout> previousLayouts) throws IOException {
+        this.root = Files.createDirectories(root.toAbsolutePath().normalize());
+        this.tempDir = Files.createDirectories(this.root.resolve(".tmp"));
+        this.layout = layout;
+        List<StorageLayout> lookup = new ArrayList<>();
+        lookup.add(layout);
+        lookup.addAll(previousLayouts);
+        this.lookupLayouts = List.copyOf(lookup);
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size) throws IOException {
+        Path temp = tempDir.resolve(UUID.randomUUID().toString());
+        try {
+            Files.copy(content, temp);
+            moveIntoPlace(temp, resolve(key));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void putFile(String key, Path source) throws IOException {
+        Path target = resolve(key);
+        try {
+            moveIntoPlace(source, target);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Source is on another filesystem: copy next to the target first, then rename
+            try (InputStream in = Files.newInputStream(source)) {
+                put(key, in, Files.size(source));
+            }
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        Path file = localPath(key).orElseThrow(() -> new NoSuchFileException(key));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            return length < 0 ? in : new BoundedInputStream(in, length);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        boolean deleted = false;
+        for (Path candidate : candidatePaths(key)) {
+            deleted |= Files.deleteIfExists(candidate);
+        }
+        return deleted;
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) throws IOException {
+        Optional<Path> file = localPath(key);
+        if (file.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.get(), BasicFileAttributes.class);
+            return Optional.of(new BlobStat(attributes.size(), attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty(); // Deleted between lookup and stat
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        for (Path candidate : candidatePaths(key)) {
+            if (Files.isRegularFile(candidate)) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Where an object belongs under the configured layout (it may not exist yet).
+     */
+    public Path resolve(String key) {
+        Path path = root.resolve(layout.relativePath(key)).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+
+    private Set<Path> candidatePaths(String key) {
+        Set<Path> candidates = new LinkedHashSet<>();
+        for (StorageLayout lookupLayout : lookupLayouts) {
+            Path path = root.resolve(lookupLayout.relativePath(key)).normalize();
+            if (path.startsWith(root) && !path.equals(root)) {
+                candidates.add(path);
+            }
+        }
+        return candidates;
+    }
+
+    // Object files are named by their key, wherever the layout puts them; in-progress writes are skipped
+    @Override
+    public Stream<String> keys() throws IOException {
+        return Files.walk(root)
+                .filter(path -> !path.startsWith(tempDir))
+                .filter(Files::isRegularFile)
+                .map(path -> path.getFileName().toString());
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public StorageLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public String describe() {
+        return "local:" + root + " (" + layout.describe() + ")";
+    }
+}
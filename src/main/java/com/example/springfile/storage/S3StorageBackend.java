@@ -0,0 +1,341 @@
+package com.example.springfile.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Objects in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW, ...). Objects up to {@code partSize}
+ * are sent with a single PUT; larger ones as a multipart upload whose parts are sent in parallel on a
+ * bounded executor. Ranged reads map directly onto ranged GETs.
+ */
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    // S3 rejects multipart parts smaller than 5 MiB (except the last one)
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    // and DeleteObjects requests with more than 1000 keys
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String keyPrefix;
+    private final long partSize;
+    private final int partConcurrency;
+    private final ExecutorService partExecutor;
+
+    /**
+     * @param s3              Configured client; closed together with this backend.
+     * @param bucket          Bucket holding the objects.
+     * @param keyPrefix       Prefix prepended to every key (may be empty), e.g. {@code springfile/}.
+     * @param partSize        Multipart part size; also the largest object sent with a single PUT.
+     * @param partConcurrency Maximum parts in flight per upload.
+     * @param partExecutor    Runs part uploads; its size bounds parallelism across all uploads.
+     */
+    public S3StorageBackend(S3Client s3, String bucket, String keyPrefix, long partSize, int partConcurrency,
+                            ExecutorService partExecutor) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("S3 part size must be at least 5MB, got " + partSize);
+        }
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+        this.partSize = partSize;
+        this.partConcurrency = Math.max(1, partConcurrency);
+        this.partExecutor = partExecutor;
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size) throws IOException {
+        if (size >= 0 && size <= partSize) {
+            call(() -> s3.putObject(b -> b.bucket(bucket).key(objectKey(key)).contentLength(size),
+                    RequestBody.fromInputStream(content, size)));
+            return;
+        }
+        multipartUpload(key, new StreamPartSource(content));
+    }
+
+    @Override
+    public void putFile(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        if (size <= partSize) {
+            call(() -> s3.putObject(b -> b.bucket(bucket).key(objectKey(key)), RequestBody.fromFile(source)));
+        } else {
+            multipartUpload(key, new FilePartSource(source, size));
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(objectKey(key));
+        if (offset > 0 || length > 0) {
+            request.range("bytes=" + offset + "-" + (length > 0 ? String.valueOf(offset + length - 1) : ""));
+        }
+        try {
+            return s3.getObject(request.build());
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (SdkException e) {
+            throw new IOException("S3 GET failed for " + key, e);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        call(() -> s3.deleteObject(b -> b.bucket(bucket).key(objectKey(key))));
+        return true; // DELETE is idempotent and does not say whether the object existed
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) throws IOException {
+        List<String> remaining = List.copyOf(keys);
+        for (int from = 0; from < remaining.size(); from += MAX_KEYS_PER_DELETE) {
+            List<ObjectIdentifier> batch = remaining.subList(from, Math.min(remaining.size(), from + MAX_KEYS_PER_DELETE))
+                    .stream().map(key -> ObjectIdentifier.builder().key(objectKey(key)).build()).toList();
+            DeleteObjectsResponse response = call(() -> s3.deleteObjects(b -> b.bucket(bucket)
+                    .delete(d -> d.objects(batch).quiet(true))));
+            if (response.hasErrors() && !response.errors().isEmpty()) {
+                throw new IOException("S3 could not delete " + response.errors().size() + " objects, e.g. "
+                        + response.errors().get(0).key() + ": " + response.errors().get(0).message());
+            }
+        }
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(b -> b.bucket(bucket).key(objectKey(key)));
+            return Optional.of(new BlobStat(head.contentLength(), head.lastModified()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("S3 HEAD failed for " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("S3 HEAD failed for " + key, e);
+        }
+    }
+
+    // Pages of up to 1000 keys are fetched as the stream is consumed
+    @Override
+    public Stream<String> keys() {
+        return s3.listObjectsV2Paginator(b -> b.bucket(bucket).prefix(keyPrefix)).contents().stream()
+                .map(object -> object.key().substring(keyPrefix.length()));
+    }
+
+    @Override
+    public String describe() {
+        return "s3://" + bucket + "/" + keyPrefix;
+    }
+
+    @Override
+    public void close() {
+        partExecutor.shutdown();
+        s3.close();
+    }
+
+    private String objectKey(String key) {
+        return keyPrefix + key;
+    }
+
+    /**
+     * Uploads parts as they become available, at most {@code partConcurrency} at a time, and completes
+     * the upload once all of them are in. Any failure aborts the upload so no orphaned parts are billed.
+     * Empty content is sent with a single PUT, as S3 refuses to complete an upload without parts.
+     */
+    private void multipartUpload(String key, PartSource parts) throws IOException {
+        String objectKey = objectKey(key);
+        Semaphore inFlight = new Semaphore(partConcurrency);
+        Part first;
+        try {
+            first = nextPart(parts, inFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading " + key, e);
+        }
+        if (first == null) {
+            call(() -> s3.putObject(b -> b.bucket(bucket).key(objectKey).contentLength(0L), RequestBody.empty()));
+            return;
+        }
+        String uploadId = call(() -> s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey))).uploadId();
+        List<CompletableFuture<CompletedPart>> futures = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            for (Part part = first; part != null; part = nextPart(parts, inFlight)) {
+                Part current = part;
+                int number = partNumber++;
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try (InputStream body = current.open()) {
+                        String etag = s3.uploadPart(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                                .partNumber(number).contentLength(current.length()),
+                                RequestBody.fromInputStream(body, current.length())).eTag();
+                        return CompletedPart.builder().partNumber(number).eTag(etag).build();
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, partExecutor));
+            }
+            List<CompletedPart> completed = new ArrayList<>(futures.size());
+            for (CompletableFuture<CompletedPart> future : futures) {
+                completed.add(future.join());
+            }
+            completed.sort(Comparator.comparing(CompletedPart::partNumber));
+            call(() -> s3.completeMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(completed))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(objectKey, uploadId, futures);
+            throw new IOException("Interrupted while uploading " + key, e);
+        } catch (IOException | RuntimeException e) {
+            abort(objectKey, uploadId, futures);
+            throw e instanceof IOException io ? io : new IOException("Multipart upload failed for " + key, e);
+        }
+    }
+
+    // The permit is taken before the part is read, so no more than partConcurrency parts are held at once;
+    // it is given back with the part's upload, or right away when there are no more parts
+    private Part nextPart(PartSource parts, Semaphore inFlight) throws IOException, InterruptedException {
+        inFlight.acquire();
+        Part part;
+        try {
+            part = parts.next(partSize);
+        } catch (IOException | RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        if (part == null) {
+            inFlight.release();
+        }
+        return part;
+    }
+
+    private void abort(String objectKey, String uploadId, List<CompletableFuture<CompletedPart>> futures) {
+        futures.forEach(future -> future.cancel(true));
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId));
+        } catch (SdkException e) {
+            log.warn("Could not abort multipart upload {} of {}", uploadId, objectKey, e);
+        }
+    }
+
+    private static <T> T call(SdkCall<T> call) throws IOException {
+        try {
+            return call.run();
+        } catch (SdkException e) {
+            throw new IOException("S3 request failed", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SdkCall<T> {
+        T run();
+    }
+
+    private interface Part {
+        long length();
+
+        InputStream open() throws IOException;
+    }
+
+    private interface PartSource {
+        /**
+         * @return the next part of at most {@code maxLength} bytes, or null when there are no more.
+         */
+        Part next(long maxLength) throws IOException;
+    }
+
+    // Parts of a local file: each part reads its own region, so parts really upload in parallel
+    private static final class FilePartSource implements PartSource {
+        private final Path file;
+        private final long size;
+        private long position;
+
+        FilePartSource(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public Part next(long maxLength) {
+            long start = position;
+            if (start >= size) {
+                return null;
+            }
+            long length = Math.min(maxLength, size - start);
+            position += length;
+            return new Part() {
+                @Override
+                public long length() {
+                    return length;
+                }
+
+                @Override
+                public InputStream open() throws IOException {
+                    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                    channel.position(start);
+                    return new BoundedInputStream(Channels.newInputStream(channel), length);
+                }
+            };
+        }
+    }
+
+    // Parts of a stream of unknown length: each part is buffered, so memory is bounded by partConcurrency * partSize
+    private record StreamPartSource(InputStream in) implements PartSource {
+        @Override
+        public Part next(long maxLength) throws IOException {
+            byte[] buffer = in.readNBytes((int) maxLength);
+            if (buffer.length == 0) {
+                return null;
+            }
+            return new Part() {
+                @Override
+                public long length() {
+                    return buffer.length;
+                }
+
+                @Override
+                public InputStream open() {
+                    return new ByteArrayInputStream(buffer);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.springfile.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Where stored bytes physically live. Objects are immutable and addressed by key; the rest of the
+ * application (blob reference counting, metadata, controllers) only talks to this interface.
+ * <p>
+ * Implementations: {@link LocalStorageBackend} (a directory on local or shared disk),
+ * {@link InMemoryStorageBackend} (tests and throwaway instances) and {@link S3StorageBackend}
+ * (any S3-compatible object store). Selected with {@code file.storage.backend}.
+ */
+public interface StorageBackend {
+
+    /**
+     * Stores an object, replacing any existing object with the same key.
+     * @param key     Object key.
+     * @param content The bytes to store; read to the end but not closed.
+     * @param size    Number of bytes in content, or -1 if unknown.
+     */
+    void put(String key, InputStream content, long size) throws IOException;
+
+    /**
+     * Stores the content of a local file, which is consumed (moved or deleted) on success. Backends
+     * override this when they can do better than streaming the file, e.g. a rename or parallel parts.
+     */
+    default void putFile(String key, Path source) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            put(key, in, Files.size(source));
+        }
+        Files.deleteIfExists(source);
+    }
+
+    /**
+     * Opens a byte range of an object.
+     * @param offset First byte to return.
+     * @param length Number of bytes to return, or -1 for everything up to the end.
+     * @throws java.nio.file.NoSuchFileException if there is no object with this key.
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    default InputStream get(String key) throws IOException {
+        return get(key, 0, -1);
+    }
+
+    /**
+     * Deletes an object if it exists.
+     * @return true if something was deleted (backends that cannot tell return true).
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Deletes several objects, those that don't exist included. Backends override this when they can
+     * delete many objects in one request.
+     * @throws IOException if some could not be deleted; others may have been.
+     */
+    default void deleteAll(Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            delete(key);
+        }
+    }
+
+    /**
+     * Size and modification time of an object, or empty if there is none.
+     */
+    Optional<BlobStat> stat(String key) throws IOException;
+
+    default boolean exists(String key) throws IOException {
+        return stat(key).isPresent();
+    }
+
+    /**
+     * Keys of all stored objects, in no particular order, read lazily. Close the stream: it may hold a
+     * directory handle.
+     */
+    Stream<String> keys() throws IOException;
+
+    /**
+     * The object as a local file, when the backend keeps it on a local filesystem. Callers use this for
+     * zero-copy transfers (sendfile, memory mapping) and fall back to {@link #get} otherwise.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * Short description for logs, e.g. {@code local:/data/uploads/blobs}.
+     */
+    String describe();
+}
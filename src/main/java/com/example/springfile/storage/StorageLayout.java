@@ -0,0 +1,20 @@
+package com.example.springfile.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Decides where an object lives under a storage root. Keeping this separate from the code that
+ * reads and writes objects lets the directory structure change (and be migrated) independently.
+ */
+public interface StorageLayout {
+
+    /**
+     * Location of the object with the given key, relative to the storage root.
+     */
+    Path relativePath(String key);
+
+    /**
+     * Short name used in configuration and logs, e.g. {@code flat} or {@code hash-prefix(2x2)}.
+     */
+    String describe();
+}
@@ -0,0 +1,44 @@
+package com.example.springfile.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the wrapped stream no faster than a {@link ByteRateLimiter} allows, for background jobs that
+ * must leave the disk (or network) to live traffic.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+    private final ByteRateLimiter limiter;
+
+    public ThrottledInputStream(InputStream in, ByteRateLimiter limiter) {
+        super(in);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            limiter.acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            limiter.acquire(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        limiter.acquire(skipped);
+        return skipped;
+    }
+}
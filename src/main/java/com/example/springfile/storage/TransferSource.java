@@ -0,0 +1,176 @@
+package com.example.springfile.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * The bytes of a download, addressable by offset so that byte ranges can be sent without
+ * reading what comes before them.
+ */
+public interface TransferSource {
+
+    long length();
+
+    /**
+     * The local file holding exactly these bytes, if there is one. When present the servlet container
+     * may hand the transfer to the kernel (sendfile) instead of copying through the JVM.
+     */
+    default Optional<Path> file() {
+        return Optional.empty();
+    }
+
+    /**
+     * When the bytes were last written, if the source knows.
+     */
+    default Optional<Instant> lastModified() {
+        return Optional.empty();
+    }
+
+    /**
+     * Writes {@code count} bytes starting at {@code position} to {@code target}.
+     */
+    void transferTo(WritableByteChannel target, long position, long count) throws IOException;
+
+    static TransferSource ofFile(Path path, long length) {
+        return new TransferSource() {
+            @Override
+            public long length() {
+                return length;
+            }
+
+            @Override
+            public Optional<Path> file() {
+                return Optional.of(path);
+            }
+
+            @Override
+            public Optional<Instant> lastModified() {
+                try {
+                    return Optional.of(Files.getLastModifiedTime(path).toInstant());
+                } catch (IOException e) {
+                    return Optional.empty();
+                }
+            }
+
+            @Override
+            public void transferTo(WritableByteChannel target, long position, long count) throws IOException {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    long end = position + count;
+                    while (position < end) {
+                        // transferTo may move fewer bytes than asked for, so loop until the range is done
+                        long sent = channel.transferTo(position, end - position, target);
+                        if (sent <= 0 && position >= channel.size()) {
+                            throw new IOException("File " + path + " is shorter than expected");
+                        }
+                        position += sent;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * An object of a {@link StorageBackend} without a local file: each range is a ranged read
+     * from the backend, copied through a fixed buffer.
+     */
+    static TransferSource ofBackend(StorageBackend backend, String key, BlobStat stat) {
+        return new TransferSource() {
+            @Override
+            public long length() {
+                return stat.size();
+            }
+
+            @Override
+            public Optional<Instant> lastModified() {
+                return Optional.ofNullable(stat.lastModified());
+            }
+
+            @Override
+            public void transferTo(WritableByteChannel target, long position, long count) throws IOException {
+                try (InputStream in = backend.get(key, position, count)) {
+                    copy(in, target, count, "Object " + key);
+                }
+            }
+        };
+    }
+
+    /**
+     * Content held in memory (e.g. a cached file); the buffer is shared, never modified.
+     */
+    static TransferSource ofBuffer(ByteBuffer content) {
+        return new TransferSource() {
+            @Override
+            public long length() {
+                return content.remaining();
+            }
+
+            @Override
+            public void transferTo(WritableByteChannel target, long position, long count) throws IOException {
+                // A view per transfer, so concurrent downloads of the same buffer don't share its position
+                ByteBuffer region = content.duplicate();
+                region.position(region.position() + (int) position);
+                region.limit(region.position() + (int) count);
+                while (region.hasRemaining()) {
+                    target.write(region);
+                }
+            }
+        };
+    }
+
+    /**
+     * Content that can only be read from its start, such as a compressed blob decoded on the fly: a
+     * range is served by reading and discarding everything before it.
+     * @param opener Opens the content from its first byte; called once per range.
+     */
+    static TransferSource ofStream(StreamOpener opener, long length) {
+        return new TransferSource() {
+            @Override
+            public long length() {
+                return length;
+            }
+
+            @Override
+            public void transferTo(WritableByteChannel target, long position, long count) throws IOException {
+                try (InputStream in = opener.open()) {
+                    in.skipNBytes(position);
+                    copy(in, target, count, "Content");
+                }
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    // Copies through a fixed buffer
+    private static void copy(InputStream in, WritableByteChannel target, long count, String what) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long remaining = count;
+        while (remaining > 0) {
+            buffer.limit((int) Math.min(buffer.capacity(), remaining));
+            int read = source.read(buffer);
+            if (read < 0) {
+                throw new IOException(what + " is shorter than expected");
+            }
+            buffer.flip();
+            remaining -= buffer.remaining();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.springfile.web;
+
+import com.example.springfile.storage.TransferSource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Writes a download response with HTTP caching and byte-range support:
+ * <ul>
+ *   <li>conditional requests (If-None-Match, If-Modified-Since, If-Match, If-Unmodified-Since) answered with 304/412,</li>
+ *   <li>single and multiple byte ranges (RFC 7233), with If-Range revalidation,</li>
+ *   <li>content stored compressed sent as it is, with its Content-Encoding, when the caller has chosen
+ *       that representation (see {@link #acceptsEncoding}),</li>
+ *   <li>local files handed to Tomcat's sendfile, which moves the bytes with FileChannel.transferTo straight into
+ *       the socket without holding a request thread; other sources (and everything with
+ *       {@code file.download.sendfile=false}) go through transferTo on the response stream.</li>
+ * </ul>
+ */
+@Component
+public class DownloadResponseWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadResponseWriter.class);
+
+    // Request attributes of Tomcat's sendfile support (see org.apache.coyote.Constants)
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate(); // Always revalidate, cheap thanks to ETags
+
+    private final boolean sendfile;
+
+    public DownloadResponseWriter() {
+        this(true);
+    }
+
+    @Autowired
+    public DownloadResponseWriter(@Value("${file.download.sendfile:true}") boolean sendfile) {
+        this.sendfile = sendfile;
+    }
+
+    /**
+     * Describes what is being downloaded. {@code etag} is the full quoted entity tag (e.g. {@code "abc"} or {@code W/"abc"}).
+     * {@code contentEncoding} is the coding the source's bytes are in (e.g. {@code gzip}), or null for the content as is;
+     * ranges then apply to the encoded bytes, as RFC 9110 specifies.
+     */
+    public record Download(TransferSource source, String contentType, String contentDisposition,
+                           String etag, Instant lastModified, String contentEncoding) {
+
+        public Download(TransferSource source, String contentType, String contentDisposition, String etag, Instant lastModified) {
+            this(source, contentType, contentDisposition, etag, lastModified, null);
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header value allows a content coding, honouring q-values,
+     * {@code *} and the legacy {@code x-gzip} alias.
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return false;
+        }
+        Double named = null;
+        Double wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals(coding) || name.equals("x-" + coding)) {
+                named = named == null ? q : Math.max(named, q);
+            } else if (name.equals("*")) {
+                wildcard = q;
+            }
+        }
+        return named != null ? named > 0 : wildcard != null && wildcard > 0;
+    }
+
+    /**
+     * Writes the response for a download request: full content, one range, several ranges, or a
+     * 304/412/416 status.
+     * @return Number of body bytes sent (or handed to sendfile); 0 when no body is sent.
+     */
+    public long write(Download download, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long lastModifiedMillis = download.lastModified() != null ? download.lastModified().toEpochMilli() : -1;
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        // Handles If-None-Match / If-Modified-Since (304) and If-Match / If-Unmodified-Since (412),
+        // and sets the ETag and Last-Modified response headers
+        if (webRequest.checkNotModified(download.etag(), lastModifiedMillis)) {
+            return 0;
+        }
+
+        long length = download.source().length();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL.getHeaderValue());
+        if (download.contentEncoding() != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, download.contentEncoding());
+        }
+        if (StringUtils.hasText(download.contentDisposition())) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, download.contentDisposition());
+        }
+
+        List<HttpRange> ranges = requestedRanges(request, download, length);
+        if (ranges == null) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return 0;
+        }
+        boolean head = HttpMethod.HEAD.matches(request.getMethod());
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(download.contentType());
+            response.setContentLengthLong(length);
+            if (!head) {
+                sendRegion(download.source(), 0, length, request, response);
+                return length;
+            }
+        } else if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(download.contentType());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length));
+            response.setContentLengthLong(end - start + 1);
+            if (!head) {
+                sendRegion(download.source(), start, end - start + 1, request, response);
+                return end - start + 1;
+            }
+        } else {
+            return writeMultipartRanges(download, ranges, length, head, response);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the ranges to serve; empty for a full response, null if the Range header cannot be satisfied.
+     */
+    private List<HttpRange> requestedRanges(HttpServletRequest request, Download download, long length) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (!StringUtils.hasText(rangeHeader) || !isIfRangeSatisfied(request.getHeader(HttpHeaders.IF_RANGE), download)) {
+            return List.of();
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // Syntactically invalid (or absurdly many) ranges: RFC 7233 says to ignore the header
+            log.debug("Ignoring invalid Range header '{}': {}", rangeHeader, e.getMessage());
+            return List.of();
+        }
+
+        List<HttpRange> satisfiable = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (HttpRange range : ranges) {
+            try {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                if (start <= end) {
+                    satisfiable.add(range);
+                    total += end - start + 1;
+                }
+            } catch (IllegalArgumentException e) {
+                // Starts beyond the end of the file; other ranges may still be satisfiable
+            }
+        }
+        if (satisfiable.isEmpty()) {
+            return null;
+        }
+        if (total > length) {
+            // Overlapping ranges asking for more than the whole file: just send the whole file once
+            return List.of();
+        }
+        return satisfiable;
+    }
+
+    // If-Range: only honour the Range header if the client's copy is still current (strong comparison)
+    private boolean isIfRangeSatisfied(String ifRange, Download download) {
+        if (!StringUtils.hasText(ifRange)) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            String etag = download.etag();
+            return etag != null && !etag.startsWith("W/") && !ifRange.startsWith("W/") && etag.equals(ifRange);
+        }
+        if (download.lastModified() == null) {
+            return false;
+        }
+        try {
+            Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == download.lastModified().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private long writeMultipartRanges(Download download, List<HttpRange> ranges, long length, boolean head,
+                                      HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            byte[] header = ("\r\n--" + boundary + "\r\n" +
+                    HttpHeaders.CONTENT_TYPE + ": " + download.contentType() + "\r\n" +
+                    HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + (end - start + 1);
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (head) {
+            return 0;
+        }
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        for (int i = 0; i < ranges.size(); i++) {
+            long start = ranges.get(i).getRangeStart(length);
+            long end = ranges.get(i).getRangeEnd(length);
+            out.write(partHeaders.get(i));
+            download.source().transferTo(channel, start, end - start + 1);
+        }
+        out.write(closing);
+        out.flush();
+        return contentLength;
+    }
+
+    private void sendRegion(TransferSource source, long position, long count, HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        Optional<Path> file = source.file();
+        if (sendfile && file.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // Tomcat sends the region after the handler returns, via FileChannel.transferTo into the socket
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, position);
+            request.setAttribute(SENDFILE_END_ATTR, position + count);
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        source.transferTo(Channels.newChannel(out), position, count);
+        out.flush();
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+}
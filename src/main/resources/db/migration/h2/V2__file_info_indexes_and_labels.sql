@@ -0,0 +1,48 @@
+-- Downloads and deletes find files by storage path; it was always unique in practice, now it is enforced
+ALTER TABLE file_info ADD CONSTRAINT uk_file_info_storage_path UNIQUE (storage_path);
+
+-- The listing is read newest first, with or without one equality filter: each index serves one such
+-- query as a range scan already in ORDER BY upload_time DESC, id DESC order
+DROP INDEX idx_file_info_upload_time_id;
+CREATE INDEX idx_file_info_upload_time_id ON file_info (upload_time DESC, id DESC);
+CREATE INDEX idx_file_info_category_upload_time ON file_info (category_id, upload_time DESC, id DESC);
+CREATE INDEX idx_file_info_sub_category_upload_time ON file_info (sub_category_id, upload_time DESC, id DESC);
+CREATE INDEX idx_file_info_content_type_upload_time ON file_info (content_type, upload_time DESC, id DESC);
+
+-- Foreign keys used for lookups
+CREATE INDEX idx_file_info_blob ON file_info (blob_sha256);
+CREATE INDEX idx_sub_category_category_name ON sub_category (category_id, name);
+CREATE INDEX idx_processing_job_file_info ON processing_job (file_info_id);
+-- The primary key leads with chunk_index, which does not help per-session lookups
+CREATE INDEX idx_upload_chunk_session ON upload_chunk (session_id, chunk_index);
+
+-- Labels move from a free-text element collection to a label table plus an ordered link table, so a
+-- label is stored once and files with a label are found through (label_id, file_info_id)
+CREATE TABLE label (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_label_name UNIQUE (name)
+);
+
+CREATE TABLE file_info_label (
+    file_info_id BIGINT NOT NULL,
+    label_order INTEGER NOT NULL,
+    label_id BIGINT NOT NULL,
+    PRIMARY KEY (file_info_id, label_order),
+    CONSTRAINT fk_file_info_label_file_info FOREIGN KEY (file_info_id) REFERENCES file_info (id),
+    CONSTRAINT fk_file_info_label_label FOREIGN KEY (label_id) REFERENCES label (id)
+);
+
+CREATE INDEX idx_file_info_label_label ON file_info_label (label_id, file_info_id);
+
+INSERT INTO label (name)
+SELECT DISTINCT labels FROM file_info_labels WHERE labels IS NOT NULL;
+
+-- The old table kept no order, so existing labels are numbered alphabetically (and duplicates dropped)
+INSERT INTO file_info_label (file_info_id, label_order, label_id)
+SELECT fl.file_info_id, ROW_NUMBER() OVER (PARTITION BY fl.file_info_id ORDER BY fl.labels) - 1, l.id
+FROM (SELECT DISTINCT file_info_id, labels FROM file_info_labels WHERE labels IS NOT NULL) fl
+JOIN label l ON l.name = fl.labels;
+
+DROP TABLE file_info_labels;
@@ -0,0 +1,4 @@
+-- Deleting a file only sets deleted_at; StorageReaper removes the row and its content later
+ALTER TABLE file_info ADD COLUMN deleted_at TIMESTAMP(6);
+
+CREATE INDEX idx_file_info_deleted_at ON file_info (deleted_at);
@@ -0,0 +1,34 @@
+-- Running totals of the files and bytes in each category and sub-category, so usage and quotas are read
+-- from one row instead of aggregating file_info. Kept up to date by StorageUsageService in the same
+-- transactions that insert and delete files; a deleted file stops counting when it is marked deleted.
+
+-- Sizes of files moved into the blob store before sizes were recorded, so they count from the start
+UPDATE file_info SET size = (SELECT b.size FROM content_blob b WHERE b.sha256 = file_info.blob_sha256)
+WHERE size IS NULL AND blob_sha256 IS NOT NULL;
+
+CREATE TABLE category_usage (
+    category_id BIGINT NOT NULL,
+    file_count BIGINT NOT NULL,
+    total_bytes BIGINT NOT NULL,
+    quota_bytes BIGINT,
+    PRIMARY KEY (category_id),
+    CONSTRAINT fk_category_usage_category FOREIGN KEY (category_id) REFERENCES category (id) ON DELETE CASCADE
+);
+
+CREATE TABLE sub_category_usage (
+    sub_category_id BIGINT NOT NULL,
+    file_count BIGINT NOT NULL,
+    total_bytes BIGINT NOT NULL,
+    PRIMARY KEY (sub_category_id),
+    CONSTRAINT fk_sub_category_usage_sub_category FOREIGN KEY (sub_category_id) REFERENCES sub_category (id) ON DELETE CASCADE
+);
+
+INSERT INTO category_usage (category_id, file_count, total_bytes)
+SELECT c.id, COUNT(fi.id), COALESCE(SUM(fi.size), 0)
+FROM category c LEFT JOIN file_info fi ON fi.category_id = c.id AND fi.deleted_at IS NULL
+GROUP BY c.id;
+
+INSERT INTO sub_category_usage (sub_category_id, file_count, total_bytes)
+SELECT sc.id, COUNT(fi.id), COALESCE(SUM(fi.size), 0)
+FROM sub_category sc LEFT JOIN file_info fi ON fi.sub_category_id = sc.id AND fi.deleted_at IS NULL
+GROUP BY sc.id;
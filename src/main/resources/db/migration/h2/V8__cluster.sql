@@ -0,0 +1,26 @@
+-- Coordination between nodes sharing this database (see the com.example.springfile.cluster package)
+
+-- Which node marked a file deleted: with deleted_at it identifies the rows of one delete, since two nodes can
+-- pick the same deleted_at
+ALTER TABLE file_info ADD COLUMN deleted_by VARCHAR(128);
+
+-- Leases on work only one node may do at a time (the storage reaper, the integrity scrubber, ...)
+CREATE TABLE cluster_lock (
+    name VARCHAR(64) NOT NULL,
+    owner VARCHAR(128),
+    locked_until TIMESTAMP(6),
+    PRIMARY KEY (name)
+);
+
+-- Events for the other nodes' caches and search indexes, read by every node polling for ids above the last
+-- it has seen and pruned once older than file.cluster.event-retention
+CREATE TABLE cluster_message (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    origin VARCHAR(128) NOT NULL,
+    type VARCHAR(255) NOT NULL,
+    payload VARCHAR(1000000) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_cluster_message_created_at ON cluster_message (created_at);
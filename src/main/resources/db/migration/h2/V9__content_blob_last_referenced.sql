@@ -0,0 +1,6 @@
+-- When each blob last had a reference taken, so reconciliation can correct reference counts that drifted
+-- from the files pointing at them (e.g. an upload that crashed between taking its reference and inserting
+-- its file) without racing uploads in progress
+ALTER TABLE content_blob ADD COLUMN last_referenced_at TIMESTAMP(6);
+
+UPDATE content_blob SET last_referenced_at = COALESCE(created_at, CURRENT_TIMESTAMP);
@@ -0,0 +1,31 @@
+-- Sub-category names are unique within their category, so two nodes creating the same sub-category at
+-- once cannot both insert it. Duplicates created that way before the constraint are merged into the
+-- oldest of them first.
+
+UPDATE file_info SET sub_category_id = (
+    SELECT MIN(k.id) FROM sub_category s JOIN sub_category k ON k.category_id = s.category_id AND k.name = s.name
+    WHERE s.id = file_info.sub_category_id)
+WHERE sub_category_id IS NOT NULL;
+
+UPDATE upload_session SET sub_category_value = (
+    SELECT CAST(MIN(k.id) AS VARCHAR(255)) FROM sub_category s JOIN sub_category k ON k.category_id = s.category_id AND k.name = s.name
+    WHERE CAST(s.id AS VARCHAR(255)) = upload_session.sub_category_value)
+WHERE sub_category_value IN (SELECT CAST(id AS VARCHAR(255)) FROM sub_category);
+
+-- The merged files now count towards the sub-category they were moved to
+INSERT INTO sub_category_usage (sub_category_id, file_count, total_bytes)
+SELECT MIN(id), 0, 0 FROM sub_category GROUP BY category_id, name
+HAVING COUNT(*) > 1 AND MIN(id) NOT IN (SELECT sub_category_id FROM sub_category_usage);
+
+UPDATE sub_category_usage SET
+    file_count = (SELECT COUNT(*) FROM file_info fi
+                  WHERE fi.sub_category_id = sub_category_usage.sub_category_id AND fi.deleted_at IS NULL),
+    total_bytes = (SELECT COALESCE(SUM(fi.size), 0) FROM file_info fi
+                   WHERE fi.sub_category_id = sub_category_usage.sub_category_id AND fi.deleted_at IS NULL)
+WHERE sub_category_id IN (SELECT MIN(id) FROM sub_category GROUP BY category_id, name HAVING COUNT(*) > 1);
+
+DELETE FROM sub_category WHERE id NOT IN (SELECT MIN(id) FROM sub_category GROUP BY category_id, name);
+
+-- The constraint's index serves the lookups the plain index did
+DROP INDEX idx_sub_category_category_name;
+ALTER TABLE sub_category ADD CONSTRAINT uk_sub_category_category_name UNIQUE (category_id, name);
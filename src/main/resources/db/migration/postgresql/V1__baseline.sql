@@ -0,0 +1,102 @@
+-- The schema at V1 of db/migration/h2, for PostgreSQL (see V1 there). PostgreSQL databases were never
+-- created by Hibernate, so nothing here needs to tolerate an existing schema; later versions mirror the
+-- H2 migrations of the same number.
+
+CREATE SEQUENCE file_info_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE processing_job_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE category (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL UNIQUE,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE sub_category (
+    category_id BIGINT NOT NULL,
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE content_blob (
+    created_at TIMESTAMP(6),
+    ref_count BIGINT NOT NULL,
+    size BIGINT NOT NULL,
+    encoding VARCHAR(16),
+    sha256 VARCHAR(64) NOT NULL,
+    PRIMARY KEY (sha256)
+);
+
+CREATE TABLE file_info (
+    category_id BIGINT,
+    id BIGINT NOT NULL,
+    size BIGINT,
+    sub_category_id BIGINT,
+    upload_time TIMESTAMP(6),
+    content_encoding VARCHAR(16),
+    blob_sha256 VARCHAR(64),
+    sha256 VARCHAR(64),
+    content_type VARCHAR(255),
+    detected_content_type VARCHAR(255),
+    filename VARCHAR(255),
+    storage_path VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_file_info_upload_time_id ON file_info (upload_time, id);
+
+CREATE TABLE file_info_labels (
+    file_info_id BIGINT NOT NULL,
+    labels VARCHAR(255)
+);
+
+CREATE TABLE processing_job (
+    attempts INTEGER NOT NULL,
+    created_at TIMESTAMP(6),
+    file_info_id BIGINT NOT NULL,
+    id BIGINT NOT NULL,
+    locked_until TIMESTAMP(6),
+    next_attempt_at TIMESTAMP(6) NOT NULL,
+    stage VARCHAR(32) NOT NULL,
+    locked_by VARCHAR(36),
+    last_error VARCHAR(1000),
+    status VARCHAR(16) NOT NULL CHECK (status IN ('FAILED', 'PENDING', 'RUNNING')),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_processing_job_due ON processing_job (status, next_attempt_at);
+
+CREATE TABLE upload_session (
+    chunk_size INTEGER NOT NULL,
+    created_at TIMESTAMP(6),
+    expires_at TIMESTAMP(6) NOT NULL,
+    total_size BIGINT NOT NULL,
+    id VARCHAR(36) NOT NULL,
+    expected_sha256 VARCHAR(64),
+    labels VARCHAR(1000),
+    staging_file VARCHAR(1000) NOT NULL,
+    category_value VARCHAR(255),
+    content_type VARCHAR(255),
+    filename VARCHAR(255) NOT NULL,
+    new_category_name VARCHAR(255),
+    new_sub_category_name VARCHAR(255),
+    sub_category_value VARCHAR(255),
+    status VARCHAR(16) NOT NULL CHECK (status IN ('COMPLETING', 'OPEN')),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_upload_session_expires ON upload_session (expires_at);
+
+CREATE TABLE upload_chunk (
+    chunk_index INTEGER NOT NULL,
+    received_at TIMESTAMP(6),
+    session_id VARCHAR(36) NOT NULL,
+    PRIMARY KEY (chunk_index, session_id)
+);
+
+ALTER TABLE sub_category ADD CONSTRAINT FKl65dyy5me2ypoyj8ou1hnt64e FOREIGN KEY (category_id) REFERENCES category (id);
+ALTER TABLE file_info ADD CONSTRAINT FKd6mvb1spe51mluan0tlq64lp8 FOREIGN KEY (blob_sha256) REFERENCES content_blob (sha256);
+ALTER TABLE file_info ADD CONSTRAINT FK29p5lgxxg0mse22p7lctxp1g3 FOREIGN KEY (category_id) REFERENCES category (id);
+ALTER TABLE file_info ADD CONSTRAINT FK94y74v1vs5di9kb3u1qu9jpuy FOREIGN KEY (sub_category_id) REFERENCES sub_category (id);
+ALTER TABLE file_info_labels ADD CONSTRAINT FKscivahotfg0ume2qa8gesn9ss FOREIGN KEY (file_info_id) REFERENCES file_info (id);
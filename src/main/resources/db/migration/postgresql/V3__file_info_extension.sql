@@ -0,0 +1,5 @@
+-- Stored rather than computed per listed row; same rule as FileInfo.extensionOf (text after the last dot)
+ALTER TABLE file_info ADD COLUMN extension VARCHAR(255);
+
+UPDATE file_info SET extension = SUBSTRING(filename FROM '[^.]*$')
+WHERE POSITION('.' IN filename) > 0;
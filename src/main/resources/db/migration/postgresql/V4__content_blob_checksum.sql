@@ -0,0 +1,4 @@
+-- Size and CRC32C of each stored object, re-verified by the integrity scrubber. Null for existing blobs
+-- until the scrubber has checked them against their SHA-256 and filled them in.
+ALTER TABLE content_blob ADD COLUMN stored_size BIGINT;
+ALTER TABLE content_blob ADD COLUMN crc32c BIGINT;
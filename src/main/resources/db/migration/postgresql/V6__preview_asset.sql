@@ -0,0 +1,15 @@
+-- Rendered previews (image thumbnails, first pages of PDFs), stored in the storage backend next to the blob
+-- they were rendered from. The rows count against the preview disk quota, least recently accessed evicted
+-- first, and go with their blob.
+CREATE TABLE preview_asset (
+    storage_key VARCHAR(128) NOT NULL,
+    blob_sha256 VARCHAR(64) NOT NULL,
+    size BIGINT NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    last_accessed TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (storage_key),
+    CONSTRAINT fk_preview_asset_blob FOREIGN KEY (blob_sha256) REFERENCES content_blob (sha256) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_preview_asset_blob ON preview_asset (blob_sha256);
+CREATE INDEX idx_preview_asset_last_accessed ON preview_asset (last_accessed);
@@ -45,6 +45,17 @@ document.addEventListener('DOMContentLoaded', function() {
         categorySelect.add(option, categorySelect.options.length - 1);
     });
 
+    // Populate the listing filter dropdown and keep the active filter selected
+    const filterCategorySelect = document.getElementById('filterCategorySelect');
+    if (filterCategorySelect) {
+        const selectedFilter = filterCategorySelect.getAttribute('data-selected');
+        categories.forEach(category => {
+            const option = new Option(category.name, category.id);
+            option.selected = selectedFilter !== null && String(category.id) === selectedFilter;
+            filterCategorySelect.add(option);
+        });
+    }
+
     // Handle category selection change
     categorySelect.addEventListener('change', function() {
         const selectedValue = this.value;
@@ -100,7 +111,7 @@ document.addEventListener('DOMContentLoaded', function() {
 
 
     // Form submission validation
-    document.querySelector('form').addEventListener('submit', function(e) {
+    document.querySelector('.upload-form form').addEventListener('submit', function(e) {
         const selectedCategory = categorySelect.value;
 
         // Validate category
@@ -0,0 +1,98 @@
+package com.example.springfile.cluster;
+
+import com.example.springfile.dto.FileSelection;
+import com.example.springfile.model.Category;
+import com.example.springfile.model.ClusterMessage;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.CategoryRepository;
+import com.example.springfile.repository.ClusterMessageRepository;
+import com.example.springfile.service.FileDeletedEvent;
+import com.example.springfile.service.FileStorageService;
+import com.example.springfile.service.HotFileCache;
+import com.example.springfile.service.StoredFile;
+import com.example.springfile.service.TaxonomyCache;
+import com.example.springfile.service.TaxonomyChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A second node next to the other tests' context: same database and uploads, its own search index. Polled by
+// hand, the schedule is pushed out of the way
+@SpringBootTest(properties = {"file.cluster.enabled=true", "file.cluster.poll-interval=1h",
+        "file.search.index-dir=./target/test-search-index-cluster"})
+class ClusterEventBusTests {
+
+    private static final String OTHER_NODE = "other-node";
+
+    @Autowired
+    ClusterEventBus clusterEventBus;
+
+    @Autowired
+    ClusterMessageRepository clusterMessageRepository;
+
+    @Autowired
+    TaxonomyCache taxonomyCache;
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    HotFileCache hotFileCache;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void reloadsTaxonomyWhenAnotherNodeCreatedACategory() {
+        String name = "Remote-" + UUID.randomUUID();
+        categoryRepository.save(new Category(name)); // As another node would, behind this node's cache
+        clusterEventBus.poll();
+        assertThat(taxonomyCache.snapshot().categoriesByName()).doesNotContainKey(name);
+
+        clusterMessageRepository.save(new ClusterMessage(OTHER_NODE, TaxonomyChangedEvent.class.getName(), "[{}]",
+                LocalDateTime.now()));
+        clusterEventBus.poll();
+        assertThat(taxonomyCache.snapshot().categoriesByName()).containsKey(name);
+    }
+
+    @Test
+    void dropsCachedFileDeletedOnAnotherNode() {
+        byte[] content = "cached on every node".getBytes(StandardCharsets.US_ASCII);
+        StoredFile storedFile = fileStorageService.storeStream(new ByteArrayInputStream(content), "shared.txt", content.length);
+        FileInfo saved = fileStorageService.saveFileMetadata("shared.txt", storedFile, "text/plain", List.of(),
+                "new", "Cluster", null, null);
+        assertThat(hotFileCache.get(saved.getStoragePath())).isPresent();
+
+        jdbcTemplate.update("UPDATE file_info SET deleted_at = ?, deleted_by = ? WHERE id = ?",
+                LocalDateTime.now(), OTHER_NODE, saved.getId());
+        clusterMessageRepository.save(new ClusterMessage(OTHER_NODE, FileDeletedEvent.class.getName(),
+                "[{\"fileId\":" + saved.getId() + ",\"storagePath\":\"" + saved.getStoragePath() + "\"}]", LocalDateTime.now()));
+        clusterEventBus.poll();
+        assertThat(hotFileCache.get(saved.getStoragePath())).isEmpty();
+    }
+
+    @Test
+    void publishesDeletesWithTheirTransaction() {
+        byte[] content = "deleted here".getBytes(StandardCharsets.US_ASCII);
+        StoredFile storedFile = fileStorageService.storeStream(new ByteArrayInputStream(content), "gone.txt", content.length);
+        FileInfo saved = fileStorageService.saveFileMetadata("gone.txt", storedFile, "text/plain", List.of(),
+                "new", "Cluster", null, null);
+
+        fileStorageService.deleteFiles(FileSelection.ofIds(List.of(saved.getId())));
+        assertThat(clusterMessageRepository.findAll())
+                .anyMatch(message -> message.getType().equals(FileDeletedEvent.class.getName())
+                        && message.getPayload().contains(saved.getStoragePath()));
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.springfile.cluster;
+
+import com.example.springfile.repository.ClusterLockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class ClusterLocksTests {
+
+    @Autowired
+    ClusterLockRepository clusterLockRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void oneNodeHoldsALockUntilItReleasesIt() {
+        ClusterLocks first = locks("node-a", Duration.ofMinutes(5));
+        ClusterLocks second = locks("node-b", Duration.ofMinutes(5));
+
+        ClusterLocks.Lock lock = first.tryLock("exclusive").orElseThrow();
+        assertThat(second.tryLock("exclusive")).isEmpty();
+        assertThat(first.tryLock("exclusive")).isPresent(); // The holder renews
+        lock.close();
+        assertThat(second.tryLock("exclusive")).isPresent();
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverAndLostByItsHolder() throws Exception {
+        ClusterLocks first = locks("node-a", Duration.ofMillis(30));
+        ClusterLocks second = locks("node-b", Duration.ofMinutes(5));
+
+        ClusterLocks.Lock lock = first.tryLock("expiring").orElseThrow();
+        Thread.sleep(50);
+        assertThat(second.tryLock("expiring")).isPresent();
+        assertThatThrownBy(lock::renew).isInstanceOf(ClusterLockLostException.class);
+    }
+
+    @Test
+    void periodicRunIsClaimedOncePerInterval() {
+        assertThat(locks("node-a", Duration.ofMinutes(5)).claimRun("periodic", Duration.ofHours(1))).isTrue();
+        assertThat(locks("node-b", Duration.ofMinutes(5)).claimRun("periodic", Duration.ofHours(1))).isFalse();
+    }
+
+    private ClusterLocks locks(String nodeId, Duration lease) {
+        return new ClusterLocks(clusterLockRepository, new ClusterNode(nodeId), transactionManager, lease);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.springfile.processing;
+
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.model.ProcessingJob;
+import com.example.springfile.model.ProcessingJobStatus;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.repository.ProcessingJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A database of its own: the pipelines of the other test contexts would claim these jobs and fail them
+// for an unknown stage. The context's own pipeline never polls; each test runs pipelines of its own.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:springfile-processing-test;DB_CLOSE_DELAY=-1",
+        "file.search.index-dir=./target/test-search-index-processing",
+        "file.processing.poll-interval=1h"})
+class ProcessingPipelineTests {
+
+    private static final String STAGE = "test";
+
+    @Autowired
+    ProcessingJobRepository jobRepository;
+
+    @Autowired
+    FileInfoRepository fileInfoRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    BackgroundThreads backgroundThreads;
+
+    @FunctionalInterface
+    private interface Work {
+        void process(Long fileInfoId) throws Exception;
+    }
+
+    private final List<ProcessingPipeline> pipelines = new ArrayList<>();
+    // When the stage was called, in order
+    private final List<LocalDateTime> calls = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void clearJobs() {
+        jobRepository.deleteAll();
+    }
+
+    @AfterEach
+    void shutDown() {
+        pipelines.forEach(ProcessingPipeline::shutdown);
+    }
+
+    @Test
+    void completedJobsAreDeleted() throws Exception {
+        start(fileId -> calls.add(LocalDateTime.now()), Duration.ofMinutes(5));
+        ProcessingJob job = queue();
+
+        await(job, Optional::isEmpty);
+        assertThat(calls).hasSize(1);
+    }
+
+    @Test
+    void failedJobsAreRetriedWithGrowingBackoffThenGivenUp() throws Exception {
+        start(fileId -> {
+            calls.add(LocalDateTime.now());
+            throw new IllegalStateException("boom");
+        }, Duration.ofMinutes(5));
+        ProcessingJob job = queue();
+
+        ProcessingJob failed = await(job, found -> found.isPresent() && found.get().getStatus() == ProcessingJobStatus.FAILED)
+                .orElseThrow();
+        assertThat(failed.getAttempts()).isEqualTo(3);
+        assertThat(failed.getLastError()).contains("boom");
+        assertThat(failed.getLockedBy()).isNull();
+        assertThat(calls).hasSize(3);
+        // retry-backoff is 200ms, doubled after each attempt
+        assertThat(Duration.between(calls.get(0), calls.get(1))).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+        assertThat(Duration.between(calls.get(1), calls.get(2))).isGreaterThanOrEqualTo(Duration.ofMillis(400));
+    }
+
+    @Test
+    void permanentFailuresAreNotRetried() throws Exception {
+        start(fileId -> {
+            calls.add(LocalDateTime.now());
+            throw new PermanentProcessingException("unreadable");
+        }, Duration.ofMinutes(5));
+        ProcessingJob job = queue();
+
+        ProcessingJob failed = await(job, found -> found.isPresent() && found.get().getStatus() == ProcessingJobStatus.FAILED)
+                .orElseThrow();
+        assertThat(failed.getAttempts()).isEqualTo(1);
+        assertThat(calls).hasSize(1);
+    }
+
+    @Test
+    void jobsOfDeadWorkersAreClaimedOnceTheirLeaseExpires() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        ProcessingJob expired = running(now.minusSeconds(1));
+        ProcessingJob leased = running(now.plusMinutes(5));
+        start(fileId -> calls.add(LocalDateTime.now()), Duration.ofMinutes(5));
+
+        await(expired, Optional::isEmpty);
+        assertThat(calls).hasSize(1);
+        assertThat(jobRepository.findById(leased.getId()))
+                .hasValueSatisfying(job -> assertThat(job.getLockedBy()).isEqualTo("elsewhere"));
+    }
+
+    @Test
+    void leaseIsRenewedWhileAStageOutlivesIt() throws Exception {
+        Work slow = fileId -> {
+            calls.add(LocalDateTime.now());
+            Thread.sleep(1500);
+        };
+        // Two nodes; without renewal the other would claim the job again after 300ms
+        start(slow, Duration.ofMillis(300));
+        start(slow, Duration.ofMillis(300));
+        ProcessingJob job = queue();
+
+        await(job, Optional::isEmpty);
+        assertThat(calls).hasSize(1);
+    }
+
+    private void start(Work work, Duration lease) {
+        ProcessingStage named = new ProcessingStage() {
+            @Override
+            public String name() {
+                return STAGE;
+            }
+
+            @Override
+            public void process(Long fileInfoId) throws Exception {
+                work.process(fileInfoId);
+            }
+        };
+        pipelines.add(new ProcessingPipeline(jobRepository, fileInfoRepository, List.of(named), transactionManager,
+                backgroundThreads, 2, 3, Duration.ofMillis(200), lease, Duration.ofMillis(50)));
+    }
+
+    private ProcessingJob queue() {
+        return jobRepository.save(new ProcessingJob(1L, STAGE, LocalDateTime.now()));
+    }
+
+    private ProcessingJob running(LocalDateTime lockedUntil) {
+        ProcessingJob job = new ProcessingJob(1L, STAGE, LocalDateTime.now());
+        job.setStatus(ProcessingJobStatus.RUNNING);
+        job.setAttempts(1);
+        job.setLockedBy("elsewhere");
+        job.setLockedUntil(lockedUntil);
+        return jobRepository.save(job);
+    }
+
+    private Optional<ProcessingJob> await(ProcessingJob job, Predicate<Optional<ProcessingJob>> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        Optional<ProcessingJob> found;
+        while (!condition.test(found = jobRepository.findById(job.getId()))) {
+            assertThat(System.nanoTime()).as("job %d in time", job.getId()).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.springfile.reactive;
+
+import com.example.springfile.dto.UploadResultDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "file.reactive-api.enabled=true",
+        "file.reactive-api.port=0",
+        "file.stream-upload.max-size=1KB",
+        // Own index directory: the index of the default test context stays open while it is cached
+        "file.search.index-dir=./target/test-search-index-reactive"})
+class ReactiveApiServerTests {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @Autowired
+    ReactiveApiServer server;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + server.getPort()).build();
+    }
+
+    @Test
+    void uploadsAndDownloadsWithRangesAndValidators() {
+        UploadResultDto uploaded = upload(CONTENT.getBytes(StandardCharsets.US_ASCII))
+                .expectStatus().isCreated()
+                .expectBody(UploadResultDto.class).returnResult().getResponseBody();
+        assertThat(uploaded).isNotNull();
+        assertThat(uploaded.getSize()).isEqualTo(CONTENT.length());
+        assertThat(uploaded.getContentType()).isEqualTo("text/plain");
+
+        String etag = client.get().uri("/files/{name}", uploaded.getStoragePath()).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentLength(CONTENT.length())
+                .expectBody(String.class).isEqualTo(CONTENT)
+                .returnResult().getResponseHeaders().getETag();
+        assertThat(etag).isEqualTo("\"" + uploaded.getSha256() + "\"");
+
+        client.get().uri("/files/{name}", uploaded.getStoragePath()).header(HttpHeaders.RANGE, "bytes=10-14").exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectBody(String.class).isEqualTo("abcde");
+
+        client.get().uri("/files/{name}", uploaded.getStoragePath()).header(HttpHeaders.IF_NONE_MATCH, etag).exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void rejectsOversizedAndInvalidUploads() {
+        upload(new byte[2048]).expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+
+        client.post().uri("/api/files/stream?filename=a.txt")
+                .contentType(MediaType.TEXT_PLAIN).bodyValue("x").exchange()
+                .expectStatus().isBadRequest();
+
+        client.get().uri("/files/{name}", "no-such-file.txt").exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private WebTestClient.ResponseSpec upload(byte[] content) {
+        return client.post().uri("/api/files/stream?filename=notes.txt&category=new&newCategory=Reactive&labels=a,b")
+                .contentType(MediaType.TEXT_PLAIN)
+                .bodyValue(content)
+                .exchange();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.springfile.search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSearchIndexTests {
+
+    @TempDir
+    Path dir;
+
+    private FileSearchIndex index;
+
+    @BeforeEach
+    void open() throws Exception {
+        index = new FileSearchIndex(dir.toString(), 60_000, 60_000);
+        index.index(new SearchDocument(1L, "q3_report-final.pdf", List.of("finance"), "Reports", null,
+                "application/pdf", "Quarterly revenue grew"), 1);
+        index.index(new SearchDocument(2L, "股权激励计划.docx", List.of(), "金融", "股权", null, null), 1);
+        index.index(new SearchDocument(3L, "notes.txt", List.of("report"), null, null, "text/plain",
+                "revenue notes"), 1);
+        index.refresh();
+    }
+
+    @AfterEach
+    void close() {
+        index.close();
+    }
+
+    @Test
+    void splitsFilenamesIntoWords() throws Exception {
+        assertThat(index.search("final", 0, 10).ids()).containsExactly(1L);
+    }
+
+    @Test
+    void ranksFilenameMatchesAboveBodyText() throws Exception {
+        // "report" is in file 1's name but only a label on file 3; "revenue" is in both bodies
+        assertThat(index.search("report revenue", 0, 10).ids()).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void matchesChineseWithoutWordBreaks() throws Exception {
+        assertThat(index.search("激励", 0, 10).ids()).containsExactly(2L);
+    }
+
+    @Test
+    void reindexSweepDropsUntouchedDocuments() throws Exception {
+        index.index(new SearchDocument(1L, "q3_report-final.pdf", List.of(), null, null, null, null), 2);
+        index.deleteOlderThan(2);
+        index.refresh();
+        assertThat(index.numDocs()).isEqualTo(1);
+        assertThat(index.search("notes", 0, 10).total()).isZero();
+    }
+
+    @Test
+    void pagesThroughHits() throws Exception {
+        FileSearchIndex.Hits second = index.search("revenue", 1, 1);
+        assertThat(second.ids()).hasSize(1);
+        assertThat(second.total()).isEqualTo(2);
+    }
+}
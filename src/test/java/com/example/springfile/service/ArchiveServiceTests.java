@@ -0,0 +1,78 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.FileSelection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class ArchiveServiceTests {
+
+    @Autowired
+    ArchiveService archiveService;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Test
+    void zipsSelectionWithUniqueNamesAndStoresCompressedFormats(@TempDir Path dir) throws Exception {
+        String label = "zipped-" + UUID.randomUUID();
+        byte[] text = "line of text\n".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        byte[] png = new byte[100_000];
+        new Random(1).nextBytes(png);
+        System.arraycopy(new byte[]{(byte) 0x89, 0x50, 0x4E, 0x47}, 0, png, 0, 4);
+        store("notes.txt", text, label);
+        store("notes.txt", "other".getBytes(StandardCharsets.UTF_8), label);
+        store("picture.png", png, label);
+        FileSelection selection = new FileSelection(null, null, null, label, null, null);
+
+        assertThat(archiveService.checkSelection(selection)).isEqualTo(3);
+        Path archive = dir.resolve("files.zip");
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            assertThat(archiveService.writeZip(selection, out)).isEqualTo(3);
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertThat(zip.stream().map(ZipEntry::getName))
+                    .containsExactly("Archive/notes.txt", "Archive/notes (2).txt", "Archive/picture.png");
+            ZipEntry notes = zip.getEntry("Archive/notes.txt");
+            assertThat(zip.getInputStream(notes).readAllBytes()).isEqualTo(text);
+            assertThat(notes.getCompressedSize()).isLessThan(text.length / 10);
+            ZipEntry picture = zip.getEntry("Archive/picture.png");
+            assertThat(Arrays.equals(zip.getInputStream(picture).readAllBytes(), png)).isTrue();
+            // Not compressed again
+            assertThat(picture.getCompressedSize()).isGreaterThanOrEqualTo(png.length);
+        }
+    }
+
+    @Test
+    void refusesEmptyAndUnmatchedSelections() {
+        assertThatThrownBy(() -> archiveService.checkSelection(new FileSelection(null, null, null, null, null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> archiveService.checkSelection(
+                new FileSelection(null, null, null, "no-such-label-" + UUID.randomUUID(), null, null)))
+                .isInstanceOf(StoredFileNotFoundException.class);
+    }
+
+    private void store(String filename, byte[] content, String label) {
+        StoredFile storedFile = fileStorageService.storeStream(new ByteArrayInputStream(content), filename, content.length);
+        fileStorageService.saveFileMetadata(filename, storedFile, "application/octet-stream", List.of(label),
+                "new", "Archive", null, null);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.BatchUploadResultDto;
+import com.example.springfile.dto.UploadResultDto;
+import com.example.springfile.model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class BatchUploadServiceTests {
+
+    @Autowired
+    BatchUploadService batchUploadService;
+
+    @Autowired
+    FileInfoSequenceAligner fileInfoSequenceAligner;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void batchInsertsSkipIdsTakenBeforeTheSequenceWasAligned() {
+        // Rows the sequence knows nothing about (as left by IDENTITY ids), right where its next blocks would go
+        long next = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + FileInfoSequenceAligner.SEQUENCE_NAME, Long.class);
+        List<Long> seeded = new ArrayList<>();
+        for (long id = next + 1; id <= next + 3L * FileInfo.ID_ALLOCATION_SIZE; id++) {
+            jdbcTemplate.update("INSERT INTO file_info (id, filename, storage_path) VALUES (?, 'legacy.txt', ?)",
+                    id, "legacy-" + UUID.randomUUID());
+            seeded.add(id);
+        }
+        try {
+            fileInfoSequenceAligner.align();
+
+            // More than the block already in memory, so ids come from the moved sequence
+            List<MultipartFile> files = new ArrayList<>();
+            for (int i = 0; i < 2 * FileInfo.ID_ALLOCATION_SIZE + 10; i++) {
+                files.add(new MockMultipartFile("files", "batch-" + i + ".txt", "text/plain",
+                        ("batch " + i + " " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8)));
+            }
+            BatchUploadResultDto result = batchUploadService.uploadFiles(files, "batch", "new", "Batches", null, null);
+
+            assertThat(result.getFailed()).isEmpty();
+            assertThat(result.getUploaded()).hasSize(files.size())
+                    .extracting(UploadResultDto::getId)
+                    .doesNotHaveDuplicates()
+                    .doesNotContainAnyElementsOf(seeded);
+        } finally {
+            jdbcTemplate.update("DELETE FROM file_info WHERE id BETWEEN ? AND ?", seeded.get(0), seeded.get(seeded.size() - 1));
+        }
+    }
+}
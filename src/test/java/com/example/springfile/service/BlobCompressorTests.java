@@ -0,0 +1,61 @@
+package com.example.springfile.service;
+
+import com.example.springfile.metrics.FileMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobCompressorTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BlobCompressor compressor = new BlobCompressor(new FileMetrics(registry), true,
+            DataSize.ofBytes(1024), DataSize.ofMegabytes(10), 6, 10);
+
+    @Test
+    void compressesTextAndDecodesItBack() throws Exception {
+        String csv = "id,name,amount\n" + "42,some customer,1234.50\n".repeat(2000);
+        Path source = Files.writeString(tempDir.resolve("data.csv.part"), csv, StandardCharsets.UTF_8);
+
+        Optional<BlobCompressor.Compressed> compressed = compressor.compress(source, Files.size(source));
+
+        assertThat(compressed).isPresent();
+        Path gzip = compressed.get().file();
+        assertThat(compressed.get().size()).isEqualTo(Files.size(gzip)).isLessThan(Files.size(source) / 10);
+        assertThat(compressed.get().crc32c()).isEqualTo(ContentChecksums.of(gzip).crc32c());
+        assertThat(source).exists();
+        try (InputStream in = BlobCompressor.decode(Files.newInputStream(gzip), BlobCompressor.GZIP)) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(csv);
+        }
+        assertThat(registry.get("springfile.compression.ratio").summary().max()).isGreaterThan(10);
+    }
+
+    @Test
+    void leavesIncompressibleAndSmallContentAlone() throws Exception {
+        byte[] random = new byte[64 * 1024];
+        new Random(1).nextBytes(random);
+        Path noise = Files.write(tempDir.resolve("noise.bin.part"), random);
+        byte[] png = "\u0089PNG\r\n\u001a\n".repeat(1000).getBytes(StandardCharsets.ISO_8859_1);
+        Path image = Files.write(tempDir.resolve("image.png.part"), png);
+        Path tiny = Files.writeString(tempDir.resolve("tiny.txt.part"), "aaaaaaaaaa");
+
+        assertThat(compressor.compress(noise, random.length)).isEmpty();
+        assertThat(compressor.compress(image, png.length)).isEmpty();
+        assertThat(compressor.compress(tiny, 10)).isEmpty();
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).hasSize(3);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.repository.FileInfoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class BlobMigrationRunnerTests {
+
+    @Autowired
+    BlobMigrationRunner blobMigrationRunner;
+
+    @Autowired
+    FileInfoRepository fileInfoRepository;
+
+    @Autowired
+    ContentBlobRepository contentBlobRepository;
+
+    @Autowired
+    BlobStore blobStore;
+
+    @Value("${file.upload-dir}")
+    String uploadDir;
+
+    @Test
+    void movesFlatFilesIntoTheBlobStoreOnce() throws Exception {
+        byte[] content = ("flat " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        String storagePath = UUID.randomUUID() + ".txt";
+        Path flatFile = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(storagePath);
+        Files.write(flatFile, content);
+        // As uploaded before deduplication: no blob, hash or size
+        FileInfo legacy = fileInfoRepository.save(new FileInfo("legacy.txt", storagePath, "text/plain", List.of(),
+                LocalDateTime.now(), null, null));
+
+        blobMigrationRunner.run(null);
+        FileInfo migrated = fileInfoRepository.findById(legacy.getId()).orElseThrow();
+        assertThat(migrated.getSha256()).isNotNull();
+        assertThat(migrated.getSize()).isEqualTo(content.length);
+        assertThat(flatFile).doesNotExist();
+        assertThat(blobStore.getBackend().exists(migrated.getSha256())).isTrue();
+        assertThat(contentBlobRepository.findRefCount(migrated.getSha256())).contains(1L);
+
+        // Nothing left to migrate: no second reference, nothing rewritten
+        blobMigrationRunner.run(null);
+        assertThat(contentBlobRepository.findRefCount(migrated.getSha256())).contains(1L);
+        assertThat(fileInfoRepository.findById(legacy.getId()).orElseThrow().getSha256()).isEqualTo(migrated.getSha256());
+    }
+}
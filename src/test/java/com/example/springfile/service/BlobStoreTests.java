@@ -0,0 +1,127 @@
+package com.example.springfile.service;
+
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.storage.StorageBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class BlobStoreTests {
+
+    @Autowired
+    BlobStore blobStore;
+
+    @Autowired
+    ContentBlobRepository contentBlobRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void duplicateUploadIsStoredOnceAndTheLastReleaseDeletesIt() throws Exception {
+        byte[] content = ("dedup " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        Path first = write(content);
+        Path second = write(content);
+        ContentChecksums checksums = ContentChecksums.of(first);
+        StorageBackend backend = blobStore.getBackend();
+
+        blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), first);
+        blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), second);
+        assertThat(second).doesNotExist();
+        assertThat(contentBlobRepository.findRefCount(checksums.sha256())).contains(2L);
+
+        assertThat(blobStore.release(checksums.sha256())).isFalse();
+        assertThat(backend.exists(checksums.sha256())).isTrue();
+        assertThat(blobStore.release(checksums.sha256())).isTrue();
+        assertThat(backend.exists(checksums.sha256())).isFalse();
+        assertThat(contentBlobRepository.findById(checksums.sha256())).isEmpty();
+    }
+
+    @Test
+    void releaseAllDeletesOnlyTheContentLeftUnreferenced() throws Exception {
+        ContentChecksums shared = retain(("shared " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8), 3);
+        ContentChecksums single = retain(("single " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8), 1);
+
+        List<String> deleted = new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return blobStore.releaseAll(Map.of(shared.sha256(), 2L, single.sha256(), 1L));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertThat(deleted).containsExactly(single.sha256());
+        assertThat(contentBlobRepository.findRefCount(shared.sha256())).contains(1L);
+        assertThat(blobStore.getBackend().exists(shared.sha256())).isTrue();
+        assertThat(blobStore.getBackend().exists(single.sha256())).isFalse();
+    }
+
+    @Test
+    void failedStoreGivesTheReferenceBack() throws Exception {
+        Path file = write(("lost " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8));
+        ContentChecksums checksums = ContentChecksums.of(file);
+        Files.delete(file);
+
+        assertThatThrownBy(() -> blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), file))
+                .isInstanceOf(IOException.class);
+        assertThat(contentBlobRepository.findById(checksums.sha256())).isEmpty();
+    }
+
+    @Test
+    void objectOfABlobWithoutReferencesIsOverwritten() throws Exception {
+        byte[] content = ("stale " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        Path file = write(content);
+        ContentChecksums checksums = ContentChecksums.of(file);
+        // Left behind by a release that never finished: a row without references and some other bytes
+        jdbcTemplate.update("INSERT INTO content_blob (sha256, size, ref_count, created_at, last_referenced_at) VALUES (?, ?, 0, ?, ?)",
+                checksums.sha256(), checksums.size(), LocalDateTime.now(), LocalDateTime.now());
+        byte[] stale = "not the content".getBytes(StandardCharsets.UTF_8);
+        blobStore.getBackend().put(checksums.sha256(), new ByteArrayInputStream(stale), stale.length);
+
+        String encoding = blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), file);
+        assertThat(encoding).isNull();
+        assertThat(contentBlobRepository.findRefCount(checksums.sha256())).contains(1L);
+        assertThat(contentBlobRepository.findById(checksums.sha256()))
+                .hasValueSatisfying(blob -> assertThat(blob.getCrc32c()).isEqualTo(checksums.crc32c()));
+        try (InputStream stored = blobStore.openStream(checksums.sha256())) {
+            assertThat(stored.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    private ContentChecksums retain(byte[] content, int times) throws IOException {
+        ContentChecksums checksums = null;
+        for (int i = 0; i < times; i++) {
+            Path file = write(content);
+            checksums = ContentChecksums.of(file);
+            blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), file);
+        }
+        return checksums;
+    }
+
+    private static Path write(byte[] content) throws IOException {
+        Path file = Files.createTempFile("blob", ".txt");
+        Files.write(file, content);
+        return file;
+    }
+}
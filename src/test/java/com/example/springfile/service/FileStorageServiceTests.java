@@ -0,0 +1,58 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.FileInfoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class FileStorageServiceTests {
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    FileInfoRepository fileInfoRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${file.upload-dir}")
+    String uploadDir;
+
+    @Test
+    void servesFlatFilesWithoutARecordButNotDeletedOnes() throws Exception {
+        String unrecorded = flatFile(new byte[12]);
+        assertThat(fileStorageService.openForTransfer(unrecorded).length()).isEqualTo(12);
+        Files.delete(fileStorageService.loadFileAsPath(unrecorded));
+
+        // Deleted, with its content still waiting for the reaper
+        String deleted = flatFile(new byte[7]);
+        FileInfo fileInfo = fileInfoRepository.save(new FileInfo("deleted.bin", deleted, "application/octet-stream",
+                List.of(), LocalDateTime.now(), null, null));
+        jdbcTemplate.update("UPDATE file_info SET deleted_at = ? WHERE id = ?", LocalDateTime.now(), fileInfo.getId());
+
+        assertThatThrownBy(() -> fileStorageService.openForTransfer(deleted))
+                .isInstanceOf(StoredFileNotFoundException.class);
+    }
+
+    private String flatFile(byte[] content) throws Exception {
+        String storedFilename = UUID.randomUUID() + ".bin";
+        Path path = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(storedFilename);
+        Files.write(path, content);
+        return storedFilename;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class HotFileCacheTests {
+
+    @Autowired
+    HotFileCache hotFileCache;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Test
+    void servesRepeatedLookupsFromMemoryUntilDeleted() throws Exception {
+        byte[] content = "a small, popular file".getBytes(StandardCharsets.US_ASCII);
+        StoredFile storedFile = fileStorageService.storeStream(new ByteArrayInputStream(content), "hot.txt", 1024);
+        FileInfo saved = fileStorageService.saveFileMetadata("hot.txt", storedFile, "text/plain", List.of("hot"),
+                "new", "Hot", null, null);
+
+        HotFileCache.Entry first = hotFileCache.get(saved.getStoragePath()).orElseThrow();
+        assertThat(first.fileInfo().getFilename()).isEqualTo("hot.txt");
+        assertThat(first.content()).isEqualTo(ByteBuffer.wrap(content));
+        assertThat(first.content().isDirect()).isTrue();
+        assertThat(hotFileCache.get(saved.getStoragePath())).containsSame(first);
+
+        fileStorageService.deleteFile(saved);
+        assertThat(hotFileCache.get(saved.getStoragePath())).isEmpty();
+    }
+}
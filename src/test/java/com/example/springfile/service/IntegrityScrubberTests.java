@@ -0,0 +1,53 @@
+package com.example.springfile.service;
+
+import com.example.springfile.storage.StorageBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class IntegrityScrubberTests {
+
+    @Autowired
+    IntegrityScrubber integrityScrubber;
+
+    @Autowired
+    BlobStore blobStore;
+
+    @Test
+    void reportsCorruptedAndOrphanedObjects() throws Exception {
+        byte[] content = "scrub me, scrub me well".getBytes(StandardCharsets.US_ASCII);
+        Path file = Files.createTempFile("scrub", ".txt");
+        Files.write(file, content);
+        ContentChecksums checksums = ContentChecksums.of(file);
+        blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), file);
+
+        StorageBackend backend = blobStore.getBackend();
+        IntegrityScrubber.Report clean = integrityScrubber.scrub().orElseThrow();
+        assertThat(clean.findings()).noneMatch(finding -> finding.key().equals(checksums.sha256()));
+
+        // Same length, one byte flipped: only the checksum can tell
+        byte[] corrupted = content.clone();
+        corrupted[3] ^= 1;
+        backend.put(checksums.sha256(), new ByteArrayInputStream(corrupted), corrupted.length);
+        backend.put("orphan", new ByteArrayInputStream(content), content.length);
+        try {
+            IntegrityScrubber.Report report = integrityScrubber.scrub().orElseThrow();
+            assertThat(report.findings())
+                    .contains(new IntegrityScrubber.Finding(IntegrityScrubber.Problem.ORPHANED_OBJECT, "orphan", "no blob row"))
+                    .anyMatch(finding -> finding.problem() == IntegrityScrubber.Problem.CHECKSUM_MISMATCH
+                            && finding.key().equals(checksums.sha256()));
+            assertThat(integrityScrubber.getLastReport()).contains(report);
+        } finally {
+            backend.delete("orphan");
+            blobStore.release(checksums.sha256());
+        }
+    }
+}
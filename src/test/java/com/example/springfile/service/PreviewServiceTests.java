@@ -0,0 +1,80 @@
+package com.example.springfile.service;
+
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.PreviewAssetRepository;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class PreviewServiceTests {
+
+    @Autowired
+    PreviewService previewService;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    PreviewAssetRepository previewAssetRepository;
+
+    @Test
+    void rendersImageThumbnailOnceAndStoresItNextToTheBlob() throws Exception {
+        BufferedImage image = new BufferedImage(1200, 600, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(600, 300, 0xFF0000);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        FileInfo fileInfo = store("wide.png", png.toByteArray(), "image/png");
+
+        PreviewService.Preview preview = previewService.get(fileInfo).orElseThrow();
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(preview.content()));
+        assertThat(thumbnail.getWidth()).isEqualTo(256);
+        assertThat(thumbnail.getHeight()).isEqualTo(128);
+        assertThat(preview.storageKey()).startsWith(fileInfo.getSha256() + ".");
+        assertThat(previewAssetRepository.findById(preview.storageKey())).isPresent();
+
+        assertThat(previewService.get(fileInfo).orElseThrow().content()).isEqualTo(preview.content());
+    }
+
+    @Test
+    void rendersFirstPageOfPdf() throws Exception {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage(PDRectangle.A4));
+            document.save(pdf);
+        }
+        FileInfo fileInfo = store("page.pdf", pdf.toByteArray(), "application/pdf");
+
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(previewService.get(fileInfo).orElseThrow().content()));
+        assertThat(thumbnail.getHeight()).isEqualTo(256);
+        assertThat(thumbnail.getWidth()).isLessThan(256);
+    }
+
+    @Test
+    void hasNoPreviewForOtherTypesOrBrokenContent() throws Exception {
+        FileInfo text = store("notes.txt", "just text".getBytes(StandardCharsets.UTF_8), "text/plain");
+        assertThat(previewService.supports(text)).isFalse();
+        assertThat(previewService.get(text)).isEmpty();
+
+        FileInfo broken = store("broken.png", "not really a png".getBytes(StandardCharsets.UTF_8), "image/png");
+        assertThat(previewService.get(broken)).isEmpty();
+    }
+
+    private FileInfo store(String filename, byte[] content, String contentType) {
+        StoredFile storedFile = fileStorageService.storeStream(new ByteArrayInputStream(content), filename, content.length);
+        return fileStorageService.saveFileMetadata(filename, storedFile, contentType, List.of("preview"),
+                "new", "Previews", null, null);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.UploadSessionDto;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.model.UploadSession;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class ResumableUploadServiceTests {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Autowired
+    ResumableUploadService resumableUploadService;
+
+    @Test
+    void assemblesChunksSentOutOfOrder() throws Exception {
+        UploadSession session = start(sha256(CONTENT));
+        assertThat(session.chunkCount()).isEqualTo(3);
+
+        write(session, 2);
+        write(session, 0);
+        UploadSessionDto status = resumableUploadService.describe(session.getId());
+        assertThat(status.getMissingChunks()).containsExactly(1);
+        assertThatThrownBy(() -> resumableUploadService.complete(session.getId()))
+                .isInstanceOf(IllegalStateException.class);
+
+        write(session, 1);
+        write(session, 1); // A retried chunk is harmless
+        FileInfo fileInfo = resumableUploadService.complete(session.getId());
+        assertThat(fileInfo.getSize()).isEqualTo(CONTENT.length);
+        assertThat(fileInfo.getSha256()).isEqualTo(sha256(CONTENT));
+        assertThat(Files.exists(Paths.get(session.getStagingFile()))).isFalse();
+        assertThatThrownBy(() -> resumableUploadService.describe(session.getId()))
+                .isInstanceOf(UploadSessionNotFoundException.class);
+    }
+
+    @Test
+    void rejectsBadChunksAndChecksumMismatch() {
+        UploadSession session = start(sha256("something else".getBytes(StandardCharsets.US_ASCII)));
+        assertThatThrownBy(() -> resumableUploadService.writeChunk(session.getId(), 0,
+                new ByteArrayInputStream(CONTENT, 0, 3), -1, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> resumableUploadService.writeChunk(session.getId(), 0,
+                new ByteArrayInputStream(CONTENT, 0, 4), 4, sha256(new byte[4])))
+                .isInstanceOf(UploadChecksumException.class);
+
+        for (int index = 0; index < session.chunkCount(); index++) {
+            write(session, index);
+        }
+        assertThatThrownBy(() -> resumableUploadService.complete(session.getId()))
+                .isInstanceOf(UploadChecksumException.class);
+        assertThat(Files.exists(Paths.get(session.getStagingFile()))).isFalse();
+    }
+
+    private UploadSession start(String sha256) {
+        return resumableUploadService.start("digits.txt", CONTENT.length, 4, "text/plain", sha256,
+                "resumable", "new", "Resumable", null, null);
+    }
+
+    private void write(UploadSession session, int index) {
+        int offset = index * session.getChunkSize();
+        int length = (int) session.chunkLength(index);
+        resumableUploadService.writeChunk(session.getId(), index, new ByteArrayInputStream(CONTENT, offset, length),
+                length, sha256(Arrays.copyOfRange(CONTENT, offset, offset + length)));
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterLocks;
+import com.example.springfile.config.BackgroundThreads;
+import com.example.springfile.storage.HashPrefixStorageLayout;
+import com.example.springfile.storage.LocalStorageBackend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class StorageLayoutMigratorTests {
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final byte[] CONTENT = "moved along".getBytes(StandardCharsets.US_ASCII);
+
+    @Autowired
+    ClusterLocks clusterLocks;
+
+    @Autowired
+    BackgroundThreads backgroundThreads;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void movesBlobsAndTheirPreviewsIntoTheNewLayout() throws Exception {
+        String preview = KEY + ".preview-256.jpg";
+        LocalStorageBackend previous = new LocalStorageBackend(tempDir, new HashPrefixStorageLayout(1, 3));
+        previous.put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+        previous.put(preview, new ByteArrayInputStream(CONTENT), CONTENT.length);
+        LocalStorageBackend switched = new LocalStorageBackend(tempDir, new HashPrefixStorageLayout(2, 2),
+                List.of(new HashPrefixStorageLayout(1, 3)));
+
+        new StorageLayoutMigrator(switched, clusterLocks, backgroundThreads, 500, 0).migrate();
+
+        for (String key : List.of(KEY, preview)) {
+            assertThat(switched.localPath(key)).hasValue(switched.resolve(key));
+            assertThat(previous.resolve(key)).doesNotExist();
+        }
+        assertThat(tempDir.resolve("012")).doesNotExist();
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.FileSelection;
+import com.example.springfile.model.FileInfo;
+import com.example.springfile.repository.ContentBlobRepository;
+import com.example.springfile.repository.FileInfoRepository;
+import com.example.springfile.storage.StorageBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class StorageReaperTests {
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    StorageReaper storageReaper;
+
+    @Autowired
+    FileInfoRepository fileInfoRepository;
+
+    @Autowired
+    ContentBlobRepository contentBlobRepository;
+
+    @Autowired
+    BlobStore blobStore;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void bulkDeleteHidesFilesAndReaperRemovesUnsharedContent() throws Exception {
+        String label = "doomed-" + UUID.randomUUID();
+        String shared = "shared " + label;
+        FileInfo doomedShared = store(shared, label);
+        FileInfo doomedUnique = store("unique " + label, label);
+        FileInfo kept = store(shared, "kept");
+
+        assertThat(fileStorageService.deleteFiles(new FileSelection(null, null, null, label, null, null))).isEqualTo(2);
+        assertThat(fileInfoRepository.findByStoragePath(doomedShared.getStoragePath())).isEmpty();
+        assertThat(fileInfoRepository.findById(doomedUnique.getId())).isEmpty();
+        assertThat(fileInfoRepository.findByStoragePath(kept.getStoragePath())).isPresent();
+        // Still stored until reaped
+        StorageBackend backend = blobStore.getBackend();
+        assertThat(backend.exists(doomedUnique.getSha256())).isTrue();
+
+        assertThat(storageReaper.reap()).isGreaterThanOrEqualTo(2);
+        assertThat(backend.exists(doomedUnique.getSha256())).isFalse();
+        assertThat(contentBlobRepository.findById(doomedUnique.getSha256())).isEmpty();
+        assertThat(backend.exists(kept.getSha256())).isTrue();
+        assertThat(contentBlobRepository.findRefCount(kept.getSha256())).contains(1L);
+    }
+
+    @Test
+    void reconcileReclaimsReferencesNoFileWasInsertedFor() throws Exception {
+        // Stored but never saved, as when the node dies between the two
+        StoredFile leaked = fileStorageService.storeStream(new ByteArrayInputStream(
+                ("leaked " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8)), "leak.txt", 1024);
+        StoredFile inFlight = fileStorageService.storeStream(new ByteArrayInputStream(
+                ("in flight " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8)), "leak.txt", 1024);
+        jdbcTemplate.update("UPDATE content_blob SET created_at = ?, last_referenced_at = ? WHERE sha256 = ?",
+                LocalDateTime.now().minusDays(1), LocalDateTime.now().minusDays(1), leaked.getSha256());
+        StorageBackend backend = blobStore.getBackend();
+        assertThat(backend.exists(leaked.getSha256())).isTrue();
+
+        assertThat(storageReaper.reconcile()).isGreaterThanOrEqualTo(1);
+        assertThat(contentBlobRepository.findById(leaked.getSha256())).isEmpty();
+        assertThat(backend.exists(leaked.getSha256())).isFalse();
+        // Referenced within the grace period: its file may still be on the way
+        assertThat(contentBlobRepository.findRefCount(inFlight.getSha256())).contains(1L);
+        assertThat(backend.exists(inFlight.getSha256())).isTrue();
+    }
+
+    @Test
+    void uploadWaitsForTheDeletionOfItsOrphanedObjectAndStoresItAgain() throws Exception {
+        byte[] content = ("orphan " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        Path file = Files.createTempFile("reap", ".txt");
+        Files.write(file, content);
+        ContentChecksums checksums = ContentChecksums.of(file);
+        StorageBackend backend = blobStore.getBackend();
+        backend.put(checksums.sha256(), new ByteArrayInputStream(content), content.length);
+
+        // Hold the deletion's transaction open while the same content is uploaded
+        CompletableFuture<String> upload = new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                assertThat(storageReaper.deleteOrphanedObjects(List.of(checksums.sha256()), Instant.now().plusSeconds(60)))
+                        .isEqualTo(1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            CompletableFuture<String> retain = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return blobStore.retain(checksums.sha256(), checksums.size(), checksums.crc32c(), file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertThat(retain).failsWithin(500, TimeUnit.MILLISECONDS);
+            return retain;
+        });
+
+        upload.get(10, TimeUnit.SECONDS);
+        assertThat(contentBlobRepository.findRefCount(checksums.sha256())).contains(1L);
+        assertThat(backend.exists(checksums.sha256())).isTrue();
+    }
+
+    @Test
+    void refusesToDeleteWithoutCriteria() {
+        assertThatThrownBy(() -> fileStorageService.deleteFiles(new FileSelection(List.of(), null, null, " ", null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private FileInfo store(String content, String label) {
+        StoredFile storedFile = fileStorageService.storeStream(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "reap.txt", 1024);
+        return fileStorageService.saveFileMetadata("reap.txt", storedFile, "text/plain", List.of(label),
+                "new", "Reaper", null, null);
+    }
+}
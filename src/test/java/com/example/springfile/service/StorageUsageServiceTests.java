@@ -0,0 +1,97 @@
+package com.example.springfile.service;
+
+import com.example.springfile.dto.FileSelection;
+import com.example.springfile.dto.UsageReport;
+import com.example.springfile.model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class StorageUsageServiceTests {
+
+    @Autowired
+    StorageUsageService storageUsageService;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Test
+    void countsUploadsAndDeletesPerCategoryAndSubCategory() {
+        String categoryName = "Usage-" + UUID.randomUUID();
+        FileInfo first = store(new byte[100], "new", categoryName, "new", "Reports");
+        String categoryId = first.getCategory().getId().toString();
+        String subCategoryId = first.getSubCategory().getId().toString();
+        store(new byte[250], categoryId, null, subCategoryId, null);
+        store(new byte[40], categoryId, null, null, null);
+
+        assertThat(usage(categoryName)).satisfies(usage -> {
+            assertThat(usage.fileCount()).isEqualTo(3);
+            assertThat(usage.totalBytes()).isEqualTo(390);
+            assertThat(usage.subCategories()).singleElement().satisfies(subCategory -> {
+                assertThat(subCategory.fileCount()).isEqualTo(2);
+                assertThat(subCategory.totalBytes()).isEqualTo(350);
+            });
+        });
+
+        fileStorageService.deleteFiles(new FileSelection(null, first.getCategory().getId(), first.getSubCategory().getId(),
+                null, null, null));
+        UsageReport.CategoryUsage usage = usage(categoryName);
+        assertThat(usage.fileCount()).isEqualTo(1);
+        assertThat(usage.totalBytes()).isEqualTo(40);
+        assertThat(usage.subCategories().get(0).fileCount()).isZero();
+        assertThat(usage.subCategories().get(0).totalBytes()).isZero();
+    }
+
+    @Test
+    void refusesUploadsBeyondTheQuotaBeforeAndAfterStoring() {
+        String categoryName = "Quota-" + UUID.randomUUID();
+        FileInfo first = store(new byte[600], "new", categoryName, null, null);
+        Long categoryId = first.getCategory().getId();
+        storageUsageService.setQuota(categoryId, 1000L);
+
+        // Declared size known up front
+        assertThatThrownBy(() -> storageUsageService.checkQuota(categoryId.toString(), 500))
+                .isInstanceOf(QuotaExceededException.class);
+        storageUsageService.checkQuota(categoryId.toString(), 400);
+
+        // Size only known once stored: the insert is refused and nothing is counted
+        assertThatThrownBy(() -> store(new byte[500], categoryId.toString(), null, null, null))
+                .isInstanceOf(QuotaExceededException.class);
+        assertThat(usage(categoryName).fileCount()).isEqualTo(1);
+        assertThat(usage(categoryName).totalBytes()).isEqualTo(600);
+
+        store(new byte[400], categoryId.toString(), null, null, null);
+        assertThat(usage(categoryName).totalBytes()).isEqualTo(1000);
+        assertThat(usage(categoryName).quotaBytes()).isEqualTo(1000L);
+
+        storageUsageService.setQuota(categoryId, null);
+        store(new byte[1], categoryId.toString(), null, null, null);
+        assertThat(usage(categoryName).totalBytes()).isEqualTo(1001);
+    }
+
+    private FileInfo store(byte[] content, String categoryValue, String newCategoryName,
+                           String subCategoryValue, String newSubCategoryName) {
+        StoredFile storedFile = fileStorageService.storeStream(new ByteArrayInputStream(content), "data.bin", content.length);
+        try {
+            return fileStorageService.saveFileMetadata("data.bin", storedFile, "application/octet-stream", List.of(),
+                    categoryValue, newCategoryName, subCategoryValue, newSubCategoryName);
+        } catch (RuntimeException e) {
+            fileStorageService.discardStoredFile(storedFile);
+            throw e;
+        }
+    }
+
+    private UsageReport.CategoryUsage usage(String categoryName) {
+        return storageUsageService.report().categories().stream()
+                .filter(category -> category.name().equals(categoryName))
+                .findFirst().orElseThrow();
+    }
+}
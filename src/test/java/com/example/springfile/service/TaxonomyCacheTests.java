@@ -0,0 +1,88 @@
+package com.example.springfile.service;
+
+import com.example.springfile.cluster.ClusterEventBus;
+import com.example.springfile.model.Category;
+import com.example.springfile.model.SubCategory;
+import com.example.springfile.repository.CategoryRepository;
+import com.example.springfile.repository.SubCategoryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class TaxonomyCacheTests {
+
+    @Autowired
+    CategoryRepository categoryRepository;
+
+    @Autowired
+    SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ClusterEventBus clusterEventBus;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void createsThatLoseToAnotherNodeReturnTheWinnersRows() {
+        // Every lookup misses, as if the other node inserted just after it
+        TaxonomyCache cache = new TaxonomyCache(missingByName(CategoryRepository.class, categoryRepository),
+                missingByName(SubCategoryRepository.class, subCategoryRepository), objectMapper, clusterEventBus,
+                transactionManager);
+        cache.init();
+        Category winnerCategory = categoryRepository.save(new Category("Raced-" + UUID.randomUUID()));
+        SubCategory winnerSubCategory = subCategoryRepository.save(new SubCategory("Raced", winnerCategory));
+
+        Category category = cache.findOrCreateCategory(winnerCategory.getName());
+        assertThat(category.getId()).isEqualTo(winnerCategory.getId());
+
+        SubCategory subCategory = cache.findOrCreateSubCategory(category, "Raced");
+        assertThat(subCategory.getId()).isEqualTo(winnerSubCategory.getId());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sub_category WHERE category_id = ?",
+                Long.class, category.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void subCategoryNamesAreUniqueWithinTheirCategory() {
+        Category category = categoryRepository.save(new Category("Unique-" + UUID.randomUUID()));
+        Category other = categoryRepository.save(new Category("Unique-" + UUID.randomUUID()));
+        subCategoryRepository.save(new SubCategory("Reports", category));
+        subCategoryRepository.save(new SubCategory("Reports", other));
+
+        assertThatThrownBy(() -> subCategoryRepository.save(new SubCategory("Reports", category)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T missingByName(Class<T> type, T repository) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().startsWith("findByName")) {
+                return Optional.empty();
+            }
+            try {
+                return method.invoke(repository, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.springfile.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * One contract, run against every backend. The S3 backend runs against a real S3-compatible server,
+ * e.g. {@code minio server /tmp/minio} with {@code S3_TEST_ENDPOINT=http://localhost:9000}
+ * (bucket {@code S3_TEST_BUCKET}, default {@code springfile-test}; credentials {@code S3_TEST_ACCESS_KEY}
+ * and {@code S3_TEST_SECRET_KEY}, default minioadmin).
+ */
+class StorageBackendTests {
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+
+    abstract static class Contract {
+
+        @TempDir
+        Path tempDir;
+
+        StorageBackend backend;
+
+        abstract StorageBackend createBackend() throws Exception;
+
+        @BeforeEach
+        void setUp() throws Exception {
+            backend = createBackend();
+        }
+
+        @Test
+        void storesAndReadsBackAnObject() throws Exception {
+            backend.put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+
+            assertThat(read(backend.get(KEY))).isEqualTo(CONTENT);
+            assertThat(backend.stat(KEY)).hasValueSatisfying(stat -> assertThat(stat.size()).isEqualTo(CONTENT.length));
+        }
+
+        @Test
+        void readsByteRanges() throws Exception {
+            backend.put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+
+            assertThat(new String(read(backend.get(KEY, 5, 5)), StandardCharsets.US_ASCII)).isEqualTo("56789");
+            assertThat(new String(read(backend.get(KEY, 15, -1)), StandardCharsets.US_ASCII)).isEqualTo("fghij");
+        }
+
+        @Test
+        void storesStreamsOfUnknownLengthIncludingEmptyOnes() throws Exception {
+            String empty = KEY.replace('0', 'e');
+            backend.put(KEY, new ByteArrayInputStream(CONTENT), -1);
+            backend.put(empty, InputStream.nullInputStream(), -1);
+
+            assertThat(read(backend.get(KEY))).isEqualTo(CONTENT);
+            assertThat(read(backend.get(empty))).isEmpty();
+            assertThat(backend.stat(empty)).hasValueSatisfying(stat -> assertThat(stat.size()).isZero());
+        }
+
+        @Test
+        void putFileConsumesTheSource() throws Exception {
+            Path source = Files.write(tempDir.resolve("upload.part"), CONTENT);
+
+            backend.putFile(KEY, source);
+
+            assertThat(source).doesNotExist();
+            assertThat(read(backend.get(KEY))).isEqualTo(CONTENT);
+        }
+
+        @Test
+        void deletesObjects() throws Exception {
+            backend.put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+
+            backend.delete(KEY);
+
+            assertThat(backend.exists(KEY)).isFalse();
+            assertThat(backend.stat(KEY)).isEmpty();
+            assertThatThrownBy(() -> backend.get(KEY)).isInstanceOf(NoSuchFileException.class);
+        }
+
+        @Test
+        void listsKeys() throws Exception {
+            String other = KEY.replace('0', 'f');
+            backend.put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+            backend.put(other, new ByteArrayInputStream(CONTENT), CONTENT.length);
+
+            try (Stream<String> keys = backend.keys()) {
+                assertThat(keys).contains(KEY, other);
+            }
+        }
+
+        static byte[] read(InputStream in) throws Exception {
+            try (in) {
+                return in.readAllBytes();
+            }
+        }
+    }
+
+    @Nested
+    class Local extends Contract {
+
+        @Override
+        StorageBackend createBackend() throws Exception {
+            return new LocalStorageBackend(tempDir.resolve("blobs"), new HashPrefixStorageLayout(2, 2));
+        }
+
+        @Test
+        void findsObjectsLeftByThePreviousLayout() throws Exception {
+            new LocalStorageBackend(tempDir.resolve("blobs"), new FlatStorageLayout())
+                    .put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+
+            assertThat(backend.localPath(KEY)).hasValue(tempDir.resolve("blobs").resolve(KEY).toAbsolutePath());
+            assertThat(read(backend.get(KEY))).isEqualTo(CONTENT);
+        }
+
+        @Test
+        void findsObjectsLeftByAConfiguredPreviousLayout() throws Exception {
+            String preview = KEY + ".preview-256.jpg";
+            StorageBackend previous = new LocalStorageBackend(tempDir.resolve("blobs"), new HashPrefixStorageLayout(1, 3));
+            previous.put(KEY, new ByteArrayInputStream(CONTENT), CONTENT.length);
+            previous.put(preview, new ByteArrayInputStream(CONTENT), CONTENT.length);
+
+            assertThat(backend.exists(KEY)).isFalse();
+            StorageBackend switched = new LocalStorageBackend(tempDir.resolve("blobs"), new HashPrefixStorageLayout(2, 2),
+                    List.of(new HashPrefixStorageLayout(1, 3)));
+            assertThat(read(switched.get(KEY))).isEqualTo(CONTENT);
+            assertThat(read(switched.get(preview))).isEqualTo(CONTENT);
+        }
+    }
+
+    @Nested
+    class InMemory extends Contract {
+
+        @Override
+        StorageBackend createBackend() {
+            return new InMemoryStorageBackend();
+        }
+    }
+
+    @Nested
+    @EnabledIfEnvironmentVariable(named = "S3_TEST_ENDPOINT", matches = ".+")
+    class S3 extends Contract {
+
+        @Override
+        StorageBackend createBackend() {
+            S3Client client = S3Client.builder()
+                    .endpointOverride(URI.create(System.getenv("S3_TEST_ENDPOINT")))
+                    .region(Region.US_EAST_1)
+                    .forcePathStyle(true)
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                            env("S3_TEST_ACCESS_KEY", "minioadmin"), env("S3_TEST_SECRET_KEY", "minioadmin"))))
+                    .build();
+            String bucket = env("S3_TEST_BUCKET", "springfile-test");
+            if (client.listBuckets().buckets().stream().noneMatch(b -> b.name().equals(bucket))) {
+                client.createBucket(b -> b.bucket(bucket));
+            }
+            // A fresh prefix per test keeps runs independent without emptying the bucket
+            return new S3StorageBackend(client, bucket, "test-" + UUID.randomUUID() + "/",
+                    S3StorageBackend.MIN_PART_SIZE, 3, Executors.newFixedThreadPool(3));
+        }
+
+        @AfterEach
+        void tearDown() {
+            ((S3StorageBackend) backend).close();
+        }
+
+        @Test
+        void uploadsLargeObjectsInParallelParts() throws Exception {
+            byte[] large = new byte[(int) (2.5 * S3StorageBackend.MIN_PART_SIZE)];
+            new Random(42).nextBytes(large);
+            Path source = Files.write(tempDir.resolve("large.part"), large);
+
+            backend.putFile(KEY, source);
+            backend.put(KEY + "-stream", new ByteArrayInputStream(large), -1);
+
+            assertThat(backend.stat(KEY)).hasValueSatisfying(stat -> assertThat(stat.size()).isEqualTo(large.length));
+            assertThat(read(backend.get(KEY))).isEqualTo(large);
+            // A range spanning the boundary between the first two parts
+            int boundary = (int) S3StorageBackend.MIN_PART_SIZE;
+            assertThat(read(backend.get(KEY + "-stream", boundary - 10, 20)))
+                    .isEqualTo(Arrays.copyOfRange(large, boundary - 10, boundary + 10));
+        }
+
+        private static String env(String name, String defaultValue) {
+            String value = System.getenv(name);
+            return value != null ? value : defaultValue;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.springfile.web;
+
+import com.example.springfile.storage.TransferSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadResponseWriterTests {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+    private static final String ETAG = "\"abc123\"";
+
+    @TempDir
+    Path tempDir;
+
+    private final DownloadResponseWriter writer = new DownloadResponseWriter();
+    private DownloadResponseWriter.Download download;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("file.txt"), CONTENT, StandardCharsets.US_ASCII);
+        download = new DownloadResponseWriter.Download(TransferSource.ofFile(file, CONTENT.length()),
+                "text/plain", "attachment; filename=\"file.txt\"", ETAG, Instant.parse("2025-01-01T00:00:00Z"));
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws Exception {
+        MockHttpServletResponse response = write(new MockHttpServletRequest("GET", "/files/x"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(response.getHeader("ETag")).isEqualTo(ETAG);
+        assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+        assertThat(response.getHeader("Last-Modified")).isNotNull();
+    }
+
+    @Test
+    void answersNotModifiedForMatchingEtag() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.addHeader("If-None-Match", ETAG);
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentLength()).isZero();
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.addHeader("Range", "bytes=5-9");
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 5-9/20");
+        assertThat(response.getContentAsString()).isEqualTo("56789");
+    }
+
+    @Test
+    void servesMultipleRangesAsMultipart() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.addHeader("Range", "bytes=0-1,-2");
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentType()).startsWith("multipart/byteranges; boundary=");
+        String body = response.getContentAsString();
+        assertThat(body).contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n");
+        assertThat(body).contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n");
+        assertThat(response.getContentLengthLong()).isEqualTo(response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.addHeader("Range", "bytes=100-200");
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes */20");
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeIsStale() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.addHeader("Range", "bytes=5-9");
+        request.addHeader("If-Range", "\"something-else\"");
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void delegatesToSendfileWhenContainerSupportsIt() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.setAttribute(DownloadResponseWriter.SENDFILE_SUPPORTED_ATTR, Boolean.TRUE);
+        request.addHeader("Range", "bytes=2-");
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(request.getAttribute(DownloadResponseWriter.SENDFILE_START_ATTR)).isEqualTo(2L);
+        assertThat(request.getAttribute(DownloadResponseWriter.SENDFILE_END_ATTR)).isEqualTo(20L);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void servesRangesOfEncodedAndStreamedContent() throws Exception {
+        download = new DownloadResponseWriter.Download(
+                TransferSource.ofStream(() -> new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.US_ASCII)), CONTENT.length()),
+                "text/plain", null, ETAG, null, "gzip");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/x");
+        request.addHeader("Range", "bytes=10-");
+
+        MockHttpServletResponse response = write(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.getContentAsString()).isEqualTo("abcdefghij");
+    }
+
+    @Test
+    void negotiatesContentEncoding() {
+        assertThat(DownloadResponseWriter.acceptsEncoding("gzip, deflate, br", "gzip")).isTrue();
+        assertThat(DownloadResponseWriter.acceptsEncoding("br;q=1.0, x-gzip;q=0.5", "gzip")).isTrue();
+        assertThat(DownloadResponseWriter.acceptsEncoding("*", "gzip")).isTrue();
+        assertThat(DownloadResponseWriter.acceptsEncoding("*, gzip;q=0", "gzip")).isFalse();
+        assertThat(DownloadResponseWriter.acceptsEncoding("identity", "gzip")).isFalse();
+        assertThat(DownloadResponseWriter.acceptsEncoding(null, "gzip")).isFalse();
+    }
+
+    private MockHttpServletResponse write(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(download, request, response);
+        return response;
+    }
+}